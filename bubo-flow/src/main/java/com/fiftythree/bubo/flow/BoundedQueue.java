@@ -0,0 +1,140 @@
+/*
+ *
+ *                                ^ ^
+ *                                O O
+ *                              /    )
+ *                             /  ,,
+ * Bubo – Observable Contracts and Specialized Implementations.
+ *                              |/
+ * Copyright 2015 FiftyThree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fiftythree.bubo.flow;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded, lock-free, multi-producer multi-consumer queue. This is Dmitry Vyukov's array queue: each slot
+ * carries a sequence number which tells producers and consumers whether it is theirs to fill or empty, so
+ * the only contended operation is a compare-and-set on the head or tail position and a full or empty queue
+ * is detected without looking at the other end.
+ *
+ * <p>Both ends are used by a {@link RegistrarPublisher} subscription: publishing threads offer, the
+ * subscriber's delivery task polls, and with {@link OverflowStrategy#DROP_OLDEST} publishing threads also
+ * poll to make room.</p>
+ */
+final class BoundedQueue<E> {
+
+    private final AtomicReferenceArray<E> mItems;
+    // mSequences[i] == position: slot i is free for the producer claiming that position.
+    // mSequences[i] == position + 1: slot i holds the item for the consumer claiming that position.
+    private final AtomicLongArray mSequences;
+    private final int mMask;
+    private final AtomicLong mHead;
+    private final AtomicLong mTail;
+
+    /**
+     * @param capacity The minimum number of items the queue can hold. Rounded up to a power of 2 no smaller
+     *                 than 2: with a single slot a producer could not tell a filled slot from a free one.
+     */
+    BoundedQueue(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be at least 1.");
+        }
+        final int size = (capacity <= 2) ? 2 : Integer.highestOneBit(capacity - 1) << 1;
+        if (size <= 0) {
+            throw new IllegalArgumentException("capacity is too large.");
+        }
+        mItems = new AtomicReferenceArray<E>(size);
+        mSequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; ++i) {
+            mSequences.set(i, i);
+        }
+        mMask = size - 1;
+        mHead = new AtomicLong();
+        mTail = new AtomicLong();
+    }
+
+    /**
+     * @return The number of items the queue can hold.
+     */
+    int capacity() {
+        return mMask + 1;
+    }
+
+    /**
+     * @param  item The item to add. Must not be null.
+     * @return False if the queue is full.
+     */
+    boolean offer(E item) {
+        long position = mTail.get();
+        while (true) {
+            final int index = (int) position & mMask;
+            final long difference = mSequences.get(index) - position;
+            if (0 == difference) {
+                if (mTail.compareAndSet(position, position + 1)) {
+                    mItems.lazySet(index, item);
+                    mSequences.set(index, position + 1);
+                    return true;
+                }
+            } else if (difference < 0) {
+                // The slot still holds the item from one lap ago.
+                return false;
+            }
+            position = mTail.get();
+        }
+    }
+
+    /**
+     * @return The oldest item or null if the queue is empty.
+     */
+    E poll() {
+        long position = mHead.get();
+        while (true) {
+            final int index = (int) position & mMask;
+            final long difference = mSequences.get(index) - (position + 1);
+            if (0 == difference) {
+                if (mHead.compareAndSet(position, position + 1)) {
+                    final E item = mItems.get(index);
+                    mItems.lazySet(index, null);
+                    mSequences.set(index, position + mMask + 1);
+                    return item;
+                }
+            } else if (difference < 0) {
+                // The slot has not been filled yet.
+                return null;
+            }
+            position = mHead.get();
+        }
+    }
+
+    /**
+     * @return True if no item has been added that has not also been removed. An item that a producer is in
+     *         the middle of adding counts.
+     */
+    boolean isEmpty() {
+        return mHead.get() == mTail.get();
+    }
+
+    /**
+     * Remove every item.
+     */
+    void clear() {
+        while (null != poll()) {
+            // Discard.
+        }
+    }
+}
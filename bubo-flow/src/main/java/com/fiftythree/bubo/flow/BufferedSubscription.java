@@ -0,0 +1,317 @@
+/*
+ *
+ *                                ^ ^
+ *                                O O
+ *                              /    )
+ *                             /  ,,
+ * Bubo – Observable Contracts and Specialized Implementations.
+ *                              |/
+ * Copyright 2015 FiftyThree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fiftythree.bubo.flow;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * One subscriber's subscription to a {@link RegistrarPublisher}. Publishing threads add items to a bounded
+ * queue; a delivery task on the publisher's executor drains it to the subscriber as far as its demand
+ * allows.
+ *
+ * <p>Signals to the subscriber are serialized by a work-in-progress counter. Whichever thread raises it from
+ * zero schedules the delivery task, which keeps draining until it has accounted for every increment, so
+ * exactly one task runs at a time and none is scheduled while one is running. The subscription starts with
+ * the counter held so that {@code onSubscribe} has returned before the first delivery task can start.</p>
+ */
+final class BufferedSubscription<LISTENER_TYPE, ITEM_TYPE> implements Flow.Subscription {
+
+    private static final long MIN_PARK_NANOS = 1000;
+    private static final long MAX_PARK_NANOS = 1000000;
+
+    private final RegistrarPublisher<LISTENER_TYPE, ITEM_TYPE> mPublisher;
+    private final Flow.Subscriber<? super ITEM_TYPE> mSubscriber;
+    private final Executor mExecutor;
+    private final OverflowStrategy mStrategy;
+    private final BoundedQueue<ITEM_TYPE> mQueue;
+    // The overflow slot used by OverflowStrategy.LATEST.
+    private final AtomicReference<ITEM_TYPE> mLatest;
+    private final AtomicLong mRequested;
+    private final AtomicInteger mWorkInProgress;
+    private final Runnable mDeliveryTask;
+    // The listener registered with the publisher's registrar on this subscription's behalf.
+    private LISTENER_TYPE mListener;
+    private volatile boolean mCancelled;
+    // Set once no more items will be published. Buffered items are delivered before onComplete.
+    private volatile boolean mCompleted;
+    // Delivered with onError as soon as the delivery task sees it, discarding buffered items.
+    private volatile Throwable mError;
+    // The thread running the delivery task, so that a subscriber publishing from onNext is never blocked.
+    private volatile Thread mDeliveryThread;
+
+    BufferedSubscription(RegistrarPublisher<LISTENER_TYPE, ITEM_TYPE> publisher,
+                         Flow.Subscriber<? super ITEM_TYPE> subscriber, Executor executor, int bufferSize,
+                         OverflowStrategy strategy) {
+        mPublisher = publisher;
+        mSubscriber = subscriber;
+        mExecutor = executor;
+        mStrategy = strategy;
+        mQueue = new BoundedQueue<ITEM_TYPE>(bufferSize);
+        mLatest = new AtomicReference<ITEM_TYPE>();
+        mRequested = new AtomicLong();
+        mWorkInProgress = new AtomicInteger(1);
+        mDeliveryTask = this::deliver;
+    }
+
+    // +----------------------------------------------------------------------+
+    // | Flow.Subscription
+    // +----------------------------------------------------------------------+
+    @Override
+    public void request(long n) {
+        if (n <= 0) {
+            fail(new IllegalArgumentException("n must be positive."));
+            return;
+        }
+        long requested;
+        long next;
+        do {
+            requested = mRequested.get();
+            if (Long.MAX_VALUE == requested) {
+                return;
+            }
+            next = requested + n;
+            if (next < 0) {
+                next = Long.MAX_VALUE;
+            }
+        } while (!mRequested.compareAndSet(requested, next));
+        signal();
+    }
+
+    @Override
+    public void cancel() {
+        if (!mCancelled) {
+            mCancelled = true;
+            mPublisher.onTerminated(this);
+            // Let the delivery task release the buffered items.
+            signal();
+        }
+    }
+
+    // +----------------------------------------------------------------------+
+    // | PACKAGE
+    // +----------------------------------------------------------------------+
+    LISTENER_TYPE getListener() {
+        return mListener;
+    }
+
+    void setListener(LISTENER_TYPE listener) {
+        mListener = listener;
+    }
+
+    /**
+     * Call the subscriber's onSubscribe and then allow deliveries to start.
+     */
+    void start() {
+        try {
+            mSubscriber.onSubscribe(this);
+        } catch (Throwable t) {
+            mError = t;
+        }
+        if (0 != mWorkInProgress.decrementAndGet()) {
+            schedule();
+        }
+    }
+
+    /**
+     * Buffer an item published to the registrar and make sure it will be delivered.
+     */
+    void offer(ITEM_TYPE item) {
+        if (null == item) {
+            throw new IllegalArgumentException("item cannot be null.");
+        }
+        if (mCancelled || mCompleted) {
+            return;
+        }
+        switch (mStrategy) {
+            case DROP_OLDEST:
+                while (!mQueue.offer(item)) {
+                    if (null != mQueue.poll()) {
+                        mPublisher.onDropped();
+                    }
+                }
+                break;
+            case DROP_NEWEST:
+                if (!mQueue.offer(item)) {
+                    mPublisher.onDropped();
+                    return;
+                }
+                break;
+            case LATEST:
+                // Once an item has overflowed, later items replace it rather than overtaking it in the queue.
+                if (null != mLatest.get() || !mQueue.offer(item)) {
+                    if (null != mLatest.getAndSet(item)) {
+                        mPublisher.onDropped();
+                    }
+                }
+                break;
+            case BLOCK:
+                if (!mQueue.offer(item) && !await(item)) {
+                    mPublisher.onDropped();
+                    return;
+                }
+                break;
+        }
+        signal();
+    }
+
+    /**
+     * Deliver onComplete once the buffered items have been delivered, or onError right away if error is not
+     * null.
+     */
+    void complete(Throwable error) {
+        if (null != error) {
+            fail(error);
+        } else {
+            mCompleted = true;
+            signal();
+        }
+    }
+
+    // +----------------------------------------------------------------------+
+    // | PRIVATE
+    // +----------------------------------------------------------------------+
+    /**
+     * OverflowStrategy.BLOCK: wait for room in the queue.
+     * @return False if the item was not added because the subscription was cancelled or because the calling
+     *         thread is the one that would make room.
+     */
+    private boolean await(ITEM_TYPE item) {
+        if (Thread.currentThread() == mDeliveryThread) {
+            return false;
+        }
+        long parkNanos = MIN_PARK_NANOS;
+        do {
+            if (mCancelled || null != mError) {
+                return false;
+            }
+            LockSupport.parkNanos(this, parkNanos);
+            parkNanos = Math.min(parkNanos << 1, MAX_PARK_NANOS);
+        } while (!mQueue.offer(item));
+        return true;
+    }
+
+    private void fail(Throwable error) {
+        if (null == mError) {
+            mError = error;
+        }
+        signal();
+    }
+
+    private void signal() {
+        if (0 == mWorkInProgress.getAndIncrement()) {
+            schedule();
+        }
+    }
+
+    private void schedule() {
+        try {
+            mExecutor.execute(mDeliveryTask);
+        } catch (RejectedExecutionException e) {
+            // This thread still holds the work-in-progress count so signalling the subscriber is safe.
+            terminate(e);
+        }
+    }
+
+    private ITEM_TYPE next() {
+        final ITEM_TYPE item = mQueue.poll();
+        return (null != item || null == mLatest.get()) ? item : mLatest.getAndSet(null);
+    }
+
+    private boolean isEmpty() {
+        return mQueue.isEmpty() && null == mLatest.get();
+    }
+
+    private void deliver() {
+        mDeliveryThread = Thread.currentThread();
+        try {
+            int missed = 1;
+            do {
+                final long requested = mRequested.get();
+                long emitted = 0;
+                while (!mCancelled && null == mError && emitted != requested) {
+                    final ITEM_TYPE item = next();
+                    if (null == item) {
+                        break;
+                    }
+                    try {
+                        mSubscriber.onNext(item);
+                    } catch (Throwable t) {
+                        mError = t;
+                        break;
+                    }
+                    ++emitted;
+                }
+                if (mCancelled) {
+                    mQueue.clear();
+                    mLatest.set(null);
+                    return;
+                }
+                if (null != mError) {
+                    terminate(mError);
+                    return;
+                }
+                if (mCompleted && isEmpty()) {
+                    terminate(null);
+                    return;
+                }
+                if (0 != emitted && Long.MAX_VALUE != requested) {
+                    mRequested.addAndGet(-emitted);
+                }
+                missed = mWorkInProgress.addAndGet(-missed);
+            } while (0 != missed);
+        } finally {
+            mDeliveryThread = null;
+        }
+    }
+
+    /**
+     * Cancel the subscription and send the subscriber its final signal, unless it has already cancelled. Only
+     * called while holding the work-in-progress count; the count is never released so no further signals are
+     * sent.
+     */
+    private void terminate(Throwable error) {
+        final boolean wasCancelled = mCancelled;
+        mCancelled = true;
+        mQueue.clear();
+        mLatest.set(null);
+        if (wasCancelled) {
+            return;
+        }
+        mPublisher.onTerminated(this);
+        try {
+            if (null == error) {
+                mSubscriber.onComplete();
+            } else {
+                mSubscriber.onError(error);
+            }
+        } catch (Throwable ignored) {
+            // The subscriber is done with either way.
+        }
+    }
+}
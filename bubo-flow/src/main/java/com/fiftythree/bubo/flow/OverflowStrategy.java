@@ -0,0 +1,55 @@
+/*
+ *
+ *                                ^ ^
+ *                                O O
+ *                              /    )
+ *                             /  ,,
+ * Bubo – Observable Contracts and Specialized Implementations.
+ *                              |/
+ * Copyright 2015 FiftyThree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fiftythree.bubo.flow;
+
+/**
+ * What a {@link RegistrarPublisher} does with an item published to a subscriber whose buffer is full because
+ * it has not requested, or not yet consumed, the items before it.
+ */
+public enum OverflowStrategy {
+
+    /**
+     * Discard the oldest buffered item to make room. The subscriber sees the most recent items.
+     */
+    DROP_OLDEST,
+
+    /**
+     * Discard the item being published. The subscriber sees the oldest items.
+     */
+    DROP_NEWEST,
+
+    /**
+     * Keep the buffered items and hold the item being published in a single overflow slot, replacing
+     * whatever item was there. Once the buffered items are consumed the subscriber sees the latest item
+     * published while it was behind.
+     */
+    LATEST,
+
+    /**
+     * Wait until the subscriber consumes an item or cancels. This is the only strategy that can stall a
+     * publishing thread, and so a dispatch of the wrapped registrar. A subscriber that publishes from within
+     * its own {@code onNext} is never waited for; its overflowing items are dropped as for
+     * {@link #DROP_NEWEST}.
+     */
+    BLOCK
+}
@@ -0,0 +1,228 @@
+/*
+ *
+ *                                ^ ^
+ *                                O O
+ *                              /    )
+ *                             /  ,,
+ * Bubo – Observable Contracts and Specialized Implementations.
+ *                              |/
+ * Copyright 2015 FiftyThree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fiftythree.bubo.flow;
+
+import com.fiftythree.bubo.Registrar;
+import com.fiftythree.bubo.ThreadSafeRegistrar;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Exposes an observable's {@link Registrar} as a {@link Flow.Publisher} so its notifications can feed a
+ * reactive pipeline. Each subscriber gets a listener, made by an adapter from a sink that accepts items, which
+ * is registered with the registrar until the subscription ends:
+ *
+ * <pre>
+ * {@code
+ * final RegistrarPublisher<PriceListener, Price> prices = new RegistrarPublisher<>(
+ *         market.getPriceListeners(), sink -> sink::accept, OverflowStrategy.LATEST);
+ * prices.subscribe(subscriber);
+ * }
+ * </pre>
+ *
+ * <p>A notification never calls a subscriber directly. The listener adds the item to a bounded, lock-free
+ * queue belonging to its subscriber and returns; a task on the publisher's executor delivers queued items as
+ * the subscriber requests them. A subscriber that is slow or requests nothing therefore costs at most one
+ * full buffer and, unless it uses {@link OverflowStrategy#BLOCK}, never delays the thread dispatching the
+ * notification. What happens to items that arrive when the buffer is full is chosen with an
+ * {@link OverflowStrategy}; {@link #getDroppedCount()} reports how many have been discarded.</p>
+ *
+ * <p>The registrar must be {@link com.fiftythree.bubo.annotations.ThreadSafe} if subscribers subscribe or
+ * cancel on threads other than the one that dispatches.</p>
+ */
+public final class RegistrarPublisher<LISTENER_TYPE, ITEM_TYPE> implements Flow.Publisher<ITEM_TYPE>,
+        AutoCloseable {
+
+    /**
+     * The buffer size used when none is given.
+     */
+    public static final int DEFAULT_BUFFER_SIZE = Flow.defaultBufferSize();
+
+    private final Registrar<LISTENER_TYPE> mRegistrar;
+    private final Function<? super Consumer<ITEM_TYPE>, ? extends LISTENER_TYPE> mAdapter;
+    private final Executor mExecutor;
+    private final int mBufferSize;
+    private final OverflowStrategy mStrategy;
+    private final Registrar<BufferedSubscription<LISTENER_TYPE, ITEM_TYPE>> mSubscriptions;
+    private final AtomicLong mDropped;
+    private volatile boolean mClosed;
+    private volatile Throwable mClosedError;
+
+    /**
+     * Create a publisher that delivers on the common fork-join pool with a buffer of
+     * {@link #DEFAULT_BUFFER_SIZE} items per subscriber.
+     * @param registrar The observable's registrar.
+     * @param adapter   Makes a listener which passes the item of each notification it receives to the given
+     *                  sink.
+     * @param strategy  What to do with items that arrive when a subscriber's buffer is full.
+     */
+    public RegistrarPublisher(Registrar<LISTENER_TYPE> registrar,
+                              Function<? super Consumer<ITEM_TYPE>, ? extends LISTENER_TYPE> adapter,
+                              OverflowStrategy strategy) {
+        this(registrar, adapter, ForkJoinPool.commonPool(), DEFAULT_BUFFER_SIZE, strategy);
+    }
+
+    /**
+     * @param registrar  The observable's registrar.
+     * @param adapter    Makes a listener which passes the item of each notification it receives to the given
+     *                   sink.
+     * @param executor   Executor on which items are delivered to subscribers.
+     * @param bufferSize The number of undelivered items buffered for each subscriber. Rounded up to a power
+     *                   of 2 no smaller than 2.
+     * @param strategy   What to do with items that arrive when a subscriber's buffer is full.
+     */
+    public RegistrarPublisher(Registrar<LISTENER_TYPE> registrar,
+                              Function<? super Consumer<ITEM_TYPE>, ? extends LISTENER_TYPE> adapter,
+                              Executor executor, int bufferSize, OverflowStrategy strategy) {
+        if (null == registrar) {
+            throw new IllegalArgumentException("registrar cannot be null.");
+        }
+        if (null == adapter) {
+            throw new IllegalArgumentException("adapter cannot be null.");
+        }
+        if (null == executor) {
+            throw new IllegalArgumentException("executor cannot be null.");
+        }
+        if (bufferSize < 1) {
+            throw new IllegalArgumentException("bufferSize must be at least 1.");
+        }
+        if (null == strategy) {
+            throw new IllegalArgumentException("strategy cannot be null.");
+        }
+        mRegistrar = registrar;
+        mAdapter = adapter;
+        mExecutor = executor;
+        mBufferSize = bufferSize;
+        mStrategy = strategy;
+        mSubscriptions = new ThreadSafeRegistrar<BufferedSubscription<LISTENER_TYPE, ITEM_TYPE>>();
+        mDropped = new AtomicLong();
+    }
+
+    // +----------------------------------------------------------------------+
+    // | Flow.Publisher
+    // +----------------------------------------------------------------------+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>{@code onSubscribe} is called on the calling thread. A subscriber that subscribes after the
+     * publisher has been closed receives {@code onSubscribe} followed by {@code onComplete} or
+     * {@code onError}.</p>
+     *
+     * @throws NullPointerException if subscriber is null.
+     */
+    @Override
+    public void subscribe(Flow.Subscriber<? super ITEM_TYPE> subscriber) {
+        if (null == subscriber) {
+            throw new NullPointerException("subscriber cannot be null.");
+        }
+        final BufferedSubscription<LISTENER_TYPE, ITEM_TYPE> subscription =
+                new BufferedSubscription<LISTENER_TYPE, ITEM_TYPE>(this, subscriber, mExecutor, mBufferSize,
+                        mStrategy);
+        if (!mClosed) {
+            final Consumer<ITEM_TYPE> sink = subscription::offer;
+            final LISTENER_TYPE listener = mAdapter.apply(sink);
+            if (null == listener) {
+                throw new IllegalStateException("adapter returned null.");
+            }
+            subscription.setListener(listener);
+            mSubscriptions.addListener(subscription);
+            mRegistrar.addListener(listener);
+        }
+        // Checked again in case close() ran before the subscription was added.
+        if (mClosed) {
+            subscription.complete(mClosedError);
+        }
+        subscription.start();
+    }
+
+    // +----------------------------------------------------------------------+
+    // | AutoCloseable
+    // +----------------------------------------------------------------------+
+    /**
+     * Complete every subscription once its buffered items have been delivered, and every later one
+     * immediately. Items published after this call are ignored.
+     */
+    @Override
+    public void close() {
+        closeExceptionally(null);
+    }
+
+    /**
+     * Fail every subscription, discarding buffered items, and every later one immediately.
+     * @param error Passed to each subscriber's {@code onError}. If null this is the same as {@link #close()}.
+     */
+    public void closeExceptionally(Throwable error) {
+        if (mClosed) {
+            return;
+        }
+        mClosedError = error;
+        mClosed = true;
+        for (BufferedSubscription<LISTENER_TYPE, ITEM_TYPE> subscription : mSubscriptions) {
+            subscription.complete(error);
+        }
+    }
+
+    /**
+     * @return True once {@link #close()} or {@link #closeExceptionally(Throwable)} has been called.
+     */
+    public boolean isClosed() {
+        return mClosed;
+    }
+
+    /**
+     * @return The number of subscriptions that have not yet been cancelled or terminated.
+     */
+    public int getSubscriberCount() {
+        return mSubscriptions.size();
+    }
+
+    /**
+     * @return The number of items discarded, across all subscribers, because a buffer was full.
+     */
+    public long getDroppedCount() {
+        return mDropped.get();
+    }
+
+    // +----------------------------------------------------------------------+
+    // | PACKAGE
+    // +----------------------------------------------------------------------+
+    /**
+     * Called once by a subscription when it is cancelled or sends its final signal.
+     */
+    void onTerminated(BufferedSubscription<LISTENER_TYPE, ITEM_TYPE> subscription) {
+        final LISTENER_TYPE listener = subscription.getListener();
+        if (null != listener) {
+            mRegistrar.removeListener(listener);
+        }
+        mSubscriptions.removeListener(subscription);
+    }
+
+    void onDropped() {
+        mDropped.incrementAndGet();
+    }
+}
@@ -0,0 +1,340 @@
+/*
+ *
+ *                                ^ ^
+ *                                O O
+ *                              /    )
+ *                             /  ,,
+ * Bubo – Observable Contracts and Specialized Implementations.
+ *                              |/
+ * Copyright 2015 FiftyThree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fiftythree.bubo.flow;
+
+import com.fiftythree.bubo.Notifier;
+import com.fiftythree.bubo.Registrar;
+import com.fiftythree.bubo.ThreadSafeRegistrar;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Tests covering the {@link RegistrarPublisher} object.
+ */
+public class RegistrarPublisherTest extends TestCase {
+
+    private static final Executor DIRECT = Runnable::run;
+
+    private ExecutorService mExecutor;
+    private Registrar<Consumer<Integer>> mRegistrar;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mExecutor = Executors.newCachedThreadPool();
+        mRegistrar = new ThreadSafeRegistrar<Consumer<Integer>>();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mExecutor.shutdownNow();
+        assertTrue(mExecutor.awaitTermination(10, TimeUnit.SECONDS));
+        super.tearDown();
+    }
+
+    // +----------------------------------------------------------------------+
+    // | TEST FIXTURES
+    // +----------------------------------------------------------------------+
+    private static final class TestFixtureSubscriber implements Flow.Subscriber<Integer> {
+
+        final List<Integer> mItems = new CopyOnWriteArrayList<Integer>();
+        final CountDownLatch mTerminated = new CountDownLatch(1);
+        final long mInitialRequest;
+        volatile Flow.Subscription mSubscription;
+        volatile boolean mCompleted;
+        volatile Throwable mError;
+
+        TestFixtureSubscriber(long initialRequest) {
+            mInitialRequest = initialRequest;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            mSubscription = subscription;
+            if (mInitialRequest > 0) {
+                subscription.request(mInitialRequest);
+            }
+        }
+
+        @Override
+        public void onNext(Integer item) {
+            mItems.add(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            mError = throwable;
+            mTerminated.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            mCompleted = true;
+            mTerminated.countDown();
+        }
+    }
+
+    private RegistrarPublisher<Consumer<Integer>, Integer> createPublisher(Executor executor, int bufferSize,
+                                                                           OverflowStrategy strategy) {
+        return new RegistrarPublisher<Consumer<Integer>, Integer>(mRegistrar, sink -> sink, executor, bufferSize,
+                strategy);
+    }
+
+    private void publish(int from, int to) {
+        for (int i = from; i < to; ++i) {
+            final Integer item = i;
+            mRegistrar.dispatch(new Notifier<Consumer<Integer>>() {
+                @Override
+                public void onNotify(Consumer<Integer> listener) {
+                    listener.accept(item);
+                }
+            });
+        }
+    }
+
+    private static List<Integer> range(int from, int to) {
+        final Integer[] items = new Integer[to - from];
+        for (int i = from; i < to; ++i) {
+            items[i - from] = i;
+        }
+        return Arrays.asList(items);
+    }
+
+    // +----------------------------------------------------------------------+
+    // | SUBSCRIPTION TESTS
+    // +----------------------------------------------------------------------+
+    @Test
+    public void testNPEForSubscribe() {
+        try {
+            createPublisher(DIRECT, 4, OverflowStrategy.DROP_NEWEST).subscribe(null);
+            fail("NPE was not thrown");
+        } catch (NullPointerException e) {
+            // okay
+        }
+    }
+
+    @Test
+    public void testDeliversOnlyRequestedItems() {
+        final RegistrarPublisher<Consumer<Integer>, Integer> publisher =
+                createPublisher(DIRECT, 16, OverflowStrategy.DROP_NEWEST);
+        final TestFixtureSubscriber subscriber = new TestFixtureSubscriber(3);
+        publisher.subscribe(subscriber);
+        assertEquals(1, mRegistrar.size());
+
+        publish(0, 10);
+        assertEquals(range(0, 3), subscriber.mItems);
+
+        subscriber.mSubscription.request(5);
+        assertEquals(range(0, 8), subscriber.mItems);
+
+        subscriber.mSubscription.request(Long.MAX_VALUE);
+        subscriber.mSubscription.request(Long.MAX_VALUE);
+        publish(10, 12);
+        assertEquals(range(0, 12), subscriber.mItems);
+        assertEquals(0, publisher.getDroppedCount());
+    }
+
+    @Test
+    public void testCancelUnregisters() {
+        final RegistrarPublisher<Consumer<Integer>, Integer> publisher =
+                createPublisher(DIRECT, 16, OverflowStrategy.DROP_NEWEST);
+        final TestFixtureSubscriber subscriber = new TestFixtureSubscriber(Long.MAX_VALUE);
+        publisher.subscribe(subscriber);
+        publish(0, 2);
+
+        subscriber.mSubscription.cancel();
+        assertEquals(0, mRegistrar.size());
+        assertEquals(0, publisher.getSubscriberCount());
+        publish(2, 4);
+        assertEquals(range(0, 2), subscriber.mItems);
+        assertEquals(1, subscriber.mTerminated.getCount());
+    }
+
+    @Test
+    public void testNonPositiveRequestFails() {
+        final RegistrarPublisher<Consumer<Integer>, Integer> publisher =
+                createPublisher(DIRECT, 16, OverflowStrategy.DROP_NEWEST);
+        final TestFixtureSubscriber subscriber = new TestFixtureSubscriber(0);
+        publisher.subscribe(subscriber);
+        subscriber.mSubscription.request(0);
+        assertTrue(subscriber.mError instanceof IllegalArgumentException);
+        assertEquals(0, mRegistrar.size());
+    }
+
+    @Test
+    public void testCloseCompletesAfterBufferedItems() {
+        final RegistrarPublisher<Consumer<Integer>, Integer> publisher =
+                createPublisher(DIRECT, 16, OverflowStrategy.DROP_NEWEST);
+        final TestFixtureSubscriber subscriber = new TestFixtureSubscriber(0);
+        publisher.subscribe(subscriber);
+        publish(0, 4);
+
+        publisher.close();
+        assertFalse(subscriber.mCompleted);
+        subscriber.mSubscription.request(4);
+        assertEquals(range(0, 4), subscriber.mItems);
+        assertTrue(subscriber.mCompleted);
+        assertEquals(0, mRegistrar.size());
+
+        final TestFixtureSubscriber late = new TestFixtureSubscriber(0);
+        publisher.subscribe(late);
+        assertNotNull(late.mSubscription);
+        assertTrue(late.mCompleted);
+    }
+
+    @Test
+    public void testCloseExceptionallyDiscardsBufferedItems() {
+        final RegistrarPublisher<Consumer<Integer>, Integer> publisher =
+                createPublisher(DIRECT, 16, OverflowStrategy.DROP_NEWEST);
+        final TestFixtureSubscriber subscriber = new TestFixtureSubscriber(0);
+        publisher.subscribe(subscriber);
+        publish(0, 4);
+
+        final RuntimeException error = new RuntimeException();
+        publisher.closeExceptionally(error);
+        assertSame(error, subscriber.mError);
+        assertTrue(subscriber.mItems.isEmpty());
+    }
+
+    // +----------------------------------------------------------------------+
+    // | OVERFLOW TESTS
+    // +----------------------------------------------------------------------+
+    @Test
+    public void testBufferSizeOfOneKeepsUnreadItems() {
+        final RegistrarPublisher<Consumer<Integer>, Integer> publisher =
+                createPublisher(DIRECT, 1, OverflowStrategy.DROP_NEWEST);
+        final TestFixtureSubscriber subscriber = new TestFixtureSubscriber(0);
+        publisher.subscribe(subscriber);
+        publish(0, 4);
+        assertEquals(2, publisher.getDroppedCount());
+
+        subscriber.mSubscription.request(Long.MAX_VALUE);
+        assertEquals(range(0, 2), subscriber.mItems);
+        publish(4, 6);
+        assertEquals(Arrays.asList(0, 1, 4, 5), subscriber.mItems);
+    }
+
+    @Test
+    public void testDropOldest() {
+        assertOverflow(OverflowStrategy.DROP_OLDEST, range(6, 10), 6);
+    }
+
+    @Test
+    public void testDropNewest() {
+        assertOverflow(OverflowStrategy.DROP_NEWEST, range(0, 4), 6);
+    }
+
+    @Test
+    public void testLatest() {
+        assertOverflow(OverflowStrategy.LATEST, Arrays.asList(0, 1, 2, 3, 9), 5);
+    }
+
+    @Test
+    public void testBlockWaitsForSlowSubscriber() throws Exception {
+        final RegistrarPublisher<Consumer<Integer>, Integer> publisher =
+                createPublisher(mExecutor, 4, OverflowStrategy.BLOCK);
+        final CountDownLatch done = new CountDownLatch(1);
+        final List<Integer> items = new CopyOnWriteArrayList<Integer>();
+        publisher.subscribe(new Flow.Subscriber<Integer>() {
+
+            private Flow.Subscription mSubscription;
+
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                mSubscription = subscription;
+                subscription.request(1);
+            }
+
+            @Override
+            public void onNext(Integer item) {
+                items.add(item);
+                Thread.yield();
+                mSubscription.request(1);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+            }
+
+            @Override
+            public void onComplete() {
+                done.countDown();
+            }
+        });
+
+        publish(0, 1000);
+        publisher.close();
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(range(0, 1000), items);
+        assertEquals(0, publisher.getDroppedCount());
+    }
+
+    @Test
+    public void testCancelReleasesBlockedPublisher() throws Exception {
+        final RegistrarPublisher<Consumer<Integer>, Integer> publisher =
+                createPublisher(mExecutor, 4, OverflowStrategy.BLOCK);
+        final TestFixtureSubscriber subscriber = new TestFixtureSubscriber(0);
+        publisher.subscribe(subscriber);
+        final CountDownLatch published = new CountDownLatch(1);
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                publish(0, 5);
+                published.countDown();
+            }
+        });
+        assertFalse(published.await(100, TimeUnit.MILLISECONDS));
+
+        subscriber.mSubscription.cancel();
+        assertTrue(published.await(10, TimeUnit.SECONDS));
+        assertTrue(subscriber.mItems.isEmpty());
+    }
+
+    // +----------------------------------------------------------------------+
+    // | PRIVATE
+    // +----------------------------------------------------------------------+
+    private void assertOverflow(OverflowStrategy strategy, List<Integer> expected, long dropped) {
+        final RegistrarPublisher<Consumer<Integer>, Integer> publisher = createPublisher(DIRECT, 4, strategy);
+        final TestFixtureSubscriber subscriber = new TestFixtureSubscriber(0);
+        publisher.subscribe(subscriber);
+        publish(0, 10);
+        assertTrue(subscriber.mItems.isEmpty());
+        assertEquals(dropped, publisher.getDroppedCount());
+
+        subscriber.mSubscription.request(Long.MAX_VALUE);
+        assertEquals(expected, subscriber.mItems);
+    }
+}
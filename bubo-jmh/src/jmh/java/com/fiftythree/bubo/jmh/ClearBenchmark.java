@@ -0,0 +1,79 @@
+/*
+ *
+ *                                ^ ^
+ *                                O O
+ *                              /    )
+ *                             /  ,,
+ * Bubo – Observable Contracts and Specialized Implementations.
+ *                              |/
+ * Copyright 2015 FiftyThree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fiftythree.bubo.jmh;
+
+import com.fiftythree.bubo.Registrar;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of {@link Registrar#clear()}. Clearing destroys the state it operates on so the registrar is
+ * refilled before every invocation and the benchmark runs in {@link Mode#SingleShotTime} to keep the
+ * refill out of the measurement.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 200)
+@Measurement(iterations = 1000)
+public class ClearBenchmark {
+
+    @Param({"SINGLE_THREADED", "THREAD_SAFE", "UNORDERED_THREAD_SAFE", "UNORDERED_THREAD_SAFE_PARALLEL",
+            "WEAK_SINGLE_THREADED", "WEAK_THREAD_SAFE",
+            "COMPACT", "COMPACT_THREAD_SAFE", "CHUNKED_THREAD_SAFE"})
+    public RegistrarType registrarType;
+
+    @Param({"0", "1", "10", "100", "1000", "10000", "100000"})
+    public int listenerCount;
+
+    private Object[] mListeners;
+    private Registrar<Object> mRegistrar;
+
+    @Setup(Level.Trial)
+    public void setUpListeners() {
+        mListeners = RegistrarType.newListeners(listenerCount);
+    }
+
+    @Setup(Level.Invocation)
+    public void setUpRegistrar() {
+        mRegistrar = registrarType.create(mListeners);
+    }
+
+    @Benchmark
+    public int clear() {
+        mRegistrar.clear();
+        return mRegistrar.size();
+    }
+}
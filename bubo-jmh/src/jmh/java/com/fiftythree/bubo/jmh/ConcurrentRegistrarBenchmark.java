@@ -0,0 +1,112 @@
+/*
+ *
+ *                                ^ ^
+ *                                O O
+ *                              /    )
+ *                             /  ,,
+ * Bubo – Observable Contracts and Specialized Implementations.
+ *                              |/
+ * Copyright 2015 FiftyThree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fiftythree.bubo.jmh;
+
+import com.fiftythree.bubo.Notifier;
+import com.fiftythree.bubo.Registrar;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Contended throughput of the {@link com.fiftythree.bubo.annotations.ThreadSafe} registrars with readers
+ * dispatching while writers register and de-register listeners.
+ *
+ * <p>The group defaults to one reader and one writer. Use JMH's {@code -tg readers,writers} option to
+ * sweep the thread counts, for example {@code -tg 1,1 -tg 4,1 -tg 1,4 -tg 8,8}. The single threaded
+ * registrars are not included since using them from more than one thread is outside their contract.</p>
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ConcurrentRegistrarBenchmark {
+
+    @Param({"THREAD_SAFE", "UNORDERED_THREAD_SAFE", "WEAK_THREAD_SAFE", "COMPACT_THREAD_SAFE",
+            "CHUNKED_THREAD_SAFE"})
+    public RegistrarType registrarType;
+
+    @Param({"0", "1", "10", "100", "1000", "10000", "100000"})
+    public int listenerCount;
+
+    private Object[] mListeners;
+    private Registrar<Object> mRegistrar;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        mListeners = RegistrarType.newListeners(listenerCount);
+        mRegistrar = registrarType.create(mListeners);
+    }
+
+    /**
+     * Each writer thread churns its own listener so writers never cancel each other out.
+     */
+    @State(Scope.Thread)
+    public static class WriterState {
+        final Object mListener = new Object();
+    }
+
+    /**
+     * Each reader thread dispatches with its own notifier.
+     */
+    @State(Scope.Thread)
+    public static class ReaderState {
+        Notifier<Object> mNotifier;
+
+        @Setup(Level.Trial)
+        public void setUp(final Blackhole blackhole) {
+            mNotifier = new Notifier<Object>() {
+                @Override
+                public void onNotify(Object listener) {
+                    blackhole.consume(listener);
+                }
+            };
+        }
+    }
+
+    @Benchmark
+    @Group("readWrite")
+    @GroupThreads(1)
+    public void reader(ReaderState readerState) {
+        mRegistrar.dispatch(readerState.mNotifier);
+    }
+
+    @Benchmark
+    @Group("readWrite")
+    @GroupThreads(1)
+    public void writer(WriterState writerState) {
+        mRegistrar.addListener(writerState.mListener);
+        mRegistrar.removeListener(writerState.mListener);
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ *
+ *                                ^ ^
+ *                                O O
+ *                              /    )
+ *                             /  ,,
+ * Bubo – Observable Contracts and Specialized Implementations.
+ *                              |/
+ * Copyright 2015 FiftyThree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fiftythree.bubo.jmh;
+
+import com.fiftythree.bubo.Notifier;
+import com.fiftythree.bubo.Registrar;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single threaded cost of each {@link Registrar} operation as a function of the number of registered
+ * listeners.
+ *
+ * <p>Registration benchmarks are measured as add/remove pairs so that the registrar stays at
+ * {@link #listenerCount} for the whole run; a benchmark that only added listeners would be measuring
+ * an ever growing registrar. See {@link ClearBenchmark} for {@link Registrar#clear()}.</p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RegistrarBenchmark {
+
+    @Param({"SINGLE_THREADED", "THREAD_SAFE", "UNORDERED_THREAD_SAFE", "UNORDERED_THREAD_SAFE_PARALLEL",
+            "WEAK_SINGLE_THREADED", "WEAK_THREAD_SAFE",
+            "COMPACT", "COMPACT_THREAD_SAFE", "CHUNKED_THREAD_SAFE"})
+    public RegistrarType registrarType;
+
+    @Param({"0", "1", "10", "100", "1000", "10000", "100000"})
+    public int listenerCount;
+
+    // Strong references to every listener. Required to keep the weak registrars honest.
+    private Object[] mListeners;
+    private Object mNewListener;
+    private Object mMiddleListener;
+    private Registrar<Object> mRegistrar;
+    private Notifier<Object> mNotifier;
+
+    @Setup(Level.Trial)
+    public void setUp(final Blackhole blackhole) {
+        mNotifier = new Notifier<Object>() {
+            @Override
+            public void onNotify(Object listener) {
+                blackhole.consume(listener);
+            }
+        };
+        mListeners = RegistrarType.newListeners(listenerCount);
+        mNewListener = new Object();
+        mMiddleListener = (listenerCount == 0) ? mNewListener : mListeners[listenerCount / 2];
+        mRegistrar = registrarType.create(mListeners);
+    }
+
+    // +----------------------------------------------------------------------+
+    // | REGISTRATION
+    // +----------------------------------------------------------------------+
+    /**
+     * Register a listener that is not yet registered then remove it again.
+     */
+    @Benchmark
+    public int addNewListener() {
+        mRegistrar.addListener(mNewListener);
+        mRegistrar.removeListener(mNewListener);
+        return mRegistrar.size();
+    }
+
+    /**
+     * Register a listener that is already registered. Per the Observer Registration Idempotentence Rule
+     * this must not change the registrar so this measures the cost of the membership test alone.
+     */
+    @Benchmark
+    public int addExistingListener() {
+        mRegistrar.addListener(mMiddleListener);
+        return mRegistrar.size();
+    }
+
+    /**
+     * Remove a registered listener from the middle of the registrar then add it back.
+     */
+    @Benchmark
+    public int removeExistingListener() {
+        mRegistrar.removeListener(mMiddleListener);
+        mRegistrar.addListener(mMiddleListener);
+        return mRegistrar.size();
+    }
+
+    /**
+     * Remove a listener that was never registered. Per the Observer De-Registration Infallibility Rule this
+     * is a no-op so this measures the cost of the membership test alone.
+     */
+    @Benchmark
+    public int removeMissingListener() {
+        mRegistrar.removeListener(mNewListener);
+        return mRegistrar.size();
+    }
+
+    // +----------------------------------------------------------------------+
+    // | DISPATCH
+    // +----------------------------------------------------------------------+
+    /**
+     * A full notification dispatch using the registrar's iterator.
+     */
+    @Benchmark
+    public void iterate(Blackhole blackhole) {
+        for (Object listener : mRegistrar) {
+            blackhole.consume(listener);
+        }
+    }
+
+    /**
+     * A full notification dispatch using {@link Registrar#dispatch(Notifier)}.
+     */
+    @Benchmark
+    public void dispatch() {
+        mRegistrar.dispatch(mNotifier);
+    }
+}
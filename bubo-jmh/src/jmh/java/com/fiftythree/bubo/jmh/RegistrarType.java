@@ -0,0 +1,146 @@
+/*
+ *
+ *                                ^ ^
+ *                                O O
+ *                              /    )
+ *                             /  ,,
+ * Bubo – Observable Contracts and Specialized Implementations.
+ *                              |/
+ * Copyright 2015 FiftyThree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fiftythree.bubo.jmh;
+
+import com.fiftythree.bubo.ChunkedThreadSafeRegistrar;
+import com.fiftythree.bubo.CompactRegistrar;
+import com.fiftythree.bubo.CompactThreadSafeRegistrar;
+import com.fiftythree.bubo.ParallelUnorderedThreadSafeRegistrar;
+import com.fiftythree.bubo.Registrar;
+import com.fiftythree.bubo.SingleThreadedRegistrar;
+import com.fiftythree.bubo.ThreadSafeRegistrar;
+import com.fiftythree.bubo.UnorderedThreadSafeRegistrar;
+import com.fiftythree.bubo.WeakSingleThreadedRegistrar;
+import com.fiftythree.bubo.WeakThreadSafeRegistrar;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * The {@link Registrar} implementations under benchmark. Benchmarks take the enum name as a JMH
+ * {@code @Param} so a single run produces directly comparable numbers for every implementation.
+ */
+public enum RegistrarType {
+
+    SINGLE_THREADED {
+        @Override
+        public Registrar<Object> create() {
+            return new SingleThreadedRegistrar<Object>();
+        }
+    },
+
+    THREAD_SAFE {
+        @Override
+        public Registrar<Object> create() {
+            return new ThreadSafeRegistrar<Object>();
+        }
+    },
+
+    UNORDERED_THREAD_SAFE {
+        @Override
+        public Registrar<Object> create() {
+            return new UnorderedThreadSafeRegistrar<Object>();
+        }
+    },
+
+    UNORDERED_THREAD_SAFE_PARALLEL {
+        @Override
+        public Registrar<Object> create() {
+            return new ParallelUnorderedThreadSafeRegistrar<Object>(Runtime.getRuntime().availableProcessors(),
+                    PARALLEL_DISPATCH_POOL, PARALLEL_DISPATCH_THRESHOLD);
+        }
+    },
+
+    WEAK_SINGLE_THREADED {
+        @Override
+        public Registrar<Object> create() {
+            return new WeakSingleThreadedRegistrar<Object>();
+        }
+    },
+
+    WEAK_THREAD_SAFE {
+        @Override
+        public Registrar<Object> create() {
+            return new WeakThreadSafeRegistrar<Object>();
+        }
+    },
+
+    COMPACT {
+        @Override
+        public Registrar<Object> create() {
+            return new CompactRegistrar<Object>();
+        }
+    },
+
+    COMPACT_THREAD_SAFE {
+        @Override
+        public Registrar<Object> create() {
+            return new CompactThreadSafeRegistrar<Object>();
+        }
+    },
+
+    CHUNKED_THREAD_SAFE {
+        @Override
+        public Registrar<Object> create() {
+            return new ChunkedThreadSafeRegistrar<Object>();
+        }
+    };
+
+    /**
+     * Listener count at which {@link #UNORDERED_THREAD_SAFE_PARALLEL} starts fanning out.
+     */
+    public static final int PARALLEL_DISPATCH_THRESHOLD = 1000;
+
+    private static final ForkJoinPool PARALLEL_DISPATCH_POOL = new ForkJoinPool();
+
+    /**
+     * @return A new, empty registrar of this type.
+     */
+    public abstract Registrar<Object> create();
+
+    /**
+     * Create a registrar of this type populated with the given listeners, in order.
+     * @param listeners The listeners to register. The caller must keep these strongly reachable for weak
+     *                  registrar types.
+     * @return A new registrar containing every listener.
+     */
+    public Registrar<Object> create(Object[] listeners) {
+        final Registrar<Object> registrar = create();
+        for (Object listener : listeners) {
+            registrar.addListener(listener);
+        }
+        return registrar;
+    }
+
+    /**
+     * Allocate {@code count} distinct listener objects.
+     * @param count The number of listeners to create.
+     * @return An array of new, distinct listeners.
+     */
+    public static Object[] newListeners(int count) {
+        final Object[] listeners = new Object[count];
+        for (int i = 0; i < count; ++i) {
+            listeners[i] = new Object();
+        }
+        return listeners;
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ *
+ *                                ^ ^
+ *                                O O
+ *                              /    )
+ *                             /  ,,
+ * Bubo – Observable Contracts and Specialized Implementations.
+ *                              |/
+ * Copyright 2015 FiftyThree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fiftythree.bubo.jmh;
+
+import com.fiftythree.bubo.Notifier;
+import com.fiftythree.bubo.ThreadSafeRegistrar;
+import com.fiftythree.bubo.ring.BusySpinWaitStrategy;
+import com.fiftythree.bubo.ring.EventFactory;
+import com.fiftythree.bubo.ring.EventListener;
+import com.fiftythree.bubo.ring.EventTranslator;
+import com.fiftythree.bubo.ring.ParkingWaitStrategy;
+import com.fiftythree.bubo.ring.RingEventBus;
+import com.fiftythree.bubo.ring.WaitStrategy;
+import com.fiftythree.bubo.ring.YieldingWaitStrategy;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Producer throughput of publishing through a {@link RingEventBus} compared with dispatching synchronously
+ * through a {@link ThreadSafeRegistrar} with the same listeners.
+ *
+ * <p>The ring benchmarks only measure the producer; listeners run on the bus's consumer thread, so once the
+ * ring fills the producer is throttled to the consumer's rate. Run with more than one benchmark thread
+ * ({@code -t 4}) to contend on the ring's claim cursor.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RingEventBusBenchmark {
+
+    public enum WaitStrategyType {
+        BUSY_SPIN {
+            @Override
+            WaitStrategy create() {
+                return new BusySpinWaitStrategy();
+            }
+        },
+        YIELDING {
+            @Override
+            WaitStrategy create() {
+                return new YieldingWaitStrategy();
+            }
+        },
+        PARKING {
+            @Override
+            WaitStrategy create() {
+                return new ParkingWaitStrategy();
+            }
+        };
+
+        abstract WaitStrategy create();
+    }
+
+    @Param({"BUSY_SPIN", "YIELDING", "PARKING"})
+    public WaitStrategyType waitStrategy;
+
+    @Param({"1", "10", "100"})
+    public int listenerCount;
+
+    @Param({"1024"})
+    public int bufferSize;
+
+    private ExecutorService mConsumer;
+    private RingEventBus<Event> mBus;
+    private ThreadSafeRegistrar<EventListener<Event>> mSynchronous;
+
+    @Setup(Level.Trial)
+    public void setUp(final Blackhole blackhole) {
+        final EventListener<Event>[] listeners = newListeners(listenerCount, blackhole);
+        mBus = new RingEventBus<Event>(Event.FACTORY, bufferSize, waitStrategy.create(),
+                new ThreadSafeRegistrar<EventListener<Event>>());
+        mSynchronous = new ThreadSafeRegistrar<EventListener<Event>>();
+        for (EventListener<Event> listener : listeners) {
+            mBus.getListeners().addListener(listener);
+            mSynchronous.addListener(listener);
+        }
+        mConsumer = Executors.newSingleThreadExecutor();
+        mBus.start(mConsumer);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        mBus.halt();
+        mConsumer.shutdown();
+        mConsumer.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Each producer thread reuses its own translator and notifier.
+     */
+    @State(Scope.Thread)
+    public static class ProducerState {
+        final Event mEvent = new Event();
+        long mValue;
+
+        final EventTranslator<Event> mTranslator = new EventTranslator<Event>() {
+            @Override
+            public void translateTo(Event event, long sequence) {
+                event.value = mValue;
+            }
+        };
+
+        final Notifier<EventListener<Event>> mNotifier = new Notifier<EventListener<Event>>() {
+            @Override
+            public void onNotify(EventListener<Event> listener) {
+                listener.onEvent(mEvent, mValue, true);
+            }
+        };
+    }
+
+    @Benchmark
+    public void ringPublish(ProducerState producer) {
+        ++producer.mValue;
+        mBus.publishEvent(producer.mTranslator);
+    }
+
+    @Benchmark
+    public void synchronousDispatch(ProducerState producer) {
+        producer.mEvent.value = ++producer.mValue;
+        mSynchronous.dispatch(producer.mNotifier);
+    }
+
+    public static final class Event {
+
+        static final EventFactory<Event> FACTORY = new EventFactory<Event>() {
+            @Override
+            public Event newInstance() {
+                return new Event();
+            }
+        };
+
+        long value;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static EventListener<Event>[] newListeners(int count, final Blackhole blackhole) {
+        final EventListener<Event>[] listeners = new EventListener[count];
+        for (int i = 0; i < count; ++i) {
+            listeners[i] = new EventListener<Event>() {
+                @Override
+                public void onEvent(Event event, long sequence, boolean endOfBatch) {
+                    blackhole.consume(event.value);
+                }
+            };
+        }
+        return listeners;
+    }
+}
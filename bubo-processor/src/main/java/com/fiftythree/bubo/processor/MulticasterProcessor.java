@@ -0,0 +1,240 @@
+/*
+ *
+ *                                ^ ^
+ *                                O O
+ *                              /    )
+ *                             /  ,,
+ * Bubo – Observable Contracts and Specialized Implementations.
+ *                              |/
+ * Copyright 2015 FiftyThree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fiftythree.bubo.processor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+
+/**
+ * Generates a multicaster for each listener interface named by a {@link com.fiftythree.bubo.annotations.Observable}
+ * annotation.
+ *
+ * <p>A multicaster implements the listener interface by forwarding every call to each listener in a
+ * {@link com.fiftythree.bubo.Registrar}. The registrar implementation is chosen from the
+ * {@link com.fiftythree.bubo.annotations.ThreadSafe}, {@link com.fiftythree.bubo.annotations.Unordered}, and
+ * {@link com.fiftythree.bubo.annotations.WeakRegistrar} annotations on the observable type, honouring any
+ * listener interfaces those annotations are restricted to. For example:</p>
+ * <pre>
+ * &#64;Observable(MySubjectListener.class)
+ * &#64;ThreadSafe
+ * public class MySubject {
+ *     private final MySubject_MySubjectListenerMulticaster mListeners =
+ *         new MySubject_MySubjectListenerMulticaster();
+ *
+ *     public void addListener(MySubjectListener listener) {
+ *         mListeners.addListener(listener);
+ *     }
+ *
+ *     private void fireSomeEvent() {
+ *         mListeners.onSomeEvent();
+ *     }
+ * }
+ * </pre>
+ * <p>Each listener method dispatches its own {@link com.fiftythree.bubo.Notifier} through a registrar field of
+ * a concrete type, so no iterator is allocated and the JIT sees a single registrar type at each dispatch and a
+ * single interface method at each call site, unlike a reflective {@link java.lang.reflect.Proxy} or a shared
+ * dispatch routine. Methods without parameters reuse one notifier for every call. Methods that declare
+ * exceptions loop over the registrar instead since a notifier cannot throw checked exceptions.</p>
+ */
+@SupportedAnnotationTypes(MulticasterProcessor.OBSERVABLE)
+public class MulticasterProcessor extends AbstractProcessor {
+
+    static final String OBSERVABLE = "com.fiftythree.bubo.annotations.Observable";
+    static final String THREAD_SAFE = "com.fiftythree.bubo.annotations.ThreadSafe";
+    static final String UNORDERED = "com.fiftythree.bubo.annotations.Unordered";
+    static final String WEAK_REGISTRAR = "com.fiftythree.bubo.annotations.WeakRegistrar";
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        final TypeElement observableAnnotation = processingEnv.getElementUtils().getTypeElement(OBSERVABLE);
+        if (null == observableAnnotation) {
+            return false;
+        }
+        for (Element element : roundEnv.getElementsAnnotatedWith(observableAnnotation)) {
+            if (element.getKind() != ElementKind.CLASS && element.getKind() != ElementKind.INTERFACE) {
+                continue;
+            }
+            final TypeElement observable = (TypeElement) element;
+            final List<TypeElement> listeners = classValues(observable, OBSERVABLE);
+            for (TypeElement listener : listeners) {
+                generateMulticaster(observable, listener);
+            }
+        }
+        return false;
+    }
+
+    // +----------------------------------------------------------------------+
+    // | PRIVATE
+    // +----------------------------------------------------------------------+
+    private void generateMulticaster(TypeElement observable, TypeElement listener) {
+        if (listener.getKind() != ElementKind.INTERFACE) {
+            error(observable, listener.getQualifiedName() + " is not an interface. Observable listener types "
+                    + "must be interfaces.");
+            return;
+        }
+        if (!listener.getTypeParameters().isEmpty()) {
+            warning(observable, "No multicaster generated for generic listener interface "
+                    + listener.getQualifiedName() + ".");
+            return;
+        }
+        final List<ExecutableElement> methods = new ArrayList<ExecutableElement>();
+        for (ExecutableElement method : ElementFilter.methodsIn(
+                processingEnv.getElementUtils().getAllMembers(listener))) {
+            if (!method.getModifiers().contains(Modifier.ABSTRACT)) {
+                // Object methods and default methods already have an implementation.
+                continue;
+            }
+            if (method.getReturnType().getKind() != TypeKind.VOID) {
+                warning(observable, "No multicaster generated for " + listener.getQualifiedName() + " since "
+                        + method.getSimpleName() + " does not return void.");
+                return;
+            }
+            if (!method.getTypeParameters().isEmpty()) {
+                warning(observable, "No multicaster generated for " + listener.getQualifiedName() + " since "
+                        + method.getSimpleName() + " is a generic method.");
+                return;
+            }
+            methods.add(method);
+        }
+
+        final boolean threadSafe = appliesTo(observable, THREAD_SAFE, listener);
+        final boolean unordered = appliesTo(observable, UNORDERED, listener);
+        final boolean weak = appliesTo(observable, WEAK_REGISTRAR, listener);
+        final String registrarType;
+        if (weak) {
+            registrarType = threadSafe ? "WeakThreadSafeRegistrar" : "WeakSingleThreadedRegistrar";
+        } else if (threadSafe) {
+            registrarType = unordered ? "UnorderedThreadSafeRegistrar" : "ThreadSafeRegistrar";
+        } else {
+            registrarType = "SingleThreadedRegistrar";
+        }
+
+        final PackageElement packageElement = processingEnv.getElementUtils().getPackageOf(observable);
+        final String packageName = packageElement.isUnnamed() ? "" : packageElement.getQualifiedName().toString();
+        final String className = multicasterName(observable, listener);
+        new MulticasterWriter(processingEnv.getFiler(), processingEnv.getMessager(), processingEnv.getTypeUtils())
+                .write(observable, packageName, className, listener, registrarType, methods);
+    }
+
+    /**
+     * The multicaster for listener type {@code Listener} of observable type {@code Outer.Subject} is named
+     * {@code Outer_Subject_ListenerMulticaster}. Including the observable keeps the names unique when several
+     * observables in a package use the same listener with different registrar annotations.
+     */
+    static String multicasterName(TypeElement observable, TypeElement listener) {
+        final StringBuilder name = new StringBuilder();
+        Element enclosing = observable;
+        final List<String> names = new ArrayList<String>();
+        while (enclosing.getKind().isClass() || enclosing.getKind().isInterface()) {
+            names.add(enclosing.getSimpleName().toString());
+            enclosing = enclosing.getEnclosingElement();
+        }
+        Collections.reverse(names);
+        for (String simpleName : names) {
+            name.append(simpleName).append('_');
+        }
+        return name.append(listener.getSimpleName()).append("Multicaster").toString();
+    }
+
+    /**
+     * @return True if the annotation is present on the observable and either lists no types or lists the
+     *         listener.
+     */
+    private boolean appliesTo(TypeElement observable, String annotation, TypeElement listener) {
+        final List<TypeElement> values = classValues(observable, annotation);
+        if (null == values) {
+            return false;
+        }
+        return values.isEmpty() || values.contains(listener);
+    }
+
+    /**
+     * Read the {@code Class<?>[] value()} of an annotation without loading the classes it names.
+     * @return The types named by the annotation, an empty list if value() was not given, or null if the
+     *         annotation is not present on the element.
+     */
+    private static List<TypeElement> classValues(Element element, String annotation) {
+        for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+            final TypeElement type = (TypeElement) mirror.getAnnotationType().asElement();
+            if (!type.getQualifiedName().contentEquals(annotation)) {
+                continue;
+            }
+            final List<TypeElement> values = new ArrayList<TypeElement>();
+            for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry
+                    : mirror.getElementValues().entrySet()) {
+                if (!entry.getKey().getSimpleName().contentEquals("value")) {
+                    continue;
+                }
+                final Object value = entry.getValue().getValue();
+                if (value instanceof List) {
+                    for (Object item : (List<?>) value) {
+                        addClassValue(values, ((AnnotationValue) item).getValue());
+                    }
+                } else {
+                    addClassValue(values, value);
+                }
+            }
+            return values;
+        }
+        return null;
+    }
+
+    private static void addClassValue(List<TypeElement> values, Object value) {
+        if (value instanceof DeclaredType) {
+            values.add((TypeElement) ((DeclaredType) value).asElement());
+        }
+    }
+
+    private void error(Element element, String message) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+
+    private void warning(Element element, String message) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING, message, element);
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ *
+ *                                ^ ^
+ *                                O O
+ *                              /    )
+ *                             /  ,,
+ * Bubo – Observable Contracts and Specialized Implementations.
+ *                              |/
+ * Copyright 2015 FiftyThree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fiftythree.bubo.processor;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.List;
+
+import javax.annotation.processing.Filer;
+import javax.annotation.processing.Messager;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.ExecutableType;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+
+/**
+ * Emits the source for a single multicaster class. See {@link MulticasterProcessor}.
+ */
+final class MulticasterWriter {
+
+    private static final String BUBO_PACKAGE = "com.fiftythree.bubo.";
+
+    private final Filer mFiler;
+    private final Messager mMessager;
+    private final Types mTypes;
+
+    MulticasterWriter(Filer filer, Messager messager, Types types) {
+        mFiler = filer;
+        mMessager = messager;
+        mTypes = types;
+    }
+
+    void write(TypeElement observable, String packageName, String className, TypeElement listener,
+               String registrarType, List<ExecutableElement> methods) {
+        final String qualifiedName = packageName.isEmpty() ? className : packageName + "." + className;
+        final String listenerType = listener.getQualifiedName().toString();
+        final PrintWriter out;
+        try {
+            out = new PrintWriter(mFiler.createSourceFile(qualifiedName, observable, listener).openWriter());
+        } catch (IOException e) {
+            mMessager.printMessage(Diagnostic.Kind.ERROR, "Unable to write " + qualifiedName + ": " + e, observable);
+            return;
+        }
+        try {
+            if (!packageName.isEmpty()) {
+                out.println("package " + packageName + ";");
+                out.println();
+            }
+            out.println("/**");
+            out.println(" * Multicasts {@link " + listenerType
+                    + "} calls to every listener registered with this object.");
+            out.println(" * Generated by Bubo for {@link " + observable.getQualifiedName() + "}; do not edit.");
+            out.println(" */");
+            out.println("public final class " + className);
+            out.println("        implements " + listenerType + ", " + BUBO_PACKAGE + "Observable<" + listenerType
+                    + "> {");
+            out.println();
+            out.println("    private final " + BUBO_PACKAGE + registrarType + "<" + listenerType + "> mRegistrar =");
+            out.println("            new " + BUBO_PACKAGE + registrarType + "<" + listenerType + ">();");
+            out.println();
+            out.println("    @Override");
+            out.println("    public void addListener(" + listenerType + " listener) {");
+            out.println("        mRegistrar.addListener(listener);");
+            out.println("    }");
+            out.println();
+            out.println("    @Override");
+            out.println("    public void removeListener(" + listenerType + " listener) {");
+            out.println("        mRegistrar.removeListener(listener);");
+            out.println("    }");
+            out.println();
+            out.println("    public void clear() {");
+            out.println("        mRegistrar.clear();");
+            out.println("    }");
+            out.println();
+            out.println("    public int size() {");
+            out.println("        return mRegistrar.size();");
+            out.println("    }");
+            for (ExecutableElement method : methods) {
+                // Resolve the method as a member of the listener so type variables of generic superinterfaces
+                // are replaced by the listener's type arguments.
+                final ExecutableType resolved = (ExecutableType) mTypes.asMemberOf((DeclaredType) listener.asType(),
+                        method);
+                out.println();
+                writeMethod(out, listenerType, method, resolved);
+            }
+            out.println("}");
+        } finally {
+            out.close();
+        }
+    }
+
+    // +----------------------------------------------------------------------+
+    // | PRIVATE
+    // +----------------------------------------------------------------------+
+    private static void writeMethod(PrintWriter out, String listenerType, ExecutableElement method,
+                                    ExecutableType resolved) {
+        final List<? extends TypeMirror> parameters = resolved.getParameterTypes();
+        final StringBuilder declaration = new StringBuilder();
+        final StringBuilder arguments = new StringBuilder();
+        for (int i = 0; i < parameters.size(); ++i) {
+            final TypeMirror type = parameters.get(i);
+            if (i > 0) {
+                declaration.append(", ");
+                arguments.append(", ");
+            }
+            declaration.append("final ");
+            if (method.isVarArgs() && i == parameters.size() - 1) {
+                declaration.append(((ArrayType) type).getComponentType()).append("...");
+            } else {
+                declaration.append(type);
+            }
+            // Parameter names are not always available for compiled listener types so use our own.
+            declaration.append(" arg").append(i);
+            arguments.append("arg").append(i);
+        }
+        final StringBuilder throwsClause = new StringBuilder();
+        for (TypeMirror thrown : resolved.getThrownTypes()) {
+            throwsClause.append((throwsClause.length() == 0) ? " throws " : ", ").append(thrown);
+        }
+        final String call = "listener." + method.getSimpleName() + "(" + arguments + ");";
+
+        if (throwsClause.length() > 0) {
+            // Notifier.onNotify cannot throw checked exceptions so these keep to a plain loop.
+            out.println("    @Override");
+            out.println("    public void " + method.getSimpleName() + "(" + declaration + ")" + throwsClause + " {");
+            out.println("        for (" + listenerType + " listener : mRegistrar) {");
+            out.println("            " + call);
+            out.println("        }");
+            out.println("    }");
+        } else if (parameters.isEmpty()) {
+            // Nothing to capture so a single notifier serves every call.
+            final String notifier = notifierName(method.getSimpleName().toString());
+            out.println("    private static final " + BUBO_PACKAGE + "Notifier<" + listenerType + "> " + notifier
+                    + " =");
+            out.println("            new " + BUBO_PACKAGE + "Notifier<" + listenerType + ">() {");
+            out.println("                @Override");
+            out.println("                public void onNotify(" + listenerType + " listener) {");
+            out.println("                    " + call);
+            out.println("                }");
+            out.println("            };");
+            out.println();
+            out.println("    @Override");
+            out.println("    public void " + method.getSimpleName() + "() {");
+            out.println("        mRegistrar.dispatch(" + notifier + ");");
+            out.println("    }");
+        } else {
+            out.println("    @Override");
+            out.println("    public void " + method.getSimpleName() + "(" + declaration + ") {");
+            out.println("        mRegistrar.dispatch(new " + BUBO_PACKAGE + "Notifier<" + listenerType + ">() {");
+            out.println("            @Override");
+            out.println("            public void onNotify(" + listenerType + " listener) {");
+            out.println("                " + call);
+            out.println("            }");
+            out.println("        });");
+            out.println("    }");
+        }
+    }
+
+    /**
+     * @return The name of the constant holding the notifier for a method, e.g. NOTIFY_ON_CLEARED for onCleared.
+     */
+    private static String notifierName(String methodName) {
+        final StringBuilder name = new StringBuilder("NOTIFY_");
+        for (int i = 0; i < methodName.length(); ++i) {
+            final char c = methodName.charAt(i);
+            if (Character.isUpperCase(c) && i > 0) {
+                name.append('_');
+            }
+            name.append(Character.toUpperCase(c));
+        }
+        return name.toString();
+    }
+}
@@ -0,0 +1,327 @@
+/*
+ *
+ *                                ^ ^
+ *                                O O
+ *                              /    )
+ *                             /  ,,
+ * Bubo – Observable Contracts and Specialized Implementations.
+ *                              |/
+ * Copyright 2015 FiftyThree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fiftythree.bubo.processor;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.net.URL;
+import java.net.URI;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+
+/**
+ * Tests covering the {@link MulticasterProcessor} by compiling small observables with it.
+ */
+public class MulticasterProcessorTest extends TestCase {
+
+    // +----------------------------------------------------------------------+
+    // | TEST FIXTURES
+    // +----------------------------------------------------------------------+
+    private static final class TestFixtureSource extends SimpleJavaFileObject {
+        private final String mSource;
+
+        TestFixtureSource(String className, String source) {
+            super(URI.create("string:///" + className.replace('.', '/') + Kind.SOURCE.extension), Kind.SOURCE);
+            mSource = source;
+        }
+
+        @Override
+        public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+            return mSource;
+        }
+    }
+
+    private static final class TestFixtureRecorder implements InvocationHandler {
+        final List<String> mCalls;
+        final String mName;
+
+        TestFixtureRecorder(List<String> calls, String name) {
+            mCalls = calls;
+            mName = name;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            if (method.getDeclaringClass() == Object.class) {
+                if (method.getName().equals("equals")) {
+                    return proxy == args[0];
+                } else if (method.getName().equals("hashCode")) {
+                    return System.identityHashCode(proxy);
+                }
+                return mName;
+            }
+            mCalls.add(mName + "." + method.getName() + Arrays.deepToString((null == args) ? new Object[0] : args));
+            return null;
+        }
+    }
+
+    private File mOutputDirectory;
+    private List<Diagnostic<? extends JavaFileObject>> mDiagnostics;
+
+    @Override
+    protected void setUp() throws Exception {
+        mOutputDirectory = File.createTempFile("bubo-processor", "");
+        assertTrue(mOutputDirectory.delete());
+        assertTrue(mOutputDirectory.mkdir());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        delete(mOutputDirectory);
+    }
+
+    // +----------------------------------------------------------------------+
+    // | UNIT TESTS
+    // +----------------------------------------------------------------------+
+    @Test
+    public void testDefaultObservableMulticastsInOrder() throws Exception {
+        final ClassLoader loader = compile("test.Subject",
+                "package test;\n"
+                + "@com.fiftythree.bubo.annotations.Observable(Subject.Listener.class)\n"
+                + "public class Subject {\n"
+                + "    public interface Listener {\n"
+                + "        void onChanged(int value, String... names);\n"
+                + "        void onCleared();\n"
+                + "    }\n"
+                + "}\n");
+        final Class<?> listenerClass = loader.loadClass("test.Subject$Listener");
+        final Class<?> multicasterClass = loader.loadClass("test.Subject_ListenerMulticaster");
+        assertEquals("com.fiftythree.bubo.SingleThreadedRegistrar", registrarTypeOf(multicasterClass));
+
+        final Object multicaster = multicasterClass.getConstructor().newInstance();
+        final List<String> calls = new ArrayList<String>();
+        final Method addListener = multicasterClass.getMethod("addListener", listenerClass);
+        final Object listener0 = newListener(listenerClass, calls, "l0");
+        final Object listener1 = newListener(listenerClass, calls, "l1");
+        addListener.invoke(multicaster, listener0);
+        addListener.invoke(multicaster, listener1);
+        addListener.invoke(multicaster, listener0);
+
+        multicasterClass.getMethod("onChanged", int.class, String[].class)
+                .invoke(multicaster, 53, new String[] {"a", "b"});
+        multicasterClass.getMethod("removeListener", listenerClass).invoke(multicaster, listener0);
+        multicasterClass.getMethod("onCleared").invoke(multicaster);
+
+        assertEquals(Arrays.asList("l0.onChanged[53, [a, b]]", "l1.onChanged[53, [a, b]]", "l1.onCleared[]"), calls);
+        assertEquals(1, multicasterClass.getMethod("size").invoke(multicaster));
+    }
+
+    @Test
+    public void testParameterlessMethodReusesNotifier() throws Exception {
+        final ClassLoader loader = compile("test.Subject",
+                "package test;\n"
+                + "@com.fiftythree.bubo.annotations.Observable(Subject.Listener.class)\n"
+                + "public class Subject {\n"
+                + "    public interface Listener { void onCleared(); }\n"
+                + "}\n");
+        final Class<?> listenerClass = loader.loadClass("test.Subject$Listener");
+        final Class<?> multicasterClass = loader.loadClass("test.Subject_ListenerMulticaster");
+        final Field notifier = multicasterClass.getDeclaredField("NOTIFY_ON_CLEARED");
+        assertTrue(Modifier.isStatic(notifier.getModifiers()));
+        assertEquals("com.fiftythree.bubo.Notifier", notifier.getType().getName());
+
+        final Object multicaster = multicasterClass.getConstructor().newInstance();
+        final List<String> calls = new ArrayList<String>();
+        multicasterClass.getMethod("addListener", listenerClass)
+                .invoke(multicaster, newListener(listenerClass, calls, "l0"));
+        multicasterClass.getMethod("onCleared").invoke(multicaster);
+        multicasterClass.getMethod("onCleared").invoke(multicaster);
+        assertEquals(Arrays.asList("l0.onCleared[]", "l0.onCleared[]"), calls);
+    }
+
+    @Test
+    public void testMethodDeclaringExceptionsMulticasts() throws Exception {
+        final ClassLoader loader = compile("test.Subject",
+                "package test;\n"
+                + "@com.fiftythree.bubo.annotations.Observable(Subject.Listener.class)\n"
+                + "public class Subject {\n"
+                + "    public interface Listener { void onSaved(String path) throws java.io.IOException; }\n"
+                + "}\n");
+        final Class<?> listenerClass = loader.loadClass("test.Subject$Listener");
+        final Class<?> multicasterClass = loader.loadClass("test.Subject_ListenerMulticaster");
+        final Object multicaster = multicasterClass.getConstructor().newInstance();
+        final List<String> calls = new ArrayList<String>();
+        final Method addListener = multicasterClass.getMethod("addListener", listenerClass);
+        addListener.invoke(multicaster, newListener(listenerClass, calls, "l0"));
+        addListener.invoke(multicaster, newListener(listenerClass, calls, "l1"));
+        multicasterClass.getMethod("onSaved", String.class).invoke(multicaster, "a");
+        assertEquals(Arrays.asList("l0.onSaved[a]", "l1.onSaved[a]"), calls);
+    }
+
+    @Test
+    public void testInheritedMethodsOfParameterisedSuperinterfaceAreResolved() throws Exception {
+        final ClassLoader loader = compile("test.Subject",
+                "package test;\n"
+                + "@com.fiftythree.bubo.annotations.Observable(Subject.Listener.class)\n"
+                + "public class Subject {\n"
+                + "    public interface Base<T, E extends Exception> { void onValue(T value) throws E; }\n"
+                + "    public interface Listener extends Base<String, java.io.IOException> { }\n"
+                + "}\n");
+        assertNotNull(loader);
+        final Class<?> listenerClass = loader.loadClass("test.Subject$Listener");
+        final Class<?> multicasterClass = loader.loadClass("test.Subject_ListenerMulticaster");
+        final Method onValue = multicasterClass.getMethod("onValue", String.class);
+        assertEquals(Arrays.asList(IOException.class), Arrays.asList(onValue.getExceptionTypes()));
+
+        final Object multicaster = multicasterClass.getConstructor().newInstance();
+        final List<String> calls = new ArrayList<String>();
+        multicasterClass.getMethod("addListener", listenerClass)
+                .invoke(multicaster, newListener(listenerClass, calls, "l0"));
+        onValue.invoke(multicaster, "a");
+        assertEquals(Arrays.asList("l0.onValue[a]"), calls);
+    }
+
+    @Test
+    public void testRegistrarSelectionFollowsAnnotations() throws Exception {
+        final ClassLoader loader = compile("test.Subject",
+                "package test;\n"
+                + "import com.fiftythree.bubo.annotations.*;\n"
+                + "@Observable({Subject.A.class, Subject.B.class, Subject.C.class})\n"
+                + "@ThreadSafe\n"
+                + "@Unordered(Subject.B.class)\n"
+                + "@WeakRegistrar(Subject.C.class)\n"
+                + "public class Subject {\n"
+                + "    public interface A { void onA(); }\n"
+                + "    public interface B { void onB(); }\n"
+                + "    public interface C { void onC(); }\n"
+                + "}\n");
+        assertEquals("com.fiftythree.bubo.ThreadSafeRegistrar",
+                registrarTypeOf(loader.loadClass("test.Subject_AMulticaster")));
+        assertEquals("com.fiftythree.bubo.UnorderedThreadSafeRegistrar",
+                registrarTypeOf(loader.loadClass("test.Subject_BMulticaster")));
+        assertEquals("com.fiftythree.bubo.WeakThreadSafeRegistrar",
+                registrarTypeOf(loader.loadClass("test.Subject_CMulticaster")));
+    }
+
+    @Test
+    public void testWeakSingleThreaded() throws Exception {
+        final ClassLoader loader = compile("test.Subject",
+                "package test;\n"
+                + "@com.fiftythree.bubo.annotations.Observable(Subject.Listener.class)\n"
+                + "@com.fiftythree.bubo.annotations.WeakRegistrar\n"
+                + "public class Subject {\n"
+                + "    public interface Listener { void onChanged(); }\n"
+                + "}\n");
+        assertEquals("com.fiftythree.bubo.WeakSingleThreadedRegistrar",
+                registrarTypeOf(loader.loadClass("test.Subject_ListenerMulticaster")));
+    }
+
+    @Test
+    public void testClassListenerIsAnError() throws Exception {
+        assertNull(compile("test.Subject",
+                "package test;\n"
+                + "@com.fiftythree.bubo.annotations.Observable(Subject.Listener.class)\n"
+                + "public class Subject {\n"
+                + "    public static class Listener { }\n"
+                + "}\n"));
+        assertTrue(hasDiagnostic(Diagnostic.Kind.ERROR, "is not an interface"));
+    }
+
+    @Test
+    public void testNonVoidMethodIsSkipped() throws Exception {
+        final ClassLoader loader = compile("test.Subject",
+                "package test;\n"
+                + "@com.fiftythree.bubo.annotations.Observable(Subject.Listener.class)\n"
+                + "public class Subject {\n"
+                + "    public interface Listener { boolean onChanged(); }\n"
+                + "}\n");
+        assertNotNull(loader);
+        assertTrue(hasDiagnostic(Diagnostic.Kind.WARNING, "does not return void"));
+        try {
+            loader.loadClass("test.Subject_ListenerMulticaster");
+            fail("multicaster was generated");
+        } catch (ClassNotFoundException e) {
+            // okay
+        }
+    }
+
+    // +----------------------------------------------------------------------+
+    // | PRIVATE
+    // +----------------------------------------------------------------------+
+    /**
+     * @return A class loader for the compiled classes or null if compilation failed.
+     */
+    private ClassLoader compile(String className, String source) throws IOException {
+        final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        final DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<JavaFileObject>();
+        final JavaCompiler.CompilationTask task = compiler.getTask(null, null, diagnostics,
+                Arrays.asList("-classpath", System.getProperty("java.class.path"),
+                        "-d", mOutputDirectory.getPath(), "-s", mOutputDirectory.getPath()),
+                null, Collections.singletonList(new TestFixtureSource(className, source)));
+        task.setProcessors(Collections.singletonList(new MulticasterProcessor()));
+        final boolean success = task.call();
+        mDiagnostics = diagnostics.getDiagnostics();
+        if (!success) {
+            return null;
+        }
+        return new URLClassLoader(new URL[] {mOutputDirectory.toURI().toURL()}, getClass().getClassLoader());
+    }
+
+    private boolean hasDiagnostic(Diagnostic.Kind kind, String message) {
+        for (Diagnostic<? extends JavaFileObject> diagnostic : mDiagnostics) {
+            if (diagnostic.getKind() == kind && diagnostic.getMessage(null).contains(message)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String registrarTypeOf(Class<?> multicasterClass) throws NoSuchFieldException {
+        final Field registrar = multicasterClass.getDeclaredField("mRegistrar");
+        return registrar.getType().getName();
+    }
+
+    private static Object newListener(Class<?> listenerClass, List<String> calls, String name) {
+        return Proxy.newProxyInstance(listenerClass.getClassLoader(), new Class<?>[] {listenerClass},
+                new TestFixtureRecorder(calls, name));
+    }
+
+    private static void delete(File file) {
+        final File[] children = file.listFiles();
+        if (null != children) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ *
+ *                                ^ ^
+ *                                O O
+ *                              /    )
+ *                             /  ,,
+ * Bubo – Observable Contracts and Specialized Implementations.
+ *                              |/
+ * Copyright 2015 FiftyThree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fiftythree.bubo;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Read-only iterator over a snapshot array of listeners.
+ */
+final class ArrayIterator<T> implements Iterator<T> {
+
+    private final Object[] mSnapshot;
+    private int mIndex;
+
+    ArrayIterator(Object[] snapshot) {
+        mSnapshot = snapshot;
+        mIndex = 0;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return mIndex < mSnapshot.length;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public T next() {
+        if (mIndex >= mSnapshot.length) {
+            throw new NoSuchElementException();
+        }
+        return (T) mSnapshot[mIndex++];
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ *
+ *                                ^ ^
+ *                                O O
+ *                              /    )
+ *                             /  ,,
+ * Bubo – Observable Contracts and Specialized Implementations.
+ *                              |/
+ * Copyright 2015 FiftyThree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fiftythree.bubo;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Decorates a {@link Registrar} so that {@link #dispatch(Notifier)} delivers notifications on an
+ * {@link Executor} instead of the publishing thread. Use this to keep slow observers from stalling the
+ * threads that publish to them.
+ *
+ * <p>Dispatches are queued in a lock-free mailbox and delivered one at a time, in the order they were
+ * published, so the Apartment Threaded Dispatch Rule holds even when the executor has many threads
+ * (including executors that start a new virtual thread per task). Publishing costs one enqueue, plus
+ * submitting a task to the executor if the mailbox was idle. The wrapped registrar must be
+ * {@link com.fiftythree.bubo.annotations.ThreadSafe} if listeners are (de)registered on any thread other than
+ * the executor's.</p>
+ *
+ * <p>The set of listeners notified is determined when the notification is delivered, not when it is
+ * published; the Atomic Dispatch Rule applies from the start of delivery. Since notifiers are delivered
+ * later they must capture the notification's data rather than reusing a shared, mutable notifier.</p>
+ */
+public class AsyncRegistrar<LISTENER_TYPE> extends ForwardingRegistrar<LISTENER_TYPE> {
+
+    private final Mailbox<Notifier<? super LISTENER_TYPE>> mMailbox;
+
+    /**
+     * @param delegate The registrar holding the listeners.
+     * @param executor Executor on which notifications are delivered.
+     */
+    public AsyncRegistrar(Registrar<LISTENER_TYPE> delegate, Executor executor) {
+        super(delegate);
+        mMailbox = new Mailbox<Notifier<? super LISTENER_TYPE>>(executor) {
+            @Override
+            protected void onMessage(Notifier<? super LISTENER_TYPE> notifier) {
+                delegate().dispatch(notifier);
+            }
+        };
+    }
+
+    // +----------------------------------------------------------------------+
+    // | Registrar
+    // +----------------------------------------------------------------------+
+    /**
+     * Queue a notification for delivery on this registrar's executor and return immediately.
+     *
+     * @param  notifier Called once for each listener registered when the notification is delivered. Must not
+     *                  be null.
+     * @throws IllegalArgumentException if notifier is null.
+     * @throws java.util.concurrent.RejectedExecutionException if the executor will not accept the delivery task.
+     */
+    @Override
+    public void dispatch(Notifier<? super LISTENER_TYPE> notifier) {
+        if (null == notifier) {
+            throw new IllegalArgumentException("notifier cannot be null.");
+        }
+        mMailbox.post(notifier);
+    }
+}
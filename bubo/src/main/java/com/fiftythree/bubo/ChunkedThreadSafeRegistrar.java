@@ -0,0 +1,445 @@
+/*
+ *
+ *                                ^ ^
+ *                                O O
+ *                              /    )
+ *                             /  ,,
+ * Bubo – Observable Contracts and Specialized Implementations.
+ *                              |/
+ * Copyright 2015 FiftyThree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fiftythree.bubo;
+
+import com.fiftythree.bubo.annotations.CopyOnWrite;
+import com.fiftythree.bubo.annotations.Locking;
+import com.fiftythree.bubo.annotations.ThreadSafe;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * An ordered, thread-safe registrar for large registrars with frequent registration changes.
+ *
+ * <p>{@link ThreadSafeRegistrar} copies every listener on every change, which is quadratic when a registrar
+ * of many thousands of listeners churns. This registrar splits the listeners into fixed-size chunks held in an
+ * immutable list. A change copies only the chunk it touches plus the list of chunk references, so a change to
+ * a registrar of n listeners in chunks of c copies about c + n/c references rather than n.</p>
+ *
+ * <p>Every listener is given an increasing ordinal when it is added and the ordinals are kept in a
+ * {@link StripedIdentityMap}. Since listeners are only ever appended, ordinals are sorted across chunks and a
+ * listener's chunk is found by binary search rather than a scan. Adding a listener that is already registered
+ * or removing one that is not is answered from the striped index without taking the writer lock; the index is
+ * only updated after the chunk list is published so it never runs ahead of what dispatch sees. Chunks left
+ * less than a quarter full by removals are merged into a neighbour.</p>
+ *
+ * <p>Changes are serialised by a writer lock. Dispatch and iteration read the current chunk list without
+ * locking and see the registrar as it was at a single point in time.</p>
+ */
+@Locking
+@CopyOnWrite
+@ThreadSafe
+public class ChunkedThreadSafeRegistrar<LISTENER_TYPE> implements Registrar<LISTENER_TYPE> {
+
+    /**
+     * The number of listeners per chunk used by {@link #ChunkedThreadSafeRegistrar()}.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 64;
+
+    private static final Chunk[] NO_CHUNKS = new Chunk[0];
+
+    private final Object mLock;
+    private final StripedIdentityMap mIndex;
+    private final int mChunkSize;
+    private final int mMergeThreshold;
+    private volatile Chunk[] mChunks;
+    private volatile int mSize;
+    // Guarded by mLock.
+    private long mNextOrdinal;
+    // Incremented on every change. Guarded by mLock.
+    private long mVersion;
+    // Flattened copy of mChunks, built on demand and discarded on every change.
+    private volatile RegistrarSnapshot<LISTENER_TYPE> mSnapshot;
+
+    public ChunkedThreadSafeRegistrar() {
+        this(DEFAULT_CHUNK_SIZE, StripedIdentityMap.DEFAULT_CONCURRENCY_LEVEL);
+    }
+
+    /**
+     * @param chunkSize        The maximum number of listeners per chunk. Larger chunks make dispatch slightly
+     *                         faster and changes slower.
+     * @param concurrencyLevel The expected number of threads (de)registering listeners concurrently.
+     */
+    public ChunkedThreadSafeRegistrar(int chunkSize, int concurrencyLevel) {
+        if (chunkSize < 2) {
+            throw new IllegalArgumentException("chunkSize must be at least 2.");
+        }
+        if (concurrencyLevel < 1) {
+            throw new IllegalArgumentException("concurrencyLevel must be at least 1.");
+        }
+        mLock = new Object();
+        mIndex = new StripedIdentityMap(concurrencyLevel);
+        mChunkSize = chunkSize;
+        mMergeThreshold = Math.max(1, chunkSize / 4);
+        mChunks = NO_CHUNKS;
+        RegistrarRegistry.onCreated(this);
+    }
+
+    // +----------------------------------------------------------------------+
+    // | Registrar
+    // +----------------------------------------------------------------------+
+    @Override
+    public void addListener(LISTENER_TYPE listener) {
+        if (null == listener) {
+            throw new IllegalArgumentException("listener cannot be null.");
+        }
+        if (StripedIdentityMap.MISSING != mIndex.get(listener)) {
+            return;
+        }
+        synchronized (mLock) {
+            if (StripedIdentityMap.MISSING != mIndex.get(listener)) {
+                return;
+            }
+            final long ordinal = mNextOrdinal++;
+            // Publish before indexing so the lock-free check never reports a listener dispatch cannot see.
+            publish(append(mChunks, listener, ordinal), mSize + 1);
+            mIndex.putIfAbsent(listener, ordinal);
+        }
+        RegistrarRegistry.onListenerAdded(this);
+    }
+
+    @Override
+    public void removeListener(LISTENER_TYPE listener) {
+        if (null == listener) {
+            throw new IllegalArgumentException("listener cannot be null.");
+        }
+        if (StripedIdentityMap.MISSING == mIndex.get(listener)) {
+            return;
+        }
+        synchronized (mLock) {
+            final long ordinal = mIndex.get(listener);
+            if (StripedIdentityMap.MISSING == ordinal) {
+                return;
+            }
+            publish(without(mChunks, ordinal), mSize - 1);
+            mIndex.remove(listener);
+        }
+    }
+
+    @Override
+    public void clear() {
+        synchronized (mLock) {
+            if (mSize > 0) {
+                publish(NO_CHUNKS, 0);
+                mIndex.clear();
+            }
+        }
+    }
+
+    @Override
+    public int size() {
+        return mSize;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public void dispatch(Notifier<? super LISTENER_TYPE> notifier) {
+        if (null == notifier) {
+            throw new IllegalArgumentException("notifier cannot be null.");
+        }
+        for (Chunk chunk : mChunks) {
+            for (Object listener : chunk.mListeners) {
+                notifier.onNotify((LISTENER_TYPE) listener);
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>The first snapshot after a change copies every listener into a single array.</p>
+     */
+    @Override
+    public RegistrarSnapshot<LISTENER_TYPE> snapshot() {
+        RegistrarSnapshot<LISTENER_TYPE> snapshot = mSnapshot;
+        if (null == snapshot) {
+            synchronized (mLock) {
+                snapshot = mSnapshot;
+                if (null == snapshot) {
+                    final Object[] listeners = new Object[mSize];
+                    int count = 0;
+                    for (Chunk chunk : mChunks) {
+                        System.arraycopy(chunk.mListeners, 0, listeners, count, chunk.mListeners.length);
+                        count += chunk.mListeners.length;
+                    }
+                    snapshot = new RegistrarSnapshot<LISTENER_TYPE>(listeners, mVersion);
+                    mSnapshot = snapshot;
+                }
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>Committing replays the changes against private copies of the chunks they touch and publishes the
+     * result once.</p>
+     */
+    @Override
+    public Editor<LISTENER_TYPE> edit() {
+        return new EditBatch<LISTENER_TYPE>() {
+            @Override
+            void onCommit() {
+                commitEdit(this);
+            }
+        };
+    }
+
+    // +----------------------------------------------------------------------+
+    // | Iterable
+    // +----------------------------------------------------------------------+
+    @Override
+    public Iterator<LISTENER_TYPE> iterator() {
+        return new ChunkIterator<LISTENER_TYPE>(mChunks);
+    }
+
+    // +----------------------------------------------------------------------+
+    // | PACKAGE
+    // +----------------------------------------------------------------------+
+    /**
+     * @return The number of chunks currently holding listeners.
+     */
+    int chunkCount() {
+        return mChunks.length;
+    }
+
+    // +----------------------------------------------------------------------+
+    // | PRIVATE
+    // +----------------------------------------------------------------------+
+    private void commitEdit(EditBatch<LISTENER_TYPE> batch) {
+        boolean added = false;
+        synchronized (mLock) {
+            Chunk[] chunks = mChunks;
+            int size = mSize;
+            // The batch's effect on the index, applied only once the chunks are published. MISSING marks a
+            // removal.
+            final IdentityHashMap<Object, Long> changes = new IdentityHashMap<Object, Long>();
+            for (int i = 0; i < batch.count(); ++i) {
+                final Object listener = batch.listener(i);
+                final Long change = changes.get(listener);
+                final long current = (null == change) ? mIndex.get(listener) : change;
+                if (batch.isAdd(i)) {
+                    if (StripedIdentityMap.MISSING == current) {
+                        final long ordinal = mNextOrdinal++;
+                        chunks = append(chunks, listener, ordinal);
+                        changes.put(listener, ordinal);
+                        ++size;
+                        added = true;
+                    }
+                } else if (StripedIdentityMap.MISSING != current) {
+                    chunks = without(chunks, current);
+                    changes.put(listener, StripedIdentityMap.MISSING);
+                    --size;
+                }
+            }
+            if (chunks != mChunks) {
+                publish(chunks, size);
+            }
+            for (Map.Entry<Object, Long> change : changes.entrySet()) {
+                mIndex.remove(change.getKey());
+                if (StripedIdentityMap.MISSING != change.getValue()) {
+                    mIndex.putIfAbsent(change.getKey(), change.getValue());
+                }
+            }
+        }
+        if (added) {
+            RegistrarRegistry.onListenersAdded(this);
+        }
+    }
+
+    /**
+     * @return A new chunk list with the listener appended to the last chunk, or to a new chunk if it is full.
+     */
+    private Chunk[] append(Chunk[] chunks, Object listener, long ordinal) {
+        final int last = chunks.length - 1;
+        final Chunk[] next;
+        if (last >= 0 && chunks[last].mListeners.length < mChunkSize) {
+            next = chunks.clone();
+            next[last] = chunks[last].append(listener, ordinal);
+        } else {
+            next = Arrays.copyOf(chunks, chunks.length + 1);
+            next[chunks.length] = new Chunk(new Object[]{listener}, new long[]{ordinal});
+        }
+        return next;
+    }
+
+    /**
+     * @return A new chunk list without the listener with the given ordinal.
+     */
+    private Chunk[] without(Chunk[] chunks, long ordinal) {
+        final int chunkIndex = chunkIndexOf(chunks, ordinal);
+        return replace(chunks, chunkIndex, chunks[chunkIndex].without(ordinal));
+    }
+
+    /**
+     * Replace the chunk list. Must be called while holding mLock.
+     */
+    private void publish(Chunk[] chunks, int size) {
+        mSnapshot = null;
+        mChunks = chunks;
+        mSize = size;
+        ++mVersion;
+    }
+
+    /**
+     * @return A new chunk list with the chunk at {@code index} replaced, dropped if it is empty, or merged into
+     *         a neighbour if both fit in one chunk and it has fallen below the merge threshold.
+     */
+    private Chunk[] replace(Chunk[] chunks, int index, Chunk chunk) {
+        final int length = chunk.mListeners.length;
+        if (length == 0) {
+            final Chunk[] next = new Chunk[chunks.length - 1];
+            System.arraycopy(chunks, 0, next, 0, index);
+            System.arraycopy(chunks, index + 1, next, index, next.length - index);
+            return next;
+        }
+        if (length < mMergeThreshold) {
+            int neighbour = -1;
+            if (index > 0 && chunks[index - 1].mListeners.length + length <= mChunkSize) {
+                neighbour = index - 1;
+            } else if (index + 1 < chunks.length && chunks[index + 1].mListeners.length + length <= mChunkSize) {
+                neighbour = index + 1;
+            }
+            if (neighbour >= 0) {
+                final int first = Math.min(index, neighbour);
+                final Chunk merged = (first == index)
+                        ? Chunk.concat(chunk, chunks[neighbour]) : Chunk.concat(chunks[neighbour], chunk);
+                final Chunk[] next = new Chunk[chunks.length - 1];
+                System.arraycopy(chunks, 0, next, 0, first);
+                next[first] = merged;
+                System.arraycopy(chunks, first + 2, next, first + 1, next.length - first - 1);
+                return next;
+            }
+        }
+        final Chunk[] next = chunks.clone();
+        next[index] = chunk;
+        return next;
+    }
+
+    /**
+     * @return The index of the chunk holding the given ordinal: the last chunk whose first ordinal is not
+     *         greater than it.
+     */
+    private static int chunkIndexOf(Chunk[] chunks, long ordinal) {
+        int low = 0;
+        int high = chunks.length - 1;
+        while (low < high) {
+            final int middle = (low + high + 1) >>> 1;
+            if (chunks[middle].mOrdinals[0] <= ordinal) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * An immutable run of listeners in registration order with their ordinals.
+     */
+    private static final class Chunk {
+
+        final Object[] mListeners;
+        final long[] mOrdinals;
+
+        Chunk(Object[] listeners, long[] ordinals) {
+            mListeners = listeners;
+            mOrdinals = ordinals;
+        }
+
+        Chunk append(Object listener, long ordinal) {
+            final int length = mListeners.length;
+            final Object[] listeners = Arrays.copyOf(mListeners, length + 1);
+            final long[] ordinals = Arrays.copyOf(mOrdinals, length + 1);
+            listeners[length] = listener;
+            ordinals[length] = ordinal;
+            return new Chunk(listeners, ordinals);
+        }
+
+        Chunk without(long ordinal) {
+            final int index = Arrays.binarySearch(mOrdinals, ordinal);
+            final int length = mListeners.length - 1;
+            final Object[] listeners = new Object[length];
+            final long[] ordinals = new long[length];
+            System.arraycopy(mListeners, 0, listeners, 0, index);
+            System.arraycopy(mListeners, index + 1, listeners, index, length - index);
+            System.arraycopy(mOrdinals, 0, ordinals, 0, index);
+            System.arraycopy(mOrdinals, index + 1, ordinals, index, length - index);
+            return new Chunk(listeners, ordinals);
+        }
+
+        static Chunk concat(Chunk first, Chunk second) {
+            final int firstLength = first.mListeners.length;
+            final int length = firstLength + second.mListeners.length;
+            final Object[] listeners = Arrays.copyOf(first.mListeners, length);
+            final long[] ordinals = Arrays.copyOf(first.mOrdinals, length);
+            System.arraycopy(second.mListeners, 0, listeners, firstLength, second.mListeners.length);
+            System.arraycopy(second.mOrdinals, 0, ordinals, firstLength, second.mOrdinals.length);
+            return new Chunk(listeners, ordinals);
+        }
+    }
+
+    /**
+     * Read-only iterator over a chunk list snapshot.
+     */
+    private static final class ChunkIterator<T> implements Iterator<T> {
+
+        private final Chunk[] mChunks;
+        private int mChunk;
+        private int mIndex;
+
+        ChunkIterator(Chunk[] chunks) {
+            mChunks = chunks;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return mChunk < mChunks.length;
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public T next() {
+            if (mChunk >= mChunks.length) {
+                throw new NoSuchElementException();
+            }
+            final Object[] listeners = mChunks[mChunk].mListeners;
+            final Object listener = listeners[mIndex];
+            if (++mIndex == listeners.length) {
+                ++mChunk;
+                mIndex = 0;
+            }
+            return (T) listener;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
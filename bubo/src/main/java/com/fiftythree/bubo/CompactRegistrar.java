@@ -0,0 +1,135 @@
+/*
+ *
+ *                                ^ ^
+ *                                O O
+ *                              /    )
+ *                             /  ,,
+ * Bubo – Observable Contracts and Specialized Implementations.
+ *                              |/
+ * Copyright 2015 FiftyThree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fiftythree.bubo;
+
+import com.fiftythree.bubo.annotations.CopyOnWrite;
+
+import java.util.Iterator;
+
+/**
+ * A single-threaded registrar whose representation changes with its size, for the many observables which
+ * have no listeners or one listener. An empty registrar references a shared sentinel and a registrar with one
+ * listener references only that listener, so neither allocates anything beyond the registrar object itself.
+ * Up to eight listeners are kept in a small array; beyond that the registrar switches to a
+ * {@link SingleThreadedRegistrar} and stays with it until cleared.
+ *
+ * <p>Dispatching to an empty or single-listener registrar is a reference comparison or two type checks and a
+ * direct call, with no iteration.</p>
+ */
+@CopyOnWrite
+public class CompactRegistrar<LISTENER_TYPE> implements Registrar<LISTENER_TYPE> {
+
+    private Object mState;
+    // Versions the states snapshots are taken of. Null until the first snapshot.
+    private VersionStamp mStamp;
+
+    public CompactRegistrar() {
+        mState = CompactState.EMPTY;
+        RegistrarRegistry.onCreated(this);
+    }
+
+    // +----------------------------------------------------------------------+
+    // | Registrar
+    // +----------------------------------------------------------------------+
+    @Override
+    public void addListener(LISTENER_TYPE listener) {
+        if (null == listener) {
+            throw new IllegalArgumentException("listener cannot be null.");
+        }
+        final Object current = mState;
+        if (current instanceof CompactState.Large) {
+            if (((CompactState.Large) current).add(listener)) {
+                RegistrarRegistry.onListenerAdded(this);
+            }
+            return;
+        }
+        final Object next = CompactState.add(current, listener, false);
+        if (next != current) {
+            mState = next;
+            RegistrarRegistry.onListenerAdded(this);
+        }
+    }
+
+    @Override
+    public void removeListener(LISTENER_TYPE listener) {
+        if (null == listener) {
+            throw new IllegalArgumentException("listener cannot be null.");
+        }
+        mState = CompactState.remove(mState, listener);
+    }
+
+    @Override
+    public void clear() {
+        mState = CompactState.EMPTY;
+    }
+
+    @Override
+    public int size() {
+        return CompactState.size(mState);
+    }
+
+    @Override
+    public void dispatch(Notifier<? super LISTENER_TYPE> notifier) {
+        if (null == notifier) {
+            throw new IllegalArgumentException("notifier cannot be null.");
+        }
+        CompactState.dispatch(mState, notifier);
+    }
+
+    @Override
+    public RegistrarSnapshot<LISTENER_TYPE> snapshot() {
+        final Object state = mState;
+        final Object source = CompactState.snapshotSource(state);
+        mStamp = VersionStamp.of(mStamp, source);
+        return new RegistrarSnapshot<LISTENER_TYPE>(CompactState.listenersOf(state, source), mStamp.version());
+    }
+
+    @Override
+    public Editor<LISTENER_TYPE> edit() {
+        return new EditBatch<LISTENER_TYPE>() {
+            @Override
+            void onCommit() {
+                final Object current = mState;
+                final Object next = CompactState.edit(current, this, false);
+                if (current instanceof CompactState.Large) {
+                    if (hasAdds()) {
+                        RegistrarRegistry.onListenersAdded(CompactRegistrar.this);
+                    }
+                } else if (next != current) {
+                    mState = next;
+                    if (appendedCount() > 0) {
+                        RegistrarRegistry.onListenersAdded(CompactRegistrar.this);
+                    }
+                }
+            }
+        };
+    }
+
+    // +----------------------------------------------------------------------+
+    // | Iterable
+    // +----------------------------------------------------------------------+
+    @Override
+    public Iterator<LISTENER_TYPE> iterator() {
+        return CompactState.iterator(mState);
+    }
+}
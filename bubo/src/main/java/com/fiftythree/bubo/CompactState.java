@@ -0,0 +1,281 @@
+/*
+ *
+ *                                ^ ^
+ *                                O O
+ *                              /    )
+ *                             /  ,,
+ * Bubo – Observable Contracts and Specialized Implementations.
+ *                              |/
+ * Copyright 2015 FiftyThree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fiftythree.bubo;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+
+/**
+ * The size-specialised representation shared by {@link CompactRegistrar} and
+ * {@link CompactThreadSafeRegistrar}. A registrar's entire state is one immutable object:
+ *
+ * <ul>
+ *     <li>{@link #EMPTY}, shared by every empty registrar.</li>
+ *     <li>The single registered listener itself. A listener which is itself an {@code Object[]} is boxed so
+ *     it cannot be mistaken for the next representation.</li>
+ *     <li>An {@code Object[]} of two to {@link #SMALL_MAX} listeners in registration order, replaced on every
+ *     change.</li>
+ *     <li>A {@link Large} holding a general purpose registrar. This is where the registrar stays once it has
+ *     outgrown the small array.</li>
+ * </ul>
+ *
+ * <p>Transitions return a new state object, or the same object if nothing changed, so the single-threaded
+ * registrar can simply assign the result while the thread-safe registrar can compare-and-set it.</p>
+ */
+final class CompactState {
+
+    /**
+     * The state of a registrar with no listeners.
+     */
+    static final Object EMPTY = new Object();
+
+    /**
+     * The largest number of listeners kept in an inline array.
+     */
+    static final int SMALL_MAX = 8;
+
+    /**
+     * State of a registrar which has outgrown the inline array.
+     */
+    static final class Large {
+
+        final Registrar<Object> mRegistrar;
+
+        Large(Registrar<Object> registrar) {
+            mRegistrar = registrar;
+        }
+
+        /**
+         * Add a listener to the wrapped registrar, which is never tracked by the {@link RegistrarRegistry}; the
+         * compact registrar reports the add itself.
+         * @return True if the listener was not already registered.
+         */
+        boolean add(Object listener) {
+            return (mRegistrar instanceof ThreadSafeRegistrar)
+                    ? ((ThreadSafeRegistrar<Object>) mRegistrar).add(listener)
+                    : ((SingleThreadedRegistrar<Object>) mRegistrar).add(listener);
+        }
+    }
+
+    private static final class Boxed {
+
+        final Object mListener;
+
+        Boxed(Object listener) {
+            mListener = listener;
+        }
+    }
+
+    private CompactState() {
+    }
+
+    /**
+     * @param threadSafe Whether a {@link Large} state created by this call must be thread-safe.
+     * @return The state after adding the listener. For the {@link Large} state the listener is added to the
+     *         wrapped registrar and the same state is returned.
+     */
+    static Object add(Object state, Object listener, boolean threadSafe) {
+        if (EMPTY == state) {
+            return single(listener);
+        }
+        if (state instanceof Object[]) {
+            final Object[] small = (Object[]) state;
+            if (indexOf(small, listener) >= 0) {
+                return state;
+            }
+            if (small.length < SMALL_MAX) {
+                final Object[] next = Arrays.copyOf(small, small.length + 1);
+                next[small.length] = listener;
+                return next;
+            }
+            final Registrar<Object> registrar = threadSafe
+                    ? new ThreadSafeRegistrar<Object>(false) : new SingleThreadedRegistrar<Object>(false);
+            for (Object registered : small) {
+                registrar.addListener(registered);
+            }
+            registrar.addListener(listener);
+            return new Large(registrar);
+        }
+        if (state instanceof Large) {
+            ((Large) state).add(listener);
+            return state;
+        }
+        final Object registered = unbox(state);
+        return (registered == listener) ? state : new Object[]{registered, listener};
+    }
+
+    /**
+     * @return The state after removing the listener. For the {@link Large} state the listener is removed from
+     *         the wrapped registrar and the same state is returned.
+     */
+    static Object remove(Object state, Object listener) {
+        if (EMPTY == state) {
+            return state;
+        }
+        if (state instanceof Object[]) {
+            final Object[] small = (Object[]) state;
+            final int index = indexOf(small, listener);
+            if (index < 0) {
+                return state;
+            }
+            if (2 == small.length) {
+                return single(small[1 - index]);
+            }
+            final Object[] next = new Object[small.length - 1];
+            System.arraycopy(small, 0, next, 0, index);
+            System.arraycopy(small, index + 1, next, index, next.length - index);
+            return next;
+        }
+        if (state instanceof Large) {
+            ((Large) state).mRegistrar.removeListener(listener);
+            return state;
+        }
+        return (unbox(state) == listener) ? EMPTY : state;
+    }
+
+    /**
+     * @param threadSafe Whether a {@link Large} state created by this call must be thread-safe.
+     * @return The state after replaying the batch. For the {@link Large} state the batch is replayed on the
+     *         wrapped registrar and the same state is returned. Otherwise the state is returned unchanged if the
+     *         batch does not change it.
+     */
+    static Object edit(Object state, EditBatch<?> batch, boolean threadSafe) {
+        if (state instanceof Large) {
+            batch.replayOn(((Large) state).mRegistrar);
+            return state;
+        }
+        final Object[] current = listenersOf(state, state);
+        final Object[] next = batch.applyTo(current);
+        if (next == current) {
+            return state;
+        }
+        if (0 == next.length) {
+            return EMPTY;
+        }
+        if (1 == next.length) {
+            return single(next[0]);
+        }
+        if (next.length <= SMALL_MAX) {
+            return next;
+        }
+        final Registrar<Object> registrar = threadSafe
+                ? new ThreadSafeRegistrar<Object>(false) : new SingleThreadedRegistrar<Object>(false);
+        final Registrar.Editor<Object> editor = registrar.edit();
+        for (Object listener : next) {
+            editor.addListener(listener);
+        }
+        editor.commit();
+        return new Large(registrar);
+    }
+
+    static int size(Object state) {
+        if (EMPTY == state) {
+            return 0;
+        }
+        if (state instanceof Object[]) {
+            return ((Object[]) state).length;
+        }
+        if (state instanceof Large) {
+            return ((Large) state).mRegistrar.size();
+        }
+        return 1;
+    }
+
+    @SuppressWarnings("unchecked")
+    static void dispatch(Object state, Notifier<?> notifier) {
+        final Notifier<Object> target = (Notifier<Object>) notifier;
+        if (EMPTY == state) {
+            return;
+        }
+        if (state instanceof Object[]) {
+            for (Object listener : (Object[]) state) {
+                target.onNotify(listener);
+            }
+        } else if (state instanceof Large) {
+            ((Large) state).mRegistrar.dispatch(target);
+        } else {
+            target.onNotify(unbox(state));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T> Iterator<T> iterator(Object state) {
+        if (EMPTY == state) {
+            return Collections.<T>emptyList().iterator();
+        }
+        if (state instanceof Object[]) {
+            return new ArrayIterator<T>((Object[]) state);
+        }
+        if (state instanceof Large) {
+            return (Iterator<T>) ((Large) state).mRegistrar.iterator();
+        }
+        return Collections.singleton((T) unbox(state)).iterator();
+    }
+
+    /**
+     * @return The immutable object that identifies the state's listeners for {@link VersionStamp}: the state
+     *         itself, or the current snapshot of the registrar wrapped by a {@link Large} state.
+     */
+    static Object snapshotSource(Object state) {
+        return (state instanceof Large) ? ((Large) state).mRegistrar.snapshot() : state;
+    }
+
+    /**
+     * @param  state  The state.
+     * @param  source The value returned by {@link #snapshotSource(Object)} for the state.
+     * @return The listeners of the state in order. Must not be modified.
+     */
+    static Object[] listenersOf(Object state, Object source) {
+        if (EMPTY == state) {
+            return RegistrarSnapshot.NO_LISTENERS;
+        }
+        if (state instanceof Object[]) {
+            return (Object[]) state;
+        }
+        if (state instanceof Large) {
+            return ((RegistrarSnapshot<?>) source).listeners();
+        }
+        return new Object[]{unbox(state)};
+    }
+
+    // +----------------------------------------------------------------------+
+    // | PRIVATE
+    // +----------------------------------------------------------------------+
+    private static Object single(Object listener) {
+        return (listener instanceof Object[]) ? new Boxed(listener) : listener;
+    }
+
+    private static Object unbox(Object state) {
+        return (state instanceof Boxed) ? ((Boxed) state).mListener : state;
+    }
+
+    private static int indexOf(Object[] listeners, Object listener) {
+        for (int i = 0; i < listeners.length; ++i) {
+            if (listeners[i] == listener) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ *
+ *                                ^ ^
+ *                                O O
+ *                              /    )
+ *                             /  ,,
+ * Bubo – Observable Contracts and Specialized Implementations.
+ *                              |/
+ * Copyright 2015 FiftyThree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fiftythree.bubo;
+
+import com.fiftythree.bubo.annotations.CopyOnWrite;
+import com.fiftythree.bubo.annotations.ThreadSafe;
+
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * A thread-safe registrar whose representation changes with its size, for the many observables which have
+ * no listeners or one listener. An empty registrar references a shared sentinel and a registrar with one
+ * listener references only that listener; unlike {@link ThreadSafeRegistrar} there is no lock object. Up to
+ * eight listeners are kept in a small array which is replaced using compare-and-set. Beyond that the registrar
+ * switches to a {@link ThreadSafeRegistrar} and, so that no concurrent registration can be lost, keeps it for
+ * the rest of its life.
+ *
+ * <p>Dispatching to an empty or single-listener registrar is a volatile read, a reference comparison or two
+ * type checks and a direct call, with no iteration.</p>
+ */
+@CopyOnWrite
+@ThreadSafe
+public class CompactThreadSafeRegistrar<LISTENER_TYPE> implements Registrar<LISTENER_TYPE> {
+
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<CompactThreadSafeRegistrar, Object> STATE =
+            AtomicReferenceFieldUpdater.newUpdater(CompactThreadSafeRegistrar.class, Object.class, "mState");
+
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<CompactThreadSafeRegistrar, VersionStamp> STAMP =
+            AtomicReferenceFieldUpdater.newUpdater(CompactThreadSafeRegistrar.class, VersionStamp.class, "mStamp");
+
+    private volatile Object mState;
+    // Versions the states snapshots are taken of. Null until the first snapshot.
+    private volatile VersionStamp mStamp;
+
+    public CompactThreadSafeRegistrar() {
+        mState = CompactState.EMPTY;
+        RegistrarRegistry.onCreated(this);
+    }
+
+    // +----------------------------------------------------------------------+
+    // | Registrar
+    // +----------------------------------------------------------------------+
+    @Override
+    public void addListener(LISTENER_TYPE listener) {
+        if (null == listener) {
+            throw new IllegalArgumentException("listener cannot be null.");
+        }
+        Object current;
+        Object next;
+        do {
+            current = mState;
+            if (current instanceof CompactState.Large) {
+                // Once large the state never changes again.
+                if (((CompactState.Large) current).add(listener)) {
+                    RegistrarRegistry.onListenerAdded(this);
+                }
+                return;
+            }
+            next = CompactState.add(current, listener, true);
+            if (next == current) {
+                return;
+            }
+        } while (!STATE.compareAndSet(this, current, next));
+        RegistrarRegistry.onListenerAdded(this);
+    }
+
+    @Override
+    public void removeListener(LISTENER_TYPE listener) {
+        if (null == listener) {
+            throw new IllegalArgumentException("listener cannot be null.");
+        }
+        Object current;
+        Object next;
+        do {
+            current = mState;
+            next = CompactState.remove(current, listener);
+            if (next == current) {
+                return;
+            }
+        } while (!STATE.compareAndSet(this, current, next));
+    }
+
+    @Override
+    public void clear() {
+        Object current;
+        do {
+            current = mState;
+            if (current instanceof CompactState.Large) {
+                ((CompactState.Large) current).mRegistrar.clear();
+                return;
+            }
+        } while (!STATE.compareAndSet(this, current, CompactState.EMPTY));
+    }
+
+    @Override
+    public int size() {
+        return CompactState.size(mState);
+    }
+
+    @Override
+    public void dispatch(Notifier<? super LISTENER_TYPE> notifier) {
+        if (null == notifier) {
+            throw new IllegalArgumentException("notifier cannot be null.");
+        }
+        CompactState.dispatch(mState, notifier);
+    }
+
+    @Override
+    public RegistrarSnapshot<LISTENER_TYPE> snapshot() {
+        final Object state = mState;
+        final Object source = CompactState.snapshotSource(state);
+        return new RegistrarSnapshot<LISTENER_TYPE>(CompactState.listenersOf(state, source),
+                VersionStamp.advance(STAMP, this, source));
+    }
+
+    @Override
+    public Editor<LISTENER_TYPE> edit() {
+        return new EditBatch<LISTENER_TYPE>() {
+            @Override
+            void onCommit() {
+                commitEdit(this);
+            }
+        };
+    }
+
+    // +----------------------------------------------------------------------+
+    // | Iterable
+    // +----------------------------------------------------------------------+
+    @Override
+    public Iterator<LISTENER_TYPE> iterator() {
+        return CompactState.iterator(mState);
+    }
+
+    // +----------------------------------------------------------------------+
+    // | PRIVATE
+    // +----------------------------------------------------------------------+
+    private void commitEdit(EditBatch<LISTENER_TYPE> batch) {
+        Object current;
+        Object next;
+        do {
+            current = mState;
+            next = CompactState.edit(current, batch, true);
+            if (current instanceof CompactState.Large) {
+                if (batch.hasAdds()) {
+                    RegistrarRegistry.onListenersAdded(this);
+                }
+                return;
+            }
+            if (next == current) {
+                return;
+            }
+        } while (!STATE.compareAndSet(this, current, next));
+        if (batch.appendedCount() > 0) {
+            RegistrarRegistry.onListenersAdded(this);
+        }
+    }
+}
@@ -0,0 +1,225 @@
+/*
+ *
+ *                                ^ ^
+ *                                O O
+ *                              /    )
+ *                             /  ,,
+ * Bubo – Observable Contracts and Specialized Implementations.
+ *                              |/
+ * Copyright 2015 FiftyThree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fiftythree.bubo;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Decorates a {@link Registrar} so that each dispatch notifies every listener concurrently, as a separate task
+ * on an {@link ExecutorService}, and returns once they have all finished. Use this when listeners block, on
+ * I/O for example: a dispatch then takes about as long as its slowest listener rather than the sum of all of
+ * them. On Java 21 or later an executor that starts a virtual thread per task
+ * ({@code Executors.newVirtualThreadPerTaskExecutor()}) makes a task per listener cheap enough for every
+ * dispatch.
+ *
+ * <p>The listeners notified are those in the wrapped registrar's {@link Registrar#snapshot()} when the dispatch
+ * starts, so the Atomic Dispatch Rule holds. Listeners are called in no particular order and concurrently
+ * with each other, so the notifier must be thread-safe.</p>
+ *
+ * <p>Dispatch is structured: it does not return while a listener it started is still running. If a listener
+ * throws, the others still run and, once they have finished, the exception thrown by the listener earliest in
+ * the snapshot is rethrown. If the optional timeout elapses first, the listeners still running are
+ * interrupted and waited for, those not yet started are never called, and a {@link DispatchTimeoutException}
+ * is thrown. Interrupting the dispatching thread does the same except that dispatch returns normally with the
+ * thread's interrupt status set. Either way a listener that ignores interruption delays dispatch until it
+ * returns.</p>
+ */
+public class ConcurrentDispatchRegistrar<LISTENER_TYPE> extends ForwardingRegistrar<LISTENER_TYPE> {
+
+    private final ExecutorService mExecutor;
+    // Zero for no timeout.
+    private final long mTimeoutNanos;
+
+    /**
+     * Create a registrar whose dispatches wait for every listener however long they take.
+     * @param delegate The registrar holding the listeners.
+     * @param executor Executor on which listeners are notified.
+     */
+    public ConcurrentDispatchRegistrar(Registrar<LISTENER_TYPE> delegate, ExecutorService executor) {
+        this(delegate, executor, 0);
+    }
+
+    /**
+     * @param delegate The registrar holding the listeners.
+     * @param executor Executor on which listeners are notified.
+     * @param timeout  The longest a dispatch waits for its listeners. Must be positive.
+     * @param unit     The unit of timeout.
+     */
+    public ConcurrentDispatchRegistrar(Registrar<LISTENER_TYPE> delegate, ExecutorService executor, long timeout,
+                                       TimeUnit unit) {
+        this(delegate, executor, toTimeoutNanos(timeout, unit));
+    }
+
+    private ConcurrentDispatchRegistrar(Registrar<LISTENER_TYPE> delegate, ExecutorService executor,
+                                        long timeoutNanos) {
+        super(delegate);
+        if (null == executor) {
+            throw new IllegalArgumentException("executor cannot be null.");
+        }
+        mExecutor = executor;
+        mTimeoutNanos = timeoutNanos;
+    }
+
+    // +----------------------------------------------------------------------+
+    // | Registrar
+    // +----------------------------------------------------------------------+
+    /**
+     * Notify every listener concurrently and wait for them to finish.
+     *
+     * @param  notifier Called once for each listener, possibly concurrently. Must not be null.
+     * @throws IllegalArgumentException if notifier is null.
+     * @throws DispatchTimeoutException if listeners were still running when the timeout elapsed.
+     * @throws java.util.concurrent.RejectedExecutionException if the executor will not accept a listener's
+     *         task. Listeners already started are interrupted.
+     */
+    @Override
+    public void dispatch(Notifier<? super LISTENER_TYPE> notifier) {
+        if (null == notifier) {
+            throw new IllegalArgumentException("notifier cannot be null.");
+        }
+        final RegistrarSnapshot<LISTENER_TYPE> snapshot = delegate().snapshot();
+        if (snapshot.isEmpty()) {
+            return;
+        }
+        final long deadline = System.nanoTime() + mTimeoutNanos;
+        final List<ListenerTask<LISTENER_TYPE>> tasks = new ArrayList<ListenerTask<LISTENER_TYPE>>(snapshot.size());
+        final List<Future<?>> futures = new ArrayList<Future<?>>(snapshot.size());
+        try {
+            for (LISTENER_TYPE listener : snapshot) {
+                final ListenerTask<LISTENER_TYPE> task = new ListenerTask<LISTENER_TYPE>(notifier, listener);
+                tasks.add(task);
+                futures.add(mExecutor.submit(task));
+            }
+            Throwable failure = null;
+            for (Future<?> task : futures) {
+                try {
+                    if (0 == mTimeoutNanos) {
+                        task.get();
+                    } else {
+                        task.get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    }
+                } catch (ExecutionException e) {
+                    if (null == failure) {
+                        failure = e.getCause();
+                    }
+                }
+            }
+            if (failure instanceof RuntimeException) {
+                throw (RuntimeException) failure;
+            } else if (failure instanceof Error) {
+                throw (Error) failure;
+            } else if (null != failure) {
+                throw new RuntimeException(failure);
+            }
+        } catch (TimeoutException e) {
+            int unfinished = 0;
+            for (Future<?> task : futures) {
+                if (!task.isDone()) {
+                    ++unfinished;
+                }
+            }
+            throw new DispatchTimeoutException(unfinished, mTimeoutNanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            // Does nothing for tasks that have finished.
+            for (Future<?> task : futures) {
+                task.cancel(true);
+            }
+            join(tasks);
+        }
+    }
+
+    // +----------------------------------------------------------------------+
+    // | PRIVATE
+    // +----------------------------------------------------------------------+
+    private static long toTimeoutNanos(long timeout, TimeUnit unit) {
+        if (null == unit) {
+            throw new IllegalArgumentException("unit cannot be null.");
+        }
+        if (timeout <= 0) {
+            throw new IllegalArgumentException("timeout must be positive.");
+        }
+        return unit.toNanos(timeout);
+    }
+
+    /**
+     * Wait, ignoring interrupts, for every task that has started to finish, and stop the rest from starting.
+     */
+    private static void join(List<? extends ListenerTask<?>> tasks) {
+        boolean interrupted = false;
+        for (ListenerTask<?> task : tasks) {
+            if (task.mClaimed.compareAndSet(false, true)) {
+                // Never started, and now never will.
+                continue;
+            }
+            while (true) {
+                try {
+                    task.mFinished.await();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static final class ListenerTask<LISTENER_TYPE> implements Runnable {
+
+        private final Notifier<? super LISTENER_TYPE> mNotifier;
+        private final LISTENER_TYPE mListener;
+        // Set by whichever comes first: the task starting or the dispatch giving up on it.
+        final AtomicBoolean mClaimed;
+        final CountDownLatch mFinished;
+
+        ListenerTask(Notifier<? super LISTENER_TYPE> notifier, LISTENER_TYPE listener) {
+            mNotifier = notifier;
+            mListener = listener;
+            mClaimed = new AtomicBoolean();
+            mFinished = new CountDownLatch(1);
+        }
+
+        @Override
+        public void run() {
+            if (!mClaimed.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                mNotifier.onNotify(mListener);
+            } finally {
+                mFinished.countDown();
+            }
+        }
+    }
+}
@@ -0,0 +1,286 @@
+/*
+ *
+ *                                ^ ^
+ *                                O O
+ *                              /    )
+ *                             /  ,,
+ * Bubo – Observable Contracts and Specialized Implementations.
+ *                              |/
+ * Copyright 2015 FiftyThree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fiftythree.bubo;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decorates a {@link Registrar} so that notifications published faster than they can be delivered are
+ * collapsed into a single delivery of the most recent notification for each key. Use this for high frequency
+ * "latest value wins" observables such as progress or gauge updates; listeners are then called at the rate
+ * they can keep up with rather than the rate the value changes.
+ *
+ * <p>Notifications are published with {@link #publish(Object, Notifier)}. {@link #dispatch(Notifier)} publishes
+ * using the notifier itself as the key so an observable that reuses one notifier per kind of notification
+ * (which then reads the latest value when called) gets conflation without choosing keys. Pending keys are
+ * delivered in the order they were first published and each delivery is an ordinary dispatch on the wrapped
+ * registrar, which determines listener ordering and threading.</p>
+ *
+ * <p>Three delivery modes are available:</p>
+ * <ol>
+ *     <li><strong>Synchronous – </strong>the publishing thread delivers immediately. Anything published
+ *     while that dispatch is in flight, either from within a listener or from another thread, is conflated
+ *     and delivered by the dispatching thread once the current dispatch completes.</li>
+ *     <li><strong>Executor – </strong>deliveries happen on an {@link Executor}, one at a time. Anything
+ *     published while a delivery is queued or in flight is conflated.</li>
+ *     <li><strong>Windowed – </strong>deliveries happen on a {@link ScheduledExecutorService} at most once
+ *     per window. Everything published within a window is conflated.</li>
+ * </ol>
+ */
+public class ConflatingRegistrar<LISTENER_TYPE> extends ForwardingRegistrar<LISTENER_TYPE> {
+
+    private final Object mLock;
+    // Latest notifier for each key waiting to be delivered. Guarded by mLock.
+    private final LinkedHashMap<Object, Notifier<? super LISTENER_TYPE>> mPending;
+    // True while a delivery is in flight or scheduled. Guarded by mLock.
+    private boolean mActive;
+    private final Executor mExecutor;
+    private final ScheduledExecutorService mScheduler;
+    private final long mWindowNanos;
+    private final Runnable mDeliveryTask;
+
+    /**
+     * Create a registrar that delivers synchronously on the publishing thread.
+     * @param delegate The registrar holding the listeners.
+     */
+    public ConflatingRegistrar(Registrar<LISTENER_TYPE> delegate) {
+        this(delegate, null, null, 0);
+    }
+
+    /**
+     * Create a registrar that delivers on an executor.
+     * @param delegate The registrar holding the listeners.
+     * @param executor Executor on which notifications are delivered.
+     */
+    public ConflatingRegistrar(Registrar<LISTENER_TYPE> delegate, Executor executor) {
+        this(delegate, executor, null, 0);
+        if (null == executor) {
+            throw new IllegalArgumentException("executor cannot be null.");
+        }
+    }
+
+    /**
+     * Create a registrar that delivers at most once per window.
+     * @param delegate  The registrar holding the listeners.
+     * @param scheduler Executor on which notifications are delivered.
+     * @param window    The minimum time between deliveries. Must be positive.
+     * @param unit      The unit of window.
+     */
+    public ConflatingRegistrar(Registrar<LISTENER_TYPE> delegate, ScheduledExecutorService scheduler, long window,
+                               TimeUnit unit) {
+        this(delegate, scheduler, scheduler, unit.toNanos(window));
+        if (null == scheduler) {
+            throw new IllegalArgumentException("scheduler cannot be null.");
+        }
+        if (window <= 0) {
+            throw new IllegalArgumentException("window must be positive.");
+        }
+    }
+
+    private ConflatingRegistrar(Registrar<LISTENER_TYPE> delegate, Executor executor,
+                                ScheduledExecutorService scheduler, long windowNanos) {
+        super(delegate);
+        mLock = new Object();
+        mPending = new LinkedHashMap<Object, Notifier<? super LISTENER_TYPE>>();
+        mExecutor = executor;
+        mScheduler = scheduler;
+        mWindowNanos = windowNanos;
+        mDeliveryTask = new Runnable() {
+            @Override
+            public void run() {
+                deliverPending();
+            }
+        };
+    }
+
+    /**
+     * Publish a notification. If a notification with the same key is still waiting to be delivered it is
+     * replaced by this one.
+     *
+     * @param  key      Identifies notifications that supersede each other. Compared using equals.
+     * @param  notifier Called once for each registered listener when delivered. Must not be null.
+     * @throws IllegalArgumentException if key or notifier is null.
+     */
+    public void publish(Object key, Notifier<? super LISTENER_TYPE> notifier) {
+        if (null == key) {
+            throw new IllegalArgumentException("key cannot be null.");
+        }
+        if (null == notifier) {
+            throw new IllegalArgumentException("notifier cannot be null.");
+        }
+        final Notifier<? super LISTENER_TYPE> first;
+        synchronized (mLock) {
+            if (mActive) {
+                mPending.put(key, notifier);
+                return;
+            }
+            mActive = true;
+            if (null == mExecutor && mPending.isEmpty()) {
+                first = notifier;
+            } else {
+                // Queue behind, or replace, anything a failed delivery left pending.
+                mPending.put(key, notifier);
+                first = null;
+            }
+        }
+        if (null == mExecutor) {
+            deliverNow(first);
+        } else {
+            schedule();
+        }
+    }
+
+    // +----------------------------------------------------------------------+
+    // | Registrar
+    // +----------------------------------------------------------------------+
+    /**
+     * Equivalent to {@code publish(notifier, notifier)}.
+     */
+    @Override
+    public void dispatch(Notifier<? super LISTENER_TYPE> notifier) {
+        publish(notifier, notifier);
+    }
+
+    // +----------------------------------------------------------------------+
+    // | PRIVATE
+    // +----------------------------------------------------------------------+
+    /**
+     * Synchronous mode: deliver the given notifier, if any, and then everything pending.
+     */
+    private void deliverNow(Notifier<? super LISTENER_TYPE> notifier) {
+        boolean completed = false;
+        try {
+            if (null == notifier) {
+                notifier = takeNext();
+            }
+            while (null != notifier) {
+                delegate().dispatch(notifier);
+                notifier = takeNext();
+            }
+            completed = true;
+        } finally {
+            if (!completed) {
+                // Leave anything still pending for the next publisher to deliver.
+                synchronized (mLock) {
+                    mActive = false;
+                }
+            }
+        }
+    }
+
+    /**
+     * Executor and windowed modes.
+     */
+    private void deliverPending() {
+        boolean completed = false;
+        try {
+            if (null == mScheduler) {
+                Notifier<? super LISTENER_TYPE> notifier;
+                while (null != (notifier = takeNext())) {
+                    delegate().dispatch(notifier);
+                }
+            } else {
+                // Deliver only what was published during the window that just ended.
+                final LinkedHashMap<Object, Notifier<? super LISTENER_TYPE>> batch;
+                synchronized (mLock) {
+                    batch = new LinkedHashMap<Object, Notifier<? super LISTENER_TYPE>>(mPending);
+                    mPending.clear();
+                }
+                deliverBatch(batch);
+                synchronized (mLock) {
+                    if (mPending.isEmpty()) {
+                        mActive = false;
+                    }
+                }
+            }
+            completed = true;
+        } finally {
+            final boolean reschedule;
+            synchronized (mLock) {
+                reschedule = mActive && (!completed || null != mScheduler);
+            }
+            if (reschedule) {
+                schedule();
+            }
+        }
+    }
+
+    /**
+     * Windowed mode: deliver a window's notifiers in order. If one throws, the rest are returned to the pending
+     * notifiers, ahead of anything published since, unless a newer notifier has been published for their key.
+     */
+    private void deliverBatch(LinkedHashMap<Object, Notifier<? super LISTENER_TYPE>> batch) {
+        final Iterator<Notifier<? super LISTENER_TYPE>> notifiers = batch.values().iterator();
+        try {
+            while (notifiers.hasNext()) {
+                final Notifier<? super LISTENER_TYPE> notifier = notifiers.next();
+                notifiers.remove();
+                delegate().dispatch(notifier);
+            }
+        } finally {
+            if (!batch.isEmpty()) {
+                synchronized (mLock) {
+                    batch.putAll(mPending);
+                    mPending.clear();
+                    mPending.putAll(batch);
+                }
+            }
+        }
+    }
+
+    /**
+     * Remove and return the oldest pending notifier or, if there are none, mark this object idle.
+     */
+    private Notifier<? super LISTENER_TYPE> takeNext() {
+        synchronized (mLock) {
+            if (mPending.isEmpty()) {
+                mActive = false;
+                return null;
+            }
+            final Iterator<Map.Entry<Object, Notifier<? super LISTENER_TYPE>>> oldest = mPending.entrySet().iterator();
+            final Notifier<? super LISTENER_TYPE> notifier = oldest.next().getValue();
+            oldest.remove();
+            return notifier;
+        }
+    }
+
+    private void schedule() {
+        try {
+            if (null != mScheduler) {
+                mScheduler.schedule(mDeliveryTask, mWindowNanos, TimeUnit.NANOSECONDS);
+            } else {
+                mExecutor.execute(mDeliveryTask);
+            }
+        } catch (RuntimeException e) {
+            synchronized (mLock) {
+                mActive = false;
+            }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ *
+ *                                ^ ^
+ *                                O O
+ *                              /    )
+ *                             /  ,,
+ * Bubo – Observable Contracts and Specialized Implementations.
+ *                              |/
+ * Copyright 2015 FiftyThree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fiftythree.bubo;
+
+/**
+ * Thrown by {@link ConcurrentDispatchRegistrar#dispatch(Notifier)} when listeners are still running once the
+ * registrar's timeout has elapsed. By the time this is thrown those listeners have been interrupted and any
+ * that had not started will not be called.
+ */
+public class DispatchTimeoutException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int mUnfinishedCount;
+
+    /**
+     * @param unfinishedCount The number of listeners that had not finished.
+     * @param timeoutNanos    The timeout that elapsed.
+     */
+    public DispatchTimeoutException(int unfinishedCount, long timeoutNanos) {
+        super(unfinishedCount + " listener(s) did not finish within " + timeoutNanos + "ns.");
+        mUnfinishedCount = unfinishedCount;
+    }
+
+    /**
+     * @return The number of listeners that had not finished when the timeout elapsed.
+     */
+    public int getUnfinishedCount() {
+        return mUnfinishedCount;
+    }
+}
@@ -0,0 +1,350 @@
+/*
+ *
+ *                                ^ ^
+ *                                O O
+ *                              /    )
+ *                             /  ,,
+ * Bubo – Observable Contracts and Specialized Implementations.
+ *                              |/
+ * Copyright 2015 FiftyThree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fiftythree.bubo;
+
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * The changes recorded by a {@link Registrar.Editor}, applied by the registrar when the editor is committed.
+ * Priorities are recorded for {@link PriorityRegistrar}s and ignored by other registrars.
+ *
+ * <p>Registrars with an identity index simply replay the changes in order through their own (unpublished)
+ * add and remove operations and publish once. Copy-on-write registrars without one use
+ * {@link #applyTo(Object[])}, which computes the result of replaying the changes against an array in a single
+ * pass of the array plus a pass of the changes, and copies once.</p>
+ */
+abstract class EditBatch<LISTENER_TYPE> implements PriorityRegistrar.PriorityEditor<LISTENER_TYPE> {
+
+    private Object[] mListeners;
+    private int[] mPriorities;
+    private boolean[] mAdds;
+    private int mCount;
+    private boolean mCommitted;
+
+    // Populated by resolve().
+    private IdentityHashMap<Object, Outcome> mOutcomes;
+    private Object[] mAppended;
+    private int[] mAppendedPriorities;
+    private int mAppendedCount;
+    private int mRemovedCount;
+
+    EditBatch() {
+        mListeners = new Object[8];
+        mPriorities = new int[8];
+        mAdds = new boolean[8];
+    }
+
+    // +----------------------------------------------------------------------+
+    // | PriorityRegistrar.PriorityEditor
+    // +----------------------------------------------------------------------+
+    @Override
+    public PriorityRegistrar.PriorityEditor<LISTENER_TYPE> addListener(LISTENER_TYPE listener) {
+        record(listener, true, PriorityRegistrar.DEFAULT_PRIORITY);
+        return this;
+    }
+
+    @Override
+    public PriorityRegistrar.PriorityEditor<LISTENER_TYPE> addListener(LISTENER_TYPE listener, int priority) {
+        record(listener, true, priority);
+        return this;
+    }
+
+    @Override
+    public PriorityRegistrar.PriorityEditor<LISTENER_TYPE> removeListener(LISTENER_TYPE listener) {
+        record(listener, false, PriorityRegistrar.DEFAULT_PRIORITY);
+        return this;
+    }
+
+    @Override
+    public void commit() {
+        if (mCommitted) {
+            throw new IllegalStateException("This editor has already been committed.");
+        }
+        mCommitted = true;
+        if (mCount > 0) {
+            onCommit();
+        }
+    }
+
+    // +----------------------------------------------------------------------+
+    // | PACKAGE
+    // +----------------------------------------------------------------------+
+    /**
+     * Apply the recorded changes to the registrar. Called once, by {@link #commit()}, if any were recorded.
+     */
+    abstract void onCommit();
+
+    final void record(Object listener, boolean add, int priority) {
+        if (null == listener) {
+            throw new IllegalArgumentException("listener cannot be null.");
+        }
+        if (mCommitted) {
+            throw new IllegalStateException("This editor has already been committed.");
+        }
+        if (mCount == mListeners.length) {
+            mListeners = Arrays.copyOf(mListeners, mCount * 2);
+            mPriorities = Arrays.copyOf(mPriorities, mCount * 2);
+            mAdds = Arrays.copyOf(mAdds, mCount * 2);
+        }
+        mListeners[mCount] = listener;
+        mPriorities[mCount] = priority;
+        mAdds[mCount] = add;
+        ++mCount;
+    }
+
+    /**
+     * @return The number of recorded changes.
+     */
+    final int count() {
+        return mCount;
+    }
+
+    @SuppressWarnings("unchecked")
+    final LISTENER_TYPE listener(int index) {
+        return (LISTENER_TYPE) mListeners[index];
+    }
+
+    final boolean isAdd(int index) {
+        return mAdds[index];
+    }
+
+    /**
+     * Compute the outcome of replaying the changes, in order, against the given listeners. Afterwards
+     * {@link #isRemoved(Object)} and the appended listeners describe the result.
+     *
+     * @param  current The registered listeners. Not modified.
+     * @return True if replaying the changes changes the listeners.
+     */
+    final boolean resolve(Object[] current) {
+        final IdentityHashMap<Object, Outcome> outcomes = new IdentityHashMap<Object, Outcome>(mCount);
+        for (int i = 0; i < mCount; ++i) {
+            if (!outcomes.containsKey(mListeners[i])) {
+                outcomes.put(mListeners[i], new Outcome());
+            }
+        }
+        for (Object listener : current) {
+            final Outcome outcome = outcomes.get(listener);
+            if (null != outcome) {
+                outcome.mInPlace = true;
+            }
+        }
+        int appended = 0;
+        for (int i = 0; i < mCount; ++i) {
+            final Outcome outcome = outcomes.get(mListeners[i]);
+            if (mAdds[i]) {
+                if (!outcome.mInPlace && outcome.mAppendedAt < 0) {
+                    outcome.mAppendedAt = appended++;
+                    outcome.mPriority = mPriorities[i];
+                }
+            } else if (outcome.mAppendedAt >= 0) {
+                outcome.mAppendedAt = -1;
+            } else if (outcome.mInPlace) {
+                outcome.mInPlace = false;
+                outcome.mRemoved = true;
+            }
+        }
+        // Appended positions are assigned in order of addition; a later removal leaves a gap which is squeezed
+        // out here.
+        final Object[] appendedListeners = new Object[appended];
+        final int[] appendedPriorities = new int[appended];
+        int removed = 0;
+        for (Map.Entry<Object, Outcome> entry : outcomes.entrySet()) {
+            final Outcome outcome = entry.getValue();
+            if (outcome.mAppendedAt >= 0) {
+                appendedListeners[outcome.mAppendedAt] = entry.getKey();
+                appendedPriorities[outcome.mAppendedAt] = outcome.mPriority;
+            }
+            if (outcome.mRemoved) {
+                ++removed;
+            }
+        }
+        int count = 0;
+        for (int i = 0; i < appended; ++i) {
+            if (null != appendedListeners[i]) {
+                appendedListeners[count] = appendedListeners[i];
+                appendedPriorities[count] = appendedPriorities[i];
+                ++count;
+            }
+        }
+        mOutcomes = outcomes;
+        mAppended = appendedListeners;
+        mAppendedPriorities = appendedPriorities;
+        mAppendedCount = count;
+        mRemovedCount = removed;
+        return count > 0 || removed > 0;
+    }
+
+    /**
+     * @return True if the listener is removed from its current position by the resolved changes. A listener
+     *         that is removed and then added again is removed from its position and appended.
+     */
+    final boolean isRemoved(Object listener) {
+        final Outcome outcome = mOutcomes.get(listener);
+        return null != outcome && outcome.mRemoved;
+    }
+
+    /**
+     * @return True if any of the recorded changes is an add, whether or not it turns out to change anything.
+     */
+    final boolean hasAdds() {
+        for (int i = 0; i < mCount; ++i) {
+            if (mAdds[i]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return The number of listeners the resolved changes remove from their current positions.
+     */
+    final int removedCount() {
+        return mRemovedCount;
+    }
+
+    /**
+     * @return The number of listeners the resolved changes append.
+     */
+    final int appendedCount() {
+        return mAppendedCount;
+    }
+
+    /**
+     * @return The listeners the resolved changes append, in order of addition. Only the first
+     *         {@link #appendedCount()} are valid.
+     */
+    final Object[] appended() {
+        return mAppended;
+    }
+
+    /**
+     * @return The priorities the appended listeners were added with.
+     */
+    final int[] appendedPriorities() {
+        return mAppendedPriorities;
+    }
+
+    /**
+     * Replay the changes against an ordered array of listeners.
+     *
+     * @param  current The registered listeners in order. Not modified.
+     * @return A new array holding the result, or {@code current} if the changes leave it unchanged.
+     */
+    final Object[] applyTo(Object[] current) {
+        if (!resolve(current)) {
+            return current;
+        }
+        final Object[] next = new Object[current.length - mRemovedCount + mAppendedCount];
+        int count = 0;
+        for (Object listener : current) {
+            if (!isRemoved(listener)) {
+                next[count++] = listener;
+            }
+        }
+        System.arraycopy(mAppended, 0, next, count, mAppendedCount);
+        return next;
+    }
+
+    /**
+     * Replay the changes against an ordered array of weak references. References whose referent has been
+     * collected are dropped and the references of listeners which stay registered are reused.
+     *
+     * @param  current The registered references in order. Not modified.
+     * @param  owner   The owner to register new references with the shared reference reaper, or null to create
+     *                 plain weak references.
+     * @return A new array holding the result, or {@code current} if it has no collected references and the
+     *         changes leave it unchanged.
+     */
+    @SuppressWarnings("unchecked")
+    final WeakReference<LISTENER_TYPE>[] applyToWeak(WeakReference<LISTENER_TYPE>[] current,
+                                                      ReferenceReaper.Owner owner) {
+        // Holding the live listeners strongly keeps them from being collected part way through.
+        final Object[] live = new Object[current.length];
+        final WeakReference<LISTENER_TYPE>[] liveReferences
+                = EditBatch.<LISTENER_TYPE>newWeakReferences(current.length);
+        int liveCount = 0;
+        for (WeakReference<LISTENER_TYPE> reference : current) {
+            final LISTENER_TYPE listener = reference.get();
+            if (null != listener) {
+                live[liveCount] = listener;
+                liveReferences[liveCount] = reference;
+                ++liveCount;
+            }
+        }
+        final Object[] listeners = (liveCount == live.length) ? live : Arrays.copyOf(live, liveCount);
+        if (!resolve(listeners) && liveCount == current.length) {
+            return current;
+        }
+        final WeakReference<LISTENER_TYPE>[] next
+                = EditBatch.<LISTENER_TYPE>newWeakReferences(liveCount - mRemovedCount + mAppendedCount);
+        int count = 0;
+        for (int i = 0; i < liveCount; ++i) {
+            if (!isRemoved(live[i])) {
+                next[count++] = liveReferences[i];
+            }
+        }
+        for (int i = 0; i < mAppendedCount; ++i) {
+            final LISTENER_TYPE listener = (LISTENER_TYPE) mAppended[i];
+            next[count++] = (null != owner)
+                    ? new ReferenceReaper.OwnedReference<LISTENER_TYPE>(listener, owner)
+                    : new WeakReference<LISTENER_TYPE>(listener);
+        }
+        return next;
+    }
+
+    /**
+     * Record the changes, in order, with another registrar's editor and commit it.
+     */
+    final void replayOn(Registrar<? super LISTENER_TYPE> registrar) {
+        final Registrar.Editor<? super LISTENER_TYPE> editor = registrar.edit();
+        for (int i = 0; i < mCount; ++i) {
+            if (mAdds[i]) {
+                editor.addListener(listener(i));
+            } else {
+                editor.removeListener(listener(i));
+            }
+        }
+        editor.commit();
+    }
+
+    // +----------------------------------------------------------------------+
+    // | PRIVATE
+    // +----------------------------------------------------------------------+
+    @SuppressWarnings("unchecked")
+    private static <T> WeakReference<T>[] newWeakReferences(int length) {
+        return (WeakReference<T>[]) new WeakReference<?>[length];
+    }
+
+    private static final class Outcome {
+        // Registered before the edit and still in its original position.
+        boolean mInPlace;
+        // Registered before the edit and removed from its original position.
+        boolean mRemoved;
+        // Order of the add that appends the listener, or -1 if it is not appended.
+        int mAppendedAt = -1;
+        int mPriority;
+    }
+}
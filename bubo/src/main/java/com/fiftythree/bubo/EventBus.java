@@ -0,0 +1,218 @@
+/*
+ *
+ *                                ^ ^
+ *                                O O
+ *                              /    )
+ *                             /  ,,
+ * Bubo – Observable Contracts and Specialized Implementations.
+ *                              |/
+ * Copyright 2015 FiftyThree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fiftythree.bubo;
+
+import com.fiftythree.bubo.annotations.ThreadSafe;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Routes events to subscribers by type. A subscriber registered for a class or interface receives every
+ * posted event that is an instance of it, so a subscriber to {@code Object} receives everything.
+ *
+ * <p>Subscribers for each type are held in a {@link ThreadSafeRegistrar}. The subscribers that apply to a
+ * concrete event class, across all of its supertypes and interfaces, are resolved once and cached as a single
+ * array, so {@link #post(Object)} is a map lookup and an array walk. Subscribing or unsubscribing a type
+ * evicts only the cached arrays of its subtypes.</p>
+ *
+ * <p>Subscribers are called on the posting thread, those of the event's own class first, then those of its
+ * superclasses from nearest to {@code Object}, then those of its interfaces. Within a type they are called in
+ * registration order. A subscriber registered for more than one type an event matches is called once for each.
+ * An exception thrown by a subscriber propagates out of {@code post} and the remaining subscribers are not
+ * called.</p>
+ */
+@ThreadSafe
+public final class EventBus {
+
+    private static final EventSubscriber<?>[] EMPTY = new EventSubscriber<?>[0];
+
+    private final ConcurrentMap<Class<?>, ThreadSafeRegistrar<EventSubscriber<?>>> mRegistrars;
+    private final ConcurrentMap<Class<?>, Class<?>[]> mHierarchies;
+    private final ConcurrentMap<Class<?>, EventSubscriber<?>[]> mResolved;
+    private final AtomicLong mVersion;
+
+    public EventBus() {
+        mRegistrars = new ConcurrentHashMap<Class<?>, ThreadSafeRegistrar<EventSubscriber<?>>>();
+        mHierarchies = new ConcurrentHashMap<Class<?>, Class<?>[]>();
+        mResolved = new ConcurrentHashMap<Class<?>, EventSubscriber<?>[]>();
+        mVersion = new AtomicLong();
+    }
+
+    /**
+     * Receive events of the given type and its subtypes. Subscribing the same subscriber to the same type
+     * more than once has no effect.
+     *
+     * @param type       The type of event to receive.
+     * @param subscriber The subscriber.
+     */
+    public <EVENT_TYPE> void subscribe(Class<EVENT_TYPE> type, EventSubscriber<? super EVENT_TYPE> subscriber) {
+        if (null == type) {
+            throw new IllegalArgumentException("type cannot be null.");
+        }
+        if (null == subscriber) {
+            throw new IllegalArgumentException("subscriber cannot be null.");
+        }
+        ThreadSafeRegistrar<EventSubscriber<?>> registrar = mRegistrars.get(type);
+        if (null == registrar) {
+            final ThreadSafeRegistrar<EventSubscriber<?>> created = new ThreadSafeRegistrar<EventSubscriber<?>>();
+            registrar = mRegistrars.putIfAbsent(type, created);
+            if (null == registrar) {
+                registrar = created;
+            }
+        }
+        registrar.addListener(subscriber);
+        invalidate(type);
+    }
+
+    /**
+     * Stop receiving events of the given type. Subscriptions to other types are unaffected.
+     *
+     * @param type       The type the subscriber subscribed to.
+     * @param subscriber The subscriber.
+     */
+    public <EVENT_TYPE> void unsubscribe(Class<EVENT_TYPE> type, EventSubscriber<? super EVENT_TYPE> subscriber) {
+        if (null == type) {
+            throw new IllegalArgumentException("type cannot be null.");
+        }
+        if (null == subscriber) {
+            throw new IllegalArgumentException("subscriber cannot be null.");
+        }
+        final ThreadSafeRegistrar<EventSubscriber<?>> registrar = mRegistrars.get(type);
+        if (null != registrar) {
+            registrar.removeListener(subscriber);
+            invalidate(type);
+        }
+    }
+
+    /**
+     * Deliver an event to every subscriber of its class, superclasses and interfaces.
+     *
+     * @param event The event to post.
+     */
+    @SuppressWarnings("unchecked")
+    public void post(Object event) {
+        if (null == event) {
+            throw new IllegalArgumentException("event cannot be null.");
+        }
+        final Class<?> eventClass = event.getClass();
+        EventSubscriber<?>[] subscribers = mResolved.get(eventClass);
+        if (null == subscribers) {
+            subscribers = resolve(eventClass);
+        }
+        for (EventSubscriber<?> subscriber : subscribers) {
+            ((EventSubscriber<Object>) subscriber).onEvent(event);
+        }
+    }
+
+    /**
+     * @return The number of subscribers a posted instance of the given class would be delivered to.
+     */
+    public int subscriberCount(Class<?> eventClass) {
+        if (null == eventClass) {
+            throw new IllegalArgumentException("eventClass cannot be null.");
+        }
+        final EventSubscriber<?>[] subscribers = mResolved.get(eventClass);
+        return (null == subscribers) ? resolve(eventClass).length : subscribers.length;
+    }
+
+    /**
+     * @return The number of event classes whose subscribers are currently cached.
+     */
+    int resolvedCount() {
+        return mResolved.size();
+    }
+
+    // +----------------------------------------------------------------------+
+    // | PRIVATE
+    // +----------------------------------------------------------------------+
+    /**
+     * Build and cache the subscriber array for a class. The version is read before the registrars and
+     * re-checked after publishing to the cache. Any change that raced the build either bumped the version
+     * before the re-check, in which case the entry is withdrawn here, or evicts it afterwards in
+     * {@link #invalidate(Class)}.
+     */
+    private EventSubscriber<?>[] resolve(Class<?> eventClass) {
+        final long version = mVersion.get();
+        final Class<?>[] hierarchy = hierarchyOf(eventClass);
+        final List<Object> flattened = new ArrayList<Object>();
+        for (Class<?> type : hierarchy) {
+            final ThreadSafeRegistrar<EventSubscriber<?>> registrar = mRegistrars.get(type);
+            if (null != registrar) {
+                for (Object subscriber : registrar.listeners()) {
+                    flattened.add(subscriber);
+                }
+            }
+        }
+        final EventSubscriber<?>[] subscribers = flattened.isEmpty()
+                ? EMPTY : flattened.toArray(new EventSubscriber<?>[flattened.size()]);
+        mResolved.put(eventClass, subscribers);
+        if (mVersion.get() != version) {
+            mResolved.remove(eventClass, subscribers);
+        }
+        return subscribers;
+    }
+
+    private void invalidate(Class<?> type) {
+        mVersion.incrementAndGet();
+        final Iterator<Map.Entry<Class<?>, EventSubscriber<?>[]>> entries = mResolved.entrySet().iterator();
+        while (entries.hasNext()) {
+            if (type.isAssignableFrom(entries.next().getKey())) {
+                entries.remove();
+            }
+        }
+    }
+
+    private Class<?>[] hierarchyOf(Class<?> eventClass) {
+        Class<?>[] hierarchy = mHierarchies.get(eventClass);
+        if (null == hierarchy) {
+            final Set<Class<?>> types = new LinkedHashSet<Class<?>>();
+            final ArrayDeque<Class<?>> interfaces = new ArrayDeque<Class<?>>();
+            for (Class<?> type = eventClass; null != type; type = type.getSuperclass()) {
+                types.add(type);
+                for (Class<?> implemented : type.getInterfaces()) {
+                    interfaces.add(implemented);
+                }
+            }
+            while (!interfaces.isEmpty()) {
+                final Class<?> implemented = interfaces.poll();
+                if (types.add(implemented)) {
+                    for (Class<?> extended : implemented.getInterfaces()) {
+                        interfaces.add(extended);
+                    }
+                }
+            }
+            hierarchy = types.toArray(new Class<?>[types.size()]);
+            mHierarchies.putIfAbsent(eventClass, hierarchy);
+        }
+        return hierarchy;
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ *
+ *                                ^ ^
+ *                                O O
+ *                              /    )
+ *                             /  ,,
+ * Bubo – Observable Contracts and Specialized Implementations.
+ *                              |/
+ * Copyright 2015 FiftyThree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fiftythree.bubo;
+
+import java.util.Iterator;
+
+/**
+ * A {@link Registrar} that forwards every call to another registrar. Subclass this to decorate an existing
+ * registrar with additional behaviour; the decorator inherits the threading, ordering, and reference
+ * characteristics of the registrar it wraps.
+ */
+public abstract class ForwardingRegistrar<LISTENER_TYPE> implements Registrar<LISTENER_TYPE> {
+
+    private final Registrar<LISTENER_TYPE> mDelegate;
+
+    protected ForwardingRegistrar(Registrar<LISTENER_TYPE> delegate) {
+        if (null == delegate) {
+            throw new IllegalArgumentException("delegate cannot be null.");
+        }
+        mDelegate = delegate;
+    }
+
+    /**
+     * @return The registrar this object forwards to.
+     */
+    protected final Registrar<LISTENER_TYPE> delegate() {
+        return mDelegate;
+    }
+
+    // +----------------------------------------------------------------------+
+    // | Registrar
+    // +----------------------------------------------------------------------+
+    @Override
+    public void addListener(LISTENER_TYPE listener) {
+        mDelegate.addListener(listener);
+    }
+
+    @Override
+    public void removeListener(LISTENER_TYPE listener) {
+        mDelegate.removeListener(listener);
+    }
+
+    @Override
+    public void clear() {
+        mDelegate.clear();
+    }
+
+    @Override
+    public int size() {
+        return mDelegate.size();
+    }
+
+    @Override
+    public void dispatch(Notifier<? super LISTENER_TYPE> notifier) {
+        mDelegate.dispatch(notifier);
+    }
+
+    @Override
+    public RegistrarSnapshot<LISTENER_TYPE> snapshot() {
+        return mDelegate.snapshot();
+    }
+
+    @Override
+    public Editor<LISTENER_TYPE> edit() {
+        return mDelegate.edit();
+    }
+
+    // +----------------------------------------------------------------------+
+    // | Iterable
+    // +----------------------------------------------------------------------+
+    @Override
+    public Iterator<LISTENER_TYPE> iterator() {
+        return mDelegate.iterator();
+    }
+}
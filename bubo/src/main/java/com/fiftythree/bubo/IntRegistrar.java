@@ -0,0 +1,48 @@
+/*
+ *
+ *                                ^ ^
+ *                                O O
+ *                              /    )
+ *                             /  ,,
+ * Bubo – Observable Contracts and Specialized Implementations.
+ *                              |/
+ * Copyright 2015 FiftyThree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fiftythree.bubo;
+
+import com.fiftythree.bubo.annotations.CopyOnWrite;
+import com.fiftythree.bubo.annotations.Locking;
+import com.fiftythree.bubo.annotations.ThreadSafe;
+
+/**
+ * A {@link ThreadSafeRegistrar} of {@link IntListener}s which can deliver {@code int} values without boxing.
+ * Registration, ordering and the Atomic Dispatch Rule are those of {@link ThreadSafeRegistrar};
+ * {@link #dispatch(int)} walks the same snapshot and does not allocate.
+ */
+@Locking
+@CopyOnWrite
+@ThreadSafe
+public class IntRegistrar extends ThreadSafeRegistrar<IntListener> {
+
+    /**
+     * Deliver a value to every registered listener in registration order.
+     * @param value The value to publish.
+     */
+    public void dispatch(int value) {
+        for (Object listener : listeners()) {
+            ((IntListener) listener).onValue(value);
+        }
+    }
+}
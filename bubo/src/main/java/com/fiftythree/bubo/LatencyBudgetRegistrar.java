@@ -0,0 +1,381 @@
+/*
+ *
+ *                                ^ ^
+ *                                O O
+ *                              /    )
+ *                             /  ,,
+ * Bubo – Observable Contracts and Specialized Implementations.
+ *                              |/
+ * Copyright 2015 FiftyThree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fiftythree.bubo;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Decorates a {@link Registrar} with a latency budget for each listener call made by
+ * {@link #dispatch(Notifier)}. A listener that keeps overrunning the budget is quarantined: it stays registered
+ * but is notified on an asynchronous lane instead of the publishing thread, so one slow listener cannot hold up
+ * the others or the publisher. Once its calls fit the budget again it is released and notified synchronously.
+ *
+ * <p>Each call over budget gives the listener a strike and each call within budget takes one away; a listener
+ * reaching the strike limit is quarantined. Calls to a quarantined listener are still timed and it is released
+ * after that many consecutive calls within budget. Each quarantined listener has its own lane, backed by the
+ * given executor, that notifies it one call at a time in the order they were dispatched. A listener keeps using
+ * its lane until calls already queued there have run, so it is never notified out of order or concurrently
+ * with itself because of a release.</p>
+ *
+ * <p>Listeners that are not quarantined are notified as the wrapped registrar dispatches, so the Atomic Dispatch
+ * Rule holds for them. Quarantined listeners are notified later, so notifiers must capture the notification's
+ * data rather than reusing a shared, mutable notifier. Exceptions thrown by a quarantined listener are thrown on
+ * the executor. The bookkeeping added by this class is thread-safe; otherwise this registrar has the threading
+ * characteristics of the one it wraps.</p>
+ */
+public class LatencyBudgetRegistrar<LISTENER_TYPE> extends ForwardingRegistrar<LISTENER_TYPE> {
+
+    /**
+     * The number of strikes after which a listener is quarantined if no strike limit is given.
+     */
+    public static final int DEFAULT_STRIKE_LIMIT = 3;
+
+    /**
+     * The number of consecutive calls within budget after which a quarantined listener is released if no
+     * recovery limit is given.
+     */
+    public static final int DEFAULT_RECOVERY_LIMIT = 8;
+
+    /**
+     * Reports listeners moving in and out of quarantine. Called on the thread whose call to the listener
+     * triggered the change, after the change has taken effect.
+     */
+    public interface QuarantineCallback<LISTENER_TYPE> {
+
+        /**
+         * @param listener A listener that will now be notified asynchronously.
+         */
+        void onQuarantined(LISTENER_TYPE listener);
+
+        /**
+         * @param listener A listener that will be notified synchronously again once calls already queued for it
+         *                 have run.
+         */
+        void onReleased(LISTENER_TYPE listener);
+    }
+
+    private final Executor mExecutor;
+    private final long mBudgetNanos;
+    private final int mStrikeLimit;
+    private final int mRecoveryLimit;
+    private final QuarantineCallback<? super LISTENER_TYPE> mCallback;
+    private final Object mLock;
+
+    // Only listeners with strikes, in quarantine, or with calls queued on their lane have an entry. Copied on
+    // write, while holding mLock, so dispatch reads it without locking.
+    private volatile Map<LISTENER_TYPE, ListenerLane> mLanes;
+
+    /**
+     * Create a registrar using the default strike and recovery limits and no callback.
+     * @param delegate The registrar holding the listeners.
+     * @param executor Executor on which quarantined listeners are notified.
+     * @param budget   The longest a single listener call may take. Must be positive.
+     * @param unit     The unit of budget.
+     */
+    public LatencyBudgetRegistrar(Registrar<LISTENER_TYPE> delegate, Executor executor, long budget,
+                                  TimeUnit unit) {
+        this(delegate, executor, budget, unit, DEFAULT_STRIKE_LIMIT, DEFAULT_RECOVERY_LIMIT, null);
+    }
+
+    /**
+     * @param delegate      The registrar holding the listeners.
+     * @param executor      Executor on which quarantined listeners are notified.
+     * @param budget        The longest a single listener call may take. Must be positive.
+     * @param unit          The unit of budget.
+     * @param strikeLimit   The number of strikes after which a listener is quarantined. Must be positive.
+     * @param recoveryLimit The number of consecutive calls within budget after which a quarantined listener is
+     *                      released. Must be positive.
+     * @param callback      Told when listeners are quarantined and released. May be null.
+     */
+    public LatencyBudgetRegistrar(Registrar<LISTENER_TYPE> delegate, Executor executor, long budget,
+                                  TimeUnit unit, int strikeLimit, int recoveryLimit,
+                                  QuarantineCallback<? super LISTENER_TYPE> callback) {
+        super(delegate);
+        if (null == executor) {
+            throw new IllegalArgumentException("executor cannot be null.");
+        }
+        if (null == unit) {
+            throw new IllegalArgumentException("unit cannot be null.");
+        }
+        if (budget <= 0) {
+            throw new IllegalArgumentException("budget must be positive.");
+        }
+        if (strikeLimit <= 0) {
+            throw new IllegalArgumentException("strikeLimit must be positive.");
+        }
+        if (recoveryLimit <= 0) {
+            throw new IllegalArgumentException("recoveryLimit must be positive.");
+        }
+        mExecutor = executor;
+        mBudgetNanos = unit.toNanos(budget);
+        mStrikeLimit = strikeLimit;
+        mRecoveryLimit = recoveryLimit;
+        mCallback = callback;
+        mLock = new Object();
+        mLanes = Collections.emptyMap();
+    }
+
+    /**
+     * @param  listener The listener to look up.
+     * @return true if listener is currently quarantined.
+     */
+    public boolean isQuarantined(LISTENER_TYPE listener) {
+        final ListenerLane lane = mLanes.get(listener);
+        return null != lane && lane.mQuarantined;
+    }
+
+    // +----------------------------------------------------------------------+
+    // | Registrar
+    // +----------------------------------------------------------------------+
+    /**
+     * Removes the listener and forgets its strikes. Calls already queued for it on a lane still run.
+     */
+    @Override
+    public void removeListener(LISTENER_TYPE listener) {
+        delegate().removeListener(listener);
+        forget(Collections.singletonList(listener));
+    }
+
+    @Override
+    public Editor<LISTENER_TYPE> edit() {
+        return new ForgettingEditor(delegate().edit());
+    }
+
+    @Override
+    public void clear() {
+        delegate().clear();
+        synchronized (mLock) {
+            mLanes = Collections.emptyMap();
+        }
+    }
+
+    /**
+     * Notify listeners within budget synchronously and quarantined listeners on their lanes.
+     *
+     * @param  notifier Called once for each listener. Must not be null.
+     * @throws IllegalArgumentException if notifier is null.
+     * @throws java.util.concurrent.RejectedExecutionException if the executor will not accept a lane's task.
+     */
+    @Override
+    public void dispatch(Notifier<? super LISTENER_TYPE> notifier) {
+        if (null == notifier) {
+            throw new IllegalArgumentException("notifier cannot be null.");
+        }
+        delegate().dispatch(new BudgetedNotifier(notifier));
+    }
+
+    // +----------------------------------------------------------------------+
+    // | PRIVATE
+    // +----------------------------------------------------------------------+
+    private Map<LISTENER_TYPE, ListenerLane> copyLanes() {
+        return new IdentityHashMap<LISTENER_TYPE, ListenerLane>(mLanes);
+    }
+
+    /**
+     * Score a finished call to listener.
+     * @param fromLane The lane that made the call, or null if it was made by dispatch.
+     */
+    private void onCallFinished(LISTENER_TYPE listener, ListenerLane fromLane, long elapsedNanos) {
+        if (null != fromLane && mLanes.get(listener) != fromLane) {
+            // The listener was removed, and perhaps registered again, while this call was queued.
+            return;
+        }
+        boolean quarantined = false;
+        boolean released = false;
+        if (elapsedNanos > mBudgetNanos) {
+            synchronized (mLock) {
+                ListenerLane lane = mLanes.get(listener);
+                if (null == lane) {
+                    lane = new ListenerLane(listener);
+                    final Map<LISTENER_TYPE, ListenerLane> lanes = copyLanes();
+                    lanes.put(listener, lane);
+                    mLanes = lanes;
+                }
+                lane.mRecoveries = 0;
+                if (!lane.mQuarantined && ++lane.mStrikes >= mStrikeLimit) {
+                    lane.mStrikes = 0;
+                    lane.mQuarantined = true;
+                    quarantined = true;
+                }
+            }
+        } else {
+            final ListenerLane lane = mLanes.get(listener);
+            if (null == lane) {
+                // The common case: a listener in good standing stayed within budget.
+                return;
+            }
+            synchronized (mLock) {
+                if (lane.mQuarantined) {
+                    if (++lane.mRecoveries >= mRecoveryLimit) {
+                        lane.mRecoveries = 0;
+                        lane.mQuarantined = false;
+                        released = true;
+                    }
+                } else if (lane.mStrikes > 0) {
+                    --lane.mStrikes;
+                }
+                if (!lane.mQuarantined && 0 == lane.mStrikes && 0 == lane.mQueued.get()
+                        && mLanes.get(listener) == lane) {
+                    final Map<LISTENER_TYPE, ListenerLane> lanes = copyLanes();
+                    lanes.remove(listener);
+                    mLanes = lanes;
+                }
+            }
+        }
+        if (null != mCallback) {
+            if (quarantined) {
+                mCallback.onQuarantined(listener);
+            } else if (released) {
+                mCallback.onReleased(listener);
+            }
+        }
+    }
+
+    private void forget(List<LISTENER_TYPE> listeners) {
+        synchronized (mLock) {
+            Map<LISTENER_TYPE, ListenerLane> lanes = null;
+            for (LISTENER_TYPE listener : listeners) {
+                if (mLanes.containsKey(listener)) {
+                    if (null == lanes) {
+                        lanes = copyLanes();
+                    }
+                    lanes.remove(listener);
+                }
+            }
+            if (null != lanes) {
+                mLanes = lanes;
+            }
+        }
+    }
+
+    private final class BudgetedNotifier implements Notifier<LISTENER_TYPE> {
+
+        private final Notifier<? super LISTENER_TYPE> mNotifier;
+
+        BudgetedNotifier(Notifier<? super LISTENER_TYPE> notifier) {
+            mNotifier = notifier;
+        }
+
+        @Override
+        public void onNotify(LISTENER_TYPE listener) {
+            final ListenerLane lane = mLanes.get(listener);
+            if (null != lane && lane.enqueue(mNotifier)) {
+                return;
+            }
+            final long start = System.nanoTime();
+            try {
+                mNotifier.onNotify(listener);
+            } finally {
+                onCallFinished(listener, null, System.nanoTime() - start);
+            }
+        }
+    }
+
+    private final class ListenerLane extends Mailbox<Notifier<? super LISTENER_TYPE>> {
+
+        private final LISTENER_TYPE mListener;
+        // Notifiers posted to this lane that have not finished running. Only incremented while holding mLock.
+        private final AtomicInteger mQueued;
+        // Read without mLock by dispatch; only written while holding it.
+        private volatile boolean mQuarantined;
+        // Guarded by mLock.
+        private int mStrikes;
+        private int mRecoveries;
+
+        ListenerLane(LISTENER_TYPE listener) {
+            super(mExecutor);
+            mListener = listener;
+            mQueued = new AtomicInteger();
+        }
+
+        /**
+         * Queue a call on this lane if the listener is quarantined or still has calls queued here.
+         * @return False if the listener should be notified synchronously instead.
+         */
+        boolean enqueue(Notifier<? super LISTENER_TYPE> notifier) {
+            // Most listeners with a lane only have strikes, so rule them out without locking. mQuarantined is read
+            // first: a release clears it while holding mLock, after any increment made while it was set.
+            if (!mQuarantined && 0 == mQueued.get()) {
+                return false;
+            }
+            // Confirmed while holding mLock so that onCallFinished cannot retire this lane between the check and
+            // the increment, leaving the call queued on a lane the next dispatch no longer sees.
+            synchronized (mLock) {
+                if (mLanes.get(mListener) != this || !(mQuarantined || mQueued.get() > 0)) {
+                    return false;
+                }
+                mQueued.incrementAndGet();
+            }
+            post(notifier);
+            return true;
+        }
+
+        @Override
+        protected void onMessage(Notifier<? super LISTENER_TYPE> notifier) {
+            final long start = System.nanoTime();
+            try {
+                notifier.onNotify(mListener);
+            } finally {
+                mQueued.decrementAndGet();
+                onCallFinished(mListener, this, System.nanoTime() - start);
+            }
+        }
+    }
+
+    private final class ForgettingEditor implements Editor<LISTENER_TYPE> {
+
+        private final Editor<LISTENER_TYPE> mEditor;
+        private final List<LISTENER_TYPE> mRemoved;
+
+        ForgettingEditor(Editor<LISTENER_TYPE> editor) {
+            mEditor = editor;
+            mRemoved = new ArrayList<LISTENER_TYPE>();
+        }
+
+        @Override
+        public Editor<LISTENER_TYPE> addListener(LISTENER_TYPE listener) {
+            mEditor.addListener(listener);
+            return this;
+        }
+
+        @Override
+        public Editor<LISTENER_TYPE> removeListener(LISTENER_TYPE listener) {
+            mEditor.removeListener(listener);
+            mRemoved.add(listener);
+            return this;
+        }
+
+        @Override
+        public void commit() {
+            mEditor.commit();
+            forget(mRemoved);
+        }
+    }
+}
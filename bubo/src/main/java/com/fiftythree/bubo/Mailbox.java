@@ -0,0 +1,102 @@
+/*
+ *
+ *                                ^ ^
+ *                                O O
+ *                              /    )
+ *                             /  ,,
+ * Bubo – Observable Contracts and Specialized Implementations.
+ *                              |/
+ * Copyright 2015 FiftyThree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fiftythree.bubo;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A lock-free, unbounded queue of messages that are handled one at a time, in the order they were posted, on
+ * an {@link Executor}.
+ *
+ * <p>Posting a message is a single lock-free enqueue. The first post to an idle mailbox also submits the
+ * mailbox to the executor; that task then handles messages until the queue is empty. At most one such task
+ * is ever pending or running so {@link #onMessage(Object)} is never called concurrently with itself, although
+ * successive calls may happen on different threads.</p>
+ */
+abstract class Mailbox<MESSAGE_TYPE> implements Runnable {
+
+    private final Executor mExecutor;
+    private final ConcurrentLinkedQueue<MESSAGE_TYPE> mQueue;
+    private final AtomicBoolean mScheduled;
+
+    Mailbox(Executor executor) {
+        if (null == executor) {
+            throw new IllegalArgumentException("executor cannot be null.");
+        }
+        mExecutor = executor;
+        mQueue = new ConcurrentLinkedQueue<MESSAGE_TYPE>();
+        mScheduled = new AtomicBoolean();
+    }
+
+    /**
+     * Handle a single message. Called on the executor, never concurrently with another call.
+     * @param message A message passed to {@link #post(Object)}.
+     */
+    protected abstract void onMessage(MESSAGE_TYPE message);
+
+    /**
+     * Queue a message for handling on the executor. Safe to call from any thread, including from within
+     * {@link #onMessage(Object)}.
+     * @param message The message to queue. Must not be null.
+     */
+    final void post(MESSAGE_TYPE message) {
+        mQueue.offer(message);
+        schedule();
+    }
+
+    // +----------------------------------------------------------------------+
+    // | Runnable
+    // +----------------------------------------------------------------------+
+    @Override
+    public final void run() {
+        try {
+            MESSAGE_TYPE message;
+            while (null != (message = mQueue.poll())) {
+                onMessage(message);
+            }
+        } finally {
+            mScheduled.set(false);
+            // A message posted after our last poll but before we cleared mScheduled would otherwise be
+            // stranded. This also resumes handling after onMessage threw.
+            if (!mQueue.isEmpty()) {
+                schedule();
+            }
+        }
+    }
+
+    // +----------------------------------------------------------------------+
+    // | PRIVATE
+    // +----------------------------------------------------------------------+
+    private void schedule() {
+        if (mScheduled.compareAndSet(false, true)) {
+            try {
+                mExecutor.execute(this);
+            } catch (RuntimeException e) {
+                mScheduled.set(false);
+                throw e;
+            }
+        }
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ *
+ *                                ^ ^
+ *                                O O
+ *                              /    )
+ *                             /  ,,
+ * Bubo – Observable Contracts and Specialized Implementations.
+ *                              |/
+ * Copyright 2015 FiftyThree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fiftythree.bubo;
+
+/**
+ * Delivers a single notification to a listener. Passed to {@link Registrar#dispatch(Notifier)} which calls
+ * {@link #onNotify(Object)} once for each registered listener.
+ *
+ * <p>Observables that notify frequently should keep and reuse a notifier instance for each kind of
+ * notification rather than creating one per dispatch.</p>
+ *
+ * @param <LISTENER_TYPE> The listener type this object notifies.
+ */
+public interface Notifier<LISTENER_TYPE> {
+
+    /**
+     * Notify a single listener.
+     * @param listener A listener registered with the dispatching registrar. Never null.
+     */
+    void onNotify(LISTENER_TYPE listener);
+}
@@ -0,0 +1,156 @@
+/*
+ *
+ *                                ^ ^
+ *                                O O
+ *                              /    )
+ *                             /  ,,
+ * Bubo – Observable Contracts and Specialized Implementations.
+ *                              |/
+ * Copyright 2015 FiftyThree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fiftythree.bubo;
+
+import com.fiftythree.bubo.annotations.Locking;
+import com.fiftythree.bubo.annotations.ThreadSafe;
+import com.fiftythree.bubo.annotations.Unordered;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * An {@link UnorderedThreadSafeRegistrar} whose {@link #dispatch(Notifier)} fans out across a
+ * {@link ForkJoinPool} when the registrar holds at least a given number of listeners. The snapshot is split
+ * into ranges which are notified in parallel and dispatch returns only once every listener has been notified,
+ * so callers still see a synchronous dispatch. This relaxes <em>Apartment Threaded Dispatch</em>: listeners
+ * may be called on pool threads and concurrently with each other, so they must be thread-safe. The
+ * <em>Atomic Dispatch</em> guarantee is unchanged.
+ *
+ * <p>This is a separate class so that {@link UnorderedThreadSafeRegistrar} itself does not depend on the
+ * fork/join framework, which needs Java 7 (or Android API level 21).</p>
+ */
+@Locking
+@ThreadSafe
+@Unordered
+public class ParallelUnorderedThreadSafeRegistrar<LISTENER_TYPE> extends UnorderedThreadSafeRegistrar<LISTENER_TYPE> {
+
+    private final ForkJoinPool mPool;
+    private final int mParallelThreshold;
+
+    /**
+     * @param concurrencyLevel  The expected number of threads (de)registering listeners concurrently.
+     * @param pool              The pool on which listeners are notified when dispatching in parallel.
+     * @param parallelThreshold The minimum number of listeners for which dispatch fans out to the pool. Below
+     *                          this dispatch notifies every listener on the calling thread. Set this high
+     *                          enough that the per-listener work outweighs the cost of forking tasks.
+     */
+    public ParallelUnorderedThreadSafeRegistrar(int concurrencyLevel, ForkJoinPool pool, int parallelThreshold) {
+        super(concurrencyLevel);
+        if (null == pool) {
+            throw new IllegalArgumentException("pool cannot be null.");
+        }
+        if (parallelThreshold < 1) {
+            throw new IllegalArgumentException("parallelThreshold must be at least 1.");
+        }
+        mPool = pool;
+        mParallelThreshold = parallelThreshold;
+    }
+
+    // +----------------------------------------------------------------------+
+    // | Registrar
+    // +----------------------------------------------------------------------+
+    @SuppressWarnings("unchecked")
+    @Override
+    public void dispatch(Notifier<? super LISTENER_TYPE> notifier) {
+        if (null == notifier) {
+            throw new IllegalArgumentException("notifier cannot be null.");
+        }
+        final Object[] listeners = listeners();
+        if (listeners.length >= mParallelThreshold) {
+            final int leafSize = Math.max(1, listeners.length / (mPool.getParallelism() << 2));
+            final FanOutTask task = new FanOutTask(listeners, 0, listeners.length, leafSize, notifier);
+            if (ForkJoinTask.inForkJoinPool() && ForkJoinTask.getPool() == mPool) {
+                task.invoke();
+            } else {
+                mPool.invoke(task);
+            }
+            return;
+        }
+        for (Object listener : listeners) {
+            notifier.onNotify((LISTENER_TYPE) listener);
+        }
+    }
+
+    // +----------------------------------------------------------------------+
+    // | PRIVATE
+    // +----------------------------------------------------------------------+
+    /**
+     * Notifies a range of a snapshot, splitting it in half until it is no larger than the leaf size. Unlike
+     * {@link ForkJoinTask#invokeAll(ForkJoinTask, ForkJoinTask)} both halves are always joined before a
+     * listener's exception is rethrown so no listener is still being notified when dispatch returns.
+     */
+    private static final class FanOutTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Object[] mListeners;
+        private final int mFrom;
+        private final int mTo;
+        private final int mLeafSize;
+        private final Notifier<Object> mNotifier;
+
+        @SuppressWarnings("unchecked")
+        FanOutTask(Object[] listeners, int from, int to, int leafSize, Notifier<?> notifier) {
+            mListeners = listeners;
+            mFrom = from;
+            mTo = to;
+            mLeafSize = leafSize;
+            mNotifier = (Notifier<Object>) notifier;
+        }
+
+        @Override
+        protected void compute() {
+            if (mTo - mFrom <= mLeafSize) {
+                for (int i = mFrom; i < mTo; ++i) {
+                    mNotifier.onNotify(mListeners[i]);
+                }
+                return;
+            }
+            final int middle = (mFrom + mTo) >>> 1;
+            final FanOutTask upper = new FanOutTask(mListeners, middle, mTo, mLeafSize, mNotifier);
+            upper.fork();
+            Throwable failure = null;
+            try {
+                new FanOutTask(mListeners, mFrom, middle, mLeafSize, mNotifier).compute();
+            } catch (Throwable t) {
+                failure = t;
+            }
+            try {
+                upper.join();
+            } catch (Throwable t) {
+                if (null == failure) {
+                    failure = t;
+                }
+            }
+            if (failure instanceof RuntimeException) {
+                throw (RuntimeException) failure;
+            } else if (failure instanceof Error) {
+                throw (Error) failure;
+            } else if (null != failure) {
+                throw new RuntimeException(failure);
+            }
+        }
+    }
+}
@@ -0,0 +1,271 @@
+/*
+ *
+ *                                ^ ^
+ *                                O O
+ *                              /    )
+ *                             /  ,,
+ * Bubo – Observable Contracts and Specialized Implementations.
+ *                              |/
+ * Copyright 2015 FiftyThree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fiftythree.bubo;
+
+import java.util.Arrays;
+
+/**
+ * An immutable, persistent vector of object slots. "Modifying" a vector returns a new vector which shares
+ * all unchanged structure with its predecessor so existing instances can continue to be read (e.g. by an
+ * in-progress notification dispatch) while changes are made.
+ *
+ * <p>This is the bit-partitioned trie popularized by Clojure's PersistentVector. Slots are stored in a tree of
+ * {@value #WIDTH}-element arrays with the most recent slots kept in a separate tail array. Appending a slot or
+ * replacing the value of an existing slot copies at most one path from the root to a leaf making both
+ * O(log<sub>32</sub> n) operations. Slots are never removed; callers that need removal store null in the slot
+ * and rebuild the vector using {@link #copyOf(Object[], int)} when the number of empty slots grows too large.</p>
+ *
+ * <p>An owner which knows that no earlier version is still being read can use {@link #appendInPlace(Object)}
+ * and {@link #setInPlace(int, Object)} instead. These write into the existing arrays, which may be shared
+ * with earlier versions, rather than copying a path. The tail is then allowed to keep spare capacity so
+ * appends only allocate once the tail is pushed into the tree.</p>
+ */
+final class PersistentVector {
+
+    private static final int BITS = 5;
+    static final int WIDTH = 1 << BITS;
+    private static final int MASK = WIDTH - 1;
+
+    static final PersistentVector EMPTY = new PersistentVector(0, BITS, new Object[WIDTH], new Object[0]);
+
+    private final int mCount;
+    private final int mShift;
+    private final Object[] mRoot;
+    private final Object[] mTail;
+
+    private PersistentVector(int count, int shift, Object[] root, Object[] tail) {
+        mCount = count;
+        mShift = shift;
+        mRoot = root;
+        mTail = tail;
+    }
+
+    /**
+     * Create a vector containing the first {@code count} elements of an array.
+     * @param  values The values to copy into the vector.
+     * @param  count  The number of values to copy.
+     * @return A new vector of size {@code count}.
+     */
+    static PersistentVector copyOf(Object[] values, int count) {
+        if (count == 0) {
+            return EMPTY;
+        }
+        final int tailOffset = tailOffset(count);
+        Object[] nodes = new Object[tailOffset >>> BITS];
+        for (int i = 0; i < nodes.length; ++i) {
+            nodes[i] = Arrays.copyOfRange(values, i << BITS, (i + 1) << BITS);
+        }
+        int shift = BITS;
+        while (nodes.length > WIDTH) {
+            final Object[] parents = new Object[(nodes.length + MASK) >>> BITS];
+            for (int i = 0; i < parents.length; ++i) {
+                final Object[] parent = new Object[WIDTH];
+                System.arraycopy(nodes, i << BITS, parent, 0, Math.min(WIDTH, nodes.length - (i << BITS)));
+                parents[i] = parent;
+            }
+            nodes = parents;
+            shift += BITS;
+        }
+        return new PersistentVector(count, shift, Arrays.copyOf(nodes, WIDTH),
+                Arrays.copyOfRange(values, tailOffset, count));
+    }
+
+    /**
+     * @return The number of slots in the vector.
+     */
+    int size() {
+        return mCount;
+    }
+
+    /**
+     * @param  index A slot index between 0 and {@link #size()} - 1.
+     * @return The value stored in the slot.
+     */
+    Object get(int index) {
+        return leafFor(index)[index & MASK];
+    }
+
+    /**
+     * Provides fast iteration. The leaf array containing slot {@code index} holds the slots
+     * {@code index & ~(WIDTH - 1)} up to at most the following {@link #WIDTH} - 1 slots.
+     * @param  index A slot index between 0 and {@link #size()} - 1.
+     * @return The internal array containing the given slot. Must not be modified.
+     */
+    Object[] leafFor(int index) {
+        if (index < 0 || index >= mCount) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (index >= tailOffset(mCount)) {
+            return mTail;
+        }
+        Object[] node = mRoot;
+        for (int level = mShift; level > 0; level -= BITS) {
+            node = (Object[]) node[(index >>> level) & MASK];
+        }
+        return node;
+    }
+
+    /**
+     * @param  value The value to store in a new slot at the end of the vector.
+     * @return A new vector of size {@link #size()} + 1.
+     */
+    PersistentVector append(Object value) {
+        final int tailCount = mCount - tailOffset(mCount);
+        if (tailCount < WIDTH) {
+            final Object[] newTail = Arrays.copyOf(mTail, tailCount + 1);
+            newTail[tailCount] = value;
+            return new PersistentVector(mCount + 1, mShift, mRoot, newTail);
+        }
+        // The tail is full. Push it into the tree and start a new one.
+        final Object[] newRoot;
+        int newShift = mShift;
+        if ((mCount >>> BITS) > (1 << mShift)) {
+            newRoot = new Object[WIDTH];
+            newRoot[0] = mRoot;
+            newRoot[1] = newPath(mShift, mTail);
+            newShift += BITS;
+        } else {
+            newRoot = pushTail(mShift, mRoot, mTail);
+        }
+        return new PersistentVector(mCount + 1, newShift, newRoot, new Object[] {value});
+    }
+
+    /**
+     * @param  index A slot index between 0 and {@link #size()} - 1.
+     * @param  value The new value for the slot.
+     * @return A new vector with the slot's value replaced.
+     */
+    PersistentVector set(int index, Object value) {
+        if (index < 0 || index >= mCount) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (index >= tailOffset(mCount)) {
+            final Object[] newTail = mTail.clone();
+            newTail[index & MASK] = value;
+            return new PersistentVector(mCount, mShift, mRoot, newTail);
+        }
+        return new PersistentVector(mCount, mShift, doSet(mShift, mRoot, index, value), mTail);
+    }
+
+    /**
+     * Like {@link #append(Object)} but writes into this vector's arrays where it can. This vector and every
+     * version it shares arrays with must not be read again.
+     * @param  value The value to store in a new slot at the end of the vector.
+     * @return A vector of size {@link #size()} + 1.
+     */
+    PersistentVector appendInPlace(Object value) {
+        final int tailCount = mCount - tailOffset(mCount);
+        if (tailCount < WIDTH) {
+            Object[] tail = mTail;
+            if (tailCount == tail.length) {
+                tail = Arrays.copyOf(tail, Math.min(WIDTH, Math.max(4, tailCount << 1)));
+            }
+            tail[tailCount] = value;
+            return new PersistentVector(mCount + 1, mShift, mRoot, tail);
+        }
+        // The tail is full. Push it into the tree and start a new one. EMPTY's root is shared by every vector
+        // that has not yet pushed a tail so it is never written to.
+        final Object[] root = (EMPTY.mRoot == mRoot) ? new Object[WIDTH] : mRoot;
+        final Object[] newRoot;
+        int newShift = mShift;
+        if ((mCount >>> BITS) > (1 << mShift)) {
+            newRoot = new Object[WIDTH];
+            newRoot[0] = root;
+            newRoot[1] = newPath(mShift, mTail);
+            newShift += BITS;
+        } else {
+            pushTailInPlace(mShift, root, mTail);
+            newRoot = root;
+        }
+        final Object[] newTail = new Object[4];
+        newTail[0] = value;
+        return new PersistentVector(mCount + 1, newShift, newRoot, newTail);
+    }
+
+    /**
+     * Like {@link #set(int, Object)} but writes into this vector's arrays. Every version this vector shares
+     * arrays with must not be read again.
+     * @param  index A slot index between 0 and {@link #size()} - 1.
+     * @param  value The new value for the slot.
+     * @return This vector.
+     */
+    PersistentVector setInPlace(int index, Object value) {
+        leafFor(index)[index & MASK] = value;
+        return this;
+    }
+
+    // +----------------------------------------------------------------------+
+    // | PRIVATE
+    // +----------------------------------------------------------------------+
+    private static int tailOffset(int count) {
+        return (count < WIDTH) ? 0 : ((count - 1) >>> BITS) << BITS;
+    }
+
+    private Object[] pushTail(int level, Object[] parent, Object[] tailNode) {
+        final int subIndex = ((mCount - 1) >>> level) & MASK;
+        final Object[] result = parent.clone();
+        final Object[] nodeToInsert;
+        if (level == BITS) {
+            nodeToInsert = tailNode;
+        } else {
+            final Object[] child = (Object[]) parent[subIndex];
+            nodeToInsert = (null != child) ? pushTail(level - BITS, child, tailNode) : newPath(level - BITS, tailNode);
+        }
+        result[subIndex] = nodeToInsert;
+        return result;
+    }
+
+    private void pushTailInPlace(int level, Object[] parent, Object[] tailNode) {
+        final int subIndex = ((mCount - 1) >>> level) & MASK;
+        if (level == BITS) {
+            parent[subIndex] = tailNode;
+            return;
+        }
+        final Object[] child = (Object[]) parent[subIndex];
+        if (null != child) {
+            pushTailInPlace(level - BITS, child, tailNode);
+        } else {
+            parent[subIndex] = newPath(level - BITS, tailNode);
+        }
+    }
+
+    private static Object[] newPath(int level, Object[] node) {
+        if (level == 0) {
+            return node;
+        }
+        final Object[] result = new Object[WIDTH];
+        result[0] = newPath(level - BITS, node);
+        return result;
+    }
+
+    private static Object[] doSet(int level, Object[] node, int index, Object value) {
+        final Object[] result = node.clone();
+        if (level == 0) {
+            result[index & MASK] = value;
+        } else {
+            final int subIndex = (index >>> level) & MASK;
+            result[subIndex] = doSet(level - BITS, (Object[]) node[subIndex], index, value);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ *
+ *                                ^ ^
+ *                                O O
+ *                              /    )
+ *                             /  ,,
+ * Bubo – Observable Contracts and Specialized Implementations.
+ *                              |/
+ * Copyright 2015 FiftyThree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fiftythree.bubo;
+
+/**
+ * A registrar which notifies listeners in priority order. Listeners with a higher priority are notified
+ * before listeners with a lower priority and listeners with the same priority are notified in the order they
+ * were registered. Use this when some listeners, such as cache invalidators, must observe a change before
+ * others, such as views which read from the cache.
+ *
+ * <p>The Observer Registration Idempotence Rule applies across priorities: adding a listener which is
+ * already registered does nothing, even when a different priority is given. Remove the listener first to
+ * change its priority.</p>
+ */
+public interface PriorityRegistrar<LISTENER_TYPE> extends Registrar<LISTENER_TYPE> {
+
+    /**
+     * The priority given to listeners registered using {@link #addListener(Object)}.
+     */
+    int DEFAULT_PRIORITY = 0;
+
+    /**
+     * Add a listener/observer registration to this object with the given priority.
+     *
+     * @param  listener The listener object to register. Must not be null.
+     * @param  priority Listeners with higher priorities are notified first.
+     * @throws IllegalArgumentException if listener is null.
+     */
+    void addListener(LISTENER_TYPE listener, int priority);
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>The returned editor can also record registrations with a priority.</p>
+     */
+    @Override
+    PriorityEditor<LISTENER_TYPE> edit();
+
+    /**
+     * An {@link Registrar.Editor} for a priority registrar.
+     */
+    interface PriorityEditor<LISTENER_TYPE> extends Registrar.Editor<LISTENER_TYPE> {
+
+        @Override
+        PriorityEditor<LISTENER_TYPE> addListener(LISTENER_TYPE listener);
+
+        /**
+         * Record a registration with the given priority. See
+         * {@link PriorityRegistrar#addListener(Object, int)}.
+         *
+         * @param  listener The listener object to register. Must not be null.
+         * @param  priority Listeners with higher priorities are notified first.
+         * @return This editor.
+         * @throws IllegalArgumentException if listener is null.
+         * @throws IllegalStateException    if this editor has been committed.
+         */
+        PriorityEditor<LISTENER_TYPE> addListener(LISTENER_TYPE listener, int priority);
+
+        @Override
+        PriorityEditor<LISTENER_TYPE> removeListener(LISTENER_TYPE listener);
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ *
+ *                                ^ ^
+ *                                O O
+ *                              /    )
+ *                             /  ,,
+ * Bubo – Observable Contracts and Specialized Implementations.
+ *                              |/
+ * Copyright 2015 FiftyThree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fiftythree.bubo;
+
+import com.fiftythree.bubo.annotations.CopyOnWrite;
+
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+
+/**
+ * A {@link PriorityRegistrar} that can only be created and used from a single thread.
+ *
+ * <p>Listeners are held in an array sorted by priority that is replaced on every change, so iteration and
+ * dispatch are a walk of a stable snapshot. An identity hash index of each listener's priority makes
+ * duplicate registrations O(1) and lets insertion and removal find their position by binary search.</p>
+ */
+@CopyOnWrite
+public class PrioritySingleThreadedRegistrar<LISTENER_TYPE> implements PriorityRegistrar<LISTENER_TYPE> {
+
+    private PrioritySnapshot mRegistrar;
+    // Maps each registered listener to its priority.
+    private final IdentityHashMap<LISTENER_TYPE, Integer> mIndex;
+    // Incremented whenever the registered listeners change.
+    private long mVersion;
+    // Built on demand and discarded whenever the registered listeners change.
+    private RegistrarSnapshot<LISTENER_TYPE> mSnapshot;
+
+    public PrioritySingleThreadedRegistrar() {
+        mRegistrar = PrioritySnapshot.EMPTY;
+        mIndex = new IdentityHashMap<LISTENER_TYPE, Integer>();
+        RegistrarRegistry.onCreated(this);
+    }
+
+    // +----------------------------------------------------------------------+
+    // | PriorityRegistrar
+    // +----------------------------------------------------------------------+
+    @Override
+    public void addListener(LISTENER_TYPE listener, int priority) {
+        if (null == listener) {
+            throw new IllegalArgumentException("listener cannot be null.");
+        }
+        if (!mIndex.containsKey(listener)) {
+            mIndex.put(listener, priority);
+            publish(mRegistrar.with(listener, priority));
+            RegistrarRegistry.onListenerAdded(this);
+        }
+    }
+
+    // +----------------------------------------------------------------------+
+    // | Registrar
+    // +----------------------------------------------------------------------+
+    @Override
+    public void addListener(LISTENER_TYPE listener) {
+        addListener(listener, DEFAULT_PRIORITY);
+    }
+
+    @Override
+    public void removeListener(LISTENER_TYPE listener) {
+        if (null == listener) {
+            throw new IllegalArgumentException("listener cannot be null.");
+        }
+        final Integer priority = mIndex.remove(listener);
+        if (null != priority) {
+            publish(mRegistrar.without(listener, priority));
+        }
+    }
+
+    @Override
+    public void clear() {
+        if (!mIndex.isEmpty()) {
+            mIndex.clear();
+            publish(PrioritySnapshot.EMPTY);
+        }
+    }
+
+    @Override
+    public int size() {
+        return mRegistrar.mListeners.length;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public void dispatch(Notifier<? super LISTENER_TYPE> notifier) {
+        if (null == notifier) {
+            throw new IllegalArgumentException("notifier cannot be null.");
+        }
+        for (Object listener : mRegistrar.mListeners) {
+            notifier.onNotify((LISTENER_TYPE) listener);
+        }
+    }
+
+    @Override
+    public RegistrarSnapshot<LISTENER_TYPE> snapshot() {
+        RegistrarSnapshot<LISTENER_TYPE> snapshot = mSnapshot;
+        if (null == snapshot) {
+            snapshot = new RegistrarSnapshot<LISTENER_TYPE>(mRegistrar.mListeners, mVersion);
+            mSnapshot = snapshot;
+        }
+        return snapshot;
+    }
+
+    @Override
+    public PriorityEditor<LISTENER_TYPE> edit() {
+        return new EditBatch<LISTENER_TYPE>() {
+            @Override
+            void onCommit() {
+                commitEdit(this);
+            }
+        };
+    }
+
+    // +----------------------------------------------------------------------+
+    // | Iterable
+    // +----------------------------------------------------------------------+
+    @Override
+    public Iterator<LISTENER_TYPE> iterator() {
+        return new ArrayIterator<LISTENER_TYPE>(mRegistrar.mListeners);
+    }
+
+    // +----------------------------------------------------------------------+
+    // | PRIVATE
+    // +----------------------------------------------------------------------+
+    private void commitEdit(EditBatch<LISTENER_TYPE> batch) {
+        if (resolveEdit(batch)) {
+            RegistrarRegistry.onListenersAdded(this);
+        }
+    }
+
+    /**
+     * @return True if any listener was added.
+     */
+    @SuppressWarnings("unchecked")
+    private boolean resolveEdit(EditBatch<LISTENER_TYPE> batch) {
+        final PrioritySnapshot current = mRegistrar;
+        if (!batch.resolve(current.mListeners)) {
+            return false;
+        }
+        for (Object listener : current.mListeners) {
+            if (batch.isRemoved(listener)) {
+                mIndex.remove(listener);
+            }
+        }
+        final Object[] appended = batch.appended();
+        final int[] appendedPriorities = batch.appendedPriorities();
+        for (int i = 0; i < batch.appendedCount(); ++i) {
+            mIndex.put((LISTENER_TYPE) appended[i], appendedPriorities[i]);
+        }
+        publish(current.edit(batch));
+        return batch.appendedCount() > 0;
+    }
+
+    private void publish(PrioritySnapshot next) {
+        mRegistrar = next;
+        ++mVersion;
+        mSnapshot = null;
+    }
+}
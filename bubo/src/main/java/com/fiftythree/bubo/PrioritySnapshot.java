@@ -0,0 +1,157 @@
+/*
+ *
+ *                                ^ ^
+ *                                O O
+ *                              /    )
+ *                             /  ,,
+ * Bubo – Observable Contracts and Specialized Implementations.
+ *                              |/
+ * Copyright 2015 FiftyThree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fiftythree.bubo;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * An immutable array of listeners sorted by descending priority, with ties in registration order, used by
+ * the priority registrars. The position of a new listener is found by binary search so a change costs
+ * O(log n) comparisons plus one array copy and dispatch remains a linear walk of {@link #mListeners}.
+ */
+final class PrioritySnapshot {
+
+    static final PrioritySnapshot EMPTY = new PrioritySnapshot(new Object[0], new int[0]);
+
+    final Object[] mListeners;
+    // mPriorities[i] is the priority of mListeners[i].
+    final int[] mPriorities;
+
+    private PrioritySnapshot(Object[] listeners, int[] priorities) {
+        mListeners = listeners;
+        mPriorities = priorities;
+    }
+
+    /**
+     * @return A copy of this snapshot with the listener inserted after every listener of the same or higher
+     *         priority. The caller must ensure the listener is not already present.
+     */
+    PrioritySnapshot with(Object listener, int priority) {
+        final int index = firstIndexBelow(priority);
+        final int length = mListeners.length;
+        final Object[] listeners = new Object[length + 1];
+        final int[] priorities = new int[length + 1];
+        System.arraycopy(mListeners, 0, listeners, 0, index);
+        System.arraycopy(mPriorities, 0, priorities, 0, index);
+        listeners[index] = listener;
+        priorities[index] = priority;
+        System.arraycopy(mListeners, index, listeners, index + 1, length - index);
+        System.arraycopy(mPriorities, index, priorities, index + 1, length - index);
+        return new PrioritySnapshot(listeners, priorities);
+    }
+
+    /**
+     * @param  priority The priority the listener was registered with.
+     * @return A copy of this snapshot without the listener or this snapshot if the listener is not present.
+     */
+    PrioritySnapshot without(Object listener, int priority) {
+        int index = firstIndexBelow(priority + 1L);
+        while (index < mListeners.length && mPriorities[index] == priority && mListeners[index] != listener) {
+            ++index;
+        }
+        if (index == mListeners.length || mListeners[index] != listener) {
+            return this;
+        }
+        final int length = mListeners.length - 1;
+        if (0 == length) {
+            return EMPTY;
+        }
+        final Object[] listeners = new Object[length];
+        final int[] priorities = new int[length];
+        System.arraycopy(mListeners, 0, listeners, 0, index);
+        System.arraycopy(mPriorities, 0, priorities, 0, index);
+        System.arraycopy(mListeners, index + 1, listeners, index, length - index);
+        System.arraycopy(mPriorities, index + 1, priorities, index, length - index);
+        return new PrioritySnapshot(listeners, priorities);
+    }
+
+    /**
+     * @param  batch A batch which has been resolved against {@link #mListeners} and changes them.
+     * @return A copy of this snapshot without the listeners the batch removes and with the listeners it
+     *         appends, each inserted after every listener of the same or higher priority in the order they
+     *         were added.
+     */
+    PrioritySnapshot edit(EditBatch<?> batch) {
+        final int appendedCount = batch.appendedCount();
+        final Object[] appended = batch.appended();
+        final int[] appendedPriorities = batch.appendedPriorities();
+        final int length = mListeners.length - batch.removedCount() + appendedCount;
+        if (0 == length) {
+            return EMPTY;
+        }
+        // Arrays.sort is stable for objects, so equal priorities keep the order they were added in.
+        final Integer[] order = new Integer[appendedCount];
+        for (int i = 0; i < appendedCount; ++i) {
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer lhs, Integer rhs) {
+                final int lhsPriority = appendedPriorities[lhs];
+                final int rhsPriority = appendedPriorities[rhs];
+                return (lhsPriority == rhsPriority) ? 0 : (lhsPriority > rhsPriority ? -1 : 1);
+            }
+        });
+        final Object[] listeners = new Object[length];
+        final int[] priorities = new int[length];
+        int current = 0;
+        int added = 0;
+        for (int i = 0; i < length; ) {
+            if (current < mListeners.length && batch.isRemoved(mListeners[current])) {
+                ++current;
+                continue;
+            }
+            if (added < appendedCount
+                    && (current == mListeners.length || appendedPriorities[order[added]] > mPriorities[current])) {
+                listeners[i] = appended[order[added]];
+                priorities[i] = appendedPriorities[order[added]];
+                ++added;
+            } else {
+                listeners[i] = mListeners[current];
+                priorities[i] = mPriorities[current];
+                ++current;
+            }
+            ++i;
+        }
+        return new PrioritySnapshot(listeners, priorities);
+    }
+
+    /**
+     * @return The index of the first listener whose priority is strictly less than the given priority, or the
+     *         length of the snapshot if there is none.
+     */
+    private int firstIndexBelow(long priority) {
+        int low = 0;
+        int high = mPriorities.length;
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (mPriorities[middle] >= priority) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+}
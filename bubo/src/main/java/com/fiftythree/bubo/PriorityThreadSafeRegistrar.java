@@ -0,0 +1,203 @@
+/*
+ *
+ *                                ^ ^
+ *                                O O
+ *                              /    )
+ *                             /  ,,
+ * Bubo – Observable Contracts and Specialized Implementations.
+ *                              |/
+ * Copyright 2015 FiftyThree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fiftythree.bubo;
+
+import com.fiftythree.bubo.annotations.CopyOnWrite;
+import com.fiftythree.bubo.annotations.Locking;
+import com.fiftythree.bubo.annotations.ThreadSafe;
+
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+
+/**
+ * A {@link PriorityRegistrar} that is safe to use across threads both for (de)registration and observer
+ * iteration.
+ *
+ * <p>Listeners are held in an immutable array sorted by priority that is replaced, while holding a lock, on
+ * every change. Iteration and dispatch read the current array without locking.</p>
+ */
+@Locking
+@CopyOnWrite
+@ThreadSafe
+public class PriorityThreadSafeRegistrar<LISTENER_TYPE> implements PriorityRegistrar<LISTENER_TYPE> {
+
+    private final Object mLock;
+    private volatile PrioritySnapshot mRegistrar;
+    // Maps each registered listener to its priority. Guarded by mLock.
+    private final IdentityHashMap<LISTENER_TYPE, Integer> mIndex;
+    // Incremented on every change. Guarded by mLock.
+    private long mVersion;
+    // Snapshot of mRegistrar, built on demand and discarded on every change.
+    private volatile RegistrarSnapshot<LISTENER_TYPE> mSnapshot;
+
+    public PriorityThreadSafeRegistrar() {
+        mLock = new Object();
+        mRegistrar = PrioritySnapshot.EMPTY;
+        mIndex = new IdentityHashMap<LISTENER_TYPE, Integer>();
+        RegistrarRegistry.onCreated(this);
+    }
+
+    // +----------------------------------------------------------------------+
+    // | PriorityRegistrar
+    // +----------------------------------------------------------------------+
+    @Override
+    public void addListener(LISTENER_TYPE listener, int priority) {
+        if (null == listener) {
+            throw new IllegalArgumentException("listener cannot be null.");
+        }
+        synchronized (mLock) {
+            if (mIndex.containsKey(listener)) {
+                return;
+            }
+            mIndex.put(listener, priority);
+            publish(mRegistrar.with(listener, priority));
+        }
+        RegistrarRegistry.onListenerAdded(this);
+    }
+
+    // +----------------------------------------------------------------------+
+    // | Registrar
+    // +----------------------------------------------------------------------+
+    @Override
+    public void addListener(LISTENER_TYPE listener) {
+        addListener(listener, DEFAULT_PRIORITY);
+    }
+
+    @Override
+    public void removeListener(LISTENER_TYPE listener) {
+        if (null == listener) {
+            throw new IllegalArgumentException("listener cannot be null.");
+        }
+        synchronized (mLock) {
+            final Integer priority = mIndex.remove(listener);
+            if (null != priority) {
+                publish(mRegistrar.without(listener, priority));
+            }
+        }
+    }
+
+    @Override
+    public void clear() {
+        synchronized (mLock) {
+            if (!mIndex.isEmpty()) {
+                mIndex.clear();
+                publish(PrioritySnapshot.EMPTY);
+            }
+        }
+    }
+
+    @Override
+    public int size() {
+        return mRegistrar.mListeners.length;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public void dispatch(Notifier<? super LISTENER_TYPE> notifier) {
+        if (null == notifier) {
+            throw new IllegalArgumentException("notifier cannot be null.");
+        }
+        for (Object listener : mRegistrar.mListeners) {
+            notifier.onNotify((LISTENER_TYPE) listener);
+        }
+    }
+
+    @Override
+    public RegistrarSnapshot<LISTENER_TYPE> snapshot() {
+        RegistrarSnapshot<LISTENER_TYPE> snapshot = mSnapshot;
+        if (null == snapshot) {
+            synchronized (mLock) {
+                snapshot = mSnapshot;
+                if (null == snapshot) {
+                    snapshot = new RegistrarSnapshot<LISTENER_TYPE>(mRegistrar.mListeners, mVersion);
+                    mSnapshot = snapshot;
+                }
+            }
+        }
+        return snapshot;
+    }
+
+    @Override
+    public PriorityEditor<LISTENER_TYPE> edit() {
+        return new EditBatch<LISTENER_TYPE>() {
+            @Override
+            void onCommit() {
+                commitEdit(this);
+            }
+        };
+    }
+
+    // +----------------------------------------------------------------------+
+    // | Iterable
+    // +----------------------------------------------------------------------+
+    @Override
+    public Iterator<LISTENER_TYPE> iterator() {
+        return new ArrayIterator<LISTENER_TYPE>(mRegistrar.mListeners);
+    }
+
+    // +----------------------------------------------------------------------+
+    // | PRIVATE
+    // +----------------------------------------------------------------------+
+    private void commitEdit(EditBatch<LISTENER_TYPE> batch) {
+        boolean added;
+        synchronized (mLock) {
+            added = resolveEdit(batch);
+        }
+        if (added) {
+            RegistrarRegistry.onListenersAdded(this);
+        }
+    }
+
+    /**
+     * Apply a batch. Must be called while holding mLock.
+     * @return True if any listener was added.
+     */
+    @SuppressWarnings("unchecked")
+    private boolean resolveEdit(EditBatch<LISTENER_TYPE> batch) {
+        final PrioritySnapshot current = mRegistrar;
+        if (!batch.resolve(current.mListeners)) {
+            return false;
+        }
+        for (Object listener : current.mListeners) {
+            if (batch.isRemoved(listener)) {
+                mIndex.remove(listener);
+            }
+        }
+        final Object[] appended = batch.appended();
+        final int[] appendedPriorities = batch.appendedPriorities();
+        for (int i = 0; i < batch.appendedCount(); ++i) {
+            mIndex.put((LISTENER_TYPE) appended[i], appendedPriorities[i]);
+        }
+        publish(current.edit(batch));
+        return batch.appendedCount() > 0;
+    }
+
+    /**
+     * Replace the listeners. Must be called while holding mLock.
+     */
+    private void publish(PrioritySnapshot next) {
+        mSnapshot = null;
+        mRegistrar = next;
+        ++mVersion;
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ *
+ *                                ^ ^
+ *                                O O
+ *                              /    )
+ *                             /  ,,
+ * Bubo – Observable Contracts and Specialized Implementations.
+ *                              |/
+ * Copyright 2015 FiftyThree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fiftythree.bubo;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.IdentityHashMap;
+
+/**
+ * A single process-wide {@link ReferenceQueue} shared by every weak registrar constructed in reaping mode,
+ * drained by one daemon thread. Weak registrars would otherwise each need their own queue, or would only
+ * notice collected observers when they next walk their references.
+ *
+ * <p>The reaper never touches a registrar's references itself. It routes each cleared
+ * {@link OwnedReference} back to its {@link Owner} which decides how, and on which thread, to drop it.
+ * References cleared together are reported to each owner once.</p>
+ */
+final class ReferenceReaper {
+
+    /**
+     * Implemented by registrars that create {@link OwnedReference}s.
+     */
+    interface Owner {
+        /**
+         * Called on the reaper thread after one or more of this owner's references have been cleared.
+         * Implementations must be quick since every owner shares the one thread.
+         */
+        void onReferencesCleared();
+    }
+
+    /**
+     * A weak reference that knows which registrar holds it.
+     */
+    static final class OwnedReference<T> extends WeakReference<T> {
+
+        final Owner mOwner;
+
+        OwnedReference(T referent, Owner owner) {
+            super(referent, QueueHolder.QUEUE);
+            mOwner = owner;
+        }
+    }
+
+    private static final String THREAD_NAME = "bubo-reference-reaper";
+
+    private ReferenceReaper() {
+    }
+
+    /**
+     * Creates the queue and starts the reaper thread when first used. Class initialization makes this happen
+     * exactly once without {@link OwnedReference} taking a lock.
+     */
+    private static final class QueueHolder {
+
+        static final ReferenceQueue<Object> QUEUE = new ReferenceQueue<Object>();
+
+        static {
+            final Thread reaper = new Thread(new Drain(QUEUE), THREAD_NAME);
+            reaper.setDaemon(true);
+            reaper.start();
+        }
+    }
+
+    private static final class Drain implements Runnable {
+
+        private final ReferenceQueue<Object> mQueue;
+
+        Drain(ReferenceQueue<Object> queue) {
+            mQueue = queue;
+        }
+
+        @Override
+        public void run() {
+            final IdentityHashMap<Owner, Boolean> owners = new IdentityHashMap<Owner, Boolean>();
+            while (true) {
+                try {
+                    Reference<?> reference = mQueue.remove();
+                    do {
+                        owners.put(((OwnedReference<?>) reference).mOwner, Boolean.TRUE);
+                    } while (null != (reference = mQueue.poll()));
+                } catch (InterruptedException e) {
+                    // Daemon thread; keep reaping.
+                }
+                for (Owner owner : owners.keySet()) {
+                    try {
+                        owner.onReferencesCleared();
+                    } catch (RuntimeException e) {
+                        // Never let one owner stop reaping for every other.
+                    }
+                }
+                owners.clear();
+            }
+        }
+    }
+}
@@ -62,4 +62,73 @@ public interface Registrar<LISTENER_TYPE> extends Iterable<LISTENER_TYPE> {
      * @return The number of listeners in the registrar.
      */
     int size();
+
+    /**
+     * Notify every listener registered at the start of this call, in the same order as this registrar's
+     * iterator would provide them, without allocating. See the Atomic Dispatch Rule in the
+     * {@link Observable} contract. Exceptions thrown by the notifier are not caught and will end the
+     * dispatch.
+     *
+     * @param  notifier Called once for each registered listener. Must not be null.
+     * @throws IllegalArgumentException if notifier is null.
+     */
+    void dispatch(Notifier<? super LISTENER_TYPE> notifier);
+
+    /**
+     * Get the registered listeners, in the same order as this registrar's iterator would provide them, as an
+     * immutable snapshot stamped with a version. The version never decreases and two snapshots with the same
+     * version hold the same listeners, so callers can cache data derived from a snapshot and rebuild it only
+     * when the version moves. A registrar may advance its version without its listeners having changed.
+     *
+     * <p>Registrars cache their current snapshot where they can, so calling this when nothing has changed is
+     * cheap.</p>
+     *
+     * @return The current snapshot. Never null.
+     */
+    RegistrarSnapshot<LISTENER_TYPE> snapshot();
+
+    /**
+     * Start a batch of registration changes. Changes recorded with the returned editor have no effect until
+     * {@link Editor#commit()} is called, when they are applied in the order they were recorded as a single
+     * change: a concurrent dispatch or iteration sees either none or all of them, and copy-on-write registrars
+     * copy their listeners once rather than once per change. Use this to register or de-register many
+     * listeners at once.
+     *
+     * @return A new editor for this registrar.
+     */
+    Editor<LISTENER_TYPE> edit();
+
+    /**
+     * Records registration changes for {@link Registrar#edit()}. An editor may be committed once and should
+     * be used by one thread.
+     */
+    interface Editor<LISTENER_TYPE> {
+
+        /**
+         * Record a registration. See {@link Registrar#addListener(Object)}.
+         *
+         * @param  listener The listener object to register. Must not be null.
+         * @return This editor.
+         * @throws IllegalArgumentException if listener is null.
+         * @throws IllegalStateException    if this editor has been committed.
+         */
+        Editor<LISTENER_TYPE> addListener(LISTENER_TYPE listener);
+
+        /**
+         * Record a de-registration. See {@link Registrar#removeListener(Object)}.
+         *
+         * @param  listener The listener object to de-register. Must not be null.
+         * @return This editor.
+         * @throws IllegalArgumentException if listener is null.
+         * @throws IllegalStateException    if this editor has been committed.
+         */
+        Editor<LISTENER_TYPE> removeListener(LISTENER_TYPE listener);
+
+        /**
+         * Apply the recorded changes to the registrar as a single change.
+         *
+         * @throws IllegalStateException if this editor has already been committed.
+         */
+        void commit();
+    }
 }
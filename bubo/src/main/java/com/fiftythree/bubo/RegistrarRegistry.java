@@ -0,0 +1,411 @@
+/*
+ *
+ *                                ^ ^
+ *                                O O
+ *                              /    )
+ *                             /  ,,
+ * Bubo – Observable Contracts and Specialized Implementations.
+ *                              |/
+ * Copyright 2015 FiftyThree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fiftythree.bubo;
+
+import com.fiftythree.bubo.annotations.ThreadSafe;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * An opt-in, process wide registry of live registrars used to find leaked listeners. A registrar that keeps
+ * growing usually means observers are registering without ever unregistering, violating the
+ * <em>Observer Reachability Rule</em> described in {@link com.fiftythree.bubo.annotations.Observable}.
+ *
+ * <p>Once a registry is {@link #install(RegistrarRegistry) installed}, every registrar provided by this
+ * library that is constructed or has a listener added is tracked. Registrars are held weakly so tracking never
+ * keeps one alive. The registry samples the call sites that add listeners, reports a histogram of registrar
+ * sizes, and calls a {@link GrowthListener} the first time each tracked registrar reaches each configured
+ * size threshold. When no registry is installed the cost to a registrar is one volatile read per
+ * construction and per addListener. When one is, adds only take the registry's lock the first time it sees a
+ * registrar, and a registrar is only asked for its size once enough listeners have been added to reach its
+ * next threshold.</p>
+ *
+ * <pre>
+ * {@code
+ * RegistrarRegistry.install(new RegistrarRegistry(new int[]{100, 1000, 10000}, 64, null));
+ * }
+ * </pre>
+ */
+public final class RegistrarRegistry {
+
+    /**
+     * Notified when a registrar grows past a threshold.
+     */
+    public interface GrowthListener {
+        /**
+         * Called, on the thread that added the listener, the first time a registrar's size reaches a
+         * threshold.
+         *
+         * @param registrar The registrar which grew.
+         * @param threshold The threshold reached.
+         * @param size      The registrar's size after the add.
+         * @param callSites The sampled call sites which added listeners to this registrar with the number of
+         *                  times each was sampled.
+         */
+        void onThresholdReached(Registrar<?> registrar, int threshold, int size, Map<String, Integer> callSites);
+    }
+
+    private static final String LIBRARY_PACKAGE = "com.fiftythree.bubo.";
+
+    private static final Logger LOGGER = Logger.getLogger(RegistrarRegistry.class.getName());
+
+    private static final GrowthListener LOGGING_GROWTH_LISTENER = new GrowthListener() {
+        @Override
+        public void onThresholdReached(Registrar<?> registrar, int threshold, int size,
+                                       Map<String, Integer> callSites) {
+            LOGGER.log(Level.WARNING, "{0}@{1} has {2} listeners (threshold {3}). Sampled call sites: {4}",
+                    new Object[]{registrar.getClass().getName(),
+                            Integer.toHexString(System.identityHashCode(registrar)), size, threshold, callSites});
+        }
+    };
+
+    private static volatile RegistrarRegistry sInstalled;
+
+    private final int[] mThresholds;
+    private final int mSampleInterval;
+    private final GrowthListener mGrowthListener;
+    // Keyed by WeakKey. Only track() adds entries, and only while holding this object's lock.
+    private final ConcurrentHashMap<Object, Tracked> mRegistrars;
+    // Receives the keys of collected registrars. Drained by track().
+    private final ReferenceQueue<Registrar<?>> mCollected;
+    private final AtomicLong mAdds;
+
+    /**
+     * @param thresholds     Sizes at which the growth listener is called. Each must be positive.
+     * @param sampleInterval Record the call site of one in this many addListener calls. 0 disables sampling.
+     * @param growthListener Called when a registrar reaches a threshold. If null a warning is logged using
+     *                       {@link Logger}.
+     */
+    public RegistrarRegistry(int[] thresholds, int sampleInterval, GrowthListener growthListener) {
+        if (null == thresholds) {
+            throw new IllegalArgumentException("thresholds cannot be null.");
+        }
+        if (sampleInterval < 0) {
+            throw new IllegalArgumentException("sampleInterval cannot be negative.");
+        }
+        mThresholds = thresholds.clone();
+        Arrays.sort(mThresholds);
+        if (mThresholds.length > 0 && mThresholds[0] < 1) {
+            throw new IllegalArgumentException("thresholds must be positive.");
+        }
+        mSampleInterval = sampleInterval;
+        mGrowthListener = (null == growthListener) ? LOGGING_GROWTH_LISTENER : growthListener;
+        mRegistrars = new ConcurrentHashMap<Object, Tracked>();
+        mCollected = new ReferenceQueue<Registrar<?>>();
+        mAdds = new AtomicLong();
+    }
+
+    /**
+     * Start tracking registrars with the given registry, replacing any registry already installed. Registrars
+     * are only tracked from their next construction or addListener.
+     *
+     * @param registry The registry to install or null to stop tracking.
+     */
+    public static void install(RegistrarRegistry registry) {
+        sInstalled = registry;
+    }
+
+    /**
+     * @return The installed registry or null if none is installed.
+     */
+    public static RegistrarRegistry installed() {
+        return sInstalled;
+    }
+
+    /**
+     * @return The number of tracked registrars which are still reachable.
+     */
+    public synchronized int trackedCount() {
+        expungeCollected();
+        int count = 0;
+        for (Object key : mRegistrars.keySet()) {
+            if (null != ((WeakKey) key).get()) {
+                ++count;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Safe to call from any thread. Only registrars annotated {@link ThreadSafe} are asked for their size;
+     * any other registrar may only be used on its own thread, so it is counted at the size it last reported
+     * to this registry plus the number of listeners added to it since, which may overstate its size if
+     * listeners have been removed.
+     *
+     * @return A histogram of the sizes of tracked registrars. Element 0 counts empty registrars; element
+     *         {@code i > 0} counts registrars holding at least {@code 2^(i-1)} and less than {@code 2^i}
+     *         listeners.
+     */
+    public int[] sizeHistogram() {
+        final int[] histogram = new int[Integer.SIZE];
+        for (Map.Entry<Object, Tracked> entry : mRegistrars.entrySet()) {
+            final Registrar<?> registrar = ((WeakKey) entry.getKey()).get();
+            if (null == registrar) {
+                continue;
+            }
+            final Tracked tracked = entry.getValue();
+            if (tracked.mThreadSafe) {
+                ++histogram[bucket(registrar.size())];
+            } else {
+                final long estimate = tracked.mCheckedSize + tracked.mAddsSinceCheck.get();
+                ++histogram[bucket((int) Math.min(Integer.MAX_VALUE, estimate))];
+            }
+        }
+        return histogram;
+    }
+
+    /**
+     * @param  registrar A tracked registrar.
+     * @return The sampled call sites which added listeners to the registrar with the number of times each was
+     *         sampled. Empty if the registrar is not tracked.
+     */
+    public Map<String, Integer> callSites(Registrar<?> registrar) {
+        final Tracked tracked = mRegistrars.get(new LookupKey(registrar));
+        if (null == tracked) {
+            return Collections.<String, Integer>emptyMap();
+        }
+        synchronized (tracked) {
+            return new HashMap<String, Integer>(tracked.mCallSites);
+        }
+    }
+
+    // +----------------------------------------------------------------------+
+    // | Hooks
+    // +----------------------------------------------------------------------+
+    /**
+     * Called by registrars at the end of construction.
+     */
+    static void onCreated(Registrar<?> registrar) {
+        final RegistrarRegistry registry = sInstalled;
+        if (null != registry) {
+            registry.track(registrar, true);
+        }
+    }
+
+    /**
+     * Called by registrars after addListener adds a listener, on the thread that added it.
+     */
+    static void onListenerAdded(Registrar<?> registrar) {
+        final RegistrarRegistry registry = sInstalled;
+        if (null != registry) {
+            registry.recordAdd(registrar, false);
+        }
+    }
+
+    /**
+     * Called by registrars after committing an edit that added one or more listeners, on the committing
+     * thread.
+     */
+    static void onListenersAdded(Registrar<?> registrar) {
+        final RegistrarRegistry registry = sInstalled;
+        if (null != registry) {
+            registry.recordAdd(registrar, true);
+        }
+    }
+
+    // +----------------------------------------------------------------------+
+    // | PRIVATE
+    // +----------------------------------------------------------------------+
+    private static final class Tracked {
+        // If false the registrar's size may only be read on the thread that uses it.
+        final boolean mThreadSafe;
+        // Single listener adds since the registrar's size was last read. A registrar grows by at most one
+        // listener per add, so its size is only read once enough adds have happened to reach the next
+        // threshold. That keeps the add path off size(), which is O(n) for some registrars.
+        final AtomicLong mAddsSinceCheck = new AtomicLong();
+        // Guarded by this.
+        final HashMap<String, Integer> mCallSites = new HashMap<String, Integer>();
+        // The registrar's size when last read. Written while holding this object's lock.
+        volatile int mCheckedSize;
+        // Adds needed, counting from mCheckedSize, before the next threshold can be reached.
+        volatile long mSlack;
+        // Index into mThresholds of the next threshold to report. Guarded by this.
+        int mNextThreshold;
+
+        Tracked(boolean threadSafe) {
+            mThreadSafe = threadSafe;
+        }
+    }
+
+    /**
+     * Holds a tracked registrar weakly and compares by its identity.
+     */
+    private static final class WeakKey extends WeakReference<Registrar<?>> {
+
+        private final int mHash;
+
+        WeakKey(Registrar<?> registrar, ReferenceQueue<Registrar<?>> queue) {
+            super(registrar, queue);
+            mHash = System.identityHashCode(registrar);
+        }
+
+        @Override
+        public int hashCode() {
+            return mHash;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) {
+                return true;
+            }
+            final Object registrar = get();
+            return null != registrar && other instanceof LookupKey && ((LookupKey) other).mRegistrar == registrar;
+        }
+    }
+
+    /**
+     * Finds a registrar's {@link WeakKey} without creating a weak reference.
+     */
+    private static final class LookupKey {
+
+        final Registrar<?> mRegistrar;
+
+        LookupKey(Registrar<?> registrar) {
+            mRegistrar = registrar;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(mRegistrar);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof WeakKey && ((WeakKey) other).get() == mRegistrar;
+        }
+    }
+
+    /**
+     * Only registrars seen for the first time take the registry's lock.
+     */
+    private Tracked tracked(Registrar<?> registrar) {
+        final Tracked tracked = mRegistrars.get(new LookupKey(registrar));
+        return (null != tracked) ? tracked : track(registrar, false);
+    }
+
+    /**
+     * @param created True if the registrar has just been constructed and is therefore empty.
+     */
+    private synchronized Tracked track(Registrar<?> registrar, boolean created) {
+        expungeCollected();
+        Tracked tracked = mRegistrars.get(new LookupKey(registrar));
+        if (null == tracked) {
+            tracked = new Tracked(registrar.getClass().isAnnotationPresent(ThreadSafe.class));
+            // A registrar first seen when a listener is added may already hold many, so read its size. This
+            // happens on the registrar's own thread, so it is safe even for single threaded registrars.
+            check(tracked, created ? 0 : registrar.size());
+            mRegistrars.put(new WeakKey(registrar, mCollected), tracked);
+        }
+        return tracked;
+    }
+
+    private void expungeCollected() {
+        Reference<? extends Registrar<?>> key;
+        while (null != (key = mCollected.poll())) {
+            mRegistrars.remove(key);
+        }
+    }
+
+    /**
+     * @param sizeUnknown True if the registrar may have grown by more than one listener, which forces a read
+     *                    of its size.
+     */
+    private void recordAdd(Registrar<?> registrar, boolean sizeUnknown) {
+        final Tracked tracked = tracked(registrar);
+        if (mSampleInterval > 0 && 0 == mAdds.incrementAndGet() % mSampleInterval) {
+            final String callSite = callSite(new Throwable().getStackTrace());
+            synchronized (tracked) {
+                final Integer count = tracked.mCallSites.get(callSite);
+                tracked.mCallSites.put(callSite, (null == count) ? 1 : count + 1);
+            }
+        }
+        final long adds = tracked.mAddsSinceCheck.incrementAndGet();
+        if (!sizeUnknown && adds < tracked.mSlack) {
+            return;
+        }
+        final int threshold;
+        final int size;
+        final Map<String, Integer> callSites;
+        synchronized (tracked) {
+            // Adds counted here are visible to size(). Any counted later are measured against this size, which
+            // at worst makes the next check early.
+            final long counted = tracked.mAddsSinceCheck.get();
+            if (!sizeUnknown && counted < tracked.mSlack) {
+                // Another thread checked first.
+                return;
+            }
+            // Called on the registrar's own thread, so this is safe even for single threaded registrars.
+            size = registrar.size();
+            tracked.mAddsSinceCheck.addAndGet(-counted);
+            final int reached = check(tracked, size);
+            if (reached < 0) {
+                return;
+            }
+            threshold = reached;
+            callSites = new HashMap<String, Integer>(tracked.mCallSites);
+        }
+        mGrowthListener.onThresholdReached(registrar, threshold, size, callSites);
+    }
+
+    /**
+     * Record a size read from a registrar while holding the tracked entry's lock, or before publishing it.
+     * @return The highest threshold newly reached or -1 if none was.
+     */
+    private int check(Tracked tracked, int size) {
+        int reached = -1;
+        while (tracked.mNextThreshold < mThresholds.length && size >= mThresholds[tracked.mNextThreshold]) {
+            reached = mThresholds[tracked.mNextThreshold++];
+        }
+        tracked.mCheckedSize = size;
+        tracked.mSlack = (tracked.mNextThreshold < mThresholds.length)
+                ? mThresholds[tracked.mNextThreshold] - size : Long.MAX_VALUE;
+        return reached;
+    }
+
+    private static int bucket(int size) {
+        return Integer.SIZE - Integer.numberOfLeadingZeros(size);
+    }
+
+    /**
+     * @return The first frame outside this library, skipping the registrar and editor frames that lead to the
+     *         add however it was made.
+     */
+    private static String callSite(StackTraceElement[] stack) {
+        int i = 0;
+        while (i < stack.length && stack[i].getClassName().startsWith(LIBRARY_PACKAGE)) {
+            ++i;
+        }
+        return (i < stack.length) ? stack[i].toString() : "unknown";
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ *
+ *                                ^ ^
+ *                                O O
+ *                              /    )
+ *                             /  ,,
+ * Bubo – Observable Contracts and Specialized Implementations.
+ *                              |/
+ * Copyright 2015 FiftyThree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fiftythree.bubo;
+
+import java.util.Iterator;
+
+/**
+ * An immutable view of the listeners registered with a {@link Registrar} at one point in time, in the
+ * registrar's iteration order, stamped with the registrar's version. Obtain one from
+ * {@link Registrar#snapshot()}.
+ *
+ * <p>Two snapshots of the same registrar with the same version hold the same listeners in the same order, so
+ * anything derived from a snapshot, such as a filtered array or a routing table, remains valid for as long as
+ * {@link #version()} is unchanged. Versions are only comparable between snapshots of the same registrar.</p>
+ *
+ * <p>A snapshot holds strong references to its listeners. Keeping one, or data derived from one, beyond the
+ * point where it is rebuilt keeps de-registered listeners reachable; see the Observer Reachability Rule in
+ * {@link com.fiftythree.bubo.annotations.Observable}.</p>
+ */
+public final class RegistrarSnapshot<LISTENER_TYPE> implements Iterable<LISTENER_TYPE> {
+
+    static final Object[] NO_LISTENERS = new Object[0];
+
+    private final Object[] mListeners;
+    private final long mVersion;
+
+    /**
+     * @param listeners The listeners. The array is not copied so it must never be modified.
+     * @param version   The registrar's version.
+     */
+    RegistrarSnapshot(Object[] listeners, long version) {
+        mListeners = listeners;
+        mVersion = version;
+    }
+
+    /**
+     * Create a snapshot by copying listeners. For use by {@link Registrar} implementations outside of this
+     * package.
+     *
+     * @param listeners The listeners in iteration order.
+     * @param version   The registrar's version. This must increase whenever the listeners change.
+     */
+    public static <LISTENER_TYPE> RegistrarSnapshot<LISTENER_TYPE> copyOf(Iterable<? extends LISTENER_TYPE> listeners,
+                                                                          long version) {
+        if (null == listeners) {
+            throw new IllegalArgumentException("listeners cannot be null.");
+        }
+        int size = 0;
+        Object[] copy = NO_LISTENERS;
+        for (LISTENER_TYPE listener : listeners) {
+            if (size == copy.length) {
+                final Object[] grown = new Object[Math.max(4, size * 2)];
+                System.arraycopy(copy, 0, grown, 0, size);
+                copy = grown;
+            }
+            copy[size++] = listener;
+        }
+        if (size != copy.length) {
+            final Object[] trimmed = new Object[size];
+            System.arraycopy(copy, 0, trimmed, 0, size);
+            copy = trimmed;
+        }
+        return new RegistrarSnapshot<LISTENER_TYPE>(copy, version);
+    }
+
+    /**
+     * @return The registrar's version when this snapshot was taken. Versions never decrease.
+     */
+    public long version() {
+        return mVersion;
+    }
+
+    public int size() {
+        return mListeners.length;
+    }
+
+    public boolean isEmpty() {
+        return 0 == mListeners.length;
+    }
+
+    /**
+     * @param  index The position of the listener in iteration order.
+     * @return The listener at the given position.
+     * @throws IndexOutOfBoundsException if index is negative or not less than {@link #size()}.
+     */
+    @SuppressWarnings("unchecked")
+    public LISTENER_TYPE get(int index) {
+        if (index < 0 || index >= mListeners.length) {
+            throw new IndexOutOfBoundsException("index " + index + " is out of range for size "
+                    + mListeners.length + ".");
+        }
+        return (LISTENER_TYPE) mListeners[index];
+    }
+
+    /**
+     * Notify every listener in this snapshot, in order.
+     *
+     * @param  notifier Called once for each listener. Must not be null.
+     * @throws IllegalArgumentException if notifier is null.
+     */
+    @SuppressWarnings("unchecked")
+    public void dispatch(Notifier<? super LISTENER_TYPE> notifier) {
+        if (null == notifier) {
+            throw new IllegalArgumentException("notifier cannot be null.");
+        }
+        for (Object listener : mListeners) {
+            notifier.onNotify((LISTENER_TYPE) listener);
+        }
+    }
+
+    /**
+     * @return A new array holding the listeners in order.
+     */
+    public Object[] toArray() {
+        return mListeners.clone();
+    }
+
+    // +----------------------------------------------------------------------+
+    // | Iterable
+    // +----------------------------------------------------------------------+
+    @Override
+    public Iterator<LISTENER_TYPE> iterator() {
+        return new ArrayIterator<LISTENER_TYPE>(mListeners);
+    }
+
+    // +----------------------------------------------------------------------+
+    // | Object
+    // +----------------------------------------------------------------------+
+    @Override
+    public String toString() {
+        return "RegistrarSnapshot{version=" + mVersion + ", size=" + mListeners.length + "}";
+    }
+
+    // +----------------------------------------------------------------------+
+    // | PACKAGE
+    // +----------------------------------------------------------------------+
+    /**
+     * @return The listeners without copying. Must not be modified.
+     */
+    Object[] listeners() {
+        return mListeners;
+    }
+}
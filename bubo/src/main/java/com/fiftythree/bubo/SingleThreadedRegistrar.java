@@ -24,20 +24,55 @@ package com.fiftythree.bubo;
 
 import com.fiftythree.bubo.annotations.CopyOnWrite;
 
-import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.NoSuchElementException;
 
 /**
  * A registrar that can only be created and used from a single thread but which optimizes for fast
  * iteration.
+ *
+ * <p>Listeners are stored in registration order in a {@link PersistentVector}, a copy-on-write structure
+ * that only copies the path to the changed slot, and are found using an identity hash index. Registration
+ * and de-registration are therefore O(log n) rather than a linear search and a full copy. De-registration
+ * leaves an empty slot behind which is skipped by iteration; the vector is compacted once empty slots
+ * outnumber registered listeners.</p>
+ *
+ * <p>The registrar counts the dispatches in progress. Only a change made during a dispatch copies a path of
+ * the vector, so that the dispatch keeps the listeners it started with under the Atomic Dispatch Rule;
+ * changes made while no dispatch is in progress write into the vector in place. Iterators walk the cached
+ * {@link #snapshot()} rather than the vector, so an iterator that is abandoned part way through never forces
+ * later changes to copy.</p>
  */
 @CopyOnWrite
 public class SingleThreadedRegistrar<LISTENER_TYPE> implements Registrar<LISTENER_TYPE> {
 
-    private ArrayList<LISTENER_TYPE> mRegistrar;
+    private PersistentVector mRegistrar;
+    // Maps each registered listener to its slot in mRegistrar.
+    private final IdentityHashMap<LISTENER_TYPE, Integer> mIndex;
+    // Incremented whenever the registered listeners change.
+    private long mVersion;
+    // Built on demand and discarded whenever the registered listeners change.
+    private RegistrarSnapshot<LISTENER_TYPE> mSnapshot;
+    // The number of dispatches in progress. mRegistrar is only modified in place while this is zero.
+    private int mDispatchDepth;
+    // False for registrars used internally by another registrar, which is tracked in their place.
+    private final boolean mTracked;
 
     public SingleThreadedRegistrar() {
-        mRegistrar = new ArrayList<LISTENER_TYPE>();
+        this(true);
+    }
+
+    /**
+     * @param tracked If false the registrar is never reported to the {@link RegistrarRegistry}.
+     */
+    SingleThreadedRegistrar(boolean tracked) {
+        mRegistrar = PersistentVector.EMPTY;
+        mIndex = new IdentityHashMap<LISTENER_TYPE, Integer>();
+        mTracked = tracked;
+        if (tracked) {
+            RegistrarRegistry.onCreated(this);
+        }
     }
 
     // +----------------------------------------------------------------------+
@@ -48,9 +83,8 @@ public class SingleThreadedRegistrar<LISTENER_TYPE> implements Registrar<LISTENE
         if (null == listener) {
             throw new IllegalArgumentException("listener cannot be null.");
         }
-        if (!mRegistrar.contains(listener)) {
-            mRegistrar = new ArrayList<LISTENER_TYPE>(mRegistrar);
-            mRegistrar.add(listener);
+        if (add(listener) && mTracked) {
+            RegistrarRegistry.onListenerAdded(this);
         }
     }
 
@@ -59,20 +93,96 @@ public class SingleThreadedRegistrar<LISTENER_TYPE> implements Registrar<LISTENE
         if (null == listener) {
             throw new IllegalArgumentException("listener cannot be null.");
         }
-        if (mRegistrar.contains(listener)) {
-            mRegistrar = new ArrayList<LISTENER_TYPE>(mRegistrar);
-            mRegistrar.remove(listener);
+        if (vacate(listener)) {
+            onChanged();
         }
     }
 
     @Override
     public void clear() {
-        mRegistrar = new ArrayList<LISTENER_TYPE>();
+        if (!mIndex.isEmpty()) {
+            mRegistrar = PersistentVector.EMPTY;
+            mIndex.clear();
+            onChanged();
+        }
     }
 
     @Override
     public int size() {
-        return mRegistrar.size();
+        return mIndex.size();
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public void dispatch(Notifier<? super LISTENER_TYPE> notifier) {
+        if (null == notifier) {
+            throw new IllegalArgumentException("notifier cannot be null.");
+        }
+        final PersistentVector vector = mRegistrar;
+        final int count = vector.size();
+        ++mDispatchDepth;
+        try {
+            for (int leafStart = 0; leafStart < count; leafStart += PersistentVector.WIDTH) {
+                final Object[] leaf = vector.leafFor(leafStart);
+                final int leafEnd = Math.min(PersistentVector.WIDTH, count - leafStart);
+                for (int i = 0; i < leafEnd; ++i) {
+                    final Object listener = leaf[i];
+                    if (null != listener) {
+                        notifier.onNotify((LISTENER_TYPE) listener);
+                    }
+                }
+            }
+        } finally {
+            --mDispatchDepth;
+        }
+    }
+
+    @Override
+    public RegistrarSnapshot<LISTENER_TYPE> snapshot() {
+        RegistrarSnapshot<LISTENER_TYPE> snapshot = mSnapshot;
+        if (null == snapshot) {
+            final Object[] listeners = new Object[mIndex.size()];
+            int count = 0;
+            for (Iterator<LISTENER_TYPE> it = new VectorIterator<LISTENER_TYPE>(mRegistrar); it.hasNext(); ) {
+                listeners[count++] = it.next();
+            }
+            snapshot = new RegistrarSnapshot<LISTENER_TYPE>(listeners, mVersion);
+            mSnapshot = snapshot;
+        }
+        return snapshot;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>The persistent vector already copies only the path to a changed slot, so committing replays the
+     * changes against it and publishes a single new version.</p>
+     */
+    @Override
+    public Editor<LISTENER_TYPE> edit() {
+        return new EditBatch<LISTENER_TYPE>() {
+            @Override
+            void onCommit() {
+                boolean changed = false;
+                boolean added = false;
+                for (int i = 0; i < count(); ++i) {
+                    if (isAdd(i)) {
+                        if (append(listener(i))) {
+                            changed = true;
+                            added = true;
+                        }
+                    } else {
+                        changed |= vacate(listener(i));
+                    }
+                }
+                if (changed) {
+                    onChanged();
+                }
+                if (added && mTracked) {
+                    RegistrarRegistry.onListenersAdded(SingleThreadedRegistrar.this);
+                }
+            }
+        };
     }
 
     // +----------------------------------------------------------------------+
@@ -80,7 +190,123 @@ public class SingleThreadedRegistrar<LISTENER_TYPE> implements Registrar<LISTENE
     // +----------------------------------------------------------------------+
     @Override
     public Iterator<LISTENER_TYPE> iterator() {
-        return mRegistrar.iterator();
+        return snapshot().iterator();
+    }
+
+    // +----------------------------------------------------------------------+
+    // | PACKAGE
+    // +----------------------------------------------------------------------+
+    /**
+     * {@link #addListener(Object)} without reporting to the {@link RegistrarRegistry}.
+     * @return True if the listener was not already registered.
+     */
+    boolean add(LISTENER_TYPE listener) {
+        if (append(listener)) {
+            onChanged();
+            return true;
+        }
+        return false;
     }
 
+    // +----------------------------------------------------------------------+
+    // | PRIVATE
+    // +----------------------------------------------------------------------+
+    private static final class VectorIterator<T> implements Iterator<T> {
+
+        private final PersistentVector mVector;
+        private final int mCount;
+        private Object[] mLeaf;
+        private int mIndex;
+
+        VectorIterator(PersistentVector vector) {
+            mVector = vector;
+            mCount = vector.size();
+            mIndex = -1;
+            advance();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return mIndex < mCount;
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public T next() {
+            if (mIndex >= mCount) {
+                throw new NoSuchElementException();
+            }
+            final T next = (T) mLeaf[mIndex & (PersistentVector.WIDTH - 1)];
+            advance();
+            return next;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        /**
+         * Move to the next non-empty slot.
+         */
+        private void advance() {
+            while (++mIndex < mCount) {
+                final int leafIndex = mIndex & (PersistentVector.WIDTH - 1);
+                if (leafIndex == 0 || null == mLeaf) {
+                    mLeaf = mVector.leafFor(mIndex);
+                }
+                if (null != mLeaf[leafIndex]) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return True if the listener was not registered and has been appended.
+     */
+    private boolean append(LISTENER_TYPE listener) {
+        if (mIndex.containsKey(listener)) {
+            return false;
+        }
+        mIndex.put(listener, mRegistrar.size());
+        mRegistrar = (0 == mDispatchDepth) ? mRegistrar.appendInPlace(listener) : mRegistrar.append(listener);
+        return true;
+    }
+
+    /**
+     * @return True if the listener was registered and its slot has been emptied.
+     */
+    private boolean vacate(LISTENER_TYPE listener) {
+        final Integer slot = mIndex.remove(listener);
+        if (null == slot) {
+            return false;
+        }
+        mRegistrar = (0 == mDispatchDepth) ? mRegistrar.setInPlace(slot, null) : mRegistrar.set(slot, null);
+        final int emptySlots = mRegistrar.size() - mIndex.size();
+        if (emptySlots > PersistentVector.WIDTH && emptySlots > mIndex.size()) {
+            compact();
+        }
+        return true;
+    }
+
+    private void onChanged() {
+        ++mVersion;
+        mSnapshot = null;
+    }
+
+    /**
+     * Rebuild the vector without empty slots.
+     */
+    private void compact() {
+        final PersistentVector vector = mRegistrar;
+        final Object[] listeners = new Object[mIndex.size()];
+        int count = 0;
+        for (Iterator<LISTENER_TYPE> it = new VectorIterator<LISTENER_TYPE>(vector); it.hasNext(); ) {
+            final LISTENER_TYPE listener = it.next();
+            mIndex.put(listener, count);
+            listeners[count++] = listener;
+        }
+        mRegistrar = PersistentVector.copyOf(listeners, count);
+    }
 }
@@ -0,0 +1,381 @@
+/*
+ *
+ *                                ^ ^
+ *                                O O
+ *                              /    )
+ *                             /  ,,
+ * Bubo – Observable Contracts and Specialized Implementations.
+ *                              |/
+ * Copyright 2015 FiftyThree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fiftythree.bubo;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A concurrent map from object identity to a long value.
+ *
+ * <p>Keys are spread across a fixed number of stripes by {@link System#identityHashCode(Object)}. Each stripe
+ * is an open-addressing (linear probing) hash table guarded by its own lock, so operations on different
+ * stripes never contend and every operation is O(1) expected. A consistent copy of all keys can be
+ * obtained from {@link #keys()}; the copy is cached and reused until the map next changes.</p>
+ */
+final class StripedIdentityMap {
+
+    /**
+     * Returned by {@link #get(Object)}, {@link #putIfAbsent(Object, long)}, and {@link #remove(Object)} when
+     * the key is not in the map.
+     */
+    static final long MISSING = Long.MIN_VALUE;
+
+    /**
+     * Concurrency level for registrars that are not given one. Every registrar owns its own map, so this is
+     * capped well below the maximum stripe count to keep many-core machines from paying for dozens of stripes
+     * per registrar; registrars that really are modified from many threads can ask for more.
+     */
+    static final int DEFAULT_CONCURRENCY_LEVEL = Math.min(Runtime.getRuntime().availableProcessors(), 8);
+
+    private static final int MAX_STRIPES = 64;
+    private static final int INITIAL_CAPACITY = 8;
+    private static final Object TOMBSTONE = new Object();
+    private static final Object[] NO_KEYS = new Object[0];
+
+    private final Stripe[] mStripes;
+    private final int mStripeMask;
+    // Incremented, while holding the modified stripe's lock, every time the map changes.
+    private final AtomicLong mVersion;
+    private volatile RegistrarSnapshot<Object> mKeySnapshot;
+
+    /**
+     * @param concurrencyLevel The expected number of threads modifying the map concurrently. This is rounded
+     *                         up to a power of two to give the number of stripes.
+     */
+    StripedIdentityMap(int concurrencyLevel) {
+        int stripeCount = 1;
+        while (stripeCount < concurrencyLevel && stripeCount < MAX_STRIPES) {
+            stripeCount <<= 1;
+        }
+        mStripes = new Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; ++i) {
+            mStripes[i] = new Stripe();
+        }
+        mStripeMask = stripeCount - 1;
+        mVersion = new AtomicLong();
+        mKeySnapshot = new RegistrarSnapshot<Object>(NO_KEYS, 0);
+    }
+
+    /**
+     * @param  key The key to look up.
+     * @return The value mapped to the key or {@link #MISSING}.
+     */
+    long get(Object key) {
+        final int hash = hash(key);
+        final Stripe stripe = mStripes[hash & mStripeMask];
+        stripe.lock();
+        try {
+            final int slot = stripe.find(key, hash);
+            return (slot < 0) ? MISSING : stripe.mValues[slot];
+        } finally {
+            stripe.unlock();
+        }
+    }
+
+    /**
+     * @param  key   The key to add.
+     * @param  value The value to map to the key if the key is not already in the map.
+     * @return The value already mapped to the key or {@link #MISSING} if the key was added.
+     */
+    long putIfAbsent(Object key, long value) {
+        final int hash = hash(key);
+        final Stripe stripe = mStripes[hash & mStripeMask];
+        stripe.lock();
+        try {
+            final int slot = stripe.find(key, hash);
+            if (slot >= 0) {
+                return stripe.mValues[slot];
+            }
+            stripe.insert(key, hash, value);
+            mVersion.incrementAndGet();
+            return MISSING;
+        } finally {
+            stripe.unlock();
+        }
+    }
+
+    /**
+     * @param  key The key to remove.
+     * @return The value that was mapped to the key or {@link #MISSING} if the key was not in the map.
+     */
+    long remove(Object key) {
+        final int hash = hash(key);
+        final Stripe stripe = mStripes[hash & mStripeMask];
+        stripe.lock();
+        try {
+            final int slot = stripe.find(key, hash);
+            if (slot < 0) {
+                return MISSING;
+            }
+            final long value = stripe.mValues[slot];
+            stripe.mKeys[slot] = TOMBSTONE;
+            --stripe.mSize;
+            mVersion.incrementAndGet();
+            return value;
+        } finally {
+            stripe.unlock();
+        }
+    }
+
+    /**
+     * Replay a batch of changes, in order, as a single change. This is atomic with respect to {@link #keys()}
+     * and bumps the version at most once.
+     * @param  batch The changes to make. Keys are put if absent or removed.
+     * @param  value The value to map added keys to.
+     * @return The number of keys added.
+     */
+    int apply(EditBatch<?> batch, long value) {
+        int added = 0;
+        boolean changed = false;
+        lockAll();
+        try {
+            for (int i = 0; i < batch.count(); ++i) {
+                final Object key = batch.listener(i);
+                final int hash = hash(key);
+                final Stripe stripe = mStripes[hash & mStripeMask];
+                final int slot = stripe.find(key, hash);
+                if (batch.isAdd(i)) {
+                    if (slot < 0) {
+                        stripe.insert(key, hash, value);
+                        ++added;
+                        changed = true;
+                    }
+                } else if (slot >= 0) {
+                    stripe.mKeys[slot] = TOMBSTONE;
+                    --stripe.mSize;
+                    changed = true;
+                }
+            }
+            if (changed) {
+                mVersion.incrementAndGet();
+            }
+        } finally {
+            unlockAll();
+        }
+        return added;
+    }
+
+    /**
+     * Remove all keys. This is atomic with respect to {@link #keys()}.
+     */
+    void clear() {
+        lockAll();
+        try {
+            for (Stripe stripe : mStripes) {
+                stripe.reset();
+            }
+            mVersion.incrementAndGet();
+        } finally {
+            unlockAll();
+        }
+    }
+
+    /**
+     * @return The number of keys in the map. If the map is being modified concurrently this is an estimate.
+     */
+    int size() {
+        int size = 0;
+        for (Stripe stripe : mStripes) {
+            size += stripe.mSize;
+        }
+        return size;
+    }
+
+    /**
+     * Get every key in the map as of a single point in time. The same array is returned by every call until
+     * the map changes so this is cheap for maps that are read far more often than they are written.
+     * @return An array of all keys, in no particular order. Must not be modified.
+     */
+    Object[] keys() {
+        return keySnapshot().listeners();
+    }
+
+    /**
+     * Get every key in the map as of a single point in time, stamped with the map's version. The version
+     * increases with every change. The same snapshot is returned by every call until the map changes.
+     * @return A snapshot of all keys, in no particular order.
+     */
+    RegistrarSnapshot<Object> keySnapshot() {
+        RegistrarSnapshot<Object> snapshot = mKeySnapshot;
+        if (snapshot.version() == mVersion.get()) {
+            return snapshot;
+        }
+        lockAll();
+        try {
+            final long version = mVersion.get();
+            snapshot = mKeySnapshot;
+            if (snapshot.version() != version) {
+                snapshot = new RegistrarSnapshot<Object>(collectKeys(), version);
+                mKeySnapshot = snapshot;
+            }
+            return snapshot;
+        } finally {
+            unlockAll();
+        }
+    }
+
+    // +----------------------------------------------------------------------+
+    // | PRIVATE
+    // +----------------------------------------------------------------------+
+
+    private static final class Stripe extends ReentrantLock {
+
+        // Never serialized; declared because ReentrantLock is Serializable.
+        private static final long serialVersionUID = 1L;
+
+        // Slots are null (never used), TOMBSTONE (removed), or a key. Allocated on first insert.
+        Object[] mKeys;
+        long[] mValues;
+        // Number of keys.
+        volatile int mSize;
+        // Number of slots that are not null, i.e. keys plus tombstones.
+        int mUsed;
+
+        int find(Object key, int hash) {
+            final Object[] keys = mKeys;
+            if (null == keys) {
+                return -1;
+            }
+            final int mask = keys.length - 1;
+            for (int slot = probeStart(hash, mask); ; slot = (slot + 1) & mask) {
+                final Object candidate = keys[slot];
+                if (candidate == key) {
+                    return slot;
+                } else if (null == candidate) {
+                    return -1;
+                }
+            }
+        }
+
+        void insert(Object key, int hash, long value) {
+            if (null == mKeys) {
+                mKeys = new Object[INITIAL_CAPACITY];
+                mValues = new long[INITIAL_CAPACITY];
+            } else if ((mUsed + 1) * 4 > mKeys.length * 3) {
+                // Grow if mostly full of keys, otherwise rehash in place to drop the tombstones.
+                rehash((mSize * 2 >= mKeys.length) ? mKeys.length * 2 : mKeys.length);
+            }
+            final Object[] keys = mKeys;
+            final int mask = keys.length - 1;
+            int slot = probeStart(hash, mask);
+            while (null != keys[slot] && TOMBSTONE != keys[slot]) {
+                slot = (slot + 1) & mask;
+            }
+            if (null == keys[slot]) {
+                ++mUsed;
+            }
+            keys[slot] = key;
+            mValues[slot] = value;
+            ++mSize;
+        }
+
+        void reset() {
+            mKeys = null;
+            mValues = null;
+            mSize = 0;
+            mUsed = 0;
+        }
+
+        int copyKeysTo(Object[] destination, int offset) {
+            if (null != mKeys) {
+                for (Object key : mKeys) {
+                    if (null != key && TOMBSTONE != key) {
+                        destination[offset++] = key;
+                    }
+                }
+            }
+            return offset;
+        }
+
+        private void rehash(int capacity) {
+            final Object[] oldKeys = mKeys;
+            final long[] oldValues = mValues;
+            final Object[] keys = new Object[capacity];
+            final long[] values = new long[capacity];
+            final int mask = capacity - 1;
+            for (int i = 0; i < oldKeys.length; ++i) {
+                final Object key = oldKeys[i];
+                if (null != key && TOMBSTONE != key) {
+                    int slot = probeStart(hash(key), mask);
+                    while (null != keys[slot]) {
+                        slot = (slot + 1) & mask;
+                    }
+                    keys[slot] = key;
+                    values[slot] = oldValues[i];
+                }
+            }
+            mKeys = keys;
+            mValues = values;
+            mUsed = mSize;
+        }
+    }
+
+    private Object[] collectKeys() {
+        int size = 0;
+        for (Stripe stripe : mStripes) {
+            size += stripe.mSize;
+        }
+        if (size == 0) {
+            return NO_KEYS;
+        }
+        final Object[] keys = new Object[size];
+        int offset = 0;
+        for (Stripe stripe : mStripes) {
+            offset = stripe.copyKeysTo(keys, offset);
+        }
+        return (offset == size) ? keys : Arrays.copyOf(keys, offset);
+    }
+
+    private void lockAll() {
+        for (Stripe stripe : mStripes) {
+            stripe.lock();
+        }
+    }
+
+    private void unlockAll() {
+        for (int i = mStripes.length - 1; i >= 0; --i) {
+            mStripes[i].unlock();
+        }
+    }
+
+    /**
+     * Scramble the identity hash so that both the low bits (stripe selection) and the high bits (probe start)
+     * are well distributed.
+     */
+    private static int hash(Object key) {
+        int h = System.identityHashCode(key);
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    private static int probeStart(int hash, int mask) {
+        // The low bits picked the stripe so start probing from the high bits.
+        return Integer.reverse(hash) & mask;
+    }
+}
@@ -26,21 +26,45 @@ import com.fiftythree.bubo.annotations.CopyOnWrite;
 import com.fiftythree.bubo.annotations.Locking;
 import com.fiftythree.bubo.annotations.ThreadSafe;
 
+import java.util.Arrays;
 import java.util.Iterator;
-import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * A registrar that is safe to use across threads both for (de)registration and observer iteration.
+ *
+ * <p>Listeners are held in an immutable array that is replaced, while holding a lock, on every change.
+ * Iteration and dispatch read the current array without locking.</p>
  */
 @Locking
 @CopyOnWrite
 @ThreadSafe
 public class ThreadSafeRegistrar<LISTENER_TYPE> implements Registrar<LISTENER_TYPE> {
 
-    private final CopyOnWriteArrayList<LISTENER_TYPE> mRegistrar;
+    private static final Object[] EMPTY = new Object[0];
+
+    private final Object mLock;
+    private volatile Object[] mRegistrar;
+    // Incremented on every change. Guarded by mLock.
+    private long mVersion;
+    // Snapshot of mRegistrar, built on demand and discarded on every change.
+    private volatile RegistrarSnapshot<LISTENER_TYPE> mSnapshot;
+    // False for registrars used internally by another registrar, which is tracked in their place.
+    private final boolean mTracked;
 
     public ThreadSafeRegistrar() {
-        mRegistrar = new CopyOnWriteArrayList<LISTENER_TYPE>();
+        this(true);
+    }
+
+    /**
+     * @param tracked If false the registrar is never reported to the {@link RegistrarRegistry}.
+     */
+    ThreadSafeRegistrar(boolean tracked) {
+        mLock = new Object();
+        mRegistrar = EMPTY;
+        mTracked = tracked;
+        if (tracked) {
+            RegistrarRegistry.onCreated(this);
+        }
     }
 
     // +----------------------------------------------------------------------+
@@ -51,7 +75,9 @@ public class ThreadSafeRegistrar<LISTENER_TYPE> implements Registrar<LISTENER_TY
         if (null == listener) {
             throw new IllegalArgumentException("listener cannot be null.");
         }
-        mRegistrar.addIfAbsent(listener);
+        if (add(listener) && mTracked) {
+            RegistrarRegistry.onListenerAdded(this);
+        }
     }
 
     @Override
@@ -59,17 +85,66 @@ public class ThreadSafeRegistrar<LISTENER_TYPE> implements Registrar<LISTENER_TY
         if (null == listener) {
             throw new IllegalArgumentException("listener cannot be null.");
         }
-        mRegistrar.remove(listener);
+        synchronized (mLock) {
+            final Object[] current = mRegistrar;
+            final int index = indexOf(current, listener);
+            if (index >= 0) {
+                final Object[] next = new Object[current.length - 1];
+                System.arraycopy(current, 0, next, 0, index);
+                System.arraycopy(current, index + 1, next, index, next.length - index);
+                publish(next);
+            }
+        }
     }
 
     @Override
     public void clear() {
-        mRegistrar.clear();
+        synchronized (mLock) {
+            if (mRegistrar.length > 0) {
+                publish(EMPTY);
+            }
+        }
     }
 
     @Override
     public int size() {
-        return mRegistrar.size();
+        return mRegistrar.length;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public void dispatch(Notifier<? super LISTENER_TYPE> notifier) {
+        if (null == notifier) {
+            throw new IllegalArgumentException("notifier cannot be null.");
+        }
+        for (Object listener : mRegistrar) {
+            notifier.onNotify((LISTENER_TYPE) listener);
+        }
+    }
+
+    @Override
+    public RegistrarSnapshot<LISTENER_TYPE> snapshot() {
+        RegistrarSnapshot<LISTENER_TYPE> snapshot = mSnapshot;
+        if (null == snapshot) {
+            synchronized (mLock) {
+                snapshot = mSnapshot;
+                if (null == snapshot) {
+                    snapshot = new RegistrarSnapshot<LISTENER_TYPE>(mRegistrar, mVersion);
+                    mSnapshot = snapshot;
+                }
+            }
+        }
+        return snapshot;
+    }
+
+    @Override
+    public Editor<LISTENER_TYPE> edit() {
+        return new EditBatch<LISTENER_TYPE>() {
+            @Override
+            void onCommit() {
+                commitEdit(this);
+            }
+        };
     }
 
     // +----------------------------------------------------------------------+
@@ -77,7 +152,69 @@ public class ThreadSafeRegistrar<LISTENER_TYPE> implements Registrar<LISTENER_TY
     // +----------------------------------------------------------------------+
     @Override
     public Iterator<LISTENER_TYPE> iterator() {
-        return mRegistrar.iterator();
+        return new ArrayIterator<LISTENER_TYPE>(mRegistrar);
+    }
+
+    // +----------------------------------------------------------------------+
+    // | PACKAGE
+    // +----------------------------------------------------------------------+
+    /**
+     * @return The current array of registered listeners. Must not be modified.
+     */
+    final Object[] listeners() {
+        return mRegistrar;
+    }
+
+    /**
+     * {@link #addListener(Object)} without reporting to the {@link RegistrarRegistry}.
+     * @return True if the listener was not already registered.
+     */
+    final boolean add(LISTENER_TYPE listener) {
+        synchronized (mLock) {
+            final Object[] current = mRegistrar;
+            if (indexOf(current, listener) >= 0) {
+                return false;
+            }
+            final Object[] next = Arrays.copyOf(current, current.length + 1);
+            next[current.length] = listener;
+            publish(next);
+            return true;
+        }
+    }
+
+    // +----------------------------------------------------------------------+
+    // | PRIVATE
+    // +----------------------------------------------------------------------+
+    private void commitEdit(EditBatch<LISTENER_TYPE> batch) {
+        boolean added = false;
+        synchronized (mLock) {
+            final Object[] current = mRegistrar;
+            final Object[] next = batch.applyTo(current);
+            if (next != current) {
+                publish(next);
+                added = batch.appendedCount() > 0;
+            }
+        }
+        if (added && mTracked) {
+            RegistrarRegistry.onListenersAdded(this);
+        }
     }
 
+    /**
+     * Replace the listeners. Must be called while holding mLock.
+     */
+    private void publish(Object[] next) {
+        mSnapshot = null;
+        mRegistrar = next;
+        ++mVersion;
+    }
+
+    private static int indexOf(Object[] listeners, Object listener) {
+        for (int i = 0; i < listeners.length; ++i) {
+            if (listeners[i] == listener) {
+                return i;
+            }
+        }
+        return -1;
+    }
 }
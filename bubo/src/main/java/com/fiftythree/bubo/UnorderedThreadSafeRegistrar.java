@@ -22,42 +22,43 @@
  */
 package com.fiftythree.bubo;
 
+import com.fiftythree.bubo.annotations.Locking;
 import com.fiftythree.bubo.annotations.ThreadSafe;
 import com.fiftythree.bubo.annotations.Unordered;
 
-import java.util.Comparator;
 import java.util.Iterator;
-import java.util.concurrent.ConcurrentSkipListSet;
 
 /**
  * A registrar that is safe to use across threads both for (de)registration and observer iteration. This
  * variant of a thread-safe registrar does not provide any iteration ordering guarantee. By discarding this
- * requirement the registrar can use a lock-free collection eliminating the overhead of synchronization. Prefer
- * this implementation on multi-core devices (and what isn't these days) when you don't need a consistent ordering
- * of observers while iterating on the registrar.
+ * requirement the registrar can use a hash table keyed by object identity making registration and
+ * de-registration O(1). Prefer this implementation on multi-core devices (and what isn't these days) when you
+ * don't need a consistent ordering of observers while iterating on the registrar.
+ *
+ * <p>The table is split into independently locked stripes so concurrent (de)registrations rarely contend.
+ * Iteration takes an immutable snapshot of the table which is cached until the next change; dispatching to an
+ * unchanged registrar takes no locks. {@link ParallelUnorderedThreadSafeRegistrar} adds parallel dispatch.</p>
  */
+@Locking
 @ThreadSafe
 @Unordered
 public class UnorderedThreadSafeRegistrar<LISTENER_TYPE> implements Registrar<LISTENER_TYPE> {
 
-    private final ConcurrentSkipListSet<LISTENER_TYPE> mRegistrar;
+    private final StripedIdentityMap mRegistrar;
 
     public UnorderedThreadSafeRegistrar() {
-        mRegistrar = new ConcurrentSkipListSet<LISTENER_TYPE>(new Comparator<LISTENER_TYPE>() {
-            @Override
-            public int compare(LISTENER_TYPE o1, LISTENER_TYPE o2) {
-                // We don't actually care about the order. To obey the Observer Registration Key Rule
-                // we must use object identity for equity. For ordering between instances we can use the
-                // hashcode to obtain a stable if arbitrary ordering.
-                if (o1 == o2) {
-                    return 0;
-                } else if (o1.hashCode() > o2.hashCode()) {
-                    return 1;
-                } else {
-                    return -1;
-                }
-            }
-        });
+        this(StripedIdentityMap.DEFAULT_CONCURRENCY_LEVEL);
+    }
+
+    /**
+     * @param concurrencyLevel The expected number of threads (de)registering listeners concurrently.
+     */
+    public UnorderedThreadSafeRegistrar(int concurrencyLevel) {
+        if (concurrencyLevel < 1) {
+            throw new IllegalArgumentException("concurrencyLevel must be at least 1.");
+        }
+        mRegistrar = new StripedIdentityMap(concurrencyLevel);
+        RegistrarRegistry.onCreated(this);
     }
 
     // +----------------------------------------------------------------------+
@@ -68,7 +69,9 @@ public class UnorderedThreadSafeRegistrar<LISTENER_TYPE> implements Registrar<LI
         if (null == listener) {
             throw new IllegalArgumentException("listener cannot be null.");
         }
-        mRegistrar.add(listener);
+        if (StripedIdentityMap.MISSING == mRegistrar.putIfAbsent(listener, 0)) {
+            RegistrarRegistry.onListenerAdded(this);
+        }
     }
 
     @Override
@@ -89,12 +92,61 @@ public class UnorderedThreadSafeRegistrar<LISTENER_TYPE> implements Registrar<LI
         return mRegistrar.size();
     }
 
+    @SuppressWarnings("unchecked")
+    @Override
+    public void dispatch(Notifier<? super LISTENER_TYPE> notifier) {
+        if (null == notifier) {
+            throw new IllegalArgumentException("notifier cannot be null.");
+        }
+        for (Object listener : mRegistrar.keys()) {
+            notifier.onNotify((LISTENER_TYPE) listener);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>The snapshot is in the same arbitrary order as iteration and dispatch, and is shared with them.</p>
+     */
+    @SuppressWarnings("unchecked")
+    @Override
+    public RegistrarSnapshot<LISTENER_TYPE> snapshot() {
+        return (RegistrarSnapshot<LISTENER_TYPE>) (RegistrarSnapshot<?>) mRegistrar.keySnapshot();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>Committing takes every stripe lock once, so dispatches and snapshots see all of the changes or none
+     * of them.</p>
+     */
+    @Override
+    public Editor<LISTENER_TYPE> edit() {
+        return new EditBatch<LISTENER_TYPE>() {
+            @Override
+            void onCommit() {
+                if (mRegistrar.apply(this, 0) > 0) {
+                    RegistrarRegistry.onListenersAdded(UnorderedThreadSafeRegistrar.this);
+                }
+            }
+        };
+    }
+
     // +----------------------------------------------------------------------+
     // | Iterable
     // +----------------------------------------------------------------------+
     @Override
     public Iterator<LISTENER_TYPE> iterator() {
-        return mRegistrar.iterator();
+        return new ArrayIterator<LISTENER_TYPE>(mRegistrar.keys());
     }
 
+    // +----------------------------------------------------------------------+
+    // | PACKAGE
+    // +----------------------------------------------------------------------+
+    /**
+     * @return The registered listeners, in dispatch order. Must not be modified.
+     */
+    final Object[] listeners() {
+        return mRegistrar.keys();
+    }
 }
@@ -0,0 +1,78 @@
+/*
+ *
+ *                                ^ ^
+ *                                O O
+ *                              /    )
+ *                             /  ,,
+ * Bubo – Observable Contracts and Specialized Implementations.
+ *                              |/
+ * Copyright 2015 FiftyThree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fiftythree.bubo;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * Assigns {@link RegistrarSnapshot} versions for registrars whose listeners are held in an immutable object
+ * that is replaced on every change, so that writes need not maintain a counter. A stamp remembers the object
+ * the current version was handed out for; a snapshot of any other object is given the next version. The
+ * object is held weakly so a stamp never keeps a removed listener reachable.
+ *
+ * <p>A registrar allocates a stamp only when a snapshot is first taken and a new one only when a snapshot is
+ * taken after a change.</p>
+ */
+final class VersionStamp {
+
+    private final WeakReference<Object> mSource;
+    private final long mVersion;
+
+    private VersionStamp(Object source, long version) {
+        mSource = new WeakReference<Object>(source);
+        mVersion = version;
+    }
+
+    long version() {
+        return mVersion;
+    }
+
+    /**
+     * @param  current The current stamp, or null if no snapshot has been taken.
+     * @param  source  The immutable object a snapshot is being taken of.
+     * @return {@code current} if it was issued for {@code source}, otherwise a stamp with the next version.
+     */
+    static VersionStamp of(VersionStamp current, Object source) {
+        if (null == current) {
+            return new VersionStamp(source, 0);
+        }
+        return (current.mSource.get() == source) ? current : new VersionStamp(source, current.mVersion + 1);
+    }
+
+    /**
+     * Thread-safe form of {@link #of(VersionStamp, Object)} for a stamp held in a volatile field.
+     *
+     * @return The version for {@code source}.
+     */
+    static <OWNER_TYPE> long advance(AtomicReferenceFieldUpdater<OWNER_TYPE, VersionStamp> updater,
+                                     OWNER_TYPE owner, Object source) {
+        while (true) {
+            final VersionStamp current = updater.get(owner);
+            final VersionStamp next = of(current, source);
+            if (next == current || updater.compareAndSet(owner, current, next)) {
+                return next.mVersion;
+            }
+        }
+    }
+}
@@ -25,27 +25,60 @@ package com.fiftythree.bubo;
 import com.fiftythree.bubo.annotations.CopyOnWrite;
 import com.fiftythree.bubo.annotations.WeakRegistrar;
 
-import java.lang.ref.Reference;
-import java.lang.ref.ReferenceQueue;
 import java.lang.ref.WeakReference;
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
-import java.util.List;
 import java.util.NoSuchElementException;
 
 /**
  * Registrar that holds only weak references to observers.
+ *
+ * <p>The registrar is an array of references which is modified in place while nothing is reading it. Only
+ * when a dispatch is in progress or an iterator has been handed out does a change copy the array, so that
+ * the reader keeps the observers it started with under the Atomic Dispatch Rule; the copy then becomes the
+ * registrar's own to modify. Every change also drops the references whose observer has been garbage
+ * collected. A dispatch or an iteration that runs to completion which finds collected observers compacts the
+ * array so at most the observers collected since the last such walk occupy wasted slots; the cost of a
+ * dispatch tracks the number of live observers.</p>
+ *
+ * <p>A registrar constructed with {@code reapInBackground} set also learns about collected observers from the
+ * shared reference reaper thread and compacts on its next dispatch without waiting for a walk to find them.
+ * Its references are registered with the process-wide queue instead of one owned by the registrar. Either
+ * way the registrar allocates nothing until its first observer is added.</p>
  */
 @CopyOnWrite
 @WeakRegistrar
 public class WeakSingleThreadedRegistrar<LISTENER_TYPE> implements Registrar<LISTENER_TYPE> {
 
-    private ArrayList<WeakReference<LISTENER_TYPE>> mRegistrar;
-    private ReferenceQueue<LISTENER_TYPE> mListenerReferenceQueue;
+    private static final WeakReference<?>[] EMPTY = new WeakReference<?>[0];
+    private static final int MIN_CAPACITY = 4;
+
+    // The first mCount slots hold references; the remainder are null.
+    private WeakReference<LISTENER_TYPE>[] mRegistrar;
+    private int mCount;
+    // The number of dispatches in progress. mRegistrar is copied before it is modified while this is non-zero.
+    private int mDispatchDepth;
+    // Set when an iterator has been created over mRegistrar, which is then copied before it is modified.
+    private boolean mShared;
+    // Incremented whenever the registered observers change.
+    private long mVersion;
+    private final boolean mReapInBackground;
+    // Receives the reaper's callbacks. Null until the first observer is added when reaping in the background.
+    private ReferenceReaper.Owner mReaperOwner;
+    // Set by the reaper thread when one of this registrar's references is cleared.
+    private volatile boolean mReferencesCleared;
 
     public WeakSingleThreadedRegistrar() {
-        mRegistrar = new ArrayList<WeakReference<LISTENER_TYPE>>();
-        mListenerReferenceQueue = new ReferenceQueue<LISTENER_TYPE>();
+        this(false);
+    }
+
+    /**
+     * @param reapInBackground If true collected observers are reported by the shared reaper thread.
+     */
+    public WeakSingleThreadedRegistrar(boolean reapInBackground) {
+        mRegistrar = WeakSingleThreadedRegistrar.<LISTENER_TYPE>empty();
+        mReapInBackground = reapInBackground;
+        RegistrarRegistry.onCreated(this);
     }
 
     // +----------------------------------------------------------------------+
@@ -56,17 +89,11 @@ public class WeakSingleThreadedRegistrar<LISTENER_TYPE> implements Registrar<LIS
         if (null == listener) {
             throw new IllegalArgumentException("listener cannot be null.");
         }
-        for (WeakReference<LISTENER_TYPE> reference : mRegistrar) {
-            LISTENER_TYPE strongRef = reference.get();
-            if (listener == strongRef) {
-                return;
-            } else if (strongRef == null) {
-                reference.enqueue();
-            }
+        mReferencesCleared = false;
+        if (append(listener)) {
+            ++mVersion;
+            RegistrarRegistry.onListenerAdded(this);
         }
-        mRegistrar = new ArrayList<WeakReference<LISTENER_TYPE>>(mRegistrar);
-        mRegistrar.add(new WeakReference<LISTENER_TYPE>(listener, mListenerReferenceQueue));
-        processQueue();
     }
 
     @Override
@@ -74,34 +101,109 @@ public class WeakSingleThreadedRegistrar<LISTENER_TYPE> implements Registrar<LIS
         if (null == listener) {
             throw new IllegalArgumentException("listener cannot be null.");
         }
-        LISTENER_TYPE theStrongRef = null;
-        WeakReference<LISTENER_TYPE> theWeakRef = null;
-        for (WeakReference<LISTENER_TYPE> reference : mRegistrar) {
-            LISTENER_TYPE aStrongRef = reference.get();
-            if (listener == aStrongRef) {
-                theStrongRef = aStrongRef;
-                theWeakRef = reference;
-                break;
-            } else if (aStrongRef == null) {
-                reference.enqueue();
-            }
-        }
-        if (null != theStrongRef) {
-            mRegistrar = new ArrayList<WeakReference<LISTENER_TYPE>>(mRegistrar);
-            mRegistrar.remove(theWeakRef);
+        mReferencesCleared = false;
+        if (remove(listener)) {
+            ++mVersion;
         }
-        processQueue();
     }
 
     @Override
     public void clear() {
-        mRegistrar = new ArrayList<WeakReference<LISTENER_TYPE>>();
-        mListenerReferenceQueue = new ReferenceQueue<LISTENER_TYPE>();
+        if (mCount > 0) {
+            mRegistrar = WeakSingleThreadedRegistrar.<LISTENER_TYPE>empty();
+            mCount = 0;
+            mShared = false;
+            ++mVersion;
+        }
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * <p>This is an O(n) operation which counts only observers that have not been garbage collected. It
+     * only reads the registrar, so monitoring code such as {@link RegistrarRegistry#sizeHistogram()} may call
+     * it from another thread and at worst see a stale count.</p>
+     */
     @Override
     public int size() {
-        return mRegistrar.size();
+        final WeakReference<LISTENER_TYPE>[] current = mRegistrar;
+        final int count = Math.min(mCount, current.length);
+        int size = 0;
+        for (int i = 0; i < count; ++i) {
+            final WeakReference<LISTENER_TYPE> reference = current[i];
+            if (null != reference && null != reference.get()) {
+                ++size;
+            }
+        }
+        return size;
+    }
+
+    @Override
+    public void dispatch(Notifier<? super LISTENER_TYPE> notifier) {
+        if (null == notifier) {
+            throw new IllegalArgumentException("notifier cannot be null.");
+        }
+        if (mReferencesCleared) {
+            compact();
+        }
+        final WeakReference<LISTENER_TYPE>[] registrar = mRegistrar;
+        final int count = mCount;
+        boolean foundExpired = false;
+        ++mDispatchDepth;
+        try {
+            for (int i = 0; i < count; ++i) {
+                final LISTENER_TYPE listener = registrar[i].get();
+                if (null != listener) {
+                    notifier.onNotify(listener);
+                } else {
+                    foundExpired = true;
+                }
+            }
+        } finally {
+            --mDispatchDepth;
+        }
+        if (foundExpired) {
+            compact();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>Each call builds a new snapshot of the observers that have not been garbage collected, since caching
+     * one would keep them reachable. Observers found to have been collected are purged first, so two snapshots
+     * with the same version hold the same observers.</p>
+     */
+    @Override
+    public RegistrarSnapshot<LISTENER_TYPE> snapshot() {
+        mReferencesCleared = false;
+        final WeakReference<LISTENER_TYPE>[] current = mRegistrar;
+        final int count = mCount;
+        final Object[] listeners = new Object[count];
+        int live = 0;
+        for (int i = 0; i < count; ++i) {
+            final LISTENER_TYPE listener = current[i].get();
+            if (null != listener) {
+                listeners[live++] = listener;
+            }
+        }
+        if (live == count) {
+            return new RegistrarSnapshot<LISTENER_TYPE>(listeners, mVersion);
+        }
+        // The strong references in listeners keep every live observer alive while compacting.
+        removeAt(-1);
+        ++mVersion;
+        return new RegistrarSnapshot<LISTENER_TYPE>(Arrays.copyOf(listeners, live), mVersion);
+    }
+
+    @Override
+    public Editor<LISTENER_TYPE> edit() {
+        return new EditBatch<LISTENER_TYPE>() {
+            @Override
+            void onCommit() {
+                commitEdit(this);
+            }
+        };
     }
 
     // +----------------------------------------------------------------------+
@@ -109,23 +211,25 @@ public class WeakSingleThreadedRegistrar<LISTENER_TYPE> implements Registrar<LIS
     // +----------------------------------------------------------------------+
     @Override
     public Iterator<LISTENER_TYPE> iterator() {
-        return new WeakIterator<LISTENER_TYPE>(mRegistrar);
+        mShared = true;
+        return new WeakIterator(mRegistrar, mCount);
     }
 
     // +----------------------------------------------------------------------+
     // | PRIVATE
     // +----------------------------------------------------------------------+
-    private static final class WeakIterator<T> implements Iterator<T> {
+    private final class WeakIterator implements Iterator<LISTENER_TYPE> {
 
-        private final List<WeakReference<T>> mWeakCollection;
+        private final WeakReference<LISTENER_TYPE>[] mWeakCollection;
+        private final int mCount;
         private int mIndex;
-        private final int mCollectionLen;
+        private boolean mFoundExpired;
         // Strong reference to the "next" item.
-        private T mNextRef;
+        private LISTENER_TYPE mNextRef;
 
-        WeakIterator(List<WeakReference<T> > weakCollection) {
+        WeakIterator(WeakReference<LISTENER_TYPE>[] weakCollection, int count) {
             mWeakCollection = weakCollection;
-            mCollectionLen = weakCollection.size();
+            mCount = count;
             mIndex = 0;
             ensureStrongRef();
         }
@@ -136,8 +240,8 @@ public class WeakSingleThreadedRegistrar<LISTENER_TYPE> implements Registrar<LIS
         }
 
         @Override
-        public T next() {
-            T strongRef = mNextRef;
+        public LISTENER_TYPE next() {
+            final LISTENER_TYPE strongRef = mNextRef;
             if (null == strongRef) {
                 throw new NoSuchElementException();
             }
@@ -153,27 +257,169 @@ public class WeakSingleThreadedRegistrar<LISTENER_TYPE> implements Registrar<LIS
         }
 
         private boolean ensureStrongRef() {
-            while(mIndex < mCollectionLen && null == mNextRef) {
-                WeakReference<T> weakReference = mWeakCollection.get(mIndex);
-                mNextRef = weakReference.get();
+            while (mIndex < mCount && null == mNextRef) {
+                mNextRef = mWeakCollection[mIndex].get();
                 if (null == mNextRef) {
-                    weakReference.enqueue();
+                    mFoundExpired = true;
                     ++mIndex;
                 }
             }
+            if (null == mNextRef && mFoundExpired) {
+                mFoundExpired = false;
+                compact();
+            }
             return (mNextRef != null);
         }
     }
 
-    private void processQueue() {
-        Reference<? extends LISTENER_TYPE> expiredObserver;
-        ArrayList<WeakReference<LISTENER_TYPE>> newList = null;
-        while(null != (expiredObserver = mListenerReferenceQueue.poll())) {
-            if (null == newList) {
-                newList = new ArrayList<WeakReference<LISTENER_TYPE>>(mRegistrar);
-                mRegistrar = newList;
+    private void commitEdit(EditBatch<LISTENER_TYPE> batch) {
+        mReferencesCleared = false;
+        boolean changed = false;
+        boolean added = false;
+        for (int i = 0; i < batch.count(); ++i) {
+            if (batch.isAdd(i)) {
+                if (append(batch.listener(i))) {
+                    changed = true;
+                    added = true;
+                }
+            } else {
+                changed |= remove(batch.listener(i));
+            }
+        }
+        if (changed) {
+            ++mVersion;
+        }
+        if (added) {
+            RegistrarRegistry.onListenersAdded(this);
+        }
+    }
+
+    /**
+     * Register a listener, dropping any collected references.
+     * @return True if the listener was not already registered.
+     */
+    private boolean append(LISTENER_TYPE listener) {
+        final WeakReference<LISTENER_TYPE>[] current = mRegistrar;
+        final int count = mCount;
+        boolean foundExpired = false;
+        for (int i = 0; i < count; ++i) {
+            final LISTENER_TYPE strongRef = current[i].get();
+            if (listener == strongRef) {
+                return false;
+            } else if (null == strongRef) {
+                foundExpired = true;
+            }
+        }
+        if (mustCopy()) {
+            own(Math.max(MIN_CAPACITY, count * 2));
+        }
+        if (foundExpired) {
+            removeAt(-1);
+        }
+        if (mCount == mRegistrar.length) {
+            own(Math.max(MIN_CAPACITY, mCount * 2));
+        }
+        if (mReapInBackground && null == mReaperOwner) {
+            mReaperOwner = new ReaperOwner();
+        }
+        mRegistrar[mCount++] = (null != mReaperOwner)
+                ? new ReferenceReaper.OwnedReference<LISTENER_TYPE>(listener, mReaperOwner)
+                : new WeakReference<LISTENER_TYPE>(listener);
+        return true;
+    }
+
+    /**
+     * De-register a listener, dropping any collected references.
+     * @return True if the listener was registered.
+     */
+    private boolean remove(LISTENER_TYPE listener) {
+        final WeakReference<LISTENER_TYPE>[] current = mRegistrar;
+        final int count = mCount;
+        int index = -1;
+        boolean foundExpired = false;
+        for (int i = 0; i < count; ++i) {
+            final LISTENER_TYPE strongRef = current[i].get();
+            if (listener == strongRef) {
+                index = i;
+            } else if (null == strongRef) {
+                foundExpired = true;
+            }
+        }
+        if (index >= 0 || foundExpired) {
+            removeAt(index);
+        }
+        return index >= 0;
+    }
+
+    /**
+     * Remove the reference at {@code index}, if it is not -1, and every collected reference, copying the array
+     * first if a reader may still be using it.
+     */
+    private void removeAt(int index) {
+        if (mustCopy()) {
+            own(mCount);
+        }
+        final WeakReference<LISTENER_TYPE>[] registrar = mRegistrar;
+        final int count = mCount;
+        int live = 0;
+        for (int i = 0; i < count; ++i) {
+            if (i != index && null != registrar[i].get()) {
+                registrar[live++] = registrar[i];
+            }
+        }
+        Arrays.fill(registrar, live, count, null);
+        mCount = live;
+    }
+
+    /**
+     * @return True if a dispatch or an iterator may still be reading the array.
+     */
+    private boolean mustCopy() {
+        return mDispatchDepth > 0 || mShared;
+    }
+
+    /**
+     * Replace the array with a private copy no reader has seen.
+     */
+    private void own(int capacity) {
+        mRegistrar = (0 == capacity) ? WeakSingleThreadedRegistrar.<LISTENER_TYPE>empty()
+                : Arrays.copyOf(mRegistrar, capacity);
+        mShared = false;
+    }
+
+    /**
+     * Compact the array if any of its references have been collected.
+     */
+    private void compact() {
+        mReferencesCleared = false;
+        final WeakReference<LISTENER_TYPE>[] current = mRegistrar;
+        final int count = mCount;
+        for (int i = 0; i < count; ++i) {
+            if (null == current[i].get()) {
+                removeAt(-1);
+                ++mVersion;
+                return;
             }
-            newList.remove(expiredObserver);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> WeakReference<T>[] empty() {
+        return (WeakReference<T>[]) EMPTY;
+    }
+
+    /**
+     * Receives the reference reaper's callbacks, which keeps them out of the registrar's public API.
+     */
+    private final class ReaperOwner implements ReferenceReaper.Owner {
+
+        /**
+         * Called by the reference reaper thread. Only records that a compaction is due; the compaction itself
+         * happens on the registrar's own thread.
+         */
+        @Override
+        public void onReferencesCleared() {
+            mReferencesCleared = true;
         }
     }
 }
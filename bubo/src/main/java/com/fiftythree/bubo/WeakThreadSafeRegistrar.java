@@ -0,0 +1,358 @@
+/*
+ *
+ *                                ^ ^
+ *                                O O
+ *                              /    )
+ *                             /  ,,
+ * Bubo – Observable Contracts and Specialized Implementations.
+ *                              |/
+ * Copyright 2015 FiftyThree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fiftythree.bubo;
+
+import com.fiftythree.bubo.annotations.CopyOnWrite;
+import com.fiftythree.bubo.annotations.ThreadSafe;
+import com.fiftythree.bubo.annotations.WeakRegistrar;
+
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * Registrar that holds only weak references to observers and is safe to use across threads both for
+ * (de)registration and observer iteration.
+ *
+ * <p>The registrar is an immutable array of references that is replaced using compare-and-set. Writers never
+ * take a lock; a writer that loses a race simply rebuilds its change against the winner's array. Iteration
+ * walks whatever array was current when it started which provides the Atomic Dispatch Rule for free.
+ * References cleared by the garbage collector are dropped by the next write or, if an iteration encounters
+ * them, by a single compare-and-set attempt at the end of that iteration. A failed attempt is not retried
+ * since it means a writer has already published a newer (and therefore purged) array; readers never wait.</p>
+ *
+ * <p>A registrar constructed with {@code reapInBackground} set registers its references with the shared
+ * reference reaper, whose thread purges collected observers as soon as the garbage collector reports them.
+ * Either way the registrar allocates nothing until its first observer is added.</p>
+ */
+@CopyOnWrite
+@ThreadSafe
+@WeakRegistrar
+public class WeakThreadSafeRegistrar<LISTENER_TYPE> implements Registrar<LISTENER_TYPE> {
+
+    private static final WeakReference<?>[] EMPTY = new WeakReference<?>[0];
+
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<WeakThreadSafeRegistrar, WeakReference[]> REGISTRAR =
+            AtomicReferenceFieldUpdater.newUpdater(WeakThreadSafeRegistrar.class, WeakReference[].class,
+                    "mRegistrar");
+
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<WeakThreadSafeRegistrar, VersionStamp> STAMP =
+            AtomicReferenceFieldUpdater.newUpdater(WeakThreadSafeRegistrar.class, VersionStamp.class, "mStamp");
+
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<WeakThreadSafeRegistrar, ReferenceReaper.Owner> REAPER_OWNER =
+            AtomicReferenceFieldUpdater.newUpdater(WeakThreadSafeRegistrar.class, ReferenceReaper.Owner.class,
+                    "mReaperOwner");
+
+    private volatile WeakReference<LISTENER_TYPE>[] mRegistrar;
+    // Versions the arrays snapshots are taken of. Null until the first snapshot.
+    private volatile VersionStamp mStamp;
+    private final boolean mReapInBackground;
+    // Receives the reaper's callbacks. Null until the first observer is added when reaping in the background.
+    private volatile ReferenceReaper.Owner mReaperOwner;
+
+    public WeakThreadSafeRegistrar() {
+        this(false);
+    }
+
+    /**
+     * @param reapInBackground If true collected observers are purged by the shared reaper thread.
+     */
+    public WeakThreadSafeRegistrar(boolean reapInBackground) {
+        mRegistrar = WeakThreadSafeRegistrar.<LISTENER_TYPE>empty();
+        mReapInBackground = reapInBackground;
+        RegistrarRegistry.onCreated(this);
+    }
+
+    // +----------------------------------------------------------------------+
+    // | Registrar
+    // +----------------------------------------------------------------------+
+    @Override
+    public void addListener(LISTENER_TYPE listener) {
+        if (null == listener) {
+            throw new IllegalArgumentException("listener cannot be null.");
+        }
+        final ReferenceReaper.Owner owner = reaperOwner();
+        WeakReference<LISTENER_TYPE>[] current;
+        WeakReference<LISTENER_TYPE>[] next;
+        do {
+            current = mRegistrar;
+            if (indexOf(current, listener) >= 0) {
+                return;
+            }
+            next = copyLive(current, -1, 1);
+            next[next.length - 1] = (null != owner)
+                    ? new ReferenceReaper.OwnedReference<LISTENER_TYPE>(listener, owner)
+                    : new WeakReference<LISTENER_TYPE>(listener);
+        } while (!REGISTRAR.compareAndSet(this, current, next));
+        RegistrarRegistry.onListenerAdded(this);
+    }
+
+    @Override
+    public void removeListener(LISTENER_TYPE listener) {
+        if (null == listener) {
+            throw new IllegalArgumentException("listener cannot be null.");
+        }
+        WeakReference<LISTENER_TYPE>[] current;
+        WeakReference<LISTENER_TYPE>[] next;
+        do {
+            current = mRegistrar;
+            final int index = indexOf(current, listener);
+            if (index < 0) {
+                return;
+            }
+            next = copyLive(current, index, 0);
+        } while (!REGISTRAR.compareAndSet(this, current, next));
+    }
+
+    @Override
+    public void clear() {
+        mRegistrar = empty();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>This is an O(n) operation which counts only observers that have not been garbage collected.</p>
+     */
+    @Override
+    public int size() {
+        int size = 0;
+        for (WeakReference<LISTENER_TYPE> reference : mRegistrar) {
+            if (null != reference.get()) {
+                ++size;
+            }
+        }
+        return size;
+    }
+
+    @Override
+    public void dispatch(Notifier<? super LISTENER_TYPE> notifier) {
+        if (null == notifier) {
+            throw new IllegalArgumentException("notifier cannot be null.");
+        }
+        final WeakReference<LISTENER_TYPE>[] snapshot = mRegistrar;
+        boolean foundExpired = false;
+        for (WeakReference<LISTENER_TYPE> reference : snapshot) {
+            final LISTENER_TYPE listener = reference.get();
+            if (null != listener) {
+                notifier.onNotify(listener);
+            } else {
+                foundExpired = true;
+            }
+        }
+        if (foundExpired) {
+            purge(snapshot);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>Each call builds a new snapshot of the observers that have not been garbage collected, since caching
+     * one would keep them reachable. Observers found to have been collected are purged first, so two snapshots
+     * with the same version hold the same observers.</p>
+     */
+    @Override
+    public RegistrarSnapshot<LISTENER_TYPE> snapshot() {
+        while (true) {
+            final WeakReference<LISTENER_TYPE>[] current = mRegistrar;
+            final Object[] listeners = new Object[current.length];
+            int live = 0;
+            for (WeakReference<LISTENER_TYPE> reference : current) {
+                final LISTENER_TYPE listener = reference.get();
+                if (null != listener) {
+                    listeners[live++] = listener;
+                }
+            }
+            if (live == current.length) {
+                return new RegistrarSnapshot<LISTENER_TYPE>(listeners, VersionStamp.advance(STAMP, this, current));
+            }
+            purge(current);
+        }
+    }
+
+    @Override
+    public Editor<LISTENER_TYPE> edit() {
+        return new EditBatch<LISTENER_TYPE>() {
+            @Override
+            void onCommit() {
+                commitEdit(this);
+            }
+        };
+    }
+
+    // +----------------------------------------------------------------------+
+    // | Iterable
+    // +----------------------------------------------------------------------+
+    @Override
+    public Iterator<LISTENER_TYPE> iterator() {
+        return new WeakSnapshotIterator(mRegistrar);
+    }
+
+    // +----------------------------------------------------------------------+
+    // | PRIVATE
+    // +----------------------------------------------------------------------+
+    private final class WeakSnapshotIterator implements Iterator<LISTENER_TYPE> {
+
+        private final WeakReference<LISTENER_TYPE>[] mSnapshot;
+        private int mIndex;
+        private boolean mFoundExpired;
+        // Strong reference to the "next" item.
+        private LISTENER_TYPE mNextRef;
+
+        WeakSnapshotIterator(WeakReference<LISTENER_TYPE>[] snapshot) {
+            mSnapshot = snapshot;
+            mIndex = 0;
+            ensureStrongRef();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return ensureStrongRef();
+        }
+
+        @Override
+        public LISTENER_TYPE next() {
+            final LISTENER_TYPE strongRef = mNextRef;
+            if (null == strongRef) {
+                throw new NoSuchElementException();
+            }
+            mNextRef = null;
+            ++mIndex;
+            ensureStrongRef();
+            return strongRef;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        private boolean ensureStrongRef() {
+            while (mIndex < mSnapshot.length && null == mNextRef) {
+                mNextRef = mSnapshot[mIndex].get();
+                if (null == mNextRef) {
+                    mFoundExpired = true;
+                    ++mIndex;
+                }
+            }
+            if (null == mNextRef && mFoundExpired) {
+                mFoundExpired = false;
+                purge(mSnapshot);
+            }
+            return (mNextRef != null);
+        }
+    }
+
+    private void commitEdit(EditBatch<LISTENER_TYPE> batch) {
+        final ReferenceReaper.Owner owner = batch.hasAdds() ? reaperOwner() : null;
+        WeakReference<LISTENER_TYPE>[] current;
+        WeakReference<LISTENER_TYPE>[] next;
+        do {
+            current = mRegistrar;
+            next = batch.applyToWeak(current, owner);
+            if (next == current) {
+                return;
+            }
+        } while (!REGISTRAR.compareAndSet(this, current, next));
+        if (batch.appendedCount() > 0) {
+            RegistrarRegistry.onListenersAdded(this);
+        }
+    }
+
+    /**
+     * Make a single attempt at replacing the given array with one that does not contain expired references.
+     */
+    private void purge(WeakReference<LISTENER_TYPE>[] expected) {
+        REGISTRAR.compareAndSet(this, expected, copyLive(expected, -1, 0));
+    }
+
+    private static <T> int indexOf(WeakReference<T>[] references, T listener) {
+        for (int i = 0; i < references.length; ++i) {
+            if (references[i].get() == listener) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Copy all references whose referent has not been collected into a new array.
+     * @param  references The array to copy.
+     * @param  skipIndex  Index of a reference to leave out of the copy or -1 to copy every live reference.
+     * @param  extra      Number of empty slots to leave at the end of the returned array.
+     * @return A new array of exactly the live references followed by {@code extra} null slots.
+     */
+    private static <T> WeakReference<T>[] copyLive(WeakReference<T>[] references, int skipIndex, int extra) {
+        final WeakReference<T>[] copy = Arrays.copyOf(references, references.length + extra);
+        int live = 0;
+        for (int i = 0; i < references.length; ++i) {
+            if (i != skipIndex && null != references[i].get()) {
+                copy[live++] = references[i];
+            }
+        }
+        if (live == references.length) {
+            return copy;
+        }
+        final WeakReference<T>[] trimmed = Arrays.copyOf(copy, live + extra);
+        Arrays.fill(trimmed, live, trimmed.length, null);
+        return trimmed;
+    }
+
+    /**
+     * @return The owner to register new references with the reaper, created on first use, or null if this
+     *         registrar does not reap in the background.
+     */
+    private ReferenceReaper.Owner reaperOwner() {
+        final ReferenceReaper.Owner owner = mReaperOwner;
+        if (null != owner || !mReapInBackground) {
+            return owner;
+        }
+        REAPER_OWNER.compareAndSet(this, null, new ReaperOwner());
+        return mReaperOwner;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> WeakReference<T>[] empty() {
+        return (WeakReference<T>[]) EMPTY;
+    }
+
+    /**
+     * Receives the reference reaper's callbacks, which keeps them out of the registrar's public API.
+     */
+    private final class ReaperOwner implements ReferenceReaper.Owner {
+
+        /**
+         * Called by the reference reaper thread to purge collected observers.
+         */
+        @Override
+        public void onReferencesCleared() {
+            purge(mRegistrar);
+        }
+    }
+}
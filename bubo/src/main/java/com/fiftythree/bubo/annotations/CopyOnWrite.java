@@ -23,6 +23,8 @@
 package com.fiftythree.bubo.annotations;
 
 import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
 
 /**
@@ -30,6 +32,7 @@ import java.lang.annotation.Target;
  * internally. Implementations that use COW provide fast, stable iteration over the registrar's elements but
  * may cause memory heap fragmentation if the add, remove, or clear methods are used too frequently.
  */
+@Retention(RetentionPolicy.RUNTIME)
 @Target({ElementType.TYPE, ElementType.METHOD, ElementType.FIELD})
 public @interface CopyOnWrite {
     /**
@@ -0,0 +1,213 @@
+/*
+ *
+ *                                ^ ^
+ *                                O O
+ *                              /    )
+ *                             /  ,,
+ * Bubo – Observable Contracts and Specialized Implementations.
+ *                              |/
+ * Copyright 2015 FiftyThree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fiftythree.bubo.metrics;
+
+import com.fiftythree.bubo.ForwardingRegistrar;
+import com.fiftythree.bubo.Notifier;
+import com.fiftythree.bubo.Registrar;
+import com.fiftythree.bubo.SingleThreadedRegistrar;
+import com.fiftythree.bubo.WeakSingleThreadedRegistrar;
+import com.fiftythree.bubo.annotations.CopyOnWrite;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Decorates a {@link Registrar} to record how it is used: (de)registration counts, estimated snapshot copy
+ * bytes, dispatch count and latency, and optionally the time spent in each listener class's callbacks.
+ * Callback time is aggregated by the listener's runtime class, so listeners sharing a class are reported
+ * together and an anonymous listener appears under its synthetic name such as {@code Outer$1}. The results
+ * are available from {@link #getMetrics()}, which can be exposed over JMX:
+ *
+ * <pre>
+ * {@code
+ * InstrumentedRegistrar<Listener> registrar =
+ *         new InstrumentedRegistrar<Listener>(new ThreadSafeRegistrar<Listener>(), "document.changes");
+ * registrar.getMetrics().register(ManagementFactory.getPlatformMBeanServer());
+ * }
+ * </pre>
+ *
+ * <p>Only {@link #dispatch(Notifier)} is timed; iterating the registrar directly is not observed. Dispatch
+ * latency is measured on the dispatching thread so for an asynchronous delegate it covers only the hand-off.
+ * Dispatch does not allocate unless listener callback timing is enabled, in which case it allocates one small
+ * wrapper per dispatch and reads the clock twice per listener. Timing is therefore off unless requested.</p>
+ *
+ * <p>Snapshot copy bytes are estimated as one full array copy for each change to a
+ * {@link CopyOnWrite} registrar. {@link SingleThreadedRegistrar} and {@link WeakSingleThreadedRegistrar}
+ * write in place unless a dispatch is in progress, so nothing is estimated for them. The estimate reads the
+ * delegate's size once per change.</p>
+ */
+public class InstrumentedRegistrar<LISTENER_TYPE> extends ForwardingRegistrar<LISTENER_TYPE> {
+
+    private final RegistrarMetrics mMetrics;
+    private final boolean mCopyOnWrite;
+    private final boolean mTimeListeners;
+    // The delegate's size after the most recent change. Only maintained for copy-on-write delegates.
+    private final AtomicInteger mSize;
+
+    /**
+     * Create an instrumented registrar which does not time listener callbacks.
+     * @param delegate The registrar holding the listeners.
+     * @param name     Identifies the registrar in metrics.
+     */
+    public InstrumentedRegistrar(Registrar<LISTENER_TYPE> delegate, String name) {
+        this(delegate, name, false);
+    }
+
+    /**
+     * @param delegate      The registrar holding the listeners.
+     * @param name          Identifies the registrar in metrics.
+     * @param timeListeners If true the time spent in each listener callback is recorded.
+     */
+    public InstrumentedRegistrar(Registrar<LISTENER_TYPE> delegate, String name, boolean timeListeners) {
+        super(delegate);
+        if (null == name) {
+            throw new IllegalArgumentException("name cannot be null.");
+        }
+        mMetrics = new RegistrarMetrics(name, delegate);
+        mCopyOnWrite = delegate.getClass().isAnnotationPresent(CopyOnWrite.class)
+                && !(delegate instanceof SingleThreadedRegistrar) && !(delegate instanceof WeakSingleThreadedRegistrar);
+        mTimeListeners = timeListeners;
+        mSize = new AtomicInteger(mCopyOnWrite ? delegate.size() : 0);
+    }
+
+    /**
+     * @return The metrics recorded for this registrar.
+     */
+    public RegistrarMetrics getMetrics() {
+        return mMetrics;
+    }
+
+    // +----------------------------------------------------------------------+
+    // | Registrar
+    // +----------------------------------------------------------------------+
+    @Override
+    public void addListener(LISTENER_TYPE listener) {
+        delegate().addListener(listener);
+        final int sizeAfter = sizeAfterChange();
+        mMetrics.recordAdd(sizeBefore(sizeAfter), sizeAfter, mCopyOnWrite);
+    }
+
+    @Override
+    public void removeListener(LISTENER_TYPE listener) {
+        delegate().removeListener(listener);
+        final int sizeAfter = sizeAfterChange();
+        mMetrics.recordRemove(sizeBefore(sizeAfter), sizeAfter, mCopyOnWrite);
+    }
+
+    @Override
+    public Editor<LISTENER_TYPE> edit() {
+        return new CountingEditor(delegate().edit());
+    }
+
+    @Override
+    public void clear() {
+        delegate().clear();
+        mSize.set(0);
+        mMetrics.recordClear();
+    }
+
+    @Override
+    public void dispatch(Notifier<? super LISTENER_TYPE> notifier) {
+        if (null == notifier) {
+            throw new IllegalArgumentException("notifier cannot be null.");
+        }
+        final long start = System.nanoTime();
+        try {
+            if (mTimeListeners) {
+                delegate().dispatch(new TimingNotifier<LISTENER_TYPE>(notifier, mMetrics));
+            } else {
+                delegate().dispatch(notifier);
+            }
+        } finally {
+            mMetrics.recordDispatch(System.nanoTime() - start);
+        }
+    }
+
+    // +----------------------------------------------------------------------+
+    // | PRIVATE
+    // +----------------------------------------------------------------------+
+    private int sizeAfterChange() {
+        return mCopyOnWrite ? delegate().size() : 0;
+    }
+
+    /**
+     * @return The size recorded after the previous change, replacing it with the given size. Changes made to
+     *         the delegate directly are not seen, which only affects the copy estimate.
+     */
+    private int sizeBefore(int sizeAfter) {
+        return mCopyOnWrite ? mSize.getAndSet(sizeAfter) : 0;
+    }
+
+    private final class CountingEditor implements Editor<LISTENER_TYPE> {
+
+        private final Editor<LISTENER_TYPE> mEditor;
+        private int mAdds;
+        private int mRemoves;
+
+        CountingEditor(Editor<LISTENER_TYPE> editor) {
+            mEditor = editor;
+        }
+
+        @Override
+        public Editor<LISTENER_TYPE> addListener(LISTENER_TYPE listener) {
+            mEditor.addListener(listener);
+            ++mAdds;
+            return this;
+        }
+
+        @Override
+        public Editor<LISTENER_TYPE> removeListener(LISTENER_TYPE listener) {
+            mEditor.removeListener(listener);
+            ++mRemoves;
+            return this;
+        }
+
+        @Override
+        public void commit() {
+            mEditor.commit();
+            final int sizeAfter = sizeAfterChange();
+            mMetrics.recordEdit(mAdds, mRemoves, sizeBefore(sizeAfter), sizeAfter, mCopyOnWrite);
+        }
+    }
+
+    private static final class TimingNotifier<LISTENER_TYPE> implements Notifier<LISTENER_TYPE> {
+
+        private final Notifier<? super LISTENER_TYPE> mNotifier;
+        private final RegistrarMetrics mMetrics;
+
+        TimingNotifier(Notifier<? super LISTENER_TYPE> notifier, RegistrarMetrics metrics) {
+            mNotifier = notifier;
+            mMetrics = metrics;
+        }
+
+        @Override
+        public void onNotify(LISTENER_TYPE listener) {
+            final long start = System.nanoTime();
+            try {
+                mNotifier.onNotify(listener);
+            } finally {
+                mMetrics.recordCallback(listener.getClass(), System.nanoTime() - start);
+            }
+        }
+    }
+}
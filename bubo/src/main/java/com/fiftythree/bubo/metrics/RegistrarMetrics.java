@@ -0,0 +1,273 @@
+/*
+ *
+ *                                ^ ^
+ *                                O O
+ *                              /    )
+ *                             /  ,,
+ * Bubo – Observable Contracts and Specialized Implementations.
+ *                              |/
+ * Copyright 2015 FiftyThree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fiftythree.bubo.metrics;
+
+import com.fiftythree.bubo.Registrar;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.InstanceNotFoundException;
+import javax.management.MBeanRegistrationException;
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.NotCompliantMBeanException;
+import javax.management.ObjectName;
+
+/**
+ * Counters recorded by an {@link InstrumentedRegistrar}. Every counter is striped so recording from many
+ * threads at once does not contend. Register this object with an {@link MBeanServer} to expose it over JMX
+ * as {@code com.fiftythree.bubo:type=Registrar,name=<name>}.
+ */
+public final class RegistrarMetrics implements RegistrarMetricsMXBean {
+
+    /**
+     * The JMX domain used for every registrar's MBean.
+     */
+    public static final String DOMAIN = "com.fiftythree.bubo";
+
+    // Assumed cost of a snapshot copy. Compressed references and a 16 byte array header are the common case on
+    // 64-bit VMs.
+    private static final int REFERENCE_BYTES = 4;
+    private static final int ARRAY_HEADER_BYTES = 16;
+
+    private static final int ADD = 0;
+    private static final int REMOVE = 1;
+    private static final int CLEAR = 2;
+    private static final int COPY_BYTES = 3;
+    private static final int DISPATCH = 4;
+    private static final int DISPATCH_NANOS = 5;
+    private static final int COUNTERS = 6;
+
+    private static final int CALLBACK = 0;
+    private static final int CALLBACK_NANOS = 1;
+
+    private final String mName;
+    private final Registrar<?> mRegistrar;
+    private final StripedCounter mCounters;
+    private final StripedCounter mLatencyHistogram;
+    private final ConcurrentMap<Class<?>, StripedCounter> mCallbacks;
+
+    RegistrarMetrics(String name, Registrar<?> registrar) {
+        mName = name;
+        mRegistrar = registrar;
+        mCounters = new StripedCounter(COUNTERS);
+        mLatencyHistogram = new StripedCounter(Long.SIZE);
+        mCallbacks = new ConcurrentHashMap<Class<?>, StripedCounter>();
+    }
+
+    /**
+     * @return The name under which this object is registered with an {@link MBeanServer}.
+     */
+    public ObjectName getObjectName() {
+        try {
+            return new ObjectName(DOMAIN + ":type=Registrar,name=" + ObjectName.quote(mName));
+        } catch (MalformedObjectNameException e) {
+            // The name is quoted so this cannot happen.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Expose this object over JMX. The server keeps the instrumented registrar reachable until
+     * {@link #unregister(MBeanServer)} is called.
+     *
+     * @param  server Typically {@link java.lang.management.ManagementFactory#getPlatformMBeanServer()}.
+     * @throws IllegalStateException if another registrar with the same name is already registered.
+     */
+    public void register(MBeanServer server) {
+        try {
+            server.registerMBean(this, getObjectName());
+        } catch (InstanceAlreadyExistsException e) {
+            throw new IllegalStateException("A registrar named " + mName + " is already registered.", e);
+        } catch (MBeanRegistrationException e) {
+            throw new IllegalStateException(e);
+        } catch (NotCompliantMBeanException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Stop exposing this object over JMX. Does nothing if it is not registered.
+     */
+    public void unregister(MBeanServer server) {
+        try {
+            server.unregisterMBean(getObjectName());
+        } catch (InstanceNotFoundException e) {
+            // okay
+        } catch (MBeanRegistrationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // +----------------------------------------------------------------------+
+    // | RegistrarMetricsMXBean
+    // +----------------------------------------------------------------------+
+    @Override
+    public String getName() {
+        return mName;
+    }
+
+    @Override
+    public int getSize() {
+        return mRegistrar.size();
+    }
+
+    @Override
+    public long getAddCount() {
+        return mCounters.sum(ADD);
+    }
+
+    @Override
+    public long getRemoveCount() {
+        return mCounters.sum(REMOVE);
+    }
+
+    @Override
+    public long getClearCount() {
+        return mCounters.sum(CLEAR);
+    }
+
+    @Override
+    public long getSnapshotCopyBytes() {
+        return mCounters.sum(COPY_BYTES);
+    }
+
+    @Override
+    public long getDispatchCount() {
+        return mCounters.sum(DISPATCH);
+    }
+
+    @Override
+    public long getDispatchTimeNanos() {
+        return mCounters.sum(DISPATCH_NANOS);
+    }
+
+    @Override
+    public long[] getDispatchLatencyHistogram() {
+        return mLatencyHistogram.sums();
+    }
+
+    @Override
+    public long dispatchLatencyPercentileNanos(double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("percentile must be between 0 and 100.");
+        }
+        final long[] histogram = getDispatchLatencyHistogram();
+        long total = 0;
+        for (long count : histogram) {
+            total += count;
+        }
+        if (0 == total) {
+            return 0;
+        }
+        final double rank = Math.max(1, Math.ceil(total * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < histogram.length; ++i) {
+            seen += histogram[i];
+            if (seen >= rank) {
+                return i == histogram.length - 1 ? Long.MAX_VALUE : (1L << (i + 1)) - 1;
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+
+    @Override
+    public Map<String, Long> getListenerCallbackCounts() {
+        return sumCallbacks(CALLBACK);
+    }
+
+    @Override
+    public Map<String, Long> getListenerCallbackNanos() {
+        return sumCallbacks(CALLBACK_NANOS);
+    }
+
+    // +----------------------------------------------------------------------+
+    // | PACKAGE
+    // +----------------------------------------------------------------------+
+    void recordAdd(int sizeBefore, int sizeAfter, boolean copyOnWrite) {
+        mCounters.increment(ADD);
+        recordCopy(sizeBefore, sizeAfter, copyOnWrite);
+    }
+
+    void recordRemove(int sizeBefore, int sizeAfter, boolean copyOnWrite) {
+        mCounters.increment(REMOVE);
+        recordCopy(sizeBefore, sizeAfter, copyOnWrite);
+    }
+
+    /**
+     * Record a committed {@link com.fiftythree.bubo.Registrar.Editor}, which makes at most one copy however
+     * many changes it holds.
+     */
+    void recordEdit(int adds, int removes, int sizeBefore, int sizeAfter, boolean copyOnWrite) {
+        mCounters.add(ADD, adds);
+        mCounters.add(REMOVE, removes);
+        recordCopy(sizeBefore, sizeAfter, copyOnWrite);
+    }
+
+    void recordClear() {
+        mCounters.increment(CLEAR);
+    }
+
+    void recordDispatch(long nanos) {
+        mCounters.increment(DISPATCH);
+        mCounters.add(DISPATCH_NANOS, nanos);
+        mLatencyHistogram.increment(nanos <= 0 ? 0 : Long.SIZE - 1 - Long.numberOfLeadingZeros(nanos));
+    }
+
+    void recordCallback(Class<?> listenerClass, long nanos) {
+        StripedCounter counter = mCallbacks.get(listenerClass);
+        if (null == counter) {
+            final StripedCounter created = new StripedCounter(2);
+            counter = mCallbacks.putIfAbsent(listenerClass, created);
+            if (null == counter) {
+                counter = created;
+            }
+        }
+        counter.increment(CALLBACK);
+        counter.add(CALLBACK_NANOS, nanos);
+    }
+
+    // +----------------------------------------------------------------------+
+    // | PRIVATE
+    // +----------------------------------------------------------------------+
+    private void recordCopy(int sizeBefore, int sizeAfter, boolean copyOnWrite) {
+        if (copyOnWrite && sizeBefore != sizeAfter) {
+            mCounters.add(COPY_BYTES, ARRAY_HEADER_BYTES + (long) sizeAfter * REFERENCE_BYTES);
+        }
+    }
+
+    private Map<String, Long> sumCallbacks(int counter) {
+        final Map<String, Long> sums = new TreeMap<String, Long>();
+        for (Map.Entry<Class<?>, StripedCounter> entry : mCallbacks.entrySet()) {
+            final String name = entry.getKey().getName();
+            final Long previous = sums.get(name);
+            final long sum = entry.getValue().sum(counter);
+            sums.put(name, null == previous ? sum : previous + sum);
+        }
+        return sums;
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ *
+ *                                ^ ^
+ *                                O O
+ *                              /    )
+ *                             /  ,,
+ * Bubo – Observable Contracts and Specialized Implementations.
+ *                              |/
+ * Copyright 2015 FiftyThree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fiftythree.bubo.metrics;
+
+import java.util.Map;
+
+/**
+ * The management interface exposed over JMX for each {@link InstrumentedRegistrar}. Counts are cumulative
+ * since the registrar was created; monitoring systems derive rates by sampling them.
+ */
+public interface RegistrarMetricsMXBean {
+
+    /**
+     * @return The name the registrar was created with.
+     */
+    String getName();
+
+    /**
+     * @return The number of listeners currently registered.
+     */
+    int getSize();
+
+    /**
+     * @return The number of calls to addListener.
+     */
+    long getAddCount();
+
+    /**
+     * @return The number of calls to removeListener.
+     */
+    long getRemoveCount();
+
+    /**
+     * @return The number of calls to clear.
+     */
+    long getClearCount();
+
+    /**
+     * @return Estimated bytes allocated copying listener snapshots because of (de)registrations. Zero unless
+     *         the registrar is annotated with {@link com.fiftythree.bubo.annotations.CopyOnWrite}, and zero
+     *         for the single threaded registrars, which write in place unless a dispatch is in progress.
+     */
+    long getSnapshotCopyBytes();
+
+    /**
+     * @return The number of dispatches.
+     */
+    long getDispatchCount();
+
+    /**
+     * @return Total time spent dispatching, in nanoseconds.
+     */
+    long getDispatchTimeNanos();
+
+    /**
+     * @return Dispatch latency histogram. Element {@code i} counts dispatches which took at least
+     *         {@code 2^i} but less than {@code 2^(i+1)} nanoseconds; element 0 also counts dispatches which
+     *         took no measurable time.
+     */
+    long[] getDispatchLatencyHistogram();
+
+    /**
+     * Estimate a dispatch latency percentile from the histogram.
+     * @param  percentile A value from 0 to 100.
+     * @return The upper bound, in nanoseconds, of the histogram bucket containing the percentile or 0 if there
+     *         have been no dispatches.
+     */
+    long dispatchLatencyPercentileNanos(double percentile);
+
+    /**
+     * @return The number of callbacks made to listeners, keyed by listener class name. Listeners sharing a
+     *         class are counted together, so this identifies slow listener types rather than instances. Empty
+     *         if callback timing is disabled.
+     */
+    Map<String, Long> getListenerCallbackCounts();
+
+    /**
+     * @return Total time spent in listener callbacks, in nanoseconds, keyed by listener class name as for
+     *         {@link #getListenerCallbackCounts()}. Empty if callback timing is disabled.
+     */
+    Map<String, Long> getListenerCallbackNanos();
+}
@@ -0,0 +1,91 @@
+/*
+ *
+ *                                ^ ^
+ *                                O O
+ *                              /    )
+ *                             /  ,,
+ * Bubo – Observable Contracts and Specialized Implementations.
+ *                              |/
+ * Copyright 2015 FiftyThree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fiftythree.bubo.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed number of long counters spread across several stripes so that threads updating them concurrently
+ * rarely write to the same cache line. Updates are cheap; reads sum every stripe and are only as consistent as
+ * the concurrent updates allow.
+ */
+final class StripedCounter {
+
+    private static final int MAX_STRIPES = 64;
+    // Number of longs in a 64 byte cache line.
+    private static final int LINE_LONGS = 8;
+
+    private final AtomicLongArray mCells;
+    private final int mWidth;
+    private final int mStride;
+    private final int mStripeMask;
+
+    /**
+     * @param width The number of counters.
+     */
+    StripedCounter(int width) {
+        int stripes = 1;
+        final int processors = Runtime.getRuntime().availableProcessors();
+        while (stripes < processors && stripes < MAX_STRIPES) {
+            stripes <<= 1;
+        }
+        mWidth = width;
+        // Round each stripe up to whole cache lines plus one line of padding between neighbouring stripes.
+        mStride = ((width + LINE_LONGS - 1) / LINE_LONGS + 1) * LINE_LONGS;
+        mStripeMask = stripes - 1;
+        mCells = new AtomicLongArray(stripes * mStride);
+    }
+
+    int width() {
+        return mWidth;
+    }
+
+    void increment(int counter) {
+        add(counter, 1);
+    }
+
+    void add(int counter, long delta) {
+        mCells.addAndGet(stripe() * mStride + counter, delta);
+    }
+
+    long sum(int counter) {
+        long sum = 0;
+        for (int i = counter; i < mCells.length(); i += mStride) {
+            sum += mCells.get(i);
+        }
+        return sum;
+    }
+
+    long[] sums() {
+        final long[] sums = new long[mWidth];
+        for (int i = 0; i < mWidth; ++i) {
+            sums[i] = sum(i);
+        }
+        return sums;
+    }
+
+    private int stripe() {
+        final long id = Thread.currentThread().getId();
+        return (int) (id ^ (id >>> 32)) & mStripeMask;
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ *
+ *                                ^ ^
+ *                                O O
+ *                              /    )
+ *                             /  ,,
+ * Bubo – Observable Contracts and Specialized Implementations.
+ *                              |/
+ * Copyright 2015 FiftyThree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fiftythree.bubo.ring;
+
+/**
+ * Thrown by {@link SequenceBarrier#waitFor(long)} when the barrier is alerted, usually because the consumer
+ * waiting on it is being halted. A single instance without a stack trace is reused since this is used for
+ * control flow.
+ */
+public final class AlertException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    static final AlertException INSTANCE = new AlertException();
+
+    private AlertException() {
+        super("Alerted", null);
+    }
+
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+        return this;
+    }
+}
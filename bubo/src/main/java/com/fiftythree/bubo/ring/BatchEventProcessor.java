@@ -0,0 +1,194 @@
+/*
+ *
+ *                                ^ ^
+ *                                O O
+ *                              /    )
+ *                             /  ,,
+ * Bubo – Observable Contracts and Specialized Implementations.
+ *                              |/
+ * Copyright 2015 FiftyThree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fiftythree.bubo.ring;
+
+import com.fiftythree.bubo.Notifier;
+import com.fiftythree.bubo.Registrar;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Consumes a {@link RingBuffer} on one thread, delivering every event to the {@link EventListener}s
+ * registered with a {@link Registrar}. Whatever is available when the consumer wakes is processed as one
+ * batch and the consumer's sequence is advanced once per batch, releasing the slots to producers.
+ *
+ * <p>Listeners may be added and removed at any time if the registrar is thread-safe; the Atomic Dispatch Rule
+ * applies per event. The registrar must dispatch synchronously since events are reused once delivered. An
+ * exception thrown by a listener ends the dispatch of that event, as it would for any registrar, and is passed
+ * to the consuming thread's uncaught exception handler; the processor then carries on with the next event.</p>
+ *
+ * <p>A halt is never lost: halting before the consuming thread reaches {@link #run()} makes that run return at
+ * once. A processor may be run again once halted; a run that starts while the halted one is still finishing its
+ * current event waits for it to return, so there is never more than one consumer.</p>
+ */
+public final class BatchEventProcessor<EVENT_TYPE> implements Runnable {
+
+    // No thread is in run().
+    private static final int IDLE = 0;
+    // halt() was called while IDLE. The next run() returns at once.
+    private static final int HALT_PENDING = 1;
+    // A thread is consuming events.
+    private static final int RUNNING = 2;
+    // halt() was called while RUNNING. The consuming thread has yet to leave run().
+    private static final int HALTED = 3;
+
+    private final RingBuffer<EVENT_TYPE> mRingBuffer;
+    private final SequenceBarrier mBarrier;
+    private final Registrar<EventListener<EVENT_TYPE>> mListeners;
+    private final Sequence mSequence;
+    private final AtomicInteger mState;
+    private final EventNotifier<EVENT_TYPE> mNotifier;
+
+    /**
+     * Create a processor and register its sequence as gating the ring buffer.
+     *
+     * @param ringBuffer The ring to consume.
+     * @param listeners  The listeners to deliver events to.
+     */
+    public BatchEventProcessor(RingBuffer<EVENT_TYPE> ringBuffer, Registrar<EventListener<EVENT_TYPE>> listeners) {
+        if (null == ringBuffer) {
+            throw new IllegalArgumentException("ringBuffer cannot be null.");
+        }
+        if (null == listeners) {
+            throw new IllegalArgumentException("listeners cannot be null.");
+        }
+        mRingBuffer = ringBuffer;
+        mBarrier = ringBuffer.newBarrier();
+        mListeners = listeners;
+        mSequence = new Sequence();
+        mState = new AtomicInteger(IDLE);
+        mNotifier = new EventNotifier<EVENT_TYPE>();
+        ringBuffer.addGatingSequences(mSequence);
+    }
+
+    /**
+     * @return The sequence of the last event this processor delivered.
+     */
+    public Sequence getSequence() {
+        return mSequence;
+    }
+
+    /**
+     * @return True if a thread is consuming events and the processor has not been halted.
+     */
+    public boolean isRunning() {
+        return RUNNING == mState.get();
+    }
+
+    /**
+     * Ask the processor to stop once it finishes the current event. Returns immediately; {@link #run()}
+     * returns on the consuming thread shortly after. If no thread is consuming yet the next {@link #run()}
+     * returns without processing any events.
+     */
+    public void halt() {
+        while (true) {
+            final int state = mState.get();
+            if ((IDLE == state && mState.compareAndSet(IDLE, HALT_PENDING))
+                    || (RUNNING == state && mState.compareAndSet(RUNNING, HALTED))) {
+                break;
+            } else if (HALT_PENDING == state || HALTED == state) {
+                break;
+            }
+        }
+        mBarrier.alert();
+    }
+
+    /**
+     * Process events until {@link #halt()} is called or the thread is interrupted.
+     * @throws IllegalStateException if the processor is already running.
+     */
+    @Override
+    public void run() {
+        while (!mState.compareAndSet(IDLE, RUNNING)) {
+            final int state = mState.get();
+            if (RUNNING == state) {
+                throw new IllegalStateException("BatchEventProcessor is already running.");
+            } else if (HALT_PENDING == state && mState.compareAndSet(HALT_PENDING, IDLE)) {
+                return;
+            } else if (HALTED == state) {
+                // The previous consumer is finishing its current event.
+                Thread.yield();
+            }
+        }
+        // Only now that no other thread can be waiting on the barrier is it safe to clear a halt's alert.
+        mBarrier.clearAlert();
+        long nextSequence = mSequence.get() + 1;
+        try {
+            while (true) {
+                try {
+                    final long available = mBarrier.waitFor(nextSequence);
+                    while (nextSequence <= available) {
+                        deliver(nextSequence, nextSequence == available);
+                        ++nextSequence;
+                    }
+                    mSequence.set(available);
+                } catch (AlertException e) {
+                    // A halt() that found this processor idle may only get to alert once this run has started.
+                    // Clearing before the state check cannot lose a halt of this run, which alerts after leaving
+                    // RUNNING.
+                    mBarrier.clearAlert();
+                    if (RUNNING != mState.get()) {
+                        return;
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            mState.set(IDLE);
+        }
+    }
+
+    // +----------------------------------------------------------------------+
+    // | PRIVATE
+    // +----------------------------------------------------------------------+
+    private void deliver(long sequence, boolean endOfBatch) {
+        final EventNotifier<EVENT_TYPE> notifier = mNotifier;
+        notifier.mEvent = mRingBuffer.get(sequence);
+        notifier.mSequence = sequence;
+        notifier.mEndOfBatch = endOfBatch;
+        try {
+            mListeners.dispatch(notifier);
+        } catch (RuntimeException e) {
+            final Thread thread = Thread.currentThread();
+            thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+        } finally {
+            notifier.mEvent = null;
+        }
+    }
+
+    /**
+     * Reused for every event since only the consuming thread dispatches.
+     */
+    private static final class EventNotifier<EVENT_TYPE> implements Notifier<EventListener<EVENT_TYPE>> {
+
+        EVENT_TYPE mEvent;
+        long mSequence;
+        boolean mEndOfBatch;
+
+        @Override
+        public void onNotify(EventListener<EVENT_TYPE> listener) {
+            listener.onEvent(mEvent, mSequence, mEndOfBatch);
+        }
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ *
+ *                                ^ ^
+ *                                O O
+ *                              /    )
+ *                             /  ,,
+ * Bubo – Observable Contracts and Specialized Implementations.
+ *                              |/
+ * Copyright 2015 FiftyThree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fiftythree.bubo.ring;
+
+/**
+ * Waits by spinning on the cursor. Lowest latency, but the consumer thread occupies a core while waiting so
+ * use this only when consumer threads can be pinned to otherwise idle cores.
+ */
+public final class BusySpinWaitStrategy implements WaitStrategy {
+
+    @Override
+    public long waitFor(long sequence, Sequence cursor, SequenceBarrier barrier) throws AlertException {
+        long available;
+        while ((available = cursor.get()) < sequence) {
+            barrier.checkAlert();
+        }
+        return available;
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ *
+ *                                ^ ^
+ *                                O O
+ *                              /    )
+ *                             /  ,,
+ * Bubo – Observable Contracts and Specialized Implementations.
+ *                              |/
+ * Copyright 2015 FiftyThree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fiftythree.bubo.ring;
+
+/**
+ * Receives events from a {@link RingEventBus}. Listeners are registered with the bus's
+ * {@link com.fiftythree.bubo.Registrar} and called on the bus's consumer thread.
+ */
+public interface EventListener<EVENT_TYPE> {
+
+    /**
+     * Called for every published event in sequence order.
+     *
+     * @param event      The event. It is reused once this call returns, so copy anything that must be kept.
+     * @param sequence   The sequence the event was published at.
+     * @param endOfBatch True for the last event currently available. Use this to flush work batched across
+     *                   events.
+     */
+    void onEvent(EVENT_TYPE event, long sequence, boolean endOfBatch);
+}
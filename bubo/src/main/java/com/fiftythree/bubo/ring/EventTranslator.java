@@ -0,0 +1,36 @@
+/*
+ *
+ *                                ^ ^
+ *                                O O
+ *                              /    )
+ *                             /  ,,
+ * Bubo – Observable Contracts and Specialized Implementations.
+ *                              |/
+ * Copyright 2015 FiftyThree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fiftythree.bubo.ring;
+
+/**
+ * Fills a claimed, reused event slot with the data being published. See
+ * {@link RingBuffer#publishEvent(EventTranslator)}.
+ */
+public interface EventTranslator<EVENT_TYPE> {
+
+    /**
+     * @param event    The reused event to overwrite.
+     * @param sequence The sequence the event is being published at.
+     */
+    void translateTo(EVENT_TYPE event, long sequence);
+}
@@ -0,0 +1,148 @@
+/*
+ *
+ *                                ^ ^
+ *                                O O
+ *                              /    )
+ *                             /  ,,
+ * Bubo – Observable Contracts and Specialized Implementations.
+ *                              |/
+ * Copyright 2015 FiftyThree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fiftythree.bubo.ring;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Coordinates claiming and publishing slots of a {@link RingBuffer} among any number of producer threads.
+ *
+ * <p>Producers claim sequences by advancing the cursor with compare-and-set. Because producers may publish
+ * out of order the cursor only says which slots have been claimed; each slot also records the "round" of the
+ * ring it was last published in, and consumers use that to find the highest contiguous published sequence.
+ * A producer never claims a slot more than one ring ahead of the slowest gating (consumer) sequence.</p>
+ */
+final class MultiProducerSequencer {
+
+    private final int mBufferSize;
+    private final int mIndexMask;
+    private final int mIndexShift;
+    private final Sequence mCursor;
+    // The minimum gating sequence, cached to avoid reading every consumer sequence on each claim.
+    private final Sequence mGatingSequenceCache;
+    // For each slot, the round (sequence / bufferSize) in which it was last published.
+    private final AtomicIntegerArray mAvailable;
+    private volatile Sequence[] mGatingSequences;
+
+    MultiProducerSequencer(int bufferSize) {
+        if (bufferSize < 1 || Integer.bitCount(bufferSize) != 1) {
+            throw new IllegalArgumentException("bufferSize must be a positive power of 2.");
+        }
+        mBufferSize = bufferSize;
+        mIndexMask = bufferSize - 1;
+        mIndexShift = Integer.numberOfTrailingZeros(bufferSize);
+        mCursor = new Sequence();
+        mGatingSequenceCache = new Sequence();
+        mAvailable = new AtomicIntegerArray(bufferSize);
+        for (int i = 0; i < bufferSize; ++i) {
+            mAvailable.set(i, -1);
+        }
+        mGatingSequences = new Sequence[0];
+    }
+
+    int bufferSize() {
+        return mBufferSize;
+    }
+
+    Sequence cursor() {
+        return mCursor;
+    }
+
+    synchronized void addGatingSequences(Sequence... sequences) {
+        final Sequence[] current = mGatingSequences;
+        final Sequence[] next = Arrays.copyOf(current, current.length + sequences.length);
+        final long cursor = mCursor.get();
+        for (int i = 0; i < sequences.length; ++i) {
+            sequences[i].set(cursor);
+            next[current.length + i] = sequences[i];
+        }
+        mGatingSequences = next;
+    }
+
+    synchronized void removeGatingSequence(Sequence sequence) {
+        final Sequence[] current = mGatingSequences;
+        for (int i = 0; i < current.length; ++i) {
+            if (current[i] == sequence) {
+                final Sequence[] next = new Sequence[current.length - 1];
+                System.arraycopy(current, 0, next, 0, i);
+                System.arraycopy(current, i + 1, next, i, next.length - i);
+                mGatingSequences = next;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Claim the next sequence, waiting for consumers if the ring is full.
+     */
+    long next() {
+        while (true) {
+            final long current = mCursor.get();
+            final long next = current + 1;
+            final long wrapPoint = next - mBufferSize;
+            final long cachedGatingSequence = mGatingSequenceCache.get();
+            if (wrapPoint > cachedGatingSequence || cachedGatingSequence > current) {
+                final long gatingSequence = Sequence.minimum(mGatingSequences, current);
+                if (wrapPoint > gatingSequence) {
+                    // The ring is full; wait for the slowest consumer.
+                    LockSupport.parkNanos(1);
+                    continue;
+                }
+                mGatingSequenceCache.set(gatingSequence);
+            } else if (mCursor.compareAndSet(current, next)) {
+                return next;
+            }
+        }
+    }
+
+    void publish(long sequence) {
+        mAvailable.lazySet(index(sequence), round(sequence));
+    }
+
+    boolean isAvailable(long sequence) {
+        return mAvailable.get(index(sequence)) == round(sequence);
+    }
+
+    /**
+     * @return The highest sequence from {@code lowerBound} up to {@code available} such that every sequence
+     *         in between has been published, or {@code lowerBound - 1} if {@code lowerBound} has not.
+     */
+    long highestPublishedSequence(long lowerBound, long available) {
+        for (long sequence = lowerBound; sequence <= available; ++sequence) {
+            if (!isAvailable(sequence)) {
+                return sequence - 1;
+            }
+        }
+        return available;
+    }
+
+    private int index(long sequence) {
+        return (int) sequence & mIndexMask;
+    }
+
+    private int round(long sequence) {
+        return (int) (sequence >>> mIndexShift);
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ *
+ *                                ^ ^
+ *                                O O
+ *                              /    )
+ *                             /  ,,
+ * Bubo – Observable Contracts and Specialized Implementations.
+ *                              |/
+ * Copyright 2015 FiftyThree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fiftythree.bubo.ring;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Waits by spinning briefly, then yielding, then parking the thread for a short interval between checks of
+ * the cursor. Publishers never need to wake consumers so publishing stays cheap; in exchange a consumer may
+ * notice a new event up to one park interval late.
+ */
+public final class ParkingWaitStrategy implements WaitStrategy {
+
+    private static final int SPIN_TRIES = 100;
+    private static final int YIELD_TRIES = 100;
+
+    private final long mParkNanos;
+
+    /**
+     * Create a strategy which parks for 100 microseconds at a time.
+     */
+    public ParkingWaitStrategy() {
+        this(100, TimeUnit.MICROSECONDS);
+    }
+
+    /**
+     * @param parkTime The time to park between checks. Must be positive.
+     * @param unit     The unit of parkTime.
+     */
+    public ParkingWaitStrategy(long parkTime, TimeUnit unit) {
+        if (parkTime <= 0) {
+            throw new IllegalArgumentException("parkTime must be positive.");
+        }
+        mParkNanos = unit.toNanos(parkTime);
+    }
+
+    @Override
+    public long waitFor(long sequence, Sequence cursor, SequenceBarrier barrier)
+            throws AlertException, InterruptedException {
+        long available;
+        int counter = SPIN_TRIES + YIELD_TRIES;
+        while ((available = cursor.get()) < sequence) {
+            barrier.checkAlert();
+            if (counter > YIELD_TRIES) {
+                --counter;
+            } else if (counter > 0) {
+                --counter;
+                Thread.yield();
+            } else {
+                LockSupport.parkNanos(mParkNanos);
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+            }
+        }
+        return available;
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ *
+ *                                ^ ^
+ *                                O O
+ *                              /    )
+ *                             /  ,,
+ * Bubo – Observable Contracts and Specialized Implementations.
+ *                              |/
+ * Copyright 2015 FiftyThree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fiftythree.bubo.ring;
+
+/**
+ * A fixed size ring of preallocated, reusable events shared by any number of producer threads and consumed
+ * through {@link SequenceBarrier}s. Publishing fills an existing slot rather than allocating, and consumers
+ * that fall behind receive the backlog in a single batch.
+ *
+ * <p>Publishing is a two step protocol: claim a sequence with {@link #next()}, fill the event returned by
+ * {@link #get(long)}, then {@link #publish(long)} the sequence. Always publish a claimed sequence, even on
+ * failure, or consumers will stall at it. {@link #publishEvent(EventTranslator)} does all three steps.</p>
+ */
+public final class RingBuffer<EVENT_TYPE> {
+
+    private final Object[] mEntries;
+    private final int mIndexMask;
+    private final MultiProducerSequencer mSequencer;
+    private final WaitStrategy mWaitStrategy;
+
+    /**
+     * @param factory      Creates the event preallocated in each slot.
+     * @param bufferSize   The number of slots. Must be a power of 2.
+     * @param waitStrategy How consumers wait for events to be published.
+     */
+    public RingBuffer(EventFactory<EVENT_TYPE> factory, int bufferSize, WaitStrategy waitStrategy) {
+        if (null == factory) {
+            throw new IllegalArgumentException("factory cannot be null.");
+        }
+        if (null == waitStrategy) {
+            throw new IllegalArgumentException("waitStrategy cannot be null.");
+        }
+        mSequencer = new MultiProducerSequencer(bufferSize);
+        mWaitStrategy = waitStrategy;
+        mIndexMask = bufferSize - 1;
+        mEntries = new Object[bufferSize];
+        for (int i = 0; i < bufferSize; ++i) {
+            mEntries[i] = factory.newInstance();
+        }
+    }
+
+    public int getBufferSize() {
+        return mEntries.length;
+    }
+
+    /**
+     * @return The highest sequence claimed by a producer. It may not have been published yet.
+     */
+    public long getCursor() {
+        return mSequencer.cursor().get();
+    }
+
+    /**
+     * Claim the next slot, waiting for the slowest gating consumer if the ring is full.
+     * @return The claimed sequence.
+     */
+    public long next() {
+        return mSequencer.next();
+    }
+
+    /**
+     * @return The event in the slot for the given sequence.
+     */
+    @SuppressWarnings("unchecked")
+    public EVENT_TYPE get(long sequence) {
+        return (EVENT_TYPE) mEntries[(int) sequence & mIndexMask];
+    }
+
+    /**
+     * Make a claimed sequence available to consumers.
+     */
+    public void publish(long sequence) {
+        mSequencer.publish(sequence);
+    }
+
+    /**
+     * Claim a slot, fill it using the translator, and publish it.
+     */
+    public void publishEvent(EventTranslator<EVENT_TYPE> translator) {
+        final long sequence = mSequencer.next();
+        try {
+            translator.translateTo(get(sequence), sequence);
+        } finally {
+            mSequencer.publish(sequence);
+        }
+    }
+
+    /**
+     * @return A new barrier for a consumer of this ring.
+     */
+    public SequenceBarrier newBarrier() {
+        return new SequenceBarrier(mSequencer, mWaitStrategy);
+    }
+
+    /**
+     * Prevent producers from overwriting events that the given consumer sequences have not yet processed.
+     * Each sequence is moved to the current cursor.
+     */
+    public void addGatingSequences(Sequence... sequences) {
+        mSequencer.addGatingSequences(sequences);
+    }
+
+    public void removeGatingSequence(Sequence sequence) {
+        mSequencer.removeGatingSequence(sequence);
+    }
+}
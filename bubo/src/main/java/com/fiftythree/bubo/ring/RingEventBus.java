@@ -0,0 +1,107 @@
+/*
+ *
+ *                                ^ ^
+ *                                O O
+ *                              /    )
+ *                             /  ,,
+ * Bubo – Observable Contracts and Specialized Implementations.
+ *                              |/
+ * Copyright 2015 FiftyThree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fiftythree.bubo.ring;
+
+import com.fiftythree.bubo.Registrar;
+
+import java.util.concurrent.Executor;
+
+/**
+ * An event bus which fully decouples producers from listeners. Producers on any thread fill preallocated
+ * events in a {@link RingBuffer}; a single consumer thread delivers them, in batches, to the
+ * {@link EventListener}s registered with a {@link Registrar}. Publishing never calls a listener and never
+ * allocates, and only waits if the consumer has fallen a whole ring behind.
+ *
+ * <pre>
+ * {@code
+ * final RingEventBus<PriceEvent> bus = new RingEventBus<PriceEvent>(PriceEvent.FACTORY, 1024,
+ *         new YieldingWaitStrategy(), new ThreadSafeRegistrar<EventListener<PriceEvent>>());
+ * bus.getListeners().addListener(chartUpdater);
+ * bus.start(executor);
+ * bus.publishEvent(translator);
+ * }
+ * </pre>
+ */
+public final class RingEventBus<EVENT_TYPE> {
+
+    private final RingBuffer<EVENT_TYPE> mRingBuffer;
+    private final Registrar<EventListener<EVENT_TYPE>> mListeners;
+    private final BatchEventProcessor<EVENT_TYPE> mProcessor;
+
+    /**
+     * @param factory      Creates the event preallocated in each slot.
+     * @param bufferSize   The number of slots. Must be a power of 2.
+     * @param waitStrategy How the consumer waits for events.
+     * @param listeners    The registrar listeners subscribe with. Use a thread-safe registrar to subscribe
+     *                     while the bus is running.
+     */
+    public RingEventBus(EventFactory<EVENT_TYPE> factory, int bufferSize, WaitStrategy waitStrategy,
+                        Registrar<EventListener<EVENT_TYPE>> listeners) {
+        mRingBuffer = new RingBuffer<EVENT_TYPE>(factory, bufferSize, waitStrategy);
+        mListeners = listeners;
+        mProcessor = new BatchEventProcessor<EVENT_TYPE>(mRingBuffer, listeners);
+    }
+
+    /**
+     * @return The registrar of listeners to this bus.
+     */
+    public Registrar<EventListener<EVENT_TYPE>> getListeners() {
+        return mListeners;
+    }
+
+    /**
+     * @return The ring buffer, for producers that claim and publish slots themselves.
+     */
+    public RingBuffer<EVENT_TYPE> getRingBuffer() {
+        return mRingBuffer;
+    }
+
+    /**
+     * Start delivering events. The consumer occupies one executor thread until {@link #halt()} is called.
+     */
+    public void start(Executor executor) {
+        executor.execute(mProcessor);
+    }
+
+    /**
+     * Stop delivering events. Events already published but not yet delivered remain in the ring and are
+     * delivered if the bus is started again.
+     */
+    public void halt() {
+        mProcessor.halt();
+    }
+
+    /**
+     * Claim a slot, fill it using the translator, and publish it.
+     */
+    public void publishEvent(EventTranslator<EVENT_TYPE> translator) {
+        mRingBuffer.publishEvent(translator);
+    }
+
+    /**
+     * @return The sequence of the last event delivered to listeners.
+     */
+    public long getDeliveredSequence() {
+        return mProcessor.getSequence().get();
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ *
+ *                                ^ ^
+ *                                O O
+ *                              /    )
+ *                             /  ,,
+ * Bubo – Observable Contracts and Specialized Implementations.
+ *                              |/
+ * Copyright 2015 FiftyThree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fiftythree.bubo.ring;
+
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * A position in a {@link RingBuffer} that is written by one party and read by others: the publication cursor,
+ * or how far a consumer has processed. The value is padded on both sides so neighbouring sequences written by
+ * different threads do not share a cache line. The JVM is free to reorder fields so the padding is a best
+ * effort.
+ */
+public class Sequence {
+
+    /**
+     * The value of a sequence before anything has been published or processed.
+     */
+    public static final long INITIAL_VALUE = -1L;
+
+    private static final AtomicLongFieldUpdater<Sequence> VALUE =
+            AtomicLongFieldUpdater.newUpdater(Sequence.class, "mValue");
+
+    @SuppressWarnings("unused")
+    private long mP1, mP2, mP3, mP4, mP5, mP6, mP7;
+    private volatile long mValue;
+    @SuppressWarnings("unused")
+    private long mP9, mP10, mP11, mP12, mP13, mP14, mP15;
+
+    public Sequence() {
+        this(INITIAL_VALUE);
+    }
+
+    public Sequence(long initialValue) {
+        mValue = initialValue;
+    }
+
+    public long get() {
+        return mValue;
+    }
+
+    /**
+     * An ordered write: it will not be reordered with earlier writes but may become visible to other threads
+     * slightly later than a volatile write would.
+     */
+    public void set(long value) {
+        VALUE.lazySet(this, value);
+    }
+
+    public void setVolatile(long value) {
+        mValue = value;
+    }
+
+    public boolean compareAndSet(long expected, long value) {
+        return VALUE.compareAndSet(this, expected, value);
+    }
+
+    @Override
+    public String toString() {
+        return Long.toString(mValue);
+    }
+
+    /**
+     * @return The smallest value of the given sequences or {@code minimum} if it is smaller.
+     */
+    static long minimum(Sequence[] sequences, long minimum) {
+        for (Sequence sequence : sequences) {
+            minimum = Math.min(minimum, sequence.get());
+        }
+        return minimum;
+    }
+}
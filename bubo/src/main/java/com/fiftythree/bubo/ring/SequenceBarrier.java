@@ -0,0 +1,82 @@
+/*
+ *
+ *                                ^ ^
+ *                                O O
+ *                              /    )
+ *                             /  ,,
+ * Bubo – Observable Contracts and Specialized Implementations.
+ *                              |/
+ * Copyright 2015 FiftyThree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fiftythree.bubo.ring;
+
+/**
+ * Lets a consumer wait until events are published to a {@link RingBuffer}. Obtain one from
+ * {@link RingBuffer#newBarrier()}.
+ */
+public final class SequenceBarrier {
+
+    private final MultiProducerSequencer mSequencer;
+    private final WaitStrategy mWaitStrategy;
+    private volatile boolean mAlerted;
+
+    SequenceBarrier(MultiProducerSequencer sequencer, WaitStrategy waitStrategy) {
+        mSequencer = sequencer;
+        mWaitStrategy = waitStrategy;
+    }
+
+    /**
+     * Wait for the given sequence to be published.
+     *
+     * @param  sequence The sequence to wait for.
+     * @return The highest sequence which may be consumed. This can be greater than {@code sequence}, allowing
+     *         the consumer to process a batch, or less than it if the wait strategy returned early.
+     * @throws AlertException       if the barrier is alerted.
+     * @throws InterruptedException if the waiting thread is interrupted.
+     */
+    public long waitFor(long sequence) throws AlertException, InterruptedException {
+        checkAlert();
+        final long available = mWaitStrategy.waitFor(sequence, mSequencer.cursor(), this);
+        if (available < sequence) {
+            return available;
+        }
+        return mSequencer.highestPublishedSequence(sequence, available);
+    }
+
+    /**
+     * Wake any consumer waiting on this barrier by making it throw {@link AlertException}. The barrier stays
+     * alerted until {@link #clearAlert()} is called.
+     */
+    public void alert() {
+        mAlerted = true;
+    }
+
+    public void clearAlert() {
+        mAlerted = false;
+    }
+
+    public boolean isAlerted() {
+        return mAlerted;
+    }
+
+    /**
+     * @throws AlertException if the barrier has been alerted.
+     */
+    public void checkAlert() throws AlertException {
+        if (mAlerted) {
+            throw AlertException.INSTANCE;
+        }
+    }
+}
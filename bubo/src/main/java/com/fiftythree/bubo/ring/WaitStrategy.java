@@ -0,0 +1,47 @@
+/*
+ *
+ *                                ^ ^
+ *                                O O
+ *                              /    )
+ *                             /  ,,
+ * Bubo – Observable Contracts and Specialized Implementations.
+ *                              |/
+ * Copyright 2015 FiftyThree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fiftythree.bubo.ring;
+
+/**
+ * How a consumer waits for a sequence to be published. The strategies trade latency against CPU use:
+ * {@link BusySpinWaitStrategy} has the lowest latency but occupies a core, {@link YieldingWaitStrategy} lets
+ * other threads run between checks, and {@link ParkingWaitStrategy} sleeps between checks and is the only
+ * suitable choice when consumers outnumber cores.
+ */
+public interface WaitStrategy {
+
+    /**
+     * Wait until the cursor reaches the given sequence.
+     *
+     * @param  sequence The sequence to wait for.
+     * @param  cursor   The ring buffer's publication cursor.
+     * @param  barrier  The barrier being waited on. Implementations must call
+     *                  {@link SequenceBarrier#checkAlert()} while waiting.
+     * @return The cursor value seen, at least {@code sequence}. Slots up to this value have been claimed but
+     *         not necessarily published.
+     * @throws AlertException       if the barrier is alerted while waiting.
+     * @throws InterruptedException if the waiting thread is interrupted.
+     */
+    long waitFor(long sequence, Sequence cursor, SequenceBarrier barrier)
+            throws AlertException, InterruptedException;
+}
@@ -0,0 +1,166 @@
+/*
+ *
+ *                                ^ ^
+ *                                O O
+ *                              /    )
+ *                             /  ,,
+ * Bubo – Observable Contracts and Specialized Implementations.
+ *                              |/
+ * Copyright 2015 FiftyThree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fiftythree.bubo;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests covering the {@link AsyncRegistrar} object.
+ */
+public class AsyncRegistrarTest extends OrderedRegistrarTest {
+
+    // +----------------------------------------------------------------------+
+    // | TEST FIXTURES
+    // +----------------------------------------------------------------------+
+    private static final Executor DIRECT_EXECUTOR = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    // +----------------------------------------------------------------------+
+    // | RegistrarTest
+    // +----------------------------------------------------------------------+
+    protected AsyncRegistrar<Object> onCreateTestSubject() {
+        return new AsyncRegistrar<Object>(new ThreadSafeRegistrar<Object>(), DIRECT_EXECUTOR);
+    }
+
+    @Override
+    public void testDispatchDoesNotAllocate() {
+        // Each asynchronous dispatch allocates a mailbox entry by design.
+    }
+
+    // +----------------------------------------------------------------------+
+    // | ASYNC TESTS
+    // +----------------------------------------------------------------------+
+    @Test
+    public void testDispatchIsDeliveredOnExecutor() throws InterruptedException {
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final Registrar<Object> testSubject = new AsyncRegistrar<Object>(new ThreadSafeRegistrar<Object>(),
+                    executor);
+            testSubject.addListener(new Object());
+            final CountDownLatch delivered = new CountDownLatch(1);
+            final Thread publisher = Thread.currentThread();
+            final Thread[] deliveryThread = new Thread[1];
+
+            testSubject.dispatch(new Notifier<Object>() {
+                @Override
+                public void onNotify(Object listener) {
+                    deliveryThread[0] = Thread.currentThread();
+                    delivered.countDown();
+                }
+            });
+
+            assertTrue(delivered.await(5, TimeUnit.SECONDS));
+            assertNotSame(publisher, deliveryThread[0]);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testDispatchIsSerialAndOrdered() throws InterruptedException {
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final Registrar<Object> testSubject = new AsyncRegistrar<Object>(new ThreadSafeRegistrar<Object>(),
+                    executor);
+            testSubject.addListener(new Object());
+            final int notifications = 10000;
+            final AtomicInteger inFlight = new AtomicInteger();
+            final AtomicInteger overlaps = new AtomicInteger();
+            final List<Integer> delivered = Collections.synchronizedList(new ArrayList<Integer>());
+            final CountDownLatch done = new CountDownLatch(notifications);
+
+            for (int i = 0; i < notifications; ++i) {
+                final int sequence = i;
+                testSubject.dispatch(new Notifier<Object>() {
+                    @Override
+                    public void onNotify(Object listener) {
+                        if (inFlight.incrementAndGet() != 1) {
+                            overlaps.incrementAndGet();
+                        }
+                        delivered.add(sequence);
+                        inFlight.decrementAndGet();
+                        done.countDown();
+                    }
+                });
+            }
+
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+            assertEquals(0, overlaps.get());
+            for (int i = 0; i < notifications; ++i) {
+                assertEquals(i, delivered.get(i).intValue());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testThrowingNotifierDoesNotStallMailbox() {
+        final List<Runnable> tasks = new ArrayList<Runnable>();
+        final Registrar<Object> testSubject = new AsyncRegistrar<Object>(new ThreadSafeRegistrar<Object>(),
+                new Executor() {
+                    @Override
+                    public void execute(Runnable command) {
+                        tasks.add(command);
+                    }
+                });
+        testSubject.addListener(new Object());
+        final int[] notified = new int[1];
+        testSubject.dispatch(new Notifier<Object>() {
+            @Override
+            public void onNotify(Object listener) {
+                throw new IllegalStateException();
+            }
+        });
+        testSubject.dispatch(new Notifier<Object>() {
+            @Override
+            public void onNotify(Object listener) {
+                ++notified[0];
+            }
+        });
+        assertEquals(1, tasks.size());
+        try {
+            tasks.remove(0).run();
+            fail("notifier exception was swallowed");
+        } catch (IllegalStateException e) {
+            // okay
+        }
+        assertEquals(1, tasks.size());
+        tasks.remove(0).run();
+        assertEquals(1, notified[0]);
+    }
+}
@@ -0,0 +1,243 @@
+/*
+ *
+ *                                ^ ^
+ *                                O O
+ *                              /    )
+ *                             /  ,,
+ * Bubo – Observable Contracts and Specialized Implementations.
+ *                              |/
+ * Copyright 2015 FiftyThree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fiftythree.bubo;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Tests covering the {@link ChunkedThreadSafeRegistrar} object.
+ */
+public class ChunkedThreadSafeRegistrarTest extends OrderedRegistrarTest {
+
+    private static final int TEST_CHUNK_SIZE = 8;
+
+    // +----------------------------------------------------------------------+
+    // | RegistrarTest
+    // +----------------------------------------------------------------------+
+    protected ChunkedThreadSafeRegistrar<Object> onCreateTestSubject() {
+        return new ChunkedThreadSafeRegistrar<Object>(TEST_CHUNK_SIZE, 4);
+    }
+
+    // +----------------------------------------------------------------------+
+    // | CHUNK TESTS
+    // +----------------------------------------------------------------------+
+    @Test
+    public void testInvalidArguments() {
+        try {
+            new ChunkedThreadSafeRegistrar<Object>(1, 1);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        try {
+            new ChunkedThreadSafeRegistrar<Object>(8, 0);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testAppendsFillChunks() {
+        final ChunkedThreadSafeRegistrar<Object> testSubject = onCreateTestSubject();
+        for (int i = 0; i < TEST_CHUNK_SIZE * 3 + 1; ++i) {
+            testSubject.addListener(new Object());
+        }
+        assertEquals(4, testSubject.chunkCount());
+    }
+
+    @Test
+    public void testSparseChunksMerge() {
+        final ChunkedThreadSafeRegistrar<Object> testSubject = onCreateTestSubject();
+        final List<Object> expected = new ArrayList<Object>();
+        for (int i = 0; i < TEST_CHUNK_SIZE * 4; ++i) {
+            final Object listener = new Object();
+            expected.add(listener);
+            testSubject.addListener(listener);
+        }
+        assertEquals(4, testSubject.chunkCount());
+
+        // Leave a single listener in each chunk.
+        final Iterator<Object> iterator = expected.iterator();
+        for (int i = 0; iterator.hasNext(); ++i) {
+            final Object listener = iterator.next();
+            if (i % TEST_CHUNK_SIZE != 0) {
+                testSubject.removeListener(listener);
+                iterator.remove();
+            }
+        }
+        assertEquals(4, testSubject.size());
+        assertTrue(testSubject.chunkCount() < 4);
+        assertListeners(expected, testSubject);
+
+        for (Object listener : expected) {
+            testSubject.removeListener(listener);
+        }
+        assertEquals(0, testSubject.size());
+        assertEquals(0, testSubject.chunkCount());
+    }
+
+    @Test
+    public void testRandomChurnKeepsRegistrationOrder() {
+        final ChunkedThreadSafeRegistrar<Object> testSubject = onCreateTestSubject();
+        final List<Object> expected = new ArrayList<Object>();
+        final Random random = new Random(53);
+        for (int i = 0; i < 5000; ++i) {
+            if (expected.isEmpty() || random.nextInt(3) != 0) {
+                final Object listener = new Object();
+                expected.add(listener);
+                testSubject.addListener(listener);
+            } else {
+                testSubject.removeListener(expected.remove(random.nextInt(expected.size())));
+            }
+            if (i % 250 == 0) {
+                assertListeners(expected, testSubject);
+            }
+        }
+        assertListeners(expected, testSubject);
+        assertTrue(testSubject.chunkCount() * TEST_CHUNK_SIZE >= expected.size());
+    }
+
+    @Test
+    public void testConcurrentChurnWithDispatch() throws Exception {
+        final ChunkedThreadSafeRegistrar<Object> testSubject = onCreateTestSubject();
+        final Object[] stable = new Object[100];
+        for (int i = 0; i < stable.length; ++i) {
+            stable[i] = new Object();
+            testSubject.addListener(stable[i]);
+        }
+        final int writers = 4;
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch finished = new CountDownLatch(writers);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        for (int w = 0; w < writers; ++w) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        final Object[] mine = new Object[50];
+                        for (int round = 0; round < 200; ++round) {
+                            for (int i = 0; i < mine.length; ++i) {
+                                mine[i] = new Object();
+                                testSubject.addListener(mine[i]);
+                            }
+                            for (Object listener : mine) {
+                                testSubject.removeListener(listener);
+                            }
+                        }
+                    } catch (Throwable t) {
+                        failure.compareAndSet(null, t);
+                    } finally {
+                        finished.countDown();
+                    }
+                }
+            }).start();
+        }
+        start.countDown();
+        while (finished.getCount() > 0) {
+            // The stable listeners are never removed so every dispatch must see all of them, in order.
+            final List<Object> seen = new ArrayList<Object>();
+            testSubject.dispatch(new Notifier<Object>() {
+                @Override
+                public void onNotify(Object listener) {
+                    seen.add(listener);
+                }
+            });
+            int next = 0;
+            for (Object listener : seen) {
+                if (next < stable.length && listener == stable[next]) {
+                    ++next;
+                }
+            }
+            assertEquals(stable.length, next);
+        }
+        assertNull(failure.get());
+        assertEquals(stable.length, testSubject.size());
+    }
+
+    @Test
+    public void testAddedListenerIsVisibleToEveryAdder() throws Exception {
+        final ChunkedThreadSafeRegistrar<Object> testSubject = onCreateTestSubject();
+        final int adders = 4;
+        final int rounds = 2000;
+        final Object[] listeners = new Object[rounds];
+        for (int i = 0; i < rounds; ++i) {
+            listeners[i] = new Object();
+        }
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch finished = new CountDownLatch(adders);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        for (int a = 0; a < adders; ++a) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        for (final Object listener : listeners) {
+                            // Even when another thread is the one to add it, the listener must be visible to
+                            // this thread's dispatch once addListener returns.
+                            testSubject.addListener(listener);
+                            final boolean[] seen = new boolean[1];
+                            testSubject.dispatch(new Notifier<Object>() {
+                                @Override
+                                public void onNotify(Object notified) {
+                                    seen[0] |= notified == listener;
+                                }
+                            });
+                            assertTrue(seen[0]);
+                        }
+                    } catch (Throwable t) {
+                        failure.compareAndSet(null, t);
+                    } finally {
+                        finished.countDown();
+                    }
+                }
+            }).start();
+        }
+        start.countDown();
+        finished.await();
+        assertNull(failure.get());
+        assertEquals(rounds, testSubject.size());
+    }
+
+    // +----------------------------------------------------------------------+
+    // | PRIVATE
+    // +----------------------------------------------------------------------+
+    private static void assertListeners(List<Object> expected, Registrar<Object> testSubject) {
+        assertEquals(expected.size(), testSubject.size());
+        final Iterator<Object> actual = testSubject.iterator();
+        for (Object listener : expected) {
+            assertTrue(actual.hasNext());
+            assertSame(listener, actual.next());
+        }
+        assertFalse(actual.hasNext());
+    }
+}
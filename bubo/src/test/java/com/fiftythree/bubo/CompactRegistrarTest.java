@@ -0,0 +1,170 @@
+/*
+ *
+ *                                ^ ^
+ *                                O O
+ *                              /    )
+ *                             /  ,,
+ * Bubo – Observable Contracts and Specialized Implementations.
+ *                              |/
+ * Copyright 2015 FiftyThree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fiftythree.bubo;
+
+import org.junit.Test;
+import org.openjdk.jol.info.GraphLayout;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests covering the {@link CompactRegistrar} object.
+ */
+public class CompactRegistrarTest extends OrderedRegistrarTest {
+
+    // +----------------------------------------------------------------------+
+    // | RegistrarTest
+    // +----------------------------------------------------------------------+
+    protected Registrar<Object> onCreateTestSubject() {
+        return new CompactRegistrar<Object>();
+    }
+
+    /**
+     * @return The general purpose registrar the test subject should be smaller than.
+     */
+    protected Registrar<Object> onCreateBaseline() {
+        return new SingleThreadedRegistrar<Object>();
+    }
+
+    // +----------------------------------------------------------------------+
+    // | TEST FIXTURES
+    // +----------------------------------------------------------------------+
+    /**
+     * Assert that both iteration and dispatch visit exactly the given listeners in order.
+     */
+    private static void assertListeners(Registrar<Object> testSubject, Object... testObservers) {
+        final List<Object> iterated = new ArrayList<Object>();
+        for (Object listener : testSubject) {
+            iterated.add(listener);
+        }
+        final List<Object> dispatched = new ArrayList<Object>();
+        testSubject.dispatch(new Notifier<Object>() {
+            @Override
+            public void onNotify(Object listener) {
+                dispatched.add(listener);
+            }
+        });
+        assertEquals(testObservers.length, iterated.size());
+        assertEquals(testObservers.length, dispatched.size());
+        for (int i = 0; i < testObservers.length; ++i) {
+            assertSame(testObservers[i], iterated.get(i));
+            assertSame(testObservers[i], dispatched.get(i));
+        }
+    }
+
+    // +----------------------------------------------------------------------+
+    // | COMPACT TESTS
+    // +----------------------------------------------------------------------+
+    @Test
+    public void testOrderIsKeptAcrossRepresentations() {
+        final Registrar<Object> testSubject = onCreateTestSubject();
+        final Object[] testObservers = new Object[CompactState.SMALL_MAX * 2];
+        for (int i = 0; i < testObservers.length; ++i) {
+            testObservers[i] = new Object();
+            testSubject.addListener(testObservers[i]);
+            testSubject.addListener(testObservers[i]);
+            assertEquals(i + 1, testSubject.size());
+            final Object[] expected = new Object[i + 1];
+            System.arraycopy(testObservers, 0, expected, 0, expected.length);
+            assertListeners(testSubject, expected);
+        }
+        for (int i = testObservers.length - 1; i >= 0; --i) {
+            testSubject.removeListener(testObservers[i]);
+            assertEquals(i, testSubject.size());
+            final Object[] expected = new Object[i];
+            System.arraycopy(testObservers, 0, expected, 0, expected.length);
+            assertListeners(testSubject, expected);
+        }
+    }
+
+    @Test
+    public void testRemoveFromSmallArray() {
+        final Registrar<Object> testSubject = onCreateTestSubject();
+        final Object testObserver0 = new Object();
+        final Object testObserver1 = new Object();
+        final Object testObserver2 = new Object();
+        testSubject.addListener(testObserver0);
+        testSubject.addListener(testObserver1);
+        testSubject.addListener(testObserver2);
+
+        testSubject.removeListener(testObserver1);
+        assertListeners(testSubject, testObserver0, testObserver2);
+        testSubject.removeListener(testObserver0);
+        assertListeners(testSubject, testObserver2);
+        testSubject.removeListener(testObserver0);
+        assertListeners(testSubject, testObserver2);
+    }
+
+    @Test
+    public void testArrayListener() {
+        final Registrar<Object> testSubject = onCreateTestSubject();
+        final Object[] arrayObserver = new Object[]{new Object(), new Object()};
+        testSubject.addListener(arrayObserver);
+        assertEquals(1, testSubject.size());
+        assertListeners(testSubject, (Object) arrayObserver);
+
+        final Object testObserver = new Object();
+        testSubject.addListener(testObserver);
+        testSubject.removeListener(testObserver);
+        assertEquals(1, testSubject.size());
+        assertListeners(testSubject, (Object) arrayObserver);
+
+        testSubject.removeListener(arrayObserver);
+        assertEquals(0, testSubject.size());
+    }
+
+    @Test
+    public void testClearAfterGrowing() {
+        final Registrar<Object> testSubject = onCreateTestSubject();
+        for (int i = 0; i <= CompactState.SMALL_MAX; ++i) {
+            testSubject.addListener(new Object());
+        }
+        testSubject.clear();
+        assertEquals(0, testSubject.size());
+        final Object testObserver = new Object();
+        testSubject.addListener(testObserver);
+        assertListeners(testSubject, testObserver);
+    }
+
+    @Test
+    public void testRetainedBytes() {
+        final Object[] testObservers = new Object[CompactState.SMALL_MAX];
+        for (int i = 0; i < testObservers.length; ++i) {
+            testObservers[i] = new Object();
+        }
+        for (int count : new int[]{0, 1, 2, CompactState.SMALL_MAX}) {
+            final Registrar<Object> testSubject = onCreateTestSubject();
+            final Registrar<Object> baseline = onCreateBaseline();
+            for (int i = 0; i < count; ++i) {
+                testSubject.addListener(testObservers[i]);
+                baseline.addListener(testObservers[i]);
+            }
+            // Both graphs include the same listeners so the difference is the registrars' own footprint.
+            final long compactBytes = GraphLayout.parseInstance(testSubject).totalSize();
+            final long baselineBytes = GraphLayout.parseInstance(baseline).totalSize();
+            assertTrue(count + " listeners: " + compactBytes + " >= " + baselineBytes,
+                    compactBytes < baselineBytes);
+        }
+    }
+}
@@ -0,0 +1,253 @@
+/*
+ *
+ *                                ^ ^
+ *                                O O
+ *                              /    )
+ *                             /  ,,
+ * Bubo – Observable Contracts and Specialized Implementations.
+ *                              |/
+ * Copyright 2015 FiftyThree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fiftythree.bubo;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests covering the {@link ConcurrentDispatchRegistrar} object.
+ */
+public class ConcurrentDispatchRegistrarTest extends RegistrarTest {
+
+    private ExecutorService mExecutor;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mExecutor = Executors.newCachedThreadPool();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mExecutor.shutdownNow();
+        assertTrue(mExecutor.awaitTermination(10, TimeUnit.SECONDS));
+        super.tearDown();
+    }
+
+    // +----------------------------------------------------------------------+
+    // | RegistrarTest
+    // +----------------------------------------------------------------------+
+    protected ConcurrentDispatchRegistrar<Object> onCreateTestSubject() {
+        return new ConcurrentDispatchRegistrar<Object>(new ThreadSafeRegistrar<Object>(), mExecutor);
+    }
+
+    @Override
+    public void testDispatchDoesNotAllocate() {
+        // Each dispatch submits a task per listener by design.
+    }
+
+    /**
+     * Listeners are notified concurrently so only the set of listeners matches iteration, not the order.
+     */
+    @Override
+    public void testDispatchMatchesIteration() {
+        final Registrar<Object> testSubject = onCreateTestSubject();
+        for (int i = 0; i < 100; ++i) {
+            testSubject.addListener(new Object());
+        }
+
+        final Set<Object> dispatched =
+                Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>()));
+        testSubject.dispatch(new Notifier<Object>() {
+            @Override
+            public void onNotify(Object listener) {
+                assertTrue(dispatched.add(listener));
+            }
+        });
+
+        assertEquals(testSubject.size(), dispatched.size());
+        for (Object listener : testSubject) {
+            assertTrue(dispatched.contains(listener));
+        }
+    }
+
+    // +----------------------------------------------------------------------+
+    // | CONCURRENT DISPATCH TESTS
+    // +----------------------------------------------------------------------+
+    @Test
+    public void testListenersRunConcurrently() {
+        final Registrar<Object> testSubject = onCreateTestSubject();
+        final int count = 8;
+        for (int i = 0; i < count; ++i) {
+            testSubject.addListener(new Object());
+        }
+        // Only passes if every listener is running at the same time.
+        final CyclicBarrier barrier = new CyclicBarrier(count);
+        final AtomicInteger notified = new AtomicInteger();
+        testSubject.dispatch(new Notifier<Object>() {
+            @Override
+            public void onNotify(Object listener) {
+                try {
+                    barrier.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                } catch (BrokenBarrierException e) {
+                    throw new RuntimeException(e);
+                } catch (TimeoutException e) {
+                    throw new RuntimeException(e);
+                }
+                notified.incrementAndGet();
+            }
+        });
+        assertEquals(count, notified.get());
+    }
+
+    @Test
+    public void testTimeoutInterruptsUnfinishedListeners() throws InterruptedException {
+        final Registrar<Object> testSubject = new ConcurrentDispatchRegistrar<Object>(
+                new ThreadSafeRegistrar<Object>(), mExecutor, 100, TimeUnit.MILLISECONDS);
+        final Object slowObserver = new Object();
+        testSubject.addListener(new Object());
+        testSubject.addListener(slowObserver);
+        final CountDownLatch interrupted = new CountDownLatch(1);
+        try {
+            testSubject.dispatch(new Notifier<Object>() {
+                @Override
+                public void onNotify(Object listener) {
+                    if (listener != slowObserver) {
+                        return;
+                    }
+                    try {
+                        Thread.sleep(10000);
+                    } catch (InterruptedException e) {
+                        interrupted.countDown();
+                    }
+                }
+            });
+            fail("DispatchTimeoutException was not thrown");
+        } catch (DispatchTimeoutException e) {
+            assertEquals(1, e.getUnfinishedCount());
+        }
+        assertTrue(interrupted.await(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testIAEForConstructor() {
+        final Registrar<Object> delegate = new ThreadSafeRegistrar<Object>();
+        try {
+            new ConcurrentDispatchRegistrar<Object>(delegate, mExecutor, 1, null);
+            fail("IllegalArgumentException was not thrown for null unit.");
+        } catch (IllegalArgumentException e) {
+            // okay
+        }
+        try {
+            new ConcurrentDispatchRegistrar<Object>(delegate, mExecutor, 0, TimeUnit.SECONDS);
+            fail("IllegalArgumentException was not thrown for zero timeout.");
+        } catch (IllegalArgumentException e) {
+            // okay
+        }
+        try {
+            new ConcurrentDispatchRegistrar<Object>(delegate, null);
+            fail("IllegalArgumentException was not thrown for null executor.");
+        } catch (IllegalArgumentException e) {
+            // okay
+        }
+    }
+
+    @Test
+    public void testTimeoutWaitsForListenersIgnoringInterrupts() {
+        final Registrar<Object> testSubject = new ConcurrentDispatchRegistrar<Object>(
+                new ThreadSafeRegistrar<Object>(), mExecutor, 50, TimeUnit.MILLISECONDS);
+        testSubject.addListener(new Object());
+        final AtomicBoolean finished = new AtomicBoolean();
+        try {
+            testSubject.dispatch(new Notifier<Object>() {
+                @Override
+                public void onNotify(Object listener) {
+                    final long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(300);
+                    while (System.nanoTime() < end) {
+                        try {
+                            Thread.sleep(10);
+                        } catch (InterruptedException e) {
+                            // Ignored, as a listener blocked in uninterruptible I/O would.
+                        }
+                    }
+                    finished.set(true);
+                }
+            });
+            fail("DispatchTimeoutException was not thrown");
+        } catch (DispatchTimeoutException e) {
+            assertTrue(finished.get());
+        }
+    }
+
+    @Test
+    public void testListenerExceptionRethrownAfterOthersFinish() {
+        final Registrar<Object> testSubject = onCreateTestSubject();
+        final Object failingObserver = new Object();
+        testSubject.addListener(failingObserver);
+        testSubject.addListener(new Object());
+        final IllegalStateException failure = new IllegalStateException();
+        final AtomicBoolean slowFinished = new AtomicBoolean();
+        try {
+            testSubject.dispatch(new Notifier<Object>() {
+                @Override
+                public void onNotify(Object listener) {
+                    if (listener == failingObserver) {
+                        throw failure;
+                    }
+                    try {
+                        Thread.sleep(100);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    slowFinished.set(true);
+                }
+            });
+            fail("IllegalStateException was not thrown");
+        } catch (IllegalStateException e) {
+            assertSame(failure, e);
+        }
+        assertTrue(slowFinished.get());
+    }
+
+    @Test
+    public void testListenersAddedDuringDispatchAreNotNotified() {
+        final Registrar<Object> testSubject = onCreateTestSubject();
+        testSubject.addListener(new Object());
+        testSubject.addListener(new Object());
+        final AtomicInteger notified = new AtomicInteger();
+        testSubject.dispatch(new Notifier<Object>() {
+            @Override
+            public void onNotify(Object listener) {
+                testSubject.addListener(new Object());
+                notified.incrementAndGet();
+            }
+        });
+        assertEquals(2, notified.get());
+        assertEquals(4, testSubject.size());
+    }
+}
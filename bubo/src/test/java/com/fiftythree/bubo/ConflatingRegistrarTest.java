@@ -0,0 +1,260 @@
+/*
+ *
+ *                                ^ ^
+ *                                O O
+ *                              /    )
+ *                             /  ,,
+ * Bubo – Observable Contracts and Specialized Implementations.
+ *                              |/
+ * Copyright 2015 FiftyThree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fiftythree.bubo;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests covering the {@link ConflatingRegistrar} object.
+ */
+public class ConflatingRegistrarTest extends OrderedRegistrarTest {
+
+    // +----------------------------------------------------------------------+
+    // | TEST FIXTURES
+    // +----------------------------------------------------------------------+
+    private static final class TestFixtureValueNotifier implements Notifier<Object> {
+
+        private final int mValue;
+        private final List<Integer> mDelivered;
+
+        TestFixtureValueNotifier(int value, List<Integer> delivered) {
+            mValue = value;
+            mDelivered = delivered;
+        }
+
+        @Override
+        public void onNotify(Object listener) {
+            mDelivered.add(mValue);
+        }
+    }
+
+    // +----------------------------------------------------------------------+
+    // | RegistrarTest
+    // +----------------------------------------------------------------------+
+    protected ConflatingRegistrar<Object> onCreateTestSubject() {
+        return new ConflatingRegistrar<Object>(new SingleThreadedRegistrar<Object>());
+    }
+
+    // +----------------------------------------------------------------------+
+    // | CONFLATION TESTS
+    // +----------------------------------------------------------------------+
+    @Test
+    public void testIAEForPublish() {
+        final ConflatingRegistrar<Object> testSubject = onCreateTestSubject();
+        try {
+            testSubject.publish(null, new TestFixtureValueNotifier(0, new ArrayList<Integer>()));
+            fail("IllegalArgumentException was not thrown for null key.");
+        } catch (IllegalArgumentException e) {
+            // okay
+        }
+        try {
+            testSubject.publish("key", null);
+            fail("IllegalArgumentException was not thrown for null notifier.");
+        } catch (IllegalArgumentException e) {
+            // okay
+        }
+    }
+
+    @Test
+    public void testPublishDuringDispatchIsConflated() {
+        final ConflatingRegistrar<Object> testSubject = onCreateTestSubject();
+        testSubject.addListener(new Object());
+        final List<Integer> progress = new ArrayList<Integer>();
+        final List<Integer> status = new ArrayList<Integer>();
+
+        testSubject.publish("progress", new Notifier<Object>() {
+            @Override
+            public void onNotify(Object listener) {
+                progress.add(0);
+                for (int i = 1; i <= 10; ++i) {
+                    testSubject.publish("progress", new TestFixtureValueNotifier(i, progress));
+                    testSubject.publish("status", new TestFixtureValueNotifier(i, status));
+                }
+            }
+        });
+
+        assertEquals(2, progress.size());
+        assertEquals(0, progress.get(0).intValue());
+        assertEquals(10, progress.get(1).intValue());
+        assertEquals(1, status.size());
+        assertEquals(10, status.get(0).intValue());
+    }
+
+    @Test
+    public void testKeysAreDeliveredInFirstPublishedOrder() {
+        final TestFixtureQueueingExecutor executor = new TestFixtureQueueingExecutor();
+        final ConflatingRegistrar<Object> testSubject =
+                new ConflatingRegistrar<Object>(new SingleThreadedRegistrar<Object>(), executor);
+        testSubject.addListener(new Object());
+        final List<Integer> delivered = new ArrayList<Integer>();
+
+        testSubject.publish("a", new TestFixtureValueNotifier(1, delivered));
+        testSubject.publish("b", new TestFixtureValueNotifier(2, delivered));
+        testSubject.publish("a", new TestFixtureValueNotifier(3, delivered));
+        testSubject.publish("c", new TestFixtureValueNotifier(4, delivered));
+        testSubject.publish("b", new TestFixtureValueNotifier(5, delivered));
+        assertEquals(1, executor.tasks.size());
+        assertTrue(delivered.isEmpty());
+
+        executor.runNext();
+        assertEquals(3, delivered.size());
+        assertEquals(3, delivered.get(0).intValue());
+        assertEquals(5, delivered.get(1).intValue());
+        assertEquals(4, delivered.get(2).intValue());
+        assertTrue(executor.tasks.isEmpty());
+
+        testSubject.publish("a", new TestFixtureValueNotifier(6, delivered));
+        assertEquals(1, executor.tasks.size());
+    }
+
+    @Test
+    public void testReusedNotifierConflatesWithItself() {
+        final TestFixtureQueueingExecutor executor = new TestFixtureQueueingExecutor();
+        final ConflatingRegistrar<Object> testSubject =
+                new ConflatingRegistrar<Object>(new SingleThreadedRegistrar<Object>(), executor);
+        testSubject.addListener(new Object());
+        testSubject.addListener(new Object());
+        final int[] notified = new int[1];
+        final Notifier<Object> notifier = new Notifier<Object>() {
+            @Override
+            public void onNotify(Object listener) {
+                ++notified[0];
+            }
+        };
+        for (int i = 0; i < 100; ++i) {
+            testSubject.dispatch(notifier);
+        }
+        executor.runNext();
+        assertEquals(2, notified[0]);
+    }
+
+    @Test
+    public void testThrowingNotifierDoesNotStallDelivery() {
+        final ConflatingRegistrar<Object> testSubject = onCreateTestSubject();
+        testSubject.addListener(new Object());
+        try {
+            testSubject.publish("a", new Notifier<Object>() {
+                @Override
+                public void onNotify(Object listener) {
+                    throw new IllegalStateException();
+                }
+            });
+            fail("notifier exception was swallowed");
+        } catch (IllegalStateException e) {
+            // okay
+        }
+        final List<Integer> delivered = new ArrayList<Integer>();
+        testSubject.publish("a", new TestFixtureValueNotifier(1, delivered));
+        assertEquals(1, delivered.size());
+    }
+
+    @Test
+    public void testPublishAfterThrowingNotifierSupersedesPending() {
+        final ConflatingRegistrar<Object> testSubject = onCreateTestSubject();
+        testSubject.addListener(new Object());
+        final List<Integer> delivered = new ArrayList<Integer>();
+        try {
+            testSubject.publish("a", new Notifier<Object>() {
+                @Override
+                public void onNotify(Object listener) {
+                    testSubject.publish("a", new TestFixtureValueNotifier(1, delivered));
+                    throw new IllegalStateException();
+                }
+            });
+            fail("notifier exception was swallowed");
+        } catch (IllegalStateException e) {
+            // okay
+        }
+        testSubject.publish("a", new TestFixtureValueNotifier(2, delivered));
+        assertEquals(Arrays.asList(2), delivered);
+    }
+
+    @Test
+    public void testWindowedThrowingNotifierKeepsRestOfWindow() throws InterruptedException {
+        final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        try {
+            final ConflatingRegistrar<Object> testSubject = new ConflatingRegistrar<Object>(
+                    new ThreadSafeRegistrar<Object>(), scheduler, 10, TimeUnit.MILLISECONDS);
+            testSubject.addListener(new Object());
+            final CountDownLatch delivered = new CountDownLatch(1);
+            testSubject.publish("a", new Notifier<Object>() {
+                @Override
+                public void onNotify(Object listener) {
+                    throw new IllegalStateException();
+                }
+            });
+            testSubject.publish("b", new Notifier<Object>() {
+                @Override
+                public void onNotify(Object listener) {
+                    delivered.countDown();
+                }
+            });
+            assertTrue(delivered.await(5, TimeUnit.SECONDS));
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+
+    @Test
+    public void testWindowedPublishIsConflated() throws InterruptedException {
+        final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        try {
+            final ConflatingRegistrar<Object> testSubject = new ConflatingRegistrar<Object>(
+                    new ThreadSafeRegistrar<Object>(), scheduler, 50, TimeUnit.MILLISECONDS);
+            testSubject.addListener(new Object());
+            final AtomicInteger deliveries = new AtomicInteger();
+            final int[] latest = new int[1];
+            final CountDownLatch finalValue = new CountDownLatch(1);
+            final int notifications = 1000;
+
+            for (int i = 1; i <= notifications; ++i) {
+                final int value = i;
+                testSubject.publish("value", new Notifier<Object>() {
+                    @Override
+                    public void onNotify(Object listener) {
+                        deliveries.incrementAndGet();
+                        latest[0] = value;
+                        if (value == notifications) {
+                            finalValue.countDown();
+                        }
+                    }
+                });
+            }
+
+            assertTrue(finalValue.await(5, TimeUnit.SECONDS));
+            assertEquals(notifications, latest[0]);
+            assertTrue(deliveries.get() < notifications);
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+}
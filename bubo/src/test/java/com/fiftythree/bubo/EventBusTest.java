@@ -0,0 +1,200 @@
+/*
+ *
+ *                                ^ ^
+ *                                O O
+ *                              /    )
+ *                             /  ,,
+ * Bubo – Observable Contracts and Specialized Implementations.
+ *                              |/
+ * Copyright 2015 FiftyThree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fiftythree.bubo;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class EventBusTest extends TestCase {
+
+    @Test
+    public void testPostDeliversToSupertypesAndInterfaces() {
+        final EventBus bus = new EventBus();
+        final List<String> calls = new ArrayList<String>();
+        bus.subscribe(Object.class, new TestFixtureSubscriber<Object>("object", calls));
+        bus.subscribe(TestFixtureMarker.class, new TestFixtureSubscriber<TestFixtureMarker>("marker", calls));
+        bus.subscribe(TestFixtureBaseEvent.class,
+                new TestFixtureSubscriber<TestFixtureBaseEvent>("base", calls));
+        bus.subscribe(TestFixtureDerivedEvent.class,
+                new TestFixtureSubscriber<TestFixtureDerivedEvent>("derived", calls));
+
+        bus.post(new TestFixtureDerivedEvent());
+        assertEquals(Arrays.asList("derived", "base", "object", "marker"), calls);
+
+        calls.clear();
+        bus.post(new TestFixtureBaseEvent());
+        assertEquals(Arrays.asList("base", "object"), calls);
+
+        calls.clear();
+        bus.post("unrelated");
+        assertEquals(Arrays.asList("object"), calls);
+    }
+
+    @Test
+    public void testSubscriberRegisteredTwiceForOneTypeIsCalledOnce() {
+        final EventBus bus = new EventBus();
+        final List<String> calls = new ArrayList<String>();
+        final TestFixtureSubscriber<Object> subscriber = new TestFixtureSubscriber<Object>("object", calls);
+        bus.subscribe(Object.class, subscriber);
+        bus.subscribe(Object.class, subscriber);
+        bus.post(new TestFixtureBaseEvent());
+        assertEquals(1, calls.size());
+    }
+
+    @Test
+    public void testSubscribeInvalidatesOnlySubtypes() {
+        final EventBus bus = new EventBus();
+        final List<String> calls = new ArrayList<String>();
+        bus.post(new TestFixtureBaseEvent());
+        bus.post(new TestFixtureDerivedEvent());
+        bus.post("unrelated");
+        assertEquals(3, bus.resolvedCount());
+
+        bus.subscribe(TestFixtureBaseEvent.class,
+                new TestFixtureSubscriber<TestFixtureBaseEvent>("base", calls));
+        assertEquals(1, bus.resolvedCount());
+
+        bus.post(new TestFixtureDerivedEvent());
+        assertEquals(Arrays.asList("base"), calls);
+        assertEquals(2, bus.resolvedCount());
+    }
+
+    @Test
+    public void testUnsubscribeStopsDelivery() {
+        final EventBus bus = new EventBus();
+        final List<String> calls = new ArrayList<String>();
+        final TestFixtureSubscriber<TestFixtureMarker> marker
+                = new TestFixtureSubscriber<TestFixtureMarker>("marker", calls);
+        final TestFixtureSubscriber<Object> object = new TestFixtureSubscriber<Object>("object", calls);
+        bus.subscribe(TestFixtureMarker.class, marker);
+        bus.subscribe(Object.class, object);
+        assertEquals(2, bus.subscriberCount(TestFixtureDerivedEvent.class));
+
+        bus.unsubscribe(TestFixtureMarker.class, marker);
+        assertEquals(1, bus.subscriberCount(TestFixtureDerivedEvent.class));
+        bus.post(new TestFixtureDerivedEvent());
+        assertEquals(Arrays.asList("object"), calls);
+
+        // Unsubscribing from a type that was never subscribed is harmless.
+        bus.unsubscribe(String.class, object);
+        assertEquals(1, bus.subscriberCount(String.class));
+    }
+
+    @Test
+    public void testNullArguments() {
+        final EventBus bus = new EventBus();
+        final TestFixtureSubscriber<Object> subscriber
+                = new TestFixtureSubscriber<Object>("object", new ArrayList<String>());
+        try {
+            bus.subscribe(null, subscriber);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        try {
+            bus.subscribe(Object.class, null);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        try {
+            bus.post(null);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testConcurrentSubscribeIsNeverLostFromCache() throws Exception {
+        final EventBus bus = new EventBus();
+        final AtomicBoolean done = new AtomicBoolean();
+        final CountDownLatch started = new CountDownLatch(1);
+        final Thread poster = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                started.countDown();
+                while (!done.get()) {
+                    bus.post(new TestFixtureDerivedEvent());
+                }
+            }
+        });
+        poster.start();
+        started.await();
+
+        final AtomicInteger received = new AtomicInteger();
+        for (int i = 0; i < 200; ++i) {
+            final EventSubscriber<TestFixtureBaseEvent> subscriber = new EventSubscriber<TestFixtureBaseEvent>() {
+                @Override
+                public void onEvent(TestFixtureBaseEvent event) {
+                    received.incrementAndGet();
+                }
+            };
+            bus.subscribe(TestFixtureBaseEvent.class, subscriber);
+            assertEquals(1, bus.subscriberCount(TestFixtureDerivedEvent.class));
+            received.set(0);
+            bus.post(new TestFixtureDerivedEvent());
+            assertTrue(received.get() >= 1);
+            bus.unsubscribe(TestFixtureBaseEvent.class, subscriber);
+            assertEquals(0, bus.subscriberCount(TestFixtureDerivedEvent.class));
+        }
+        done.set(true);
+        poster.join();
+    }
+
+    // +----------------------------------------------------------------------+
+    // | TEST FIXTURES
+    // +----------------------------------------------------------------------+
+    private interface TestFixtureMarker {
+    }
+
+    private static class TestFixtureBaseEvent {
+    }
+
+    private static final class TestFixtureDerivedEvent extends TestFixtureBaseEvent implements TestFixtureMarker {
+    }
+
+    private static final class TestFixtureSubscriber<EVENT_TYPE> implements EventSubscriber<EVENT_TYPE> {
+
+        private final String mName;
+        private final List<String> mCalls;
+
+        TestFixtureSubscriber(String name, List<String> calls) {
+            mName = name;
+            mCalls = calls;
+        }
+
+        @Override
+        public void onEvent(EVENT_TYPE event) {
+            mCalls.add(mName);
+        }
+    }
+}
@@ -0,0 +1,372 @@
+/*
+ *
+ *                                ^ ^
+ *                                O O
+ *                              /    )
+ *                             /  ,,
+ * Bubo – Observable Contracts and Specialized Implementations.
+ *                              |/
+ * Copyright 2015 FiftyThree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fiftythree.bubo;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests covering the {@link LatencyBudgetRegistrar} object.
+ */
+public class LatencyBudgetRegistrarTest extends OrderedRegistrarTest {
+
+    // Generous enough that fast calls never overrun it on a busy machine.
+    private static final long BUDGET_MILLIS = 20;
+    private static final long SLOW_MILLIS = 2 * BUDGET_MILLIS;
+
+    // +----------------------------------------------------------------------+
+    // | TEST FIXTURES
+    // +----------------------------------------------------------------------+
+    private static final Executor DIRECT_EXECUTOR = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private static final class TestFixtureListener {
+
+        final List<Integer> received = new ArrayList<Integer>();
+        boolean slow;
+
+        void onValue(int value) {
+            if (slow) {
+                sleep(SLOW_MILLIS);
+            }
+            received.add(value);
+        }
+    }
+
+    private static class TestFixtureValueNotifier implements Notifier<Object> {
+
+        private final int mValue;
+
+        TestFixtureValueNotifier(int value) {
+            mValue = value;
+        }
+
+        @Override
+        public void onNotify(Object listener) {
+            ((TestFixtureListener) listener).onValue(mValue);
+        }
+    }
+
+    private static final class TestFixtureCallback implements LatencyBudgetRegistrar.QuarantineCallback<Object> {
+
+        final List<Object> quarantined = new ArrayList<Object>();
+        final List<Object> released = new ArrayList<Object>();
+
+        @Override
+        public void onQuarantined(Object listener) {
+            quarantined.add(listener);
+        }
+
+        @Override
+        public void onReleased(Object listener) {
+            released.add(listener);
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static LatencyBudgetRegistrar<Object> createTestSubject(Executor executor, int strikeLimit,
+                                                                    int recoveryLimit,
+                                                                    TestFixtureCallback callback) {
+        return new LatencyBudgetRegistrar<Object>(new ThreadSafeRegistrar<Object>(), executor, BUDGET_MILLIS,
+                TimeUnit.MILLISECONDS, strikeLimit, recoveryLimit, callback);
+    }
+
+    // +----------------------------------------------------------------------+
+    // | RegistrarTest
+    // +----------------------------------------------------------------------+
+    protected LatencyBudgetRegistrar<Object> onCreateTestSubject() {
+        return new LatencyBudgetRegistrar<Object>(new ThreadSafeRegistrar<Object>(), DIRECT_EXECUTOR, 1,
+                TimeUnit.MINUTES);
+    }
+
+    @Override
+    public void testDispatchDoesNotAllocate() {
+        // Each dispatch wraps its notifier to time listener calls by design.
+    }
+
+    // +----------------------------------------------------------------------+
+    // | LATENCY BUDGET TESTS
+    // +----------------------------------------------------------------------+
+    @Test
+    public void testIAEForConstructorArguments() {
+        final Registrar<Object> delegate = new ThreadSafeRegistrar<Object>();
+        try {
+            new LatencyBudgetRegistrar<Object>(delegate, null, 1, TimeUnit.SECONDS);
+            fail("IllegalArgumentException was not thrown for null executor.");
+        } catch (IllegalArgumentException e) {
+            // okay
+        }
+        try {
+            new LatencyBudgetRegistrar<Object>(delegate, DIRECT_EXECUTOR, 1, null);
+            fail("IllegalArgumentException was not thrown for null unit.");
+        } catch (IllegalArgumentException e) {
+            // okay
+        }
+        try {
+            new LatencyBudgetRegistrar<Object>(delegate, DIRECT_EXECUTOR, 0, TimeUnit.SECONDS);
+            fail("IllegalArgumentException was not thrown for zero budget.");
+        } catch (IllegalArgumentException e) {
+            // okay
+        }
+        try {
+            new LatencyBudgetRegistrar<Object>(delegate, DIRECT_EXECUTOR, 1, TimeUnit.SECONDS, 0, 1, null);
+            fail("IllegalArgumentException was not thrown for zero strikeLimit.");
+        } catch (IllegalArgumentException e) {
+            // okay
+        }
+        try {
+            new LatencyBudgetRegistrar<Object>(delegate, DIRECT_EXECUTOR, 1, TimeUnit.SECONDS, 1, 0, null);
+            fail("IllegalArgumentException was not thrown for zero recoveryLimit.");
+        } catch (IllegalArgumentException e) {
+            // okay
+        }
+    }
+
+    @Test
+    public void testSlowListenerIsQuarantined() {
+        final TestFixtureQueueingExecutor executor = new TestFixtureQueueingExecutor();
+        final TestFixtureCallback callback = new TestFixtureCallback();
+        final LatencyBudgetRegistrar<Object> testSubject = createTestSubject(executor, 2, 1, callback);
+        final TestFixtureListener slow = new TestFixtureListener();
+        final TestFixtureListener fast = new TestFixtureListener();
+        slow.slow = true;
+        testSubject.addListener(slow);
+        testSubject.addListener(fast);
+
+        testSubject.dispatch(new TestFixtureValueNotifier(1));
+        assertFalse(testSubject.isQuarantined(slow));
+        assertTrue(callback.quarantined.isEmpty());
+        testSubject.dispatch(new TestFixtureValueNotifier(2));
+        assertTrue(testSubject.isQuarantined(slow));
+        assertFalse(testSubject.isQuarantined(fast));
+        assertEquals(1, callback.quarantined.size());
+        assertSame(slow, callback.quarantined.get(0));
+
+        // Still registered, but no longer notified on the dispatching thread.
+        assertEquals(2, testSubject.size());
+        testSubject.dispatch(new TestFixtureValueNotifier(3));
+        assertEquals(2, slow.received.size());
+        assertEquals(3, fast.received.size());
+        assertEquals(1, executor.tasks.size());
+
+        executor.runAll();
+        assertEquals(3, slow.received.size());
+        assertEquals(3, slow.received.get(2).intValue());
+        assertTrue(callback.released.isEmpty());
+    }
+
+    @Test
+    public void testCallsWithinBudgetForgiveStrikes() {
+        final TestFixtureCallback callback = new TestFixtureCallback();
+        final LatencyBudgetRegistrar<Object> testSubject = createTestSubject(DIRECT_EXECUTOR, 2, 1, callback);
+        final TestFixtureListener listener = new TestFixtureListener();
+        testSubject.addListener(listener);
+
+        for (int i = 0; i < 4; ++i) {
+            listener.slow = (0 == i % 2);
+            testSubject.dispatch(new TestFixtureValueNotifier(i));
+        }
+        assertFalse(testSubject.isQuarantined(listener));
+        assertTrue(callback.quarantined.isEmpty());
+    }
+
+    @Test
+    public void testRecoveredListenerIsReleased() {
+        final TestFixtureQueueingExecutor executor = new TestFixtureQueueingExecutor();
+        final TestFixtureCallback callback = new TestFixtureCallback();
+        final LatencyBudgetRegistrar<Object> testSubject = createTestSubject(executor, 1, 2, callback);
+        final TestFixtureListener listener = new TestFixtureListener();
+        listener.slow = true;
+        testSubject.addListener(listener);
+        testSubject.dispatch(new TestFixtureValueNotifier(1));
+        assertTrue(testSubject.isQuarantined(listener));
+
+        listener.slow = false;
+        testSubject.dispatch(new TestFixtureValueNotifier(2));
+        executor.runAll();
+        assertTrue(testSubject.isQuarantined(listener));
+        testSubject.dispatch(new TestFixtureValueNotifier(3));
+        executor.runAll();
+        assertFalse(testSubject.isQuarantined(listener));
+        assertEquals(1, callback.released.size());
+        assertSame(listener, callback.released.get(0));
+
+        testSubject.dispatch(new TestFixtureValueNotifier(4));
+        assertTrue(executor.tasks.isEmpty());
+        assertEquals(4, listener.received.size());
+    }
+
+    @Test
+    public void testSlowCallsOnLaneDelayRelease() {
+        final TestFixtureCallback callback = new TestFixtureCallback();
+        final LatencyBudgetRegistrar<Object> testSubject = createTestSubject(DIRECT_EXECUTOR, 1, 2, callback);
+        final TestFixtureListener listener = new TestFixtureListener();
+        listener.slow = true;
+        testSubject.addListener(listener);
+        testSubject.dispatch(new TestFixtureValueNotifier(1));
+
+        listener.slow = false;
+        testSubject.dispatch(new TestFixtureValueNotifier(2));
+        listener.slow = true;
+        testSubject.dispatch(new TestFixtureValueNotifier(3));
+        listener.slow = false;
+        testSubject.dispatch(new TestFixtureValueNotifier(4));
+        assertTrue(testSubject.isQuarantined(listener));
+        testSubject.dispatch(new TestFixtureValueNotifier(5));
+        assertFalse(testSubject.isQuarantined(listener));
+        assertEquals(1, callback.quarantined.size());
+        assertEquals(1, callback.released.size());
+    }
+
+    @Test
+    public void testReleasedListenerDrainsLaneFirst() {
+        final TestFixtureQueueingExecutor executor = new TestFixtureQueueingExecutor();
+        final LatencyBudgetRegistrar<Object> testSubject = createTestSubject(executor, 1, 1, null);
+        final TestFixtureListener listener = new TestFixtureListener();
+        listener.slow = true;
+        testSubject.addListener(listener);
+        testSubject.dispatch(new TestFixtureValueNotifier(1));
+        assertTrue(testSubject.isQuarantined(listener));
+
+        listener.slow = false;
+        testSubject.dispatch(new TestFixtureValueNotifier(2));
+        testSubject.dispatch(new TestFixtureValueNotifier(3) {
+            @Override
+            public void onNotify(Object listener) {
+                // The call for 2 released the listener but this call is still on the lane, so 4 must queue
+                // behind it rather than being delivered now.
+                assertFalse(testSubject.isQuarantined(listener));
+                testSubject.dispatch(new TestFixtureValueNotifier(4));
+                super.onNotify(listener);
+            }
+        });
+        executor.runAll();
+
+        assertEquals(4, listener.received.size());
+        for (int i = 0; i < 4; ++i) {
+            assertEquals(i + 1, listener.received.get(i).intValue());
+        }
+
+        testSubject.dispatch(new TestFixtureValueNotifier(5));
+        assertTrue(executor.tasks.isEmpty());
+        assertEquals(5, listener.received.size());
+    }
+
+    @Test
+    public void testListenerIsNotifiedInOrderAcrossLaneChanges() throws InterruptedException {
+        final ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            final LatencyBudgetRegistrar<Object> testSubject = new LatencyBudgetRegistrar<Object>(
+                    new ThreadSafeRegistrar<Object>(), executor, 1, TimeUnit.MILLISECONDS, 1, 1, null);
+            final List<Integer> received = new CopyOnWriteArrayList<Integer>();
+            final AtomicInteger depth = new AtomicInteger();
+            final AtomicInteger maxDepth = new AtomicInteger();
+            final int notifications = 400;
+            final CountDownLatch done = new CountDownLatch(notifications);
+            testSubject.addListener(new Object());
+
+            for (int i = 0; i < notifications; ++i) {
+                final int value = i;
+                testSubject.dispatch(new Notifier<Object>() {
+                    @Override
+                    public void onNotify(Object listener) {
+                        maxDepth.set(Math.max(maxDepth.get(), depth.incrementAndGet()));
+                        // Every fourth call overruns the budget, moving the listener on and off its lane.
+                        if (0 == value % 4) {
+                            sleep(2);
+                        }
+                        received.add(value);
+                        depth.decrementAndGet();
+                        done.countDown();
+                    }
+                });
+            }
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+            assertEquals(1, maxDepth.get());
+            for (int i = 0; i < notifications; ++i) {
+                assertEquals(i, received.get(i).intValue());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testRemoveListenerForgetsStrikes() {
+        final LatencyBudgetRegistrar<Object> testSubject = createTestSubject(DIRECT_EXECUTOR, 2, 1, null);
+        final TestFixtureListener listener = new TestFixtureListener();
+        listener.slow = true;
+        testSubject.addListener(listener);
+        testSubject.dispatch(new TestFixtureValueNotifier(1));
+
+        testSubject.removeListener(listener);
+        testSubject.addListener(listener);
+        testSubject.dispatch(new TestFixtureValueNotifier(2));
+        assertFalse(testSubject.isQuarantined(listener));
+
+        testSubject.edit().removeListener(listener).commit();
+        testSubject.addListener(listener);
+        testSubject.dispatch(new TestFixtureValueNotifier(3));
+        assertFalse(testSubject.isQuarantined(listener));
+
+        testSubject.dispatch(new TestFixtureValueNotifier(4));
+        assertTrue(testSubject.isQuarantined(listener));
+    }
+
+    @Test
+    public void testClearForgetsQuarantine() {
+        final LatencyBudgetRegistrar<Object> testSubject = createTestSubject(DIRECT_EXECUTOR, 1, 1, null);
+        final TestFixtureListener listener = new TestFixtureListener();
+        listener.slow = true;
+        testSubject.addListener(listener);
+        testSubject.dispatch(new TestFixtureValueNotifier(1));
+        assertTrue(testSubject.isQuarantined(listener));
+
+        testSubject.clear();
+        assertFalse(testSubject.isQuarantined(listener));
+        testSubject.addListener(listener);
+        listener.slow = false;
+        testSubject.dispatch(new TestFixtureValueNotifier(2));
+        assertEquals(2, listener.received.size());
+    }
+}
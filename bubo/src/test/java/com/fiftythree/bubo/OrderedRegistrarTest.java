@@ -26,6 +26,10 @@ import com.fiftythree.bubo.annotations.Unordered;
 
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
 /**
  * Common tests for all {@link Registrar} implementations that guarantee ordering of observer callbacks.
  */
@@ -72,6 +76,87 @@ public abstract class OrderedRegistrarTest extends RegistrarTest {
         assertOrderedDispatch(testSubject, testObserver0, testObserver1, testObserver2);
     }
 
+    @Test
+    public void testEditReplaysInOrder() {
+        final Registrar<Object> testSubject = onCreateTestSubject();
+        final Object testObserver0 = new Object();
+        final Object testObserver1 = new Object();
+        final Object testObserver2 = new Object();
+        final Object testObserver3 = new Object();
+
+        testSubject.addListener(testObserver0);
+        testSubject.addListener(testObserver2);
+        testSubject.edit()
+                .removeListener(testObserver2)
+                .addListener(testObserver3)
+                .addListener(testObserver1)
+                .addListener(testObserver2)
+                .removeListener(testObserver3)
+                .addListener(testObserver3)
+                .commit();
+
+        assertOrderedDispatch(testSubject, testObserver0, testObserver1, testObserver2, testObserver3);
+    }
+
+    // +----------------------------------------------------------------------+
+    // | ATOMIC DISPATCH TESTS
+    // +----------------------------------------------------------------------+
+    @Test
+    public void testChangesDuringDispatchDoNotAffectIt() {
+        final Registrar<Object> testSubject = onCreateTestSubject();
+        final Object[] testObservers = new Object[100];
+        for (int i = 0; i < testObservers.length; ++i) {
+            testObservers[i] = new Object();
+            testSubject.addListener(testObservers[i]);
+        }
+        final Object[] lateObservers = new Object[testObservers.length];
+        final List<Object> dispatched = new ArrayList<Object>();
+        testSubject.dispatch(new Notifier<Object>() {
+            @Override
+            public void onNotify(Object listener) {
+                if (dispatched.isEmpty()) {
+                    for (int i = 0; i < testObservers.length; ++i) {
+                        testSubject.removeListener(testObservers[i]);
+                        lateObservers[i] = new Object();
+                        testSubject.addListener(lateObservers[i]);
+                    }
+                }
+                dispatched.add(listener);
+            }
+        });
+        assertEquals(testObservers.length, dispatched.size());
+        for (int i = 0; i < testObservers.length; ++i) {
+            assertSame(testObservers[i], dispatched.get(i));
+        }
+
+        // Changes after the dispatch has returned are seen by the next walk.
+        testSubject.removeListener(lateObservers[0]);
+        int index = 1;
+        for (Object listener : testSubject) {
+            assertSame(lateObservers[index++], listener);
+        }
+        assertEquals(lateObservers.length, index);
+    }
+
+    @Test
+    public void testChangesDoNotAffectIterator() {
+        final Registrar<Object> testSubject = onCreateTestSubject();
+        final Object[] testObservers = new Object[100];
+        for (int i = 0; i < testObservers.length; ++i) {
+            testObservers[i] = new Object();
+            testSubject.addListener(testObservers[i]);
+        }
+        final Iterator<Object> iterator = testSubject.iterator();
+        for (int i = 0; i < testObservers.length; i += 2) {
+            testSubject.removeListener(testObservers[i]);
+            testSubject.addListener(new Object());
+        }
+        for (Object testObserver : testObservers) {
+            assertSame(testObserver, iterator.next());
+        }
+        assertFalse(iterator.hasNext());
+    }
+
     // +----------------------------------------------------------------------+
     // | PRIVATE
     // +----------------------------------------------------------------------+
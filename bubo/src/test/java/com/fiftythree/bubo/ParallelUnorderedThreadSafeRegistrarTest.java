@@ -0,0 +1,172 @@
+/*
+ *
+ *                                ^ ^
+ *                                O O
+ *                              /    )
+ *                             /  ,,
+ * Bubo – Observable Contracts and Specialized Implementations.
+ *                              |/
+ * Copyright 2015 FiftyThree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fiftythree.bubo;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests covering the {@link ParallelUnorderedThreadSafeRegistrar} object.
+ */
+public class ParallelUnorderedThreadSafeRegistrarTest extends UnorderedThreadSafeRegistrarTest {
+
+    private ForkJoinPool mPool;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mPool = new ForkJoinPool(4);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mPool.shutdown();
+        super.tearDown();
+    }
+
+    // +----------------------------------------------------------------------+
+    // | RegistrarTest
+    // +----------------------------------------------------------------------+
+    @Override
+    protected ParallelUnorderedThreadSafeRegistrar<Object> onCreateTestSubject() {
+        // High enough that the inherited tests dispatch on the calling thread.
+        return new ParallelUnorderedThreadSafeRegistrar<Object>(4, mPool, Integer.MAX_VALUE);
+    }
+
+    // +----------------------------------------------------------------------+
+    // | PARALLEL DISPATCH TESTS
+    // +----------------------------------------------------------------------+
+    @Test
+    public void testIAEForConstructor() {
+        try {
+            new ParallelUnorderedThreadSafeRegistrar<Object>(1, mPool, 0);
+            fail("IllegalArgumentException was not thrown for a parallelThreshold of 0.");
+        } catch (IllegalArgumentException e) {
+            // okay
+        }
+        try {
+            new ParallelUnorderedThreadSafeRegistrar<Object>(1, null, 1);
+            fail("IllegalArgumentException was not thrown for a null pool.");
+        } catch (IllegalArgumentException e) {
+            // okay
+        }
+    }
+
+    @Test
+    public void testParallelDispatchNotifiesEveryListenerOnce() {
+        final ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            final Registrar<Object> testSubject = new ParallelUnorderedThreadSafeRegistrar<Object>(4, pool, 100);
+            final Object[] testObservers = new Object[20000];
+            for (int i = 0; i < testObservers.length; ++i) {
+                testObservers[i] = new Object();
+                testSubject.addListener(testObservers[i]);
+            }
+            final Map<Object, Boolean> notified = Collections.synchronizedMap(
+                    new IdentityHashMap<Object, Boolean>());
+            final Set<Thread> threads = Collections.newSetFromMap(new ConcurrentHashMap<Thread, Boolean>());
+            final AtomicInteger total = new AtomicInteger();
+
+            testSubject.dispatch(new Notifier<Object>() {
+                @Override
+                public void onNotify(Object listener) {
+                    assertNull(notified.put(listener, Boolean.TRUE));
+                    threads.add(Thread.currentThread());
+                    total.incrementAndGet();
+                }
+            });
+
+            // The join barrier means every listener has been notified by the time dispatch returns.
+            assertEquals(testObservers.length, total.get());
+            for (Object testObserver : testObservers) {
+                assertTrue(notified.containsKey(testObserver));
+            }
+            assertFalse(threads.isEmpty());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testDispatchBelowThresholdStaysOnCaller() {
+        final ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            final Registrar<Object> testSubject = new ParallelUnorderedThreadSafeRegistrar<Object>(4, pool, 100);
+            for (int i = 0; i < 99; ++i) {
+                testSubject.addListener(new Object());
+            }
+            final Thread caller = Thread.currentThread();
+            final AtomicInteger elsewhere = new AtomicInteger();
+            testSubject.dispatch(new Notifier<Object>() {
+                @Override
+                public void onNotify(Object listener) {
+                    if (Thread.currentThread() != caller) {
+                        elsewhere.incrementAndGet();
+                    }
+                }
+            });
+            assertEquals(0, elsewhere.get());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testParallelDispatchExceptionWaitsForAllListeners() {
+        final ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            final Registrar<Object> testSubject = new ParallelUnorderedThreadSafeRegistrar<Object>(4, pool, 2);
+            final int listenerCount = 10000;
+            for (int i = 0; i < listenerCount; ++i) {
+                testSubject.addListener(new Object());
+            }
+            final AtomicInteger calls = new AtomicInteger();
+            try {
+                testSubject.dispatch(new Notifier<Object>() {
+                    @Override
+                    public void onNotify(Object listener) {
+                        if (calls.incrementAndGet() == 1) {
+                            throw new IllegalStateException();
+                        }
+                    }
+                });
+                fail("notifier exception was swallowed");
+            } catch (IllegalStateException e) {
+                // okay
+            }
+            final int callsAtReturn = calls.get();
+            // Nothing may still be running once dispatch has returned.
+            Thread.yield();
+            assertEquals(callsAtReturn, calls.get());
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
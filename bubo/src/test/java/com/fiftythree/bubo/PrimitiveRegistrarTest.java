@@ -0,0 +1,185 @@
+/*
+ *
+ *                                ^ ^
+ *                                O O
+ *                              /    )
+ *                             /  ,,
+ * Bubo – Observable Contracts and Specialized Implementations.
+ *                              |/
+ * Copyright 2015 FiftyThree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fiftythree.bubo;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests covering {@link IntRegistrar}, {@link LongRegistrar} and {@link DoubleRegistrar}.
+ */
+public class PrimitiveRegistrarTest extends TestCase {
+
+    // +----------------------------------------------------------------------+
+    // | TEST FIXTURES
+    // +----------------------------------------------------------------------+
+    private static final class TestFixturePrimitiveListener implements IntListener, LongListener, DoubleListener {
+
+        final List<Object> mValues = new ArrayList<Object>();
+        final List<TestFixturePrimitiveListener> mOrder;
+
+        TestFixturePrimitiveListener(List<TestFixturePrimitiveListener> order) {
+            mOrder = order;
+        }
+
+        @Override
+        public void onValue(int value) {
+            mOrder.add(this);
+            mValues.add(value);
+        }
+
+        @Override
+        public void onValue(long value) {
+            mOrder.add(this);
+            mValues.add(value);
+        }
+
+        @Override
+        public void onValue(double value) {
+            mOrder.add(this);
+            mValues.add(value);
+        }
+    }
+
+    private static final class TestFixtureSummingListener implements IntListener, LongListener, DoubleListener {
+
+        long mSum;
+
+        @Override
+        public void onValue(int value) {
+            mSum += value;
+        }
+
+        @Override
+        public void onValue(long value) {
+            mSum += value;
+        }
+
+        @Override
+        public void onValue(double value) {
+            mSum += (long) value;
+        }
+    }
+
+    // +----------------------------------------------------------------------+
+    // | PRIMITIVE DISPATCH TESTS
+    // +----------------------------------------------------------------------+
+    @Test
+    public void testDispatchInRegistrationOrder() {
+        final List<TestFixturePrimitiveListener> order = new ArrayList<TestFixturePrimitiveListener>();
+        final TestFixturePrimitiveListener first = new TestFixturePrimitiveListener(order);
+        final TestFixturePrimitiveListener second = new TestFixturePrimitiveListener(order);
+        final IntRegistrar ints = new IntRegistrar();
+        final LongRegistrar longs = new LongRegistrar();
+        final DoubleRegistrar doubles = new DoubleRegistrar();
+        ints.addListener(first);
+        ints.addListener(second);
+        ints.addListener(first);
+        longs.addListener(first);
+        longs.addListener(second);
+        doubles.addListener(first);
+        doubles.addListener(second);
+
+        ints.dispatch(53);
+        longs.dispatch(Long.MAX_VALUE);
+        doubles.dispatch(0.5);
+
+        assertEquals(6, order.size());
+        for (int i = 0; i < order.size(); i += 2) {
+            assertSame(first, order.get(i));
+            assertSame(second, order.get(i + 1));
+        }
+        assertEquals(3, first.mValues.size());
+        assertEquals(53, first.mValues.get(0));
+        assertEquals(Long.MAX_VALUE, first.mValues.get(1));
+        assertEquals(0.5, first.mValues.get(2));
+        assertEquals(first.mValues, second.mValues);
+    }
+
+    @Test
+    public void testRemoveDuringDispatchIsAtomic() {
+        final IntRegistrar testSubject = new IntRegistrar();
+        final int[] notified = new int[1];
+        final IntListener second = new IntListener() {
+            @Override
+            public void onValue(int value) {
+                ++notified[0];
+            }
+        };
+        testSubject.addListener(new IntListener() {
+            @Override
+            public void onValue(int value) {
+                ++notified[0];
+                testSubject.removeListener(second);
+            }
+        });
+        testSubject.addListener(second);
+
+        testSubject.dispatch(1);
+        assertEquals(2, notified[0]);
+        testSubject.dispatch(1);
+        assertEquals(3, notified[0]);
+    }
+
+    @Test
+    public void testDispatchDoesNotAllocate() {
+        final java.lang.management.ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        if (!(threadMXBean instanceof com.sun.management.ThreadMXBean)) {
+            return;
+        }
+        final com.sun.management.ThreadMXBean allocationMXBean = (com.sun.management.ThreadMXBean) threadMXBean;
+        if (!allocationMXBean.isThreadAllocatedMemorySupported()
+                || !allocationMXBean.isThreadAllocatedMemoryEnabled()) {
+            return;
+        }
+        final IntRegistrar ints = new IntRegistrar();
+        final LongRegistrar longs = new LongRegistrar();
+        final DoubleRegistrar doubles = new DoubleRegistrar();
+        final TestFixtureSummingListener[] testObservers = new TestFixtureSummingListener[50];
+        for (int i = 0; i < testObservers.length; ++i) {
+            testObservers[i] = new TestFixtureSummingListener();
+            ints.addListener(testObservers[i]);
+            longs.addListener(testObservers[i]);
+            doubles.addListener(testObservers[i]);
+        }
+        final int dispatches = 10000;
+        final long threadId = Thread.currentThread().getId();
+        allocationMXBean.getThreadAllocatedBytes(threadId);
+
+        final long allocatedBefore = allocationMXBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < dispatches; ++i) {
+            ints.dispatch(1000 + i);
+            longs.dispatch(1000L + i);
+            doubles.dispatch(1000.0 + i);
+        }
+        final long allocatedAfter = allocationMXBean.getThreadAllocatedBytes(threadId);
+
+        assertTrue(testObservers[0].mSum > 0);
+        assertEquals(0, (allocatedAfter - allocatedBefore) / dispatches);
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ *
+ *                                ^ ^
+ *                                O O
+ *                              /    )
+ *                             /  ,,
+ * Bubo – Observable Contracts and Specialized Implementations.
+ *                              |/
+ * Copyright 2015 FiftyThree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fiftythree.bubo;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Tests covering the {@link PrioritySingleThreadedRegistrar} object.
+ */
+public class PrioritySingleThreadedRegistrarTest extends OrderedRegistrarTest {
+
+    // +----------------------------------------------------------------------+
+    // | RegistrarTest
+    // +----------------------------------------------------------------------+
+    protected PriorityRegistrar<Object> onCreateTestSubject() {
+        return new PrioritySingleThreadedRegistrar<Object>();
+    }
+
+    // +----------------------------------------------------------------------+
+    // | TEST FIXTURES
+    // +----------------------------------------------------------------------+
+    private static List<Object> dispatched(Registrar<Object> testSubject) {
+        final List<Object> dispatched = new ArrayList<Object>();
+        testSubject.dispatch(new Notifier<Object>() {
+            @Override
+            public void onNotify(Object listener) {
+                dispatched.add(listener);
+            }
+        });
+        return dispatched;
+    }
+
+    // +----------------------------------------------------------------------+
+    // | PRIORITY TESTS
+    // +----------------------------------------------------------------------+
+    @Test
+    public void testIAEForAddWithPriority() {
+        try {
+            onCreateTestSubject().addListener(null, 1);
+            fail("IllegalArgumentException was not thrown for null listener.");
+        } catch (IllegalArgumentException e) {
+            // okay
+        }
+    }
+
+    @Test
+    public void testHigherPriorityDispatchedFirst() {
+        final PriorityRegistrar<Object> testSubject = onCreateTestSubject();
+        final Object ui = new Object();
+        final Object cache = new Object();
+        final Object log = new Object();
+        testSubject.addListener(ui);
+        testSubject.addListener(log, Integer.MIN_VALUE);
+        testSubject.addListener(cache, Integer.MAX_VALUE);
+
+        final List<Object> dispatched = dispatched(testSubject);
+        assertEquals(3, dispatched.size());
+        assertSame(cache, dispatched.get(0));
+        assertSame(ui, dispatched.get(1));
+        assertSame(log, dispatched.get(2));
+
+        final List<Object> iterated = new ArrayList<Object>();
+        for (Object listener : testSubject) {
+            iterated.add(listener);
+        }
+        assertEquals(dispatched, iterated);
+    }
+
+    @Test
+    public void testFirstPriorityWins() {
+        final PriorityRegistrar<Object> testSubject = onCreateTestSubject();
+        final Object testObserver0 = new Object();
+        final Object testObserver1 = new Object();
+        testSubject.addListener(testObserver0, 1);
+        testSubject.addListener(testObserver1, 2);
+        testSubject.addListener(testObserver0, 3);
+        assertEquals(2, testSubject.size());
+        assertSame(testObserver1, dispatched(testSubject).get(0));
+
+        testSubject.removeListener(testObserver0);
+        testSubject.addListener(testObserver0, 3);
+        assertSame(testObserver0, dispatched(testSubject).get(0));
+    }
+
+    @Test
+    public void testRandomPrioritiesAreStable() {
+        final PriorityRegistrar<Object> testSubject = onCreateTestSubject();
+        final Random random = new Random(53);
+        final int count = 500;
+        final Object[] testObservers = new Object[count];
+        final int[] priorities = new int[count];
+        for (int i = 0; i < count; ++i) {
+            testObservers[i] = new Object();
+            priorities[i] = random.nextInt(10) - 5;
+            testSubject.addListener(testObservers[i], priorities[i]);
+        }
+        for (int i = 0; i < count; i += 3) {
+            testSubject.removeListener(testObservers[i]);
+        }
+
+        final List<Object> expected = new ArrayList<Object>();
+        for (int priority = 4; priority >= -5; --priority) {
+            for (int i = 0; i < count; ++i) {
+                if (0 != i % 3 && priorities[i] == priority) {
+                    expected.add(testObservers[i]);
+                }
+            }
+        }
+        final List<Object> dispatched = dispatched(testSubject);
+        assertEquals(expected.size(), testSubject.size());
+        assertEquals(expected.size(), dispatched.size());
+        for (int i = 0; i < expected.size(); ++i) {
+            assertSame(expected.get(i), dispatched.get(i));
+        }
+    }
+
+    @Test
+    public void testEditMatchesIndividualChanges() {
+        final PriorityRegistrar<Object> testSubject = onCreateTestSubject();
+        final PriorityRegistrar<Object> expected = onCreateTestSubject();
+        final Random random = new Random(53);
+        final int count = 200;
+        final Object[] testObservers = new Object[count];
+        for (int i = 0; i < count / 2; ++i) {
+            testObservers[i] = new Object();
+            final int priority = random.nextInt(10) - 5;
+            testSubject.addListener(testObservers[i], priority);
+            expected.addListener(testObservers[i], priority);
+        }
+
+        final PriorityRegistrar.PriorityEditor<Object> editor = testSubject.edit();
+        for (int i = count / 2; i < count; ++i) {
+            testObservers[i] = new Object();
+            final int priority = random.nextInt(10) - 5;
+            editor.addListener(testObservers[i], priority);
+            expected.addListener(testObservers[i], priority);
+        }
+        for (int i = 0; i < count; i += 3) {
+            editor.removeListener(testObservers[i]);
+            expected.removeListener(testObservers[i]);
+        }
+        editor.addListener(testObservers[0]);
+        expected.addListener(testObservers[0]);
+        editor.commit();
+
+        assertEquals(expected.size(), testSubject.size());
+        assertEquals(dispatched(expected), dispatched(testSubject));
+    }
+}
@@ -0,0 +1,271 @@
+/*
+ *
+ *                                ^ ^
+ *                                O O
+ *                              /    )
+ *                             /  ,,
+ * Bubo – Observable Contracts and Specialized Implementations.
+ *                              |/
+ * Copyright 2015 FiftyThree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fiftythree.bubo;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+
+/**
+ * Tests covering the {@link RegistrarRegistry} object.
+ */
+public class RegistrarRegistryTest extends TestCase {
+
+    // +----------------------------------------------------------------------+
+    // | TEST FIXTURES
+    // +----------------------------------------------------------------------+
+    private static final class TestFixtureGrowthListener implements RegistrarRegistry.GrowthListener {
+
+        final List<Integer> thresholds = new ArrayList<Integer>();
+        Map<String, Integer> lastCallSites;
+
+        @Override
+        public void onThresholdReached(Registrar<?> registrar, int threshold, int size,
+                                       Map<String, Integer> callSites) {
+            thresholds.add(threshold);
+            lastCallSites = callSites;
+        }
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        RegistrarRegistry.install(null);
+        super.tearDown();
+    }
+
+    /**
+     * Call sites are attributed to the first frame outside com.fiftythree.bubo, which includes this test, so
+     * run the change from a JDK frame.
+     */
+    private static void runOutsideBubo(Runnable change) throws Exception {
+        Executors.callable(change).call();
+    }
+
+    // +----------------------------------------------------------------------+
+    // | REGISTRY TESTS
+    // +----------------------------------------------------------------------+
+    @Test
+    public void testIAEForConstructor() {
+        try {
+            new RegistrarRegistry(null, 1, null);
+            fail("IllegalArgumentException was not thrown for null thresholds.");
+        } catch (IllegalArgumentException e) {
+            // okay
+        }
+        try {
+            new RegistrarRegistry(new int[]{0}, 1, null);
+            fail("IllegalArgumentException was not thrown for a zero threshold.");
+        } catch (IllegalArgumentException e) {
+            // okay
+        }
+        try {
+            new RegistrarRegistry(new int[]{1}, -1, null);
+            fail("IllegalArgumentException was not thrown for a negative sample interval.");
+        } catch (IllegalArgumentException e) {
+            // okay
+        }
+    }
+
+    @Test
+    public void testNotTrackedWhenNotInstalled() {
+        final RegistrarRegistry registry = new RegistrarRegistry(new int[]{1}, 1, null);
+        new ThreadSafeRegistrar<Object>().addListener(new Object());
+        assertNull(RegistrarRegistry.installed());
+        assertEquals(0, registry.trackedCount());
+    }
+
+    @Test
+    public void testEveryRegistrarIsTracked() {
+        final RegistrarRegistry registry = new RegistrarRegistry(new int[0], 0, null);
+        RegistrarRegistry.install(registry);
+        final List<Registrar<Object>> registrars = new ArrayList<Registrar<Object>>();
+        registrars.add(new SingleThreadedRegistrar<Object>());
+        registrars.add(new ThreadSafeRegistrar<Object>());
+        registrars.add(new UnorderedThreadSafeRegistrar<Object>());
+        registrars.add(new WeakSingleThreadedRegistrar<Object>());
+        registrars.add(new WeakThreadSafeRegistrar<Object>());
+        assertEquals(registrars.size(), registry.trackedCount());
+    }
+
+    @Test
+    public void testCompactRegistrarsAreTrackedOnce() {
+        final TestFixtureGrowthListener growthListener = new TestFixtureGrowthListener();
+        final RegistrarRegistry registry = new RegistrarRegistry(new int[]{20}, 0, growthListener);
+        RegistrarRegistry.install(registry);
+        final List<Registrar<Object>> registrars = new ArrayList<Registrar<Object>>();
+        registrars.add(new CompactRegistrar<Object>());
+        registrars.add(new CompactThreadSafeRegistrar<Object>());
+        for (Registrar<Object> registrar : registrars) {
+            // Far beyond the small array state, so each holds an internal registrar.
+            for (int i = 0; i < 20; ++i) {
+                registrar.addListener(new Object());
+            }
+        }
+        final Registrar<Object> edited = new CompactRegistrar<Object>();
+        registrars.add(edited);
+        final Registrar.Editor<Object> editor = edited.edit();
+        for (int i = 0; i < 20; ++i) {
+            editor.addListener(new Object());
+        }
+        editor.commit();
+        assertEquals(3, registry.trackedCount());
+        assertEquals(3, growthListener.thresholds.size());
+    }
+
+    @Test
+    public void testSizeHistogram() {
+        final RegistrarRegistry registry = new RegistrarRegistry(new int[0], 0, null);
+        RegistrarRegistry.install(registry);
+        final Registrar<Object> empty = new ThreadSafeRegistrar<Object>();
+        final Registrar<Object> one = new ThreadSafeRegistrar<Object>();
+        one.addListener(new Object());
+        final Registrar<Object> five = new SingleThreadedRegistrar<Object>();
+        for (int i = 0; i < 5; ++i) {
+            five.addListener(new Object());
+        }
+
+        final int[] histogram = registry.sizeHistogram();
+        assertEquals(1, histogram[0]);
+        assertEquals(1, histogram[1]);
+        assertEquals(1, histogram[3]);
+        assertEquals(0, empty.size());
+    }
+
+    @Test
+    public void testSizeHistogramOnlyAsksThreadSafeRegistrars() throws InterruptedException {
+        final RegistrarRegistry registry = new RegistrarRegistry(new int[0], 0, null);
+        RegistrarRegistry.install(registry);
+        final Thread owner = Thread.currentThread();
+        final Registrar<Object> confined = new SingleThreadedRegistrar<Object>() {
+            @Override
+            public int size() {
+                assertSame(owner, Thread.currentThread());
+                return super.size();
+            }
+        };
+        for (int i = 0; i < 5; ++i) {
+            confined.addListener(new Object());
+        }
+        final Registrar<Object> shared = new ThreadSafeRegistrar<Object>();
+        shared.addListener(new Object());
+
+        final int[][] histogram = new int[1][];
+        final Thread monitor = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                histogram[0] = registry.sizeHistogram();
+            }
+        });
+        monitor.start();
+        monitor.join();
+        assertNotNull(histogram[0]);
+        assertEquals(1, histogram[0][1]);
+        assertEquals(1, histogram[0][3]);
+    }
+
+    @Test
+    public void testThresholdsAreReportedOnce() {
+        final TestFixtureGrowthListener growthListener = new TestFixtureGrowthListener();
+        RegistrarRegistry.install(new RegistrarRegistry(new int[]{10, 2}, 0, growthListener));
+        final Registrar<Object> testSubject = new UnorderedThreadSafeRegistrar<Object>();
+        final Object listener = new Object();
+        testSubject.addListener(listener);
+        testSubject.addListener(listener);
+        assertTrue(growthListener.thresholds.isEmpty());
+
+        testSubject.addListener(new Object());
+        for (int i = 0; i < 20; ++i) {
+            testSubject.addListener(new Object());
+        }
+        testSubject.clear();
+        for (int i = 0; i < 20; ++i) {
+            testSubject.addListener(new Object());
+        }
+
+        assertEquals(2, growthListener.thresholds.size());
+        assertEquals(2, growthListener.thresholds.get(0).intValue());
+        assertEquals(10, growthListener.thresholds.get(1).intValue());
+    }
+
+    @Test
+    public void testCallSitesAreSampled() throws Exception {
+        final TestFixtureGrowthListener growthListener = new TestFixtureGrowthListener();
+        final RegistrarRegistry registry = new RegistrarRegistry(new int[]{8}, 2, growthListener);
+        RegistrarRegistry.install(registry);
+        final Registrar<Object> testSubject = new ThreadSafeRegistrar<Object>();
+        for (int i = 0; i < 8; ++i) {
+            runOutsideBubo(new Runnable() {
+                @Override
+                public void run() {
+                    testSubject.addListener(new Object());
+                }
+            });
+        }
+
+        final Map<String, Integer> callSites = registry.callSites(testSubject);
+        assertEquals(1, callSites.size());
+        final String callSite = callSites.keySet().iterator().next();
+        assertTrue(callSite, callSite.contains(Executors.class.getName() + "$"));
+        assertEquals(4, callSites.get(callSite).intValue());
+        assertEquals(callSites, growthListener.lastCallSites);
+    }
+
+    @Test
+    public void testEditCallSitesSkipLibraryFrames() throws Exception {
+        final RegistrarRegistry registry = new RegistrarRegistry(new int[0], 1, null);
+        RegistrarRegistry.install(registry);
+        final Registrar<Object> testSubject = new SingleThreadedRegistrar<Object>();
+        runOutsideBubo(new Runnable() {
+            @Override
+            public void run() {
+                testSubject.edit().addListener(new Object()).addListener(new Object()).commit();
+            }
+        });
+
+        final Map<String, Integer> callSites = registry.callSites(testSubject);
+        assertEquals(1, callSites.size());
+        final String callSite = callSites.keySet().iterator().next();
+        assertTrue(callSite, callSite.contains(Executors.class.getName() + "$"));
+    }
+
+    @Test
+    public void testThresholdsAreReportedForWeakRegistrars() {
+        final TestFixtureGrowthListener growthListener = new TestFixtureGrowthListener();
+        RegistrarRegistry.install(new RegistrarRegistry(new int[]{3, 5}, 0, growthListener));
+        final Registrar<Object> testSubject = new WeakThreadSafeRegistrar<Object>();
+        final Object[] testObservers = new Object[5];
+        for (int i = 0; i < testObservers.length; ++i) {
+            testObservers[i] = new Object();
+            testSubject.addListener(testObservers[i]);
+            testSubject.removeListener(testObservers[i]);
+            testSubject.addListener(testObservers[i]);
+        }
+        assertEquals(Arrays.asList(3, 5), growthListener.thresholds);
+    }
+}
@@ -22,10 +22,21 @@
  */
 package com.fiftythree.bubo;
 
+import com.fiftythree.bubo.annotations.ThreadSafe;
+
 import junit.framework.TestCase;
 
 import org.junit.Test;
 
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
 /**
  * Common tests for all {@link Registrar} implementations.
  */
@@ -36,6 +47,18 @@ public abstract class RegistrarTest extends TestCase {
     // +----------------------------------------------------------------------+
     protected abstract Registrar<Object> onCreateTestSubject();
 
+    // +----------------------------------------------------------------------+
+    // | TEST FIXTURES
+    // +----------------------------------------------------------------------+
+    private static final class TestFixtureCountingNotifier implements Notifier<Object> {
+        int mCount;
+
+        @Override
+        public void onNotify(Object listener) {
+            ++mCount;
+        }
+    }
+
     // +----------------------------------------------------------------------+
     // | NULL ARGUMENT TESTS
     // +----------------------------------------------------------------------+
@@ -218,6 +241,23 @@ public abstract class RegistrarTest extends TestCase {
         assertEquals(1, testSubject.size());
     }
 
+    @Test
+    public void testRegistrationIsByIdentity() {
+        final Registrar<Object> testSubject = onCreateTestSubject();
+        final String testObserver0 = new String("observer");
+        final String testObserver1 = new String("observer");
+
+        testSubject.addListener(testObserver0);
+        testSubject.addListener(testObserver1);
+        assertEquals(2, testSubject.size());
+
+        testSubject.removeListener(testObserver1);
+        assertEquals(1, testSubject.size());
+        for (Object listener : testSubject) {
+            assertSame(testObserver0, listener);
+        }
+    }
+
     // +----------------------------------------------------------------------+
     // | ADD TWO TESTS
     // +----------------------------------------------------------------------+
@@ -352,4 +392,346 @@ public abstract class RegistrarTest extends TestCase {
         assertEquals(2, iterations);
     }
 
+    // +----------------------------------------------------------------------+
+    // | DISPATCH TESTS
+    // +----------------------------------------------------------------------+
+    @Test
+    public void testIAEForDispatch() {
+        try {
+            final Registrar<Object> testSubject = onCreateTestSubject();
+            testSubject.dispatch(null);
+            fail("IAE was not thrown");
+        } catch (IllegalArgumentException e) {
+            // okay
+        }
+    }
+
+    @Test
+    public void testDispatchMatchesIteration() {
+        final Registrar<Object> testSubject = onCreateTestSubject();
+        final Object[] testObservers = new Object[100];
+        for (int i = 0; i < testObservers.length; ++i) {
+            testObservers[i] = new Object();
+            testSubject.addListener(testObservers[i]);
+        }
+        for (int i = 0; i < testObservers.length; i += 3) {
+            testSubject.removeListener(testObservers[i]);
+        }
+
+        final List<Object> dispatched = new ArrayList<Object>();
+        testSubject.dispatch(new Notifier<Object>() {
+            @Override
+            public void onNotify(Object listener) {
+                dispatched.add(listener);
+            }
+        });
+
+        final List<Object> iterated = new ArrayList<Object>();
+        for (Object listener : testSubject) {
+            iterated.add(listener);
+        }
+        assertEquals(iterated, dispatched);
+        assertEquals(testSubject.size(), dispatched.size());
+    }
+
+    @Test
+    public void testAddTwoRemoveSecondWhileDispatchingNotifier() {
+        final Registrar<Object> testSubject = onCreateTestSubject();
+        final Object testObserver0 = new Object();
+        final Object testObserver1 = new Object();
+
+        testSubject.addListener(testObserver0);
+        testSubject.addListener(testObserver1);
+
+        final int[] notified = new int[1];
+        testSubject.dispatch(new Notifier<Object>() {
+            @Override
+            public void onNotify(Object listener) {
+                ++notified[0];
+                testSubject.removeListener((listener == testObserver0) ? testObserver1 : testObserver0);
+            }
+        });
+        assertEquals(2, notified[0]);
+        assertEquals(0, testSubject.size());
+    }
+
+    @Test
+    public void testDispatchDoesNotAllocate() {
+        final java.lang.management.ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        if (!(threadMXBean instanceof com.sun.management.ThreadMXBean)) {
+            return;
+        }
+        final com.sun.management.ThreadMXBean allocationMXBean = (com.sun.management.ThreadMXBean) threadMXBean;
+        if (!allocationMXBean.isThreadAllocatedMemorySupported()
+                || !allocationMXBean.isThreadAllocatedMemoryEnabled()) {
+            return;
+        }
+        final Registrar<Object> testSubject = onCreateTestSubject();
+        final Object[] testObservers = new Object[50];
+        for (int i = 0; i < testObservers.length; ++i) {
+            testObservers[i] = new Object();
+            testSubject.addListener(testObservers[i]);
+        }
+        final TestFixtureCountingNotifier notifier = new TestFixtureCountingNotifier();
+        final int dispatches = 10000;
+        final long threadId = Thread.currentThread().getId();
+
+        // Let registrars build any cached state before measuring.
+        testSubject.dispatch(notifier);
+        allocationMXBean.getThreadAllocatedBytes(threadId);
+
+        final long allocatedBefore = allocationMXBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < dispatches; ++i) {
+            testSubject.dispatch(notifier);
+        }
+        final long allocatedAfter = allocationMXBean.getThreadAllocatedBytes(threadId);
+
+        assertEquals((dispatches + 1) * testObservers.length, notifier.mCount);
+        assertEquals(0, (allocatedAfter - allocatedBefore) / dispatches);
+    }
+
+    // +----------------------------------------------------------------------+
+    // | SNAPSHOT TESTS
+    // +----------------------------------------------------------------------+
+    @Test
+    public void testSnapshotMatchesIteration() {
+        final Registrar<Object> testSubject = onCreateTestSubject();
+        // Enough listeners to take every registrar past any small-size representation.
+        final Object[] testObservers = new Object[20];
+        for (int i = 0; i < testObservers.length; ++i) {
+            testObservers[i] = new Object();
+            testSubject.addListener(testObservers[i]);
+        }
+        final RegistrarSnapshot<Object> snapshot = testSubject.snapshot();
+        assertEquals(testObservers.length, snapshot.size());
+        int index = 0;
+        for (Object listener : testSubject) {
+            assertSame(listener, snapshot.get(index++));
+        }
+        assertEquals(testObservers.length, index);
+
+        final List<Object> dispatched = new ArrayList<Object>();
+        snapshot.dispatch(new Notifier<Object>() {
+            @Override
+            public void onNotify(Object listener) {
+                dispatched.add(listener);
+            }
+        });
+        assertEquals(testObservers.length, dispatched.size());
+        for (int i = 0; i < dispatched.size(); ++i) {
+            assertSame(snapshot.get(i), dispatched.get(i));
+        }
+
+        try {
+            snapshot.get(testObservers.length);
+            fail("IOOBE was not thrown");
+        } catch (IndexOutOfBoundsException e) {
+            // okay
+        }
+    }
+
+    @Test
+    public void testSnapshotVersionTracksChanges() {
+        final Registrar<Object> testSubject = onCreateTestSubject();
+        final RegistrarSnapshot<Object> empty = testSubject.snapshot();
+        assertTrue(empty.isEmpty());
+        assertEquals(empty.version(), testSubject.snapshot().version());
+
+        final Object[] testObservers = new Object[20];
+        long previous = empty.version();
+        for (int i = 0; i < testObservers.length; ++i) {
+            testObservers[i] = new Object();
+            testSubject.addListener(testObservers[i]);
+            final RegistrarSnapshot<Object> snapshot = testSubject.snapshot();
+            assertTrue(snapshot.version() > previous);
+            assertEquals(i + 1, snapshot.size());
+            assertEquals(snapshot.version(), testSubject.snapshot().version());
+            previous = snapshot.version();
+        }
+        final RegistrarSnapshot<Object> full = testSubject.snapshot();
+
+        testSubject.removeListener(testObservers[0]);
+        final RegistrarSnapshot<Object> removed = testSubject.snapshot();
+        assertTrue(removed.version() > full.version());
+        assertEquals(testObservers.length - 1, removed.size());
+
+        testSubject.clear();
+        final RegistrarSnapshot<Object> cleared = testSubject.snapshot();
+        assertTrue(cleared.version() > removed.version());
+        assertEquals(0, cleared.size());
+
+        // Earlier snapshots are unaffected by later changes.
+        assertTrue(empty.isEmpty());
+        assertEquals(testObservers.length, full.size());
+        boolean containsRemoved = false;
+        for (Object listener : full) {
+            containsRemoved |= (listener == testObservers[0]);
+        }
+        assertTrue(containsRemoved);
+    }
+
+    // +----------------------------------------------------------------------+
+    // | EDIT TESTS
+    // +----------------------------------------------------------------------+
+    @Test
+    public void testIAEForEditorAddListener() {
+        final Registrar<Object> testSubject = onCreateTestSubject();
+        try {
+            testSubject.edit().addListener(null);
+            fail("IAE was not thrown");
+        } catch (IllegalArgumentException e) {
+            // okay
+        }
+    }
+
+    @Test
+    public void testIAEForEditorRemoveListener() {
+        final Registrar<Object> testSubject = onCreateTestSubject();
+        try {
+            testSubject.edit().removeListener(null);
+            fail("IAE was not thrown");
+        } catch (IllegalArgumentException e) {
+            // okay
+        }
+    }
+
+    @Test
+    public void testEditPublishesOnce() {
+        final Registrar<Object> testSubject = onCreateTestSubject();
+        final Object testObserver = new Object();
+        testSubject.addListener(testObserver);
+        final RegistrarSnapshot<Object> before = testSubject.snapshot();
+
+        // Enough listeners to take every registrar past any small-size representation.
+        final Object[] testObservers = new Object[20];
+        final Registrar.Editor<Object> editor = testSubject.edit();
+        for (int i = 0; i < testObservers.length; ++i) {
+            testObservers[i] = new Object();
+            editor.addListener(testObservers[i]);
+        }
+        editor.removeListener(testObserver);
+        assertEquals(1, testSubject.size());
+        assertEquals(before.version(), testSubject.snapshot().version());
+
+        editor.commit();
+        final RegistrarSnapshot<Object> after = testSubject.snapshot();
+        assertTrue(after.version() > before.version());
+        assertEquals(testObservers.length, testSubject.size());
+        assertEquals(testObservers.length, after.size());
+        final Set<Object> registered = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+        for (Object listener : testSubject) {
+            registered.add(listener);
+        }
+        assertFalse(registered.contains(testObserver));
+        for (Object listener : testObservers) {
+            assertTrue(registered.contains(listener));
+        }
+    }
+
+    @Test
+    public void testEditAddThenRemoveCancels() {
+        final Registrar<Object> testSubject = onCreateTestSubject();
+        final Object testObserver0 = new Object();
+        final Object testObserver1 = new Object();
+        testSubject.addListener(testObserver0);
+
+        testSubject.edit()
+                .addListener(testObserver1)
+                .addListener(testObserver1)
+                .removeListener(testObserver1)
+                .addListener(testObserver0)
+                .commit();
+
+        assertEquals(1, testSubject.size());
+        final Iterator<Object> i = testSubject.iterator();
+        assertSame(testObserver0, i.next());
+        assertFalse(i.hasNext());
+    }
+
+    @Test
+    public void testEditWithoutChangesKeepsVersion() {
+        final Registrar<Object> testSubject = onCreateTestSubject();
+        final Object testObserver = new Object();
+        testSubject.addListener(testObserver);
+        final long version = testSubject.snapshot().version();
+
+        testSubject.edit().commit();
+        testSubject.edit().addListener(testObserver).removeListener(new Object()).commit();
+
+        assertEquals(version, testSubject.snapshot().version());
+        assertEquals(1, testSubject.size());
+    }
+
+    @Test
+    public void testEditorCommitTwice() {
+        final Registrar<Object> testSubject = onCreateTestSubject();
+        final Registrar.Editor<Object> editor = testSubject.edit().addListener(new Object());
+        editor.commit();
+        try {
+            editor.commit();
+            fail("ISE was not thrown");
+        } catch (IllegalStateException e) {
+            // okay
+        }
+        try {
+            editor.addListener(new Object());
+            fail("ISE was not thrown");
+        } catch (IllegalStateException e) {
+            // okay
+        }
+        assertEquals(1, testSubject.size());
+    }
+
+    // +----------------------------------------------------------------------+
+    // | CONCURRENCY TESTS
+    // +----------------------------------------------------------------------+
+    @Test
+    public void testConcurrentAddRemove() throws InterruptedException {
+        final Registrar<Object> testSubject = onCreateTestSubject();
+        if (null == testSubject.getClass().getAnnotation(ThreadSafe.class)) {
+            return;
+        }
+        final int threadCount = 4;
+        final int listenersPerThread = 250;
+        final Object[][] testObservers = new Object[threadCount][listenersPerThread];
+        final CountDownLatch start = new CountDownLatch(1);
+        final Thread[] threads = new Thread[threadCount];
+
+        for (int t = 0; t < threadCount; ++t) {
+            final Object[] observers = testObservers[t];
+            for (int i = 0; i < listenersPerThread; ++i) {
+                observers[i] = new Object();
+            }
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (Object observer : observers) {
+                        testSubject.addListener(observer);
+                    }
+                    // Remove every other observer while the other threads are still adding theirs.
+                    for (int i = 0; i < observers.length; i += 2) {
+                        testSubject.removeListener(observers[i]);
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(threadCount * listenersPerThread / 2, testSubject.size());
+        int iterations = 0;
+        for (Object ignored : testSubject) {
+            ++iterations;
+        }
+        assertEquals(threadCount * listenersPerThread / 2, iterations);
+    }
+
 }
\ No newline at end of file
@@ -22,6 +22,8 @@
  */
 package com.fiftythree.bubo;
 
+import org.junit.Test;
+
 /**
  * Tests covering the {@link SingleThreadedRegistrar} object.
  */
@@ -34,4 +36,57 @@ public class SingleThreadedRegistrarTest extends OrderedRegistrarTest {
         return new SingleThreadedRegistrar<Object>();
     }
 
-}
\ No newline at end of file
+    // +----------------------------------------------------------------------+
+    // | LARGE REGISTRAR TESTS
+    // +----------------------------------------------------------------------+
+    @Test
+    public void testAddManyRemoveOddIterate() {
+        final Registrar<Object> testSubject = onCreateTestSubject();
+        // Enough listeners to need three levels of the persistent vector.
+        final Object[] testObservers = new Object[40000];
+        for (int i = 0; i < testObservers.length; ++i) {
+            testObservers[i] = new Object();
+            testSubject.addListener(testObservers[i]);
+        }
+        assertEquals(testObservers.length, testSubject.size());
+
+        for (int i = 1; i < testObservers.length; i += 2) {
+            testSubject.removeListener(testObservers[i]);
+        }
+        assertEquals(testObservers.length / 2, testSubject.size());
+
+        int expected = 0;
+        for (Object listener : testSubject) {
+            assertSame(testObservers[expected], listener);
+            expected += 2;
+        }
+        assertEquals(testObservers.length, expected);
+    }
+
+    @Test
+    public void testRemoveMostThenReAdd() {
+        final Registrar<Object> testSubject = onCreateTestSubject();
+        final Object[] testObservers = new Object[1000];
+        for (int i = 0; i < testObservers.length; ++i) {
+            testObservers[i] = new Object();
+            testSubject.addListener(testObservers[i]);
+        }
+        // Removing all but the last listener forces compaction along the way.
+        for (int i = 0; i < testObservers.length - 1; ++i) {
+            testSubject.removeListener(testObservers[i]);
+        }
+        assertEquals(1, testSubject.size());
+
+        testSubject.addListener(testObservers[0]);
+        testSubject.removeListener(testObservers[testObservers.length - 1]);
+        testSubject.addListener(testObservers[testObservers.length - 1]);
+        testSubject.addListener(testObservers[0]);
+
+        int iterations = 0;
+        for (Object listener : testSubject) {
+            assertSame((iterations == 0) ? testObservers[0] : testObservers[testObservers.length - 1], listener);
+            ++iterations;
+        }
+        assertEquals(2, iterations);
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ *
+ *                                ^ ^
+ *                                O O
+ *                              /    )
+ *                             /  ,,
+ * Bubo – Observable Contracts and Specialized Implementations.
+ *                              |/
+ * Copyright 2015 FiftyThree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fiftythree.bubo;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * An {@link Executor} that holds submitted tasks until the test runs them on its own thread.
+ */
+final class TestFixtureQueueingExecutor implements Executor {
+
+    final List<Runnable> tasks = new ArrayList<Runnable>();
+
+    @Override
+    public void execute(Runnable command) {
+        tasks.add(command);
+    }
+
+    /**
+     * Run the oldest pending task.
+     */
+    void runNext() {
+        tasks.remove(0).run();
+    }
+
+    /**
+     * Run pending tasks, including any they submit, until none remain.
+     */
+    void runAll() {
+        while (!tasks.isEmpty()) {
+            runNext();
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ *
+ *                                ^ ^
+ *                                O O
+ *                              /    )
+ *                             /  ,,
+ * Bubo – Observable Contracts and Specialized Implementations.
+ *                              |/
+ * Copyright 2015 FiftyThree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fiftythree.bubo;
+
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Field;
+
+import static org.junit.Assert.assertNull;
+
+/**
+ * Helpers shared by the weak registrar tests.
+ */
+final class TestFixtureWeakListeners {
+
+    private TestFixtureWeakListeners() {
+    }
+
+    /**
+     * Register {@code count} listeners and keep every other one strongly reachable.
+     * @return The reachable listeners.
+     */
+    static Object[] addHalfReachable(Registrar<Object> registrar, int count) {
+        final Object[] reachable = new Object[count / 2];
+        // Every listener stays reachable until all have been added, so a collection part way through cannot
+        // purge some before the caller has counted them.
+        final Object[] all = new Object[count];
+        for (int i = 0; i < count; ++i) {
+            all[i] = new Object();
+            if (0 == i % 2) {
+                reachable[i / 2] = all[i];
+            }
+        }
+        for (Object listener : all) {
+            registrar.addListener(listener);
+        }
+        return reachable;
+    }
+
+    static void collectGarbage() throws InterruptedException {
+        final WeakReference<Object> sentinel = new WeakReference<Object>(new Object());
+        for (int i = 0; i < 100 && null != sentinel.get(); ++i) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertNull("garbage collection did not run", sentinel.get());
+    }
+
+    /**
+     * @return The number of references, live or not, held by a weak registrar.
+     */
+    static int slotCount(Registrar<Object> registrar) throws Exception {
+        final Field field = registrar.getClass().getDeclaredField("mRegistrar");
+        field.setAccessible(true);
+        // Registrars may keep spare capacity at the end of the array.
+        int count = 0;
+        for (Object slot : (Object[]) field.get(registrar)) {
+            if (null != slot) {
+                ++count;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Wait up to five seconds for a weak registrar's slot count to reach the expected value.
+     */
+    static int awaitSlotCount(Registrar<Object> registrar, int expected) throws Exception {
+        int slots = slotCount(registrar);
+        for (int i = 0; i < 500 && slots != expected; ++i) {
+            Thread.sleep(10);
+            slots = slotCount(registrar);
+        }
+        return slots;
+    }
+}
@@ -22,8 +22,10 @@
  */
 package com.fiftythree.bubo;
 
+import org.junit.Test;
+
 /**
- * Tests covering the {@link ThreadSafeRegistrar} object.
+ * Tests covering the {@link UnorderedThreadSafeRegistrar} object.
  */
 public class UnorderedThreadSafeRegistrarTest extends RegistrarTest {
 
@@ -34,4 +36,68 @@ public class UnorderedThreadSafeRegistrarTest extends RegistrarTest {
         return new UnorderedThreadSafeRegistrar<Object>();
     }
 
-}
\ No newline at end of file
+    // +----------------------------------------------------------------------+
+    // | TEST FIXTURES
+    // +----------------------------------------------------------------------+
+    private static final class TestFixtureSameHash {
+        @Override
+        public int hashCode() {
+            return 53;
+        }
+    }
+
+    // +----------------------------------------------------------------------+
+    // | HASHING TESTS
+    // +----------------------------------------------------------------------+
+    @Test
+    public void testAddRemoveWithSameHashCode() {
+        final Registrar<Object> testSubject = onCreateTestSubject();
+        final Object[] testObservers = new Object[100];
+        for (int i = 0; i < testObservers.length; ++i) {
+            testObservers[i] = new TestFixtureSameHash();
+            testSubject.addListener(testObservers[i]);
+        }
+        assertEquals(testObservers.length, testSubject.size());
+
+        for (Object testObserver : testObservers) {
+            testSubject.addListener(testObserver);
+        }
+        assertEquals(testObservers.length, testSubject.size());
+
+        for (int i = 0; i < testObservers.length; i += 2) {
+            testSubject.removeListener(testObservers[i]);
+        }
+        assertEquals(testObservers.length / 2, testSubject.size());
+
+        int iterations = 0;
+        for (Object listener : testSubject) {
+            boolean found = false;
+            for (int i = 1; i < testObservers.length; i += 2) {
+                found |= (testObservers[i] == listener);
+            }
+            assertTrue(found);
+            ++iterations;
+        }
+        assertEquals(testObservers.length / 2, iterations);
+    }
+
+    @Test
+    public void testIterationIsASnapshot() {
+        final Registrar<Object> testSubject = onCreateTestSubject();
+        final Object[] testObservers = new Object[1000];
+        for (int i = 0; i < testObservers.length; ++i) {
+            testObservers[i] = new Object();
+            testSubject.addListener(testObservers[i]);
+        }
+
+        int iterations = 0;
+        for (Object ignored : testSubject) {
+            // Changes made during dispatch must not affect this dispatch.
+            testSubject.clear();
+            testSubject.addListener(new Object());
+            ++iterations;
+        }
+        assertEquals(testObservers.length, iterations);
+        assertEquals(1, testSubject.size());
+    }
+}
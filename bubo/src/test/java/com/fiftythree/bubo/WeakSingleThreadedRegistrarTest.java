@@ -22,6 +22,14 @@
  */
 package com.fiftythree.bubo;
 
+import org.junit.Test;
+
+import java.lang.reflect.Field;
+
+import static com.fiftythree.bubo.TestFixtureWeakListeners.addHalfReachable;
+import static com.fiftythree.bubo.TestFixtureWeakListeners.collectGarbage;
+import static com.fiftythree.bubo.TestFixtureWeakListeners.slotCount;
+
 /**
  * Tests covering the {@link WeakSingleThreadedRegistrar} object.
  */
@@ -34,4 +42,85 @@ public class WeakSingleThreadedRegistrarTest extends OrderedRegistrarTest {
         return new WeakSingleThreadedRegistrar<Object>();
     }
 
-}
\ No newline at end of file
+    // +----------------------------------------------------------------------+
+    // | WEAK REFERENCE TESTS
+    // +----------------------------------------------------------------------+
+    @Test
+    public void testSnapshotPurgesCollectedListeners() throws Exception {
+        final WeakSingleThreadedRegistrar<Object> testSubject = onCreateTestSubject();
+        final Object[] reachable = addHalfReachable(testSubject, 1000);
+        final long before = testSubject.snapshot().version();
+        collectGarbage();
+        final RegistrarSnapshot<Object> after = testSubject.snapshot();
+        assertEquals(reachable.length, after.size());
+        assertTrue(after.version() > before);
+        assertEquals(reachable.length, slotCount(testSubject));
+        assertEquals(after.version(), testSubject.snapshot().version());
+    }
+
+    @Test
+    public void testSizeCountsOnlyLiveListeners() throws Exception {
+        final WeakSingleThreadedRegistrar<Object> testSubject = onCreateTestSubject();
+        final Object[] reachable = addHalfReachable(testSubject, 1000);
+        collectGarbage();
+        assertEquals(reachable.length, testSubject.size());
+        // size() only reads, so it can be called from a monitoring thread.
+        assertEquals(1000, slotCount(testSubject));
+    }
+
+    @Test
+    public void testDispatchCompactsExpiredListeners() throws Exception {
+        final WeakSingleThreadedRegistrar<Object> testSubject = onCreateTestSubject();
+        final Object[] reachable = addHalfReachable(testSubject, 1000);
+        collectGarbage();
+        assertEquals(1000, slotCount(testSubject));
+
+        final int[] notified = new int[1];
+        testSubject.dispatch(new Notifier<Object>() {
+            @Override
+            public void onNotify(Object listener) {
+                ++notified[0];
+            }
+        });
+        assertEquals(reachable.length, notified[0]);
+        assertEquals(reachable.length, slotCount(testSubject));
+    }
+
+    @Test
+    public void testIterationCompactsExpiredListeners() throws Exception {
+        final WeakSingleThreadedRegistrar<Object> testSubject = onCreateTestSubject();
+        final Object[] reachable = addHalfReachable(testSubject, 1000);
+        collectGarbage();
+
+        int iterations = 0;
+        for (Object ignored : testSubject) {
+            ++iterations;
+        }
+        assertEquals(reachable.length, iterations);
+        assertEquals(reachable.length, slotCount(testSubject));
+    }
+
+    @Test
+    public void testReaperFlagsClearedReferences() throws Exception {
+        final WeakSingleThreadedRegistrar<Object> testSubject = new WeakSingleThreadedRegistrar<Object>(true);
+        final Object[] reachable = addHalfReachable(testSubject, 1000);
+        collectGarbage();
+
+        final Field flag = WeakSingleThreadedRegistrar.class.getDeclaredField("mReferencesCleared");
+        flag.setAccessible(true);
+        for (int i = 0; i < 500 && !flag.getBoolean(testSubject); ++i) {
+            Thread.sleep(10);
+        }
+        assertTrue(flag.getBoolean(testSubject));
+        // The reaper never modifies a single threaded registrar itself.
+        assertEquals(1000, slotCount(testSubject));
+
+        testSubject.dispatch(new Notifier<Object>() {
+            @Override
+            public void onNotify(Object listener) {
+            }
+        });
+        assertFalse(flag.getBoolean(testSubject));
+        assertEquals(reachable.length, slotCount(testSubject));
+    }
+}
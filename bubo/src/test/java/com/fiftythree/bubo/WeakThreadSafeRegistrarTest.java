@@ -0,0 +1,76 @@
+/*
+ *
+ *                                ^ ^
+ *                                O O
+ *                              /    )
+ *                             /  ,,
+ * Bubo – Observable Contracts and Specialized Implementations.
+ *                              |/
+ * Copyright 2015 FiftyThree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fiftythree.bubo;
+
+import org.junit.Test;
+
+import static com.fiftythree.bubo.TestFixtureWeakListeners.addHalfReachable;
+import static com.fiftythree.bubo.TestFixtureWeakListeners.awaitSlotCount;
+import static com.fiftythree.bubo.TestFixtureWeakListeners.collectGarbage;
+import static com.fiftythree.bubo.TestFixtureWeakListeners.slotCount;
+
+/**
+ * Tests covering the {@link WeakThreadSafeRegistrar} object.
+ */
+public class WeakThreadSafeRegistrarTest extends OrderedRegistrarTest {
+
+    // +----------------------------------------------------------------------+
+    // | RegistrarTest
+    // +----------------------------------------------------------------------+
+    protected WeakThreadSafeRegistrar<Object> onCreateTestSubject() {
+        return new WeakThreadSafeRegistrar<Object>();
+    }
+
+    // +----------------------------------------------------------------------+
+    // | WEAK REFERENCE TESTS
+    // +----------------------------------------------------------------------+
+    @Test
+    public void testSnapshotPurgesCollectedListeners() throws Exception {
+        final WeakThreadSafeRegistrar<Object> testSubject = onCreateTestSubject();
+        final Object[] reachable = addHalfReachable(testSubject, 1000);
+        final long before = testSubject.snapshot().version();
+        collectGarbage();
+        final RegistrarSnapshot<Object> after = testSubject.snapshot();
+        assertEquals(reachable.length, after.size());
+        assertTrue(after.version() > before);
+        assertEquals(reachable.length, slotCount(testSubject));
+        assertEquals(after.version(), testSubject.snapshot().version());
+    }
+
+    @Test
+    public void testSizeCountsOnlyLiveListeners() throws Exception {
+        final WeakThreadSafeRegistrar<Object> testSubject = onCreateTestSubject();
+        final Object[] reachable = addHalfReachable(testSubject, 1000);
+        collectGarbage();
+        assertEquals(reachable.length, testSubject.size());
+    }
+
+    @Test
+    public void testReaperPurgesWithoutWalking() throws Exception {
+        final WeakThreadSafeRegistrar<Object> testSubject = new WeakThreadSafeRegistrar<Object>(true);
+        final Object[] reachable = addHalfReachable(testSubject, 1000);
+        assertEquals(1000, slotCount(testSubject));
+        collectGarbage();
+        assertEquals(reachable.length, awaitSlotCount(testSubject, reachable.length));
+    }
+}
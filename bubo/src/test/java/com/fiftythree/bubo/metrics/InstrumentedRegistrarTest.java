@@ -0,0 +1,195 @@
+/*
+ *
+ *                                ^ ^
+ *                                O O
+ *                              /    )
+ *                             /  ,,
+ * Bubo – Observable Contracts and Specialized Implementations.
+ *                              |/
+ * Copyright 2015 FiftyThree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fiftythree.bubo.metrics;
+
+import com.fiftythree.bubo.Notifier;
+import com.fiftythree.bubo.OrderedRegistrarTest;
+import com.fiftythree.bubo.SingleThreadedRegistrar;
+import com.fiftythree.bubo.ThreadSafeRegistrar;
+import com.fiftythree.bubo.UnorderedThreadSafeRegistrar;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Tests covering the {@link InstrumentedRegistrar} object.
+ */
+public class InstrumentedRegistrarTest extends OrderedRegistrarTest {
+
+    // +----------------------------------------------------------------------+
+    // | TEST FIXTURES
+    // +----------------------------------------------------------------------+
+    private static final class TestFixtureSlowListener {
+    }
+
+    private static final Notifier<Object> TEST_FIXTURE_NOTIFIER = new Notifier<Object>() {
+        @Override
+        public void onNotify(Object listener) {
+            if (listener instanceof TestFixtureSlowListener) {
+                try {
+                    Thread.sleep(2);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    };
+
+    // +----------------------------------------------------------------------+
+    // | RegistrarTest
+    // +----------------------------------------------------------------------+
+    protected InstrumentedRegistrar<Object> onCreateTestSubject() {
+        return new InstrumentedRegistrar<Object>(new ThreadSafeRegistrar<Object>(), getName(), false);
+    }
+
+    // +----------------------------------------------------------------------+
+    // | METRICS TESTS
+    // +----------------------------------------------------------------------+
+    @Test
+    public void testRegistrationCounts() {
+        final InstrumentedRegistrar<Object> testSubject = onCreateTestSubject();
+        final Object testObserver = new Object();
+        testSubject.addListener(testObserver);
+        testSubject.addListener(testObserver);
+        testSubject.addListener(new Object());
+        testSubject.removeListener(testObserver);
+        testSubject.clear();
+
+        final RegistrarMetrics metrics = testSubject.getMetrics();
+        assertEquals(3, metrics.getAddCount());
+        assertEquals(1, metrics.getRemoveCount());
+        assertEquals(1, metrics.getClearCount());
+        assertEquals(0, metrics.getSize());
+        // Two adds and one remove changed the copy-on-write array.
+        assertTrue(metrics.getSnapshotCopyBytes() > 0);
+    }
+
+    @Test
+    public void testNoSnapshotCopyBytesWithoutCopyOnWrite() {
+        final InstrumentedRegistrar<Object> testSubject =
+                new InstrumentedRegistrar<Object>(new UnorderedThreadSafeRegistrar<Object>(), getName());
+        testSubject.addListener(new Object());
+        assertEquals(0, testSubject.getMetrics().getSnapshotCopyBytes());
+    }
+
+    @Test
+    public void testNoSnapshotCopyBytesWhenWritingInPlace() {
+        final InstrumentedRegistrar<Object> testSubject =
+                new InstrumentedRegistrar<Object>(new SingleThreadedRegistrar<Object>(), getName());
+        final Object testObserver = new Object();
+        testSubject.addListener(testObserver);
+        testSubject.addListener(new Object());
+        testSubject.removeListener(testObserver);
+        assertEquals(0, testSubject.getMetrics().getSnapshotCopyBytes());
+    }
+
+    @Test
+    public void testDispatchLatency() {
+        final InstrumentedRegistrar<Object> testSubject = onCreateTestSubject();
+        testSubject.addListener(new TestFixtureSlowListener());
+        for (int i = 0; i < 10; ++i) {
+            testSubject.dispatch(TEST_FIXTURE_NOTIFIER);
+        }
+
+        final RegistrarMetrics metrics = testSubject.getMetrics();
+        assertEquals(10, metrics.getDispatchCount());
+        assertTrue(metrics.getDispatchTimeNanos() >= 10 * 2000000L);
+        long histogramTotal = 0;
+        for (long count : metrics.getDispatchLatencyHistogram()) {
+            histogramTotal += count;
+        }
+        assertEquals(10, histogramTotal);
+        assertTrue(metrics.dispatchLatencyPercentileNanos(50) >= 2000000L);
+        assertTrue(metrics.getListenerCallbackCounts().isEmpty());
+    }
+
+    @Test
+    public void testCallbackTimingIsOptIn() {
+        final InstrumentedRegistrar<Object> testSubject =
+                new InstrumentedRegistrar<Object>(new ThreadSafeRegistrar<Object>(), getName());
+        testSubject.addListener(new Object());
+        testSubject.dispatch(TEST_FIXTURE_NOTIFIER);
+        assertEquals(1, testSubject.getMetrics().getDispatchCount());
+        assertTrue(testSubject.getMetrics().getListenerCallbackCounts().isEmpty());
+    }
+
+    @Test
+    public void testListenerCallbackTime() {
+        final InstrumentedRegistrar<Object> testSubject =
+                new InstrumentedRegistrar<Object>(new ThreadSafeRegistrar<Object>(), getName(), true);
+        testSubject.addListener(new TestFixtureSlowListener());
+        testSubject.addListener(new Object());
+        testSubject.addListener(new Object());
+        testSubject.dispatch(TEST_FIXTURE_NOTIFIER);
+        testSubject.dispatch(TEST_FIXTURE_NOTIFIER);
+
+        final RegistrarMetrics metrics = testSubject.getMetrics();
+        final Map<String, Long> counts = metrics.getListenerCallbackCounts();
+        final Map<String, Long> nanos = metrics.getListenerCallbackNanos();
+        assertEquals(2, counts.get(TestFixtureSlowListener.class.getName()).longValue());
+        assertEquals(4, counts.get(Object.class.getName()).longValue());
+        assertTrue(nanos.get(TestFixtureSlowListener.class.getName()) >= 2 * 2000000L);
+    }
+
+    @Test
+    public void testJmxRegistration() throws Exception {
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        final InstrumentedRegistrar<Object> testSubject = onCreateTestSubject();
+        final RegistrarMetrics metrics = testSubject.getMetrics();
+        final ObjectName name = metrics.getObjectName();
+        assertEquals(RegistrarMetrics.DOMAIN, name.getDomain());
+        assertEquals("Registrar", name.getKeyProperty("type"));
+
+        metrics.register(server);
+        try {
+            testSubject.addListener(new Object());
+            testSubject.dispatch(TEST_FIXTURE_NOTIFIER);
+            assertEquals(1, server.getAttribute(name, "Size"));
+            assertEquals(1L, server.getAttribute(name, "DispatchCount"));
+            try {
+                onCreateTestSubject().getMetrics().register(server);
+                fail("IllegalStateException was not thrown for a duplicate name.");
+            } catch (IllegalStateException e) {
+                // okay
+            }
+        } finally {
+            metrics.unregister(server);
+        }
+        assertFalse(server.isRegistered(name));
+    }
+
+    @Test
+    public void testIAEForName() {
+        try {
+            new InstrumentedRegistrar<Object>(new ThreadSafeRegistrar<Object>(), null);
+            fail("IllegalArgumentException was not thrown for null name.");
+        } catch (IllegalArgumentException e) {
+            // okay
+        }
+    }
+}
@@ -0,0 +1,433 @@
+/*
+ *
+ *                                ^ ^
+ *                                O O
+ *                              /    )
+ *                             /  ,,
+ * Bubo – Observable Contracts and Specialized Implementations.
+ *                              |/
+ * Copyright 2015 FiftyThree
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.fiftythree.bubo.ring;
+
+import com.fiftythree.bubo.SingleThreadedRegistrar;
+import com.fiftythree.bubo.ThreadSafeRegistrar;
+
+import junit.framework.TestCase;
+
+import org.junit.Test;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+public class RingEventBusTest extends TestCase {
+
+    private static final int PRODUCERS = 4;
+    private static final int EVENTS_PER_PRODUCER = 10000;
+
+    private ExecutorService mExecutor;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mExecutor = Executors.newCachedThreadPool();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mExecutor.shutdownNow();
+        assertTrue(mExecutor.awaitTermination(10, TimeUnit.SECONDS));
+        super.tearDown();
+    }
+
+    @Test
+    public void testBufferSizeMustBePowerOfTwo() {
+        try {
+            new RingBuffer<TestFixtureEvent>(TestFixtureEvent.FACTORY, 1000, new BusySpinWaitStrategy());
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testDeliversAllEventsInProducerOrderWithBusySpin() throws Exception {
+        assertMultiProducerDelivery(new BusySpinWaitStrategy());
+    }
+
+    @Test
+    public void testDeliversAllEventsInProducerOrderWithYielding() throws Exception {
+        assertMultiProducerDelivery(new YieldingWaitStrategy());
+    }
+
+    @Test
+    public void testDeliversAllEventsInProducerOrderWithParking() throws Exception {
+        assertMultiProducerDelivery(new ParkingWaitStrategy(10, TimeUnit.MICROSECONDS));
+    }
+
+    @Test
+    public void testEndOfBatchMarksLastAvailableEvent() throws Exception {
+        final RingEventBus<TestFixtureEvent> bus = new RingEventBus<TestFixtureEvent>(TestFixtureEvent.FACTORY, 64,
+                new YieldingWaitStrategy(), new SingleThreadedRegistrar<EventListener<TestFixtureEvent>>());
+        final List<Long> sequences = new ArrayList<Long>();
+        final List<Boolean> endOfBatch = new ArrayList<Boolean>();
+        final CountDownLatch done = new CountDownLatch(10);
+        bus.getListeners().addListener(new EventListener<TestFixtureEvent>() {
+            @Override
+            public void onEvent(TestFixtureEvent event, long sequence, boolean end) {
+                sequences.add(sequence);
+                endOfBatch.add(end);
+                done.countDown();
+            }
+        });
+
+        // Published before the consumer starts so they arrive as a single batch.
+        for (int i = 0; i < 10; ++i) {
+            bus.publishEvent(new TestFixtureTranslator(0, i));
+        }
+        bus.start(mExecutor);
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        bus.halt();
+
+        for (int i = 0; i < 10; ++i) {
+            assertEquals(i, sequences.get(i).longValue());
+            assertEquals(i == 9, endOfBatch.get(i).booleanValue());
+        }
+    }
+
+    @Test
+    public void testProducerWaitsForConsumerWhenRingIsFull() throws Exception {
+        final RingEventBus<TestFixtureEvent> bus = new RingEventBus<TestFixtureEvent>(TestFixtureEvent.FACTORY, 8,
+                new YieldingWaitStrategy(), new ThreadSafeRegistrar<EventListener<TestFixtureEvent>>());
+        for (int i = 0; i < 8; ++i) {
+            bus.publishEvent(new TestFixtureTranslator(0, i));
+        }
+        final CountDownLatch published = new CountDownLatch(1);
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                bus.publishEvent(new TestFixtureTranslator(0, 8));
+                published.countDown();
+            }
+        });
+        assertFalse(published.await(100, TimeUnit.MILLISECONDS));
+
+        bus.start(mExecutor);
+        assertTrue(published.await(10, TimeUnit.SECONDS));
+        bus.halt();
+    }
+
+    @Test
+    public void testListenersAddedAndRemovedWhileRunning() throws Exception {
+        final RingEventBus<TestFixtureEvent> bus = new RingEventBus<TestFixtureEvent>(TestFixtureEvent.FACTORY, 16,
+                new ParkingWaitStrategy(), new ThreadSafeRegistrar<EventListener<TestFixtureEvent>>());
+        bus.start(mExecutor);
+
+        final TestFixtureRecorder first = new TestFixtureRecorder(1);
+        bus.getListeners().addListener(first);
+        bus.publishEvent(new TestFixtureTranslator(0, 0));
+        assertTrue(first.await());
+
+        final TestFixtureRecorder second = new TestFixtureRecorder(1);
+        bus.getListeners().removeListener(first);
+        bus.getListeners().addListener(second);
+        bus.publishEvent(new TestFixtureTranslator(0, 1));
+        assertTrue(second.await());
+        bus.halt();
+
+        assertEquals(1, first.values.size());
+        assertEquals(Integer.valueOf(1), second.values.get(0));
+    }
+
+    @Test
+    public void testListenerExceptionDoesNotStopProcessor() throws Exception {
+        final RingEventBus<TestFixtureEvent> bus = new RingEventBus<TestFixtureEvent>(TestFixtureEvent.FACTORY, 16,
+                new YieldingWaitStrategy(), new ThreadSafeRegistrar<EventListener<TestFixtureEvent>>());
+        final CountDownLatch failures = new CountDownLatch(2);
+        final TestFixtureRecorder recorder = new TestFixtureRecorder(2);
+        bus.getListeners().addListener(recorder);
+        bus.getListeners().addListener(new EventListener<TestFixtureEvent>() {
+            @Override
+            public void onEvent(TestFixtureEvent event, long sequence, boolean endOfBatch) {
+                throw new IllegalStateException("listener failure");
+            }
+        });
+        bus.start(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                final Thread thread = new Thread(command);
+                thread.setDaemon(true);
+                thread.setUncaughtExceptionHandler(new Thread.UncaughtExceptionHandler() {
+                    @Override
+                    public void uncaughtException(Thread t, Throwable e) {
+                        failures.countDown();
+                    }
+                });
+                thread.start();
+            }
+        });
+        bus.publishEvent(new TestFixtureTranslator(0, 0));
+        bus.publishEvent(new TestFixtureTranslator(0, 1));
+        assertTrue(failures.await(10, TimeUnit.SECONDS));
+        assertTrue(recorder.await());
+        bus.halt();
+    }
+
+    @Test
+    public void testHaltStopsAndRestartResumes() throws Exception {
+        final ThreadSafeRegistrar<EventListener<TestFixtureEvent>> listeners
+                = new ThreadSafeRegistrar<EventListener<TestFixtureEvent>>();
+        final RingBuffer<TestFixtureEvent> ring = new RingBuffer<TestFixtureEvent>(TestFixtureEvent.FACTORY, 16,
+                new ParkingWaitStrategy());
+        final BatchEventProcessor<TestFixtureEvent> processor = new BatchEventProcessor<TestFixtureEvent>(ring,
+                listeners);
+        final TestFixtureRecorder recorder = new TestFixtureRecorder(2);
+        listeners.addListener(recorder);
+
+        final Thread consumer = new Thread(processor);
+        consumer.start();
+        ring.publishEvent(new TestFixtureTranslator(0, 0));
+        awaitSequence(processor.getSequence(), 0);
+        processor.halt();
+        consumer.join(TimeUnit.SECONDS.toMillis(10));
+        assertFalse(consumer.isAlive());
+        assertFalse(processor.isRunning());
+
+        ring.publishEvent(new TestFixtureTranslator(0, 1));
+        final Thread restarted = new Thread(processor);
+        restarted.start();
+        assertTrue(recorder.await());
+        processor.halt();
+        restarted.join(TimeUnit.SECONDS.toMillis(10));
+        assertEquals(1, processor.getSequence().get());
+    }
+
+    @Test
+    public void testHaltBeforeRunIsNotLost() throws Exception {
+        final RingBuffer<TestFixtureEvent> ring = new RingBuffer<TestFixtureEvent>(TestFixtureEvent.FACTORY, 16,
+                new ParkingWaitStrategy());
+        final BatchEventProcessor<TestFixtureEvent> processor = new BatchEventProcessor<TestFixtureEvent>(ring,
+                new ThreadSafeRegistrar<EventListener<TestFixtureEvent>>());
+
+        // As if start() were followed by halt() before the executor ran the processor.
+        processor.halt();
+        final Thread consumer = new Thread(processor);
+        consumer.start();
+        consumer.join(TimeUnit.SECONDS.toMillis(10));
+        assertFalse(consumer.isAlive());
+        assertFalse(processor.isRunning());
+
+        final Thread restarted = new Thread(processor);
+        restarted.start();
+        ring.publishEvent(new TestFixtureTranslator(0, 0));
+        awaitSequence(processor.getSequence(), 0);
+        processor.halt();
+        restarted.join(TimeUnit.SECONDS.toMillis(10));
+        assertFalse(restarted.isAlive());
+    }
+
+    @Test
+    public void testRestartWaitsForHaltedConsumer() throws Exception {
+        final ThreadSafeRegistrar<EventListener<TestFixtureEvent>> listeners
+                = new ThreadSafeRegistrar<EventListener<TestFixtureEvent>>();
+        final RingBuffer<TestFixtureEvent> ring = new RingBuffer<TestFixtureEvent>(TestFixtureEvent.FACTORY, 16,
+                new ParkingWaitStrategy());
+        final BatchEventProcessor<TestFixtureEvent> processor = new BatchEventProcessor<TestFixtureEvent>(ring,
+                listeners);
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<Thread> consumers = new CopyOnWriteArrayList<Thread>();
+        listeners.addListener(new EventListener<TestFixtureEvent>() {
+            @Override
+            public void onEvent(TestFixtureEvent event, long sequence, boolean endOfBatch) {
+                consumers.add(Thread.currentThread());
+                if (0 == sequence) {
+                    entered.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+        });
+
+        final Thread consumer = new Thread(processor);
+        consumer.start();
+        ring.publishEvent(new TestFixtureTranslator(0, 0));
+        assertTrue(entered.await(10, TimeUnit.SECONDS));
+        processor.halt();
+        final Thread restarted = new Thread(processor);
+        restarted.start();
+        ring.publishEvent(new TestFixtureTranslator(0, 1));
+        Thread.sleep(50);
+        assertEquals(1, consumers.size());
+        assertTrue(restarted.isAlive());
+
+        release.countDown();
+        consumer.join(TimeUnit.SECONDS.toMillis(10));
+        awaitSequence(processor.getSequence(), 1);
+        assertEquals(2, consumers.size());
+        assertSame(restarted, consumers.get(1));
+        assertTrue(processor.isRunning());
+        processor.halt();
+        restarted.join(TimeUnit.SECONDS.toMillis(10));
+        assertFalse(restarted.isAlive());
+    }
+
+    @Test
+    public void testLateAlertFromEarlierHaltDoesNotStallRun() throws Exception {
+        final RingBuffer<TestFixtureEvent> ring = new RingBuffer<TestFixtureEvent>(TestFixtureEvent.FACTORY, 16,
+                new ParkingWaitStrategy());
+        final BatchEventProcessor<TestFixtureEvent> processor = new BatchEventProcessor<TestFixtureEvent>(ring,
+                new ThreadSafeRegistrar<EventListener<TestFixtureEvent>>());
+
+        final Thread consumer = new Thread(processor);
+        consumer.start();
+        ring.publishEvent(new TestFixtureTranslator(0, 0));
+        awaitSequence(processor.getSequence(), 0);
+        // As if a halt() that found the processor idle were descheduled before alerting until this run started.
+        final Field barrier = BatchEventProcessor.class.getDeclaredField("mBarrier");
+        barrier.setAccessible(true);
+        ((SequenceBarrier) barrier.get(processor)).alert();
+        // Let the consumer see the alert while it waits rather than after the next event is published.
+        Thread.sleep(50);
+
+        ring.publishEvent(new TestFixtureTranslator(0, 1));
+        awaitSequence(processor.getSequence(), 1);
+        assertTrue(processor.isRunning());
+        processor.halt();
+        consumer.join(TimeUnit.SECONDS.toMillis(10));
+        assertFalse(consumer.isAlive());
+    }
+
+    // +----------------------------------------------------------------------+
+    // | PRIVATE
+    // +----------------------------------------------------------------------+
+    private void assertMultiProducerDelivery(WaitStrategy waitStrategy) throws Exception {
+        final RingEventBus<TestFixtureEvent> bus = new RingEventBus<TestFixtureEvent>(TestFixtureEvent.FACTORY, 256,
+                waitStrategy, new ThreadSafeRegistrar<EventListener<TestFixtureEvent>>());
+        final int[] nextValue = new int[PRODUCERS];
+        final long[] lastSequence = {Sequence.INITIAL_VALUE};
+        final List<String> errors = new ArrayList<String>();
+        final CountDownLatch done = new CountDownLatch(PRODUCERS * EVENTS_PER_PRODUCER);
+        bus.getListeners().addListener(new EventListener<TestFixtureEvent>() {
+            @Override
+            public void onEvent(TestFixtureEvent event, long sequence, boolean endOfBatch) {
+                if (sequence != lastSequence[0] + 1) {
+                    errors.add("sequence " + sequence + " after " + lastSequence[0]);
+                }
+                lastSequence[0] = sequence;
+                if (event.value != nextValue[event.producer]) {
+                    errors.add("producer " + event.producer + " value " + event.value);
+                }
+                nextValue[event.producer] = event.value + 1;
+                done.countDown();
+            }
+        });
+        bus.start(mExecutor);
+
+        final CountDownLatch go = new CountDownLatch(1);
+        for (int p = 0; p < PRODUCERS; ++p) {
+            final int producer = p;
+            mExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        go.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    final TestFixtureTranslator translator = new TestFixtureTranslator(producer, 0);
+                    for (int i = 0; i < EVENTS_PER_PRODUCER; ++i) {
+                        translator.value = i;
+                        bus.publishEvent(translator);
+                    }
+                }
+            });
+        }
+        go.countDown();
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        bus.halt();
+
+        assertTrue(errors.toString(), errors.isEmpty());
+        assertEquals(PRODUCERS * EVENTS_PER_PRODUCER - 1, lastSequence[0]);
+    }
+
+    private static void awaitSequence(Sequence sequence, long expected) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (sequence.get() < expected) {
+            assertTrue("Timed out waiting for " + expected, System.nanoTime() < deadline);
+            Thread.sleep(1);
+        }
+    }
+
+    private static final class TestFixtureEvent {
+
+        static final EventFactory<TestFixtureEvent> FACTORY = new EventFactory<TestFixtureEvent>() {
+            @Override
+            public TestFixtureEvent newInstance() {
+                return new TestFixtureEvent();
+            }
+        };
+
+        int producer;
+        int value;
+    }
+
+    private static final class TestFixtureTranslator implements EventTranslator<TestFixtureEvent> {
+
+        final int producer;
+        int value;
+
+        TestFixtureTranslator(int producer, int value) {
+            this.producer = producer;
+            this.value = value;
+        }
+
+        @Override
+        public void translateTo(TestFixtureEvent event, long sequence) {
+            event.producer = producer;
+            event.value = value;
+        }
+    }
+
+    private static final class TestFixtureRecorder implements EventListener<TestFixtureEvent> {
+
+        final List<Integer> values = new CopyOnWriteArrayList<Integer>();
+        private final CountDownLatch mLatch;
+
+        TestFixtureRecorder(int expected) {
+            mLatch = new CountDownLatch(expected);
+        }
+
+        boolean await() throws InterruptedException {
+            return mLatch.await(10, TimeUnit.SECONDS);
+        }
+
+        @Override
+        public void onEvent(TestFixtureEvent event, long sequence, boolean endOfBatch) {
+            values.add(event.value);
+            mLatch.countDown();
+        }
+    }
+}